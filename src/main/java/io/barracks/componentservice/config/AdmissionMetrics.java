@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the state of the transfer admissions on the metrics endpoint, under {@code admission.<workload>.*}.
+ */
+@Component
+public class AdmissionMetrics implements PublicMetrics {
+    private final List<TransferAdmission> admissions;
+
+    public AdmissionMetrics(List<TransferAdmission> admissions) {
+        this.admissions = admissions;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        admissions.forEach(admission -> {
+            final String prefix = "admission." + admission.getWorkloadType().getKey() + ".";
+            metrics.add(new Metric<>(prefix + "in-flight", admission.getInFlightCount()));
+            metrics.add(new Metric<>(prefix + "owners", admission.getOwnerCount()));
+            metrics.add(new Metric<>(prefix + "waiting-owners", admission.getWaitingOwnerCount()));
+            metrics.add(new Metric<>(prefix + "rejected", admission.getRejectedCount()));
+            metrics.add(new Metric<>(prefix + "average-duration", admission.getAverageDuration()));
+        });
+        return metrics;
+    }
+}
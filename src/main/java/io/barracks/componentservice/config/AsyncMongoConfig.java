@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.DBObjectCodecProvider;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.connection.ClusterConnectionMode;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.SocketSettings;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDbFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous Mongo driver used when the service is started with {@code io.barracks.componentservice.mode=async}.
+ * Documents are exchanged as {@link com.mongodb.DBObject} so that they can be mapped with the same
+ * {@link org.springframework.data.mongodb.core.convert.MongoConverter} as the blocking repositories.
+ * <p>
+ * The client targets the same deployment as the auto-configured blocking client, with the connection budget of the
+ * metadata workload and the same timeouts. The binaries go through the blob stores, which use the connections of
+ * {@link MongoBulkheadConfig}.
+ */
+@Configuration
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.ASYNC_MODE)
+@EnableConfigurationProperties(BulkheadProperties.class)
+public class AsyncMongoConfig implements DisposableBean {
+    public static final String MODE_PROPERTY = "io.barracks.componentservice.mode";
+    public static final String ASYNC_MODE = "async";
+    public static final String BLOCKING_MODE = "blocking";
+
+    private final BulkheadProperties bulkheadProperties;
+    private final com.mongodb.MongoClient mongoClient;
+    private final MongoDbFactory mongoDbFactory;
+    private final List<MongoClient> asyncClients = new CopyOnWriteArrayList<>();
+
+    public AsyncMongoConfig(BulkheadProperties bulkheadProperties, com.mongodb.MongoClient mongoClient, MongoDbFactory mongoDbFactory) {
+        this.bulkheadProperties = bulkheadProperties;
+        this.mongoClient = mongoClient;
+        this.mongoDbFactory = mongoDbFactory;
+    }
+
+    @Bean
+    public MongoClient asyncMongoClient() {
+        return asyncClient(bulkheadProperties.getMetadata());
+    }
+
+    @Bean
+    public MongoDatabase asyncMongoDatabase(MongoClient asyncMongoClient) {
+        return asyncMongoClient.getDatabase(mongoDbFactory.getDb().getName())
+                .withCodecRegistry(CodecRegistries.fromRegistries(
+                        MongoClients.getDefaultCodecRegistry(),
+                        CodecRegistries.fromProviders(new DBObjectCodecProvider())
+                ));
+    }
+
+    @Override
+    public void destroy() {
+        asyncClients.forEach(MongoClient::close);
+    }
+
+    private MongoClient asyncClient(BulkheadProperties.Workload workload) {
+        final MongoClientOptions options = mongoClient.getMongoClientOptions();
+        final MongoClient asyncClient = MongoClients.create(MongoClientSettings.builder()
+                .clusterSettings(ClusterSettings.builder()
+                        .hosts(mongoClient.getAllAddress())
+                        .mode(mongoClient.getAllAddress().size() == 1 ? ClusterConnectionMode.SINGLE : ClusterConnectionMode.MULTIPLE)
+                        .requiredReplicaSetName(options.getRequiredReplicaSetName())
+                        .serverSelectionTimeout(options.getServerSelectionTimeout(), TimeUnit.MILLISECONDS)
+                        .build())
+                .socketSettings(SocketSettings.builder()
+                        .connectTimeout(options.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                        .readTimeout(options.getSocketTimeout(), TimeUnit.MILLISECONDS)
+                        .build())
+                .credentialList(mongoClient.getCredentialsList())
+                .readPreference(options.getReadPreference())
+                .writeConcern(options.getWriteConcern())
+                .connectionPoolSettings(ConnectionPoolSettings.builder()
+                        .maxSize(workload.getMaxConnections())
+                        .maxWaitTime(options.getMaxWaitTime(), TimeUnit.MILLISECONDS)
+                        .build())
+                .build());
+        asyncClients.add(asyncClient);
+        return asyncClient;
+    }
+}
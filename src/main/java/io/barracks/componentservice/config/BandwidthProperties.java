@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.bandwidth")
+public class BandwidthProperties implements Validator {
+    /**
+     * Outgoing bandwidth shared by all the downloads, in bytes per second. 0 disables the limit.
+     */
+    private long total = 0;
+    /**
+     * Maximum bandwidth of the downloads of one owner, in bytes per second. 0 disables the limit.
+     */
+    private long ownerLimit = 0;
+    /**
+     * Per-owner overrides of the owner limit, by owner id.
+     */
+    private Map<String, Long> ownerLimits = new HashMap<>();
+    /**
+     * Weight of the owners in the share of the total bandwidth, by owner id. Owners not listed weigh 1.
+     */
+    private Map<String, Double> weights = new HashMap<>();
+    /**
+     * Number of bytes an owner may send above its rate after being idle.
+     */
+    private long burst = 1048576L;
+    /**
+     * Delay (in ms) between two measures of the bandwidth used by the owners, after which the shares are computed
+     * again.
+     */
+    private long rebalanceInterval = 1000L;
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return BandwidthProperties.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        final BandwidthProperties properties = (BandwidthProperties) target;
+        properties.getWeights().forEach((owner, weight) -> {
+            if (weight == null || !(weight > 0)) {
+                errors.reject("bandwidth.weight.positive", "Weight of owner '" + owner + "' must be greater than 0");
+            }
+        });
+        if (properties.getRebalanceInterval() <= 0) {
+            errors.rejectValue("rebalanceInterval", "bandwidth.rebalanceInterval.positive", "Rebalance interval must be greater than 0");
+        }
+    }
+}
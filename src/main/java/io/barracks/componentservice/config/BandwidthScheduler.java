@@ -0,0 +1,241 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares the outgoing bandwidth between the owners currently downloading, in proportion to their weight and within
+ * their own limit. The bandwidth an owner cannot use, because of its limit or because its devices download slower than
+ * its share, goes to the others (weighted max-min fairness).
+ * <p>
+ * Every owner has a token bucket shared by all of its downloads, which measures how much the owner sends. An owner that
+ * sent less than its rate without waiting for tokens only keeps a margin above what it sent, while an owner that had to
+ * wait may take all the bandwidth left. The rates are computed again when an owner starts or stops downloading and at
+ * most once per rebalance interval otherwise, so sending a chunk costs a single uncontended lock on the owner's bucket.
+ */
+public class BandwidthScheduler {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Margin given to an owner above the rate it was measured at, so that it can speed up before the next measure.
+     */
+    private static final double HEADROOM = 1.25;
+
+    private final BandwidthProperties properties;
+    private final Map<String, OwnerBucket> buckets = new HashMap<>();
+    private final long rebalanceInterval;
+    private volatile long nextMeasure;
+
+    public BandwidthScheduler(BandwidthProperties properties) {
+        this.properties = properties;
+        this.rebalanceInterval = TimeUnit.MILLISECONDS.toNanos(properties.getRebalanceInterval());
+        this.nextMeasure = System.nanoTime() + rebalanceInterval;
+    }
+
+    public synchronized Lease open(String owner) {
+        final OwnerBucket bucket = buckets.computeIfAbsent(owner, key -> new OwnerBucket(properties.getBurst()));
+        bucket.leases++;
+        if (bucket.leases == 1) {
+            rebalance();
+        }
+        return new Lease(owner, bucket);
+    }
+
+    public synchronized int getOwnerCount() {
+        return buckets.size();
+    }
+
+    synchronized double getRate(String owner) {
+        final OwnerBucket bucket = buckets.get(owner);
+        return bucket == null ? 0 : bucket.rate;
+    }
+
+    private synchronized void close(String owner, OwnerBucket bucket) {
+        bucket.leases--;
+        if (bucket.leases == 0) {
+            buckets.remove(owner);
+            rebalance();
+        }
+    }
+
+    /**
+     * Measures what the owners sent and computes their rates again, when the rebalance interval elapsed since the
+     * previous measure.
+     */
+    private void rebalanceIfDue() {
+        if (System.nanoTime() - nextMeasure < 0) {
+            return;
+        }
+        synchronized (this) {
+            final long now = System.nanoTime();
+            if (now - nextMeasure >= 0) {
+                nextMeasure = now + rebalanceInterval;
+                buckets.values().forEach(OwnerBucket::measure);
+                rebalance();
+            }
+        }
+    }
+
+    private void rebalance() {
+        final double total = properties.getTotal() > 0 ? properties.getTotal() : Double.POSITIVE_INFINITY;
+        final List<String> owners = new ArrayList<>(buckets.keySet());
+        owners.sort(Comparator.comparingDouble(owner -> cap(owner, total) / weight(owner)));
+        final Map<String, Double> rates = new HashMap<>();
+        double remaining = total;
+        double remainingWeight = owners.stream().mapToDouble(this::weight).sum();
+        for (String owner : owners) {
+            final double rate = Math.min(cap(owner, total), remaining * weight(owner) / remainingWeight);
+            rates.put(owner, rate);
+            remaining = Double.isInfinite(remaining) ? remaining : remaining - rate;
+            remainingWeight -= weight(owner);
+        }
+        // Bandwidth left when every owner got what it used is shared as well, so that nobody is throttled for nothing
+        if (!Double.isInfinite(remaining) && remaining > 0) {
+            final double spare = remaining;
+            final double spareWeight = owners.stream().filter(owner -> rates.get(owner) < limit(owner)).mapToDouble(this::weight).sum();
+            owners.stream().filter(owner -> rates.get(owner) < limit(owner)).forEach(owner -> rates.put(
+                    owner, Math.min(limit(owner), rates.get(owner) + spare * weight(owner) / spareWeight)
+            ));
+        }
+        rates.forEach((owner, rate) -> buckets.get(owner).setRate(rate));
+    }
+
+    /**
+     * @return the most the owner is given before the bandwidth left is shared: its limit, and what it is expected to
+     * use when the total bandwidth is limited. An owner keeps at least its burst per second, so that it can resume.
+     */
+    private double cap(String owner, double total) {
+        if (Double.isInfinite(total)) {
+            return limit(owner);
+        }
+        final double demand = buckets.get(owner).demand;
+        return Math.min(limit(owner), Double.isInfinite(demand) ? demand : Math.max(properties.getBurst(), demand * HEADROOM));
+    }
+
+    private double limit(String owner) {
+        final long limit = properties.getOwnerLimits().getOrDefault(owner, properties.getOwnerLimit());
+        return limit > 0 ? limit : Double.POSITIVE_INFINITY;
+    }
+
+    private double weight(String owner) {
+        return properties.getWeights().getOrDefault(owner, 1.0);
+    }
+
+    /**
+     * Right to send the bytes of one download, to be closed when the download is over.
+     */
+    public class Lease implements Closeable {
+        private final String owner;
+        private final OwnerBucket bucket;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(String owner, OwnerBucket bucket) {
+            this.owner = owner;
+            this.bucket = bucket;
+        }
+
+        /**
+         * Takes the tokens for the given number of bytes, just sent or about to be.
+         *
+         * @return the time to wait before the owner is allowed to send more, in nanoseconds.
+         */
+        public long take(int bytes) {
+            final long wait = bucket.take(bytes);
+            rebalanceIfDue();
+            return wait;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                BandwidthScheduler.this.close(owner, bucket);
+            }
+        }
+    }
+
+    private static class OwnerBucket {
+        private final double capacity;
+        private int leases;
+        private double rate = Double.POSITIVE_INFINITY;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        /**
+         * Rate at which the owner sent during the last measure, in bytes per second, or infinity when it is not known
+         * or when the owner had to wait for tokens and could have sent more.
+         */
+        private volatile double demand = Double.POSITIVE_INFINITY;
+        private long sent;
+        private boolean waited;
+        private long measuredSince = System.nanoTime();
+
+        private OwnerBucket(double capacity) {
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        synchronized void setRate(double rate) {
+            refill();
+            this.rate = rate;
+        }
+
+        /**
+         * Takes the tokens for the given number of bytes, going into debt if needed, and returns the time to wait
+         * for the debt to be paid back, in nanoseconds.
+         */
+        synchronized long take(int bytes) {
+            if (rate == Double.POSITIVE_INFINITY) {
+                return 0;
+            }
+            refill();
+            tokens -= bytes;
+            sent += bytes;
+            waited |= tokens < 0;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+        }
+
+        synchronized void measure() {
+            final long now = System.nanoTime();
+            demand = waited || now == measuredSince ? Double.POSITIVE_INFINITY : sent * NANOS_PER_SECOND / (now - measuredSince);
+            sent = 0;
+            waited = false;
+            measuredSince = now;
+        }
+
+        private void refill() {
+            final long now = System.nanoTime();
+            tokens = rate == Double.POSITIVE_INFINITY
+                    ? capacity
+                    : Math.min(capacity, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.FileSystemBlobStore;
+import io.barracks.componentservice.repository.blob.GridFsBlobStore;
+import io.barracks.componentservice.repository.blob.LegacyGridFsBlobStore;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties({BlobStoreProperties.class, TieringProperties.class, ReclamationProperties.class})
+public class BlobStoreConfig {
+    private final BlobStoreProperties blobStoreProperties;
+    private final TieringProperties tieringProperties;
+
+    public BlobStoreConfig(BlobStoreProperties blobStoreProperties, TieringProperties tieringProperties) {
+        this.blobStoreProperties = blobStoreProperties;
+        this.tieringProperties = tieringProperties;
+    }
+
+    @Bean
+    public BlobStores blobStores(TransferMongoDbFactories transferMongoDbFactories, MongoOperations mongoOperations, PartitionRouter partitionRouter) {
+        final List<BlobStore> stores = new ArrayList<>();
+        for (Partition partition : partitionRouter.getPartitions()) {
+            stores.add(new GridFsBlobStore(
+                    partition.getBlobStore(),
+                    transferMongoDbFactories.get(WorkloadType.UPLOAD, partition.getDatabaseName()),
+                    transferMongoDbFactories.get(WorkloadType.DOWNLOAD, partition.getDatabaseName()),
+                    mongoOperations.getConverter(),
+                    partition.getBlobBucket()
+            ));
+        }
+        stores.add(new GridFsBlobStore(
+                GridFsBlobStore.ARCHIVE_NAME,
+                transferMongoDbFactories.get(WorkloadType.UPLOAD),
+                transferMongoDbFactories.get(WorkloadType.DOWNLOAD),
+                mongoOperations.getConverter(),
+                GridFsBlobStore.ARCHIVE_BUCKET
+        ));
+        stores.add(new LegacyGridFsBlobStore(
+                new GridFsTemplate(transferMongoDbFactories.get(WorkloadType.DOWNLOAD), mongoOperations.getConverter(), LegacyGridFsBlobStore.BUCKET),
+                mongoOperations
+        ));
+        if (StringUtils.hasText(blobStoreProperties.getFilesystem().getRoot())) {
+            stores.add(new FileSystemBlobStore(Paths.get(blobStoreProperties.getFilesystem().getRoot())));
+        }
+        if (StringUtils.hasText(blobStoreProperties.getArchive().getRoot())) {
+            stores.add(new FileSystemBlobStore(FileSystemBlobStore.ARCHIVE_NAME, Paths.get(blobStoreProperties.getArchive().getRoot())));
+        }
+        return new BlobStores(blobStoreProperties.getStore(), stores.toArray(new BlobStore[stores.size()]));
+    }
+
+    @Bean
+    @Primary
+    public ThreadPoolTaskScheduler blobTaskScheduler() {
+        final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(4);
+        scheduler.setThreadNamePrefix("blob-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor tieringPromotionExecutor() {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(tieringProperties.getPromotionThreads());
+        executor.setMaxPoolSize(tieringProperties.getPromotionThreads());
+        executor.setQueueCapacity(tieringProperties.getPromotionQueueCapacity());
+        executor.setThreadNamePrefix("tiering-promotion-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
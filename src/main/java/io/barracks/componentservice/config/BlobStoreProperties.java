@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.blob.GridFsBlobStore;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.blob")
+public class BlobStoreProperties {
+    /**
+     * Store receiving the new versions.
+     */
+    private String store = GridFsBlobStore.NAME;
+    private FileSystem filesystem = new FileSystem();
+    /**
+     * Archival filesystem store, for the versions moved to the cold tier.
+     */
+    private FileSystem archive = new FileSystem();
+    private Migration migration = new Migration();
+
+    @Getter
+    @Setter
+    public static class FileSystem {
+        /**
+         * Root directory of the store, which is only available when it is set.
+         */
+        private String root;
+    }
+
+    @Getter
+    @Setter
+    public static class Migration {
+        /**
+         * Number of versions loaded at once by a migration.
+         */
+        private int batchSize = 100;
+        /**
+         * Delay (in ms) before the migrated blobs are deleted from their former store, so that the downloads started
+         * before the migration can complete.
+         */
+        private long grace = 3600000L;
+    }
+}
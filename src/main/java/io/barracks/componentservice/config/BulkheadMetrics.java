@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the load of every workload bulkhead on the metrics endpoint, under {@code bulkhead.<workload>.*}.
+ */
+@Component
+public class BulkheadMetrics implements PublicMetrics {
+    private final List<WorkloadStatistics> statistics;
+    private final BulkheadProperties bulkheadProperties;
+
+    public BulkheadMetrics(List<WorkloadStatistics> statistics, BulkheadProperties bulkheadProperties) {
+        this.statistics = statistics;
+        this.bulkheadProperties = bulkheadProperties;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        statistics.forEach(workload -> {
+            final String prefix = "bulkhead." + workload.getWorkloadType().getKey() + ".";
+            final BulkheadProperties.Workload properties = bulkheadProperties.get(workload.getWorkloadType());
+            metrics.add(new Metric<>(prefix + "active", workload.getActiveCount()));
+            metrics.add(new Metric<>(prefix + "max-concurrent", properties.getMaxConcurrent()));
+            metrics.add(new Metric<>(prefix + "queued", workload.getQueuedCount()));
+            metrics.add(new Metric<>(prefix + "queue-capacity", properties.getQueueCapacity()));
+            metrics.add(new Metric<>(prefix + "rejected", workload.getRejectedCount()));
+            metrics.add(new Metric<>(prefix + "mongo.max-connections", properties.getMaxConnections()));
+        });
+        return metrics;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.bulkhead")
+public class BulkheadProperties {
+    /**
+     * Cheap catalogue calls (packages, versions listing and lookup).
+     */
+    private Workload metadata = new Workload(64, 128, 5000L, 50);
+    /**
+     * Version creations, from the reception of the multipart body to the end of the blob write.
+     */
+    private Workload upload = new Workload(8, 16, 60000L, 10);
+    /**
+     * Version file streaming.
+     */
+    private Workload download = new Workload(32, 2000, 3600000L, 40);
+
+    public Workload get(WorkloadType type) {
+        switch (type) {
+            case UPLOAD:
+                return upload;
+            case DOWNLOAD:
+                return download;
+            default:
+                return metadata;
+        }
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Workload {
+        /**
+         * Maximum number of requests of this workload processed at the same time.
+         */
+        private int maxConcurrent;
+        /**
+         * Number of requests waiting for a free slot before new ones are rejected.
+         */
+        private int queueCapacity;
+        /**
+         * Maximum time a request of this workload may wait in the queue, or last for downloads, in milliseconds.
+         */
+        private long timeout;
+        /**
+         * Size of the Mongo connection pool dedicated to this workload.
+         */
+        private int maxConnections;
+    }
+}
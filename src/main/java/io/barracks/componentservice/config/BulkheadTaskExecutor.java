@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded thread pool dedicated to a workload, which keeps track of the tasks it had to reject.
+ */
+public class BulkheadTaskExecutor extends ThreadPoolTaskExecutor implements WorkloadStatistics {
+    private final WorkloadType workloadType;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public BulkheadTaskExecutor(WorkloadType workloadType, BulkheadProperties.Workload workload) {
+        this.workloadType = workloadType;
+        setThreadNamePrefix(workloadType.getKey() + "-");
+        setCorePoolSize(workload.getMaxConcurrent());
+        setMaxPoolSize(workload.getMaxConcurrent());
+        setAllowCoreThreadTimeOut(true);
+        setQueueCapacity(workload.getQueueCapacity());
+        setWaitForTasksToCompleteOnShutdown(true);
+        setRejectedExecutionHandler((runnable, executor) -> {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many " + workloadType.getKey() + " requests");
+        });
+    }
+
+    @Override
+    public WorkloadType getWorkloadType() {
+        return workloadType;
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return getThreadPoolExecutor().getQueue().size();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.MongoClient;
+import io.barracks.componentservice.repository.CatalogueReplica;
+import io.barracks.componentservice.repository.ReadRouting;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.TaskScheduler;
+
+@Configuration
+@EnableConfigurationProperties(CatalogueProperties.class)
+public class CatalogueConfig {
+    static final String OPLOG_DATABASE = "local";
+    static final String OPLOG_COLLECTION = "oplog.rs";
+
+    private final CatalogueProperties catalogueProperties;
+
+    public CatalogueConfig(CatalogueProperties catalogueProperties) {
+        this.catalogueProperties = catalogueProperties;
+    }
+
+    @Bean
+    @SuppressWarnings("deprecation")
+    public CatalogueReplica catalogueReplica(
+            MongoClient mongoClient,
+            MongoOperations mongoOperations,
+            PartitionRouter partitionRouter,
+            BlobStores blobStores,
+            ReadRouting readRouting,
+            TaskScheduler blobTaskScheduler
+    ) {
+        return new CatalogueReplica(
+                mongoOperations,
+                partitionRouter,
+                blobStores,
+                readRouting,
+                mongoClient.getDB(OPLOG_DATABASE).getCollection(OPLOG_COLLECTION),
+                blobTaskScheduler,
+                catalogueProperties.isEnabled(),
+                catalogueProperties.getPollInterval(),
+                catalogueProperties.getReloadInterval(),
+                catalogueProperties.getMaxBytes()
+        );
+    }
+}
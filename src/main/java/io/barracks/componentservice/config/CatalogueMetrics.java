@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.CatalogueReplica;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the in-memory catalogue on the metrics endpoint, under {@code catalogue.*}, with the estimated memory it
+ * uses and how far behind the database it may be.
+ */
+@Component
+public class CatalogueMetrics implements PublicMetrics {
+    private final CatalogueReplica catalogueReplica;
+
+    public CatalogueMetrics(CatalogueReplica catalogueReplica) {
+        this.catalogueReplica = catalogueReplica;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        if (!catalogueReplica.isEnabled()) {
+            return metrics;
+        }
+        metrics.add(new Metric<>("catalogue.ready", catalogueReplica.getSnapshot().isPresent() ? 1 : 0));
+        metrics.add(new Metric<>("catalogue.over-budget", catalogueReplica.isOverBudget() ? 1 : 0));
+        metrics.add(new Metric<>("catalogue.max-bytes", catalogueReplica.getMaxBytes()));
+        metrics.add(new Metric<>("catalogue.lag", catalogueReplica.getLag()));
+        metrics.add(new Metric<>("catalogue.hits", catalogueReplica.getHitCount()));
+        catalogueReplica.getSnapshot().ifPresent(snapshot -> {
+            metrics.add(new Metric<>("catalogue.packages", snapshot.getPackageCount()));
+            metrics.add(new Metric<>("catalogue.versions", snapshot.getVersionCount()));
+            metrics.add(new Metric<>("catalogue.estimated-bytes", snapshot.getEstimatedBytes()));
+        });
+        return metrics;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.config.exception.CircuitOpenException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling a dependency that keeps failing. After {@code failureThreshold} consecutive failures the circuit
+ * opens and calls are rejected with a {@link CircuitOpenException} for {@code openDuration}. The circuit then lets a
+ * few probes through: it closes again after {@code halfOpenProbes} successful ones, and opens again on the first
+ * failing one. Only the errors matching the failure predicate count as failures, the other ones are answers of a
+ * healthy dependency.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int halfOpenProbes;
+    private final Predicate<Throwable> failure;
+
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private int probesInFlight;
+    private int successfulProbes;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDuration, int halfOpenProbes, Predicate<Throwable> failure) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = openDuration;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.failure = failure;
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        final boolean probe = acquire();
+        final T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            onError(probe, e);
+            throw e;
+        }
+        onSuccess(probe);
+        return result;
+    }
+
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+        final boolean probe;
+        final CompletableFuture<T> future;
+        try {
+            probe = acquire();
+        } catch (CircuitOpenException e) {
+            return failed(e);
+        }
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            onError(probe, e);
+            return failed(e);
+        }
+        final CompletableFuture<T> outcome = new CompletableFuture<>();
+        future.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                onSuccess(probe);
+                outcome.complete(result);
+            } else {
+                onError(probe, throwable);
+                outcome.completeExceptionally(throwable);
+            }
+        });
+        return outcome;
+    }
+
+    /**
+     * @return whether the error is one the circuit counts, or a rejection of an open circuit: the dependency is
+     * unavailable rather than answering.
+     */
+    public boolean isUnavailable(Throwable throwable) {
+        return anyCause(throwable, failure.or(CircuitOpenException.class::isInstance));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getOpenedCount() {
+        return opened.get();
+    }
+
+    /**
+     * @return whether the call is a probe of a half-open circuit.
+     */
+    private synchronized boolean acquire() {
+        final long now = System.currentTimeMillis();
+        if (state == State.OPEN) {
+            if (now - openedAt < openDuration) {
+                throw reject(openedAt + openDuration - now);
+            }
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            successfulProbes = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + successfulProbes >= halfOpenProbes) {
+                throw reject(openDuration);
+            }
+            probesInFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void onSuccess(boolean probe) {
+        if (!probe) {
+            if (state == State.CLOSED) {
+                consecutiveFailures = 0;
+            }
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (++successfulProbes >= halfOpenProbes) {
+                state = State.CLOSED;
+                consecutiveFailures = 0;
+            }
+        }
+    }
+
+    private void onError(boolean probe, Throwable throwable) {
+        if (!anyCause(throwable, failure)) {
+            onSuccess(probe);
+            return;
+        }
+        failures.incrementAndGet();
+        synchronized (this) {
+            if (probe && state == State.HALF_OPEN || state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                opened.incrementAndGet();
+            }
+        }
+    }
+
+    private static boolean anyCause(Throwable throwable, Predicate<Throwable> predicate) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (predicate.test(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CircuitOpenException reject(long retryIn) {
+        rejected.incrementAndGet();
+        return new CircuitOpenException(name, Math.max(1L, (retryIn + 999L) / 1000L));
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable throwable) {
+        final CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(throwable);
+        return failed;
+    }
+}
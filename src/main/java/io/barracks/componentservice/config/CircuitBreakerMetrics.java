@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.StaleCache;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the circuit breakers on the metrics endpoint, under {@code circuit-breaker.<name>.*}, with the state as
+ * {@code 0} (closed), {@code 1} (half-open) or {@code 2} (open), and the stale metadata served under {@code stale.*}.
+ */
+@Component
+public class CircuitBreakerMetrics implements PublicMetrics {
+    private final List<CircuitBreaker> circuitBreakers;
+    private final StaleCache<Package> packageStaleCache;
+    private final StaleCache<Version> versionStaleCache;
+
+    public CircuitBreakerMetrics(List<CircuitBreaker> circuitBreakers, StaleCache<Package> packageStaleCache, StaleCache<Version> versionStaleCache) {
+        this.circuitBreakers = circuitBreakers;
+        this.packageStaleCache = packageStaleCache;
+        this.versionStaleCache = versionStaleCache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        circuitBreakers.forEach(circuitBreaker -> {
+            final String prefix = "circuit-breaker." + circuitBreaker.getName() + ".";
+            metrics.add(new Metric<>(prefix + "state", circuitBreaker.getState().ordinal()));
+            metrics.add(new Metric<>(prefix + "failures", circuitBreaker.getFailureCount()));
+            metrics.add(new Metric<>(prefix + "rejected", circuitBreaker.getRejectedCount()));
+            metrics.add(new Metric<>(prefix + "opened", circuitBreaker.getOpenedCount()));
+        });
+        metrics.add(new Metric<>("stale.packages.size", packageStaleCache.size()));
+        metrics.add(new Metric<>("stale.packages.served", packageStaleCache.getServedCount()));
+        metrics.add(new Metric<>("stale.versions.size", versionStaleCache.size()));
+        metrics.add(new Metric<>("stale.versions.served", versionStaleCache.getServedCount()));
+        return metrics;
+    }
+}
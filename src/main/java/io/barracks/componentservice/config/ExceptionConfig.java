@@ -26,12 +26,33 @@ package io.barracks.componentservice.config;
 
 import cz.jirutka.spring.exhandler.RestHandlerExceptionResolverBuilder;
 import io.barracks.commons.configuration.ExceptionHandlingConfiguration;
+import io.barracks.componentservice.config.exception.CircuitOpenException;
+import io.barracks.componentservice.manager.exception.BlobMigrationInProgressException;
+import io.barracks.componentservice.manager.exception.BlobMigrationNotFoundException;
+import io.barracks.componentservice.manager.exception.InvalidBlobMigrationException;
+import io.barracks.componentservice.manager.exception.InvalidMetadataIndexException;
+import io.barracks.componentservice.manager.exception.InvalidMetadataQueryException;
+import io.barracks.componentservice.manager.exception.InvalidPartitionMoveException;
+import io.barracks.componentservice.manager.exception.InvalidRetentionPolicyException;
+import io.barracks.componentservice.manager.exception.InvalidVersionFieldException;
+import io.barracks.componentservice.manager.exception.InvalidVersionMetadataException;
+import io.barracks.componentservice.manager.exception.MetadataIndexNotFoundException;
 import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.manager.exception.PartitionMoveInProgressException;
+import io.barracks.componentservice.manager.exception.RetentionPolicyNotFoundException;
+import io.barracks.componentservice.manager.exception.RevisionRequiredException;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.manager.exception.UnindexedMetadataQueryException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
 import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.repository.exception.BlobDeletedException;
 import io.barracks.componentservice.repository.exception.DuplicatePackageException;
 import io.barracks.componentservice.manager.exception.VersionCreationFailedException;
 import io.barracks.componentservice.repository.exception.DuplicateVersionException;
+import io.barracks.componentservice.repository.exception.InvalidExportPositionException;
+import io.barracks.componentservice.repository.exception.LegacyBlobCopyException;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 
 @Configuration
@@ -42,9 +63,31 @@ public class ExceptionConfig extends ExceptionHandlingConfiguration {
         return super.restExceptionResolver()
                 .addErrorMessageHandler(DuplicatePackageException.class, HttpStatus.CONFLICT)
                 .addErrorMessageHandler(DuplicateVersionException.class, HttpStatus.CONFLICT)
+                .addErrorMessageHandler(LegacyBlobCopyException.class, HttpStatus.CONFLICT)
+                .addErrorMessageHandler(BlobDeletedException.class, HttpStatus.SERVICE_UNAVAILABLE)
                 .addErrorMessageHandler(VersionCreationFailedException.class, HttpStatus.BAD_REQUEST)
                 .addErrorMessageHandler(VersionNotFoundException.class, HttpStatus.NOT_FOUND)
-                .addErrorMessageHandler(PackageNotFoundException.class, HttpStatus.NOT_FOUND);
+                .addErrorMessageHandler(VersionModifiedException.class, HttpStatus.PRECONDITION_FAILED)
+                .addErrorMessageHandler(RevisionRequiredException.class, HttpStatus.PRECONDITION_REQUIRED)
+                .addErrorMessageHandler(PackageNotFoundException.class, HttpStatus.NOT_FOUND)
+                .addErrorMessageHandler(InvalidBlobMigrationException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(BlobMigrationInProgressException.class, HttpStatus.CONFLICT)
+                .addErrorMessageHandler(BlobMigrationNotFoundException.class, HttpStatus.NOT_FOUND)
+                .addErrorMessageHandler(InvalidPartitionMoveException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(PartitionMoveInProgressException.class, HttpStatus.CONFLICT)
+                .addErrorMessageHandler(InvalidMetadataQueryException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(UnindexedMetadataQueryException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(InvalidMetadataIndexException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(MetadataIndexNotFoundException.class, HttpStatus.NOT_FOUND)
+                .addErrorMessageHandler(InvalidRetentionPolicyException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(RetentionPolicyNotFoundException.class, HttpStatus.NOT_FOUND)
+                .addErrorMessageHandler(StorageQuotaExceededException.class, HttpStatus.FORBIDDEN)
+                .addErrorMessageHandler(InvalidExportPositionException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(InvalidVersionFieldException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(InvalidVersionMetadataException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(TaskRejectedException.class, HttpStatus.SERVICE_UNAVAILABLE)
+                .addHandler(RetryAfterErrorMessageHandler.forTransfers())
+                .addHandler(new RetryAfterErrorMessageHandler<>(CircuitOpenException.class, CircuitOpenException::getRetryAfter));
     }
 
     @Override
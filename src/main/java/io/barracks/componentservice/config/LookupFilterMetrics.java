@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.BloomFilter;
+import io.barracks.componentservice.repository.LookupFilter;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the lookup filters on the metrics endpoint, under {@code lookup-filter.packages.*} and
+ * {@code lookup-filter.versions.*}, with the false positive rate expected from the keys they hold.
+ */
+@Component
+public class LookupFilterMetrics implements PublicMetrics {
+    private final LookupFilter lookupFilter;
+
+    public LookupFilterMetrics(LookupFilter lookupFilter) {
+        this.lookupFilter = lookupFilter;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        addFilterMetrics(metrics, "lookup-filter.packages.", lookupFilter.getPackageFilter(), lookupFilter.getRejectedPackageCount());
+        addFilterMetrics(metrics, "lookup-filter.versions.", lookupFilter.getVersionFilter(), lookupFilter.getRejectedVersionCount());
+        return metrics;
+    }
+
+    private static void addFilterMetrics(List<Metric<?>> metrics, String prefix, BloomFilter filter, long rejected) {
+        metrics.add(new Metric<>(prefix + "rejected", rejected));
+        if (filter != null) {
+            metrics.add(new Metric<>(prefix + "keys", filter.getKeyCount()));
+            metrics.add(new Metric<>(prefix + "bytes", filter.getBitCount() / Byte.SIZE));
+            metrics.add(new Metric<>(prefix + "hash-functions", filter.getHashFunctions()));
+            metrics.add(new Metric<>(prefix + "false-positive-rate", filter.getExpectedFalsePositiveRate()));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.lookup-filter")
+public class LookupFilterProperties {
+    /**
+     * Whether the lookups of unknown packages and versions are answered without querying Mongo.
+     */
+    private boolean enabled = true;
+    /**
+     * Minimum number of keys each filter is sized for. The filters are sized for twice the existing keys when larger.
+     */
+    private long expectedKeys = 1000000L;
+    /**
+     * Rate of lookups of unknown keys that still go to Mongo, at the expected number of keys.
+     */
+    private double falsePositiveRate = 0.01;
+    /**
+     * Time (in ms) between two rebuilds of the filters from the database, which forget the deleted keys.
+     */
+    private long rebuildInterval = 3600000L;
+    /**
+     * Time (in ms) between two reads of the keys created through the other instances.
+     */
+    private long refreshInterval = 5000L;
+}
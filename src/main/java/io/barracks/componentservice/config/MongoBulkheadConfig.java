@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import io.barracks.componentservice.repository.ReadRouting;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.MongoDbFactory;
+
+import java.util.List;
+
+/**
+ * Splits the Mongo connections between the workloads. The auto-configured client keeps the metadata budget while
+ * uploads and downloads get their own clients to the same deployment, so that long blob transfers can never take
+ * the connections needed by the catalogue calls. The download client reads the files with the read preference of the
+ * chunks. All the clients share the same timeouts, so that no call waits on Mongo forever.
+ */
+@Configuration
+@EnableConfigurationProperties({BulkheadProperties.class, MongoResilienceProperties.class})
+@Import({ReadRoutingConfig.class, MongoResilienceConfig.class})
+public class MongoBulkheadConfig {
+    private final BulkheadProperties bulkheadProperties;
+    private final MongoResilienceProperties resilienceProperties;
+
+    public MongoBulkheadConfig(BulkheadProperties bulkheadProperties, MongoResilienceProperties resilienceProperties) {
+        this.bulkheadProperties = bulkheadProperties;
+        this.resilienceProperties = resilienceProperties;
+    }
+
+    @Bean
+    public MongoClientOptions mongoClientOptions() {
+        final MongoResilienceProperties.Timeouts timeouts = resilienceProperties.getTimeouts();
+        return MongoClientOptions.builder()
+                .connectionsPerHost(bulkheadProperties.getMetadata().getMaxConnections())
+                .connectTimeout(timeouts.getConnect())
+                .socketTimeout(timeouts.getSocket())
+                .serverSelectionTimeout(timeouts.getServerSelection())
+                .maxWaitTime(timeouts.getMaxWait())
+                .build();
+    }
+
+    @Bean
+    public TransferMongoDbFactories transferMongoDbFactories(MongoClient mongoClient, MongoDbFactory mongoDbFactory, ReadRouting readRouting) {
+        return new TransferMongoDbFactories(
+                transferClient(bulkheadProperties.getUpload(), mongoClient, ReadPreference.primary()),
+                transferClient(bulkheadProperties.getDownload(), mongoClient, readRouting.getChunks()),
+                mongoDbFactory.getDb().getName()
+        );
+    }
+
+    private MongoClient transferClient(BulkheadProperties.Workload workload, MongoClient mongoClient, ReadPreference readPreference) {
+        final MongoClientOptions options = MongoClientOptions.builder(mongoClient.getMongoClientOptions())
+                .connectionsPerHost(workload.getMaxConnections())
+                .readPreference(readPreference)
+                .build();
+        final List<ServerAddress> hosts = mongoClient.getAllAddress();
+        return hosts.size() == 1
+                ? new MongoClient(hosts.get(0), mongoClient.getCredentialsList(), options)
+                : new MongoClient(hosts, mongoClient.getCredentialsList(), options);
+    }
+}
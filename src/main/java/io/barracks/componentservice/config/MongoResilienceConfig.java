@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWaitQueueFullException;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.StaleCache;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.function.Predicate;
+
+/**
+ * Keeps the service answering through the slow spells of Mongo (elections, compactions, lost nodes). Calls to the
+ * metadata collections go through a circuit breaker that stops waiting on Mongo once it keeps failing, while the last
+ * known packages and versions are served stale.
+ */
+@Configuration
+@EnableConfigurationProperties(MongoResilienceProperties.class)
+public class MongoResilienceConfig {
+    public static final String MONGO_CIRCUIT = "mongo";
+
+    private final MongoResilienceProperties properties;
+
+    public MongoResilienceConfig(MongoResilienceProperties properties) {
+        this.properties = properties;
+    }
+
+    @Bean
+    public CircuitBreaker mongoCircuitBreaker() {
+        final MongoResilienceProperties.Breaker breaker = properties.getBreaker();
+        return new CircuitBreaker(
+                MONGO_CIRCUIT,
+                breaker.getFailureThreshold(),
+                breaker.getOpenDuration(),
+                breaker.getHalfOpenProbes(),
+                isMongoUnavailable()
+        );
+    }
+
+    @Bean
+    public StaleCache<Package> packageStaleCache() {
+        return new StaleCache<>(
+                properties.getStale().getMaxEntries(),
+                properties.getStale().getMaxAge(),
+                (aPackage, cachedAt) -> aPackage.toBuilder().cachedAt(cachedAt).build()
+        );
+    }
+
+    @Bean
+    public StaleCache<Version> versionStaleCache() {
+        return new StaleCache<>(
+                properties.getStale().getMaxEntries(),
+                properties.getStale().getMaxAge(),
+                (version, cachedAt) -> version.toBuilder().cachedAt(cachedAt).build()
+        );
+    }
+
+    /**
+     * Errors telling that Mongo could not answer in time, as opposed to errors in the answer itself.
+     */
+    static Predicate<Throwable> isMongoUnavailable() {
+        return throwable -> throwable instanceof MongoSocketException
+                || throwable instanceof MongoTimeoutException
+                || throwable instanceof MongoWaitQueueFullException
+                || throwable instanceof MongoExecutionTimeoutException
+                || throwable instanceof MongoNotPrimaryException
+                || throwable instanceof MongoNodeIsRecoveringException
+                || throwable instanceof DataAccessResourceFailureException
+                || throwable instanceof QueryTimeoutException;
+    }
+}
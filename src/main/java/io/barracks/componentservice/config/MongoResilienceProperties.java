@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.mongo")
+public class MongoResilienceProperties {
+    private Timeouts timeouts = new Timeouts();
+    private Breaker breaker = new Breaker();
+    private Stale stale = new Stale();
+
+    @Getter
+    @Setter
+    public static class Timeouts {
+        /**
+         * Time (in ms) to open a connection.
+         */
+        private int connect = 5000;
+        /**
+         * Time (in ms) to wait for the answer of a server on an open connection.
+         */
+        private int socket = 30000;
+        /**
+         * Time (in ms) to find a server to send an operation to, which covers the elections.
+         */
+        private int serverSelection = 5000;
+        /**
+         * Time (in ms) to wait for a free connection in the pool.
+         */
+        private int maxWait = 2000;
+    }
+
+    @Getter
+    @Setter
+    public static class Breaker {
+        /**
+         * Number of consecutive failures after which calls to Mongo are rejected.
+         */
+        private int failureThreshold = 5;
+        /**
+         * Time (in ms) during which calls are rejected before probing Mongo again.
+         */
+        private long openDuration = 10000L;
+        /**
+         * Number of successful probes needed to close the breaker again.
+         */
+        private int halfOpenProbes = 3;
+    }
+
+    @Getter
+    @Setter
+    public static class Stale {
+        /**
+         * Number of packages and of versions kept to be served while Mongo is unavailable.
+         */
+        private int maxEntries = 10000;
+        /**
+         * Maximum age (in ms) of the metadata served while Mongo is unavailable.
+         */
+        private long maxAge = 86400000L;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.MongoClient;
+import io.barracks.componentservice.repository.blob.GridFsBlobStore;
+import io.barracks.componentservice.repository.blob.LegacyGridFsBlobStore;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(PartitionProperties.class)
+@Import({LookupFilterConfig.class, SearchIndexConfig.class, CatalogueConfig.class, VersionFeedConfig.class})
+public class PartitionConfig {
+    private final PartitionProperties partitionProperties;
+
+    public PartitionConfig(PartitionProperties partitionProperties) {
+        this.partitionProperties = partitionProperties;
+    }
+
+    @Bean
+    public PartitionRouter partitionRouter(MongoClient mongoClient, MongoDbFactory mongoDbFactory, MongoOperations mongoOperations, TaskScheduler blobTaskScheduler) {
+        final String defaultDatabase = mongoDbFactory.getDb().getName();
+        final List<Partition> partitions = new ArrayList<>();
+        partitions.add(Partition.builder()
+                .name(Partition.DEFAULT)
+                .databaseName(defaultDatabase)
+                .bucket(LegacyGridFsBlobStore.BUCKET)
+                .blobStore(GridFsBlobStore.NAME)
+                .blobBucket(GridFsBlobStore.BUCKET)
+                .mongoOperations(mongoOperations)
+                .build());
+        partitionProperties.getPartitions().forEach((name, definition) -> {
+            final String databaseName = StringUtils.hasText(definition.getDatabase()) ? definition.getDatabase() : defaultDatabase;
+            final String bucket = StringUtils.hasText(definition.getBucket()) ? definition.getBucket() : LegacyGridFsBlobStore.BUCKET + "-" + name;
+            partitions.add(Partition.builder()
+                    .name(name)
+                    .databaseName(databaseName)
+                    .bucket(bucket)
+                    .blobStore(GridFsBlobStore.NAME + ":" + name)
+                    .blobBucket(bucket + "." + GridFsBlobStore.BUCKET)
+                    .mongoOperations(databaseName.equals(defaultDatabase)
+                            ? mongoOperations
+                            : new MongoTemplate(new SimpleMongoDbFactory(mongoClient, databaseName), mongoOperations.getConverter()))
+                    .build());
+        });
+        return new PartitionRouter(partitions, mongoOperations, blobTaskScheduler, partitionProperties.getRefreshInterval());
+    }
+}
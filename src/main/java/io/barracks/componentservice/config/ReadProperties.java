@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.reads")
+public class ReadProperties {
+    /**
+     * Read preference of the lookups of a single package or version.
+     */
+    private String lookups = "primary";
+    /**
+     * Read preference of the package and version lists.
+     */
+    private String lists = "primary";
+    /**
+     * Read preference of the version file downloads.
+     */
+    private String chunks = "primary";
+    /**
+     * Maximum replication lag (in ms) of the secondaries to read from, 0 for no limit. The servers require at least
+     * 90 seconds.
+     */
+    private long maxStaleness = 0L;
+    /**
+     * Time (in ms) after a write of an owner during which its reads go to the primary. It should exceed the maximum
+     * staleness.
+     */
+    private long readYourWritesWindow = 120000L;
+    /**
+     * Time (in ms) the server may spend on a lookup or a list before giving up, 0 for no limit.
+     */
+    private long maxTime = 5000L;
+}
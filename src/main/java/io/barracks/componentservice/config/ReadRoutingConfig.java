@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.TagSet;
+import io.barracks.componentservice.repository.ReadRouting;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableConfigurationProperties(ReadProperties.class)
+public class ReadRoutingConfig {
+    private final ReadProperties readProperties;
+
+    public ReadRoutingConfig(ReadProperties readProperties) {
+        this.readProperties = readProperties;
+    }
+
+    @Bean
+    public ReadRouting readRouting() {
+        return new ReadRouting(
+                readPreference(readProperties.getLookups()),
+                readPreference(readProperties.getLists()),
+                readPreference(readProperties.getChunks()),
+                readProperties.getReadYourWritesWindow(),
+                readProperties.getMaxTime()
+        );
+    }
+
+    private ReadPreference readPreference(String name) {
+        final ReadPreference readPreference = ReadPreference.valueOf(name);
+        if (readProperties.getMaxStaleness() <= 0 || readPreference.equals(ReadPreference.primary())) {
+            return readPreference;
+        }
+        return ReadPreference.valueOf(name, Collections.<TagSet>emptyList(), readProperties.getMaxStaleness(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import cz.jirutka.spring.exhandler.handlers.ErrorMessageRestExceptionHandler;
+import io.barracks.componentservice.config.exception.TransferRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.function.ToLongFunction;
+
+/**
+ * Answers rejected calls with a {@code 503} telling the client when to come back.
+ */
+public class RetryAfterErrorMessageHandler<E extends Exception> extends ErrorMessageRestExceptionHandler<E> {
+    private final ToLongFunction<E> retryAfter;
+
+    public RetryAfterErrorMessageHandler(Class<E> exceptionClass, ToLongFunction<E> retryAfter) {
+        super(exceptionClass, HttpStatus.SERVICE_UNAVAILABLE);
+        this.retryAfter = retryAfter;
+    }
+
+    public static RetryAfterErrorMessageHandler<TransferRejectedException> forTransfers() {
+        return new RetryAfterErrorMessageHandler<>(TransferRejectedException.class, TransferRejectedException::getRetryAfter);
+    }
+
+    @Override
+    protected HttpHeaders createHeaders(E ex, HttpServletRequest req) {
+        final HttpHeaders headers = super.createHeaders(ex, req);
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter.applyAsLong(ex)));
+        return headers;
+    }
+}
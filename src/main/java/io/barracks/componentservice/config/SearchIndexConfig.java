@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.SearchIndex;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.TaskScheduler;
+
+@Configuration
+@EnableConfigurationProperties(SearchIndexProperties.class)
+public class SearchIndexConfig {
+    private final SearchIndexProperties searchIndexProperties;
+
+    public SearchIndexConfig(SearchIndexProperties searchIndexProperties) {
+        this.searchIndexProperties = searchIndexProperties;
+    }
+
+    @Bean
+    public SearchIndex searchIndex(MongoOperations mongoOperations, PartitionRouter partitionRouter, TaskScheduler blobTaskScheduler) {
+        return new SearchIndex(
+                mongoOperations,
+                partitionRouter,
+                blobTaskScheduler,
+                searchIndexProperties.isEnabled(),
+                searchIndexProperties.getRebuildInterval(),
+                searchIndexProperties.getRefreshInterval()
+        );
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.blob.GridFsBlobStore;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.tiering")
+public class TieringProperties {
+    private boolean enabled = false;
+    /**
+     * Store of the frequently downloaded versions, the store receiving the new versions when not set.
+     */
+    private String hotStore;
+    /**
+     * Store of the versions that are no longer downloaded.
+     */
+    private String coldStore = GridFsBlobStore.ARCHIVE_NAME;
+    /**
+     * Time (in ms) after which a download only counts for half in the access score of a version.
+     */
+    private long halfLife = 604800000L;
+    /**
+     * Origin (in ms since the Unix epoch) of the access score weights. The weights double every half-life from there,
+     * so it has to be moved forward, and the scores reset, before about 1000 half-lives elapsed.
+     */
+    private long epoch = 1767225600000L;
+    /**
+     * Access score under which a version is moved to the cold store.
+     */
+    private double demotionScore = 1.0;
+    /**
+     * Minimum age (in ms) of a version before it can be moved to the cold store.
+     */
+    private long minAge = 1209600000L;
+    /**
+     * Delay (in ms) between two demotion passes.
+     */
+    private long interval = 3600000L;
+    /**
+     * Maximum number of versions moved to the cold store by a demotion pass.
+     */
+    private int batchSize = 100;
+    /**
+     * Number of versions promoted to the hot store at once.
+     */
+    private int promotionThreads = 2;
+    /**
+     * Maximum number of promotions waiting for a thread, the promotions beyond being dropped.
+     */
+    private int promotionQueueCapacity = 100;
+}
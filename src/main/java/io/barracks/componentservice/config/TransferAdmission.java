@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.config.exception.TransferRejectedException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admits transfers up to a global limit, giving every owner an equal share of it. Owners recently turned away keep
+ * counting in the share for the time they were asked to wait, so that a single owner retrying aggressively cannot
+ * take back every slot that frees up.
+ * <p>
+ * Rejections carry the time after which a slot is expected to be available, computed from the average duration of
+ * the last transfers.
+ */
+public class TransferAdmission {
+    private static final double DURATION_SMOOTHING = 0.2;
+
+    private final WorkloadType workloadType;
+    private final int maxConcurrent;
+    private final long maxRetryAfter;
+    private final Map<String, Integer> inFlightByOwner = new HashMap<>();
+    private final Map<String, Long> waitingOwners = new HashMap<>();
+    private int inFlight;
+    private long rejected;
+    private double averageDuration;
+
+    public TransferAdmission(WorkloadType workloadType, AdmissionProperties.Transfer transfer) {
+        this.workloadType = workloadType;
+        this.maxConcurrent = transfer.getMaxConcurrent();
+        this.maxRetryAfter = transfer.getMaxRetryAfter();
+        this.averageDuration = transfer.getExpectedDuration();
+    }
+
+    public synchronized Permit admit(String owner) {
+        final long now = System.nanoTime();
+        waitingOwners.values().removeIf(expiry -> expiry - now < 0);
+        waitingOwners.remove(owner);
+
+        final int ownerInFlight = inFlightByOwner.getOrDefault(owner, 0);
+        final long otherOwners = inFlightByOwner.keySet().stream().filter(other -> !other.equals(owner)).count()
+                + waitingOwners.size();
+        final long fairShare = Math.max(1, maxConcurrent / (otherOwners + 1));
+        if (inFlight >= maxConcurrent || ownerInFlight >= fairShare) {
+            final long retryAfter = retryAfter(inFlight >= maxConcurrent ? inFlight : ownerInFlight);
+            waitingOwners.put(owner, now + TimeUnit.SECONDS.toNanos(retryAfter));
+            rejected++;
+            throw new TransferRejectedException(workloadType, owner, retryAfter);
+        }
+        inFlightByOwner.merge(owner, 1, Integer::sum);
+        inFlight++;
+        return new Permit(owner, now);
+    }
+
+    public WorkloadType getWorkloadType() {
+        return workloadType;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    public synchronized int getOwnerCount() {
+        return inFlightByOwner.size();
+    }
+
+    public synchronized int getWaitingOwnerCount() {
+        final long now = System.nanoTime();
+        waitingOwners.values().removeIf(expiry -> expiry - now < 0);
+        return waitingOwners.size();
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    public synchronized long getAverageDuration() {
+        return Math.round(averageDuration);
+    }
+
+    private long retryAfter(int running) {
+        final double millis = averageDuration / Math.max(1, running);
+        return Math.min(maxRetryAfter, Math.max(1, (long) Math.ceil(millis / 1000)));
+    }
+
+    private synchronized void release(Permit permit) {
+        inFlightByOwner.computeIfPresent(permit.owner, (owner, count) -> count > 1 ? count - 1 : null);
+        inFlight--;
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - permit.start);
+        averageDuration += DURATION_SMOOTHING * (duration - averageDuration);
+    }
+
+    public class Permit {
+        private final String owner;
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String owner, long start) {
+            this.owner = owner;
+            this.start = start;
+        }
+
+        /**
+         * Gives the slot back. Only the first call has an effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                TransferAdmission.this.release(this);
+            }
+        }
+    }
+}
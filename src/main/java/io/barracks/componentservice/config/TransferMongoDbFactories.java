@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.MongoClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+
+/**
+ * Connections to the catalogue database dedicated to the upload and download workloads.
+ */
+public class TransferMongoDbFactories implements DisposableBean {
+    private final MongoClient uploadClient;
+    private final MongoClient downloadClient;
+    private final MongoDbFactory upload;
+    private final MongoDbFactory download;
+
+    TransferMongoDbFactories(MongoClient uploadClient, MongoClient downloadClient, String databaseName) {
+        this.uploadClient = uploadClient;
+        this.downloadClient = downloadClient;
+        this.upload = new SimpleMongoDbFactory(uploadClient, databaseName);
+        this.download = new SimpleMongoDbFactory(downloadClient, databaseName);
+    }
+
+    public MongoDbFactory get(WorkloadType workloadType) {
+        switch (workloadType) {
+            case UPLOAD:
+                return upload;
+            case DOWNLOAD:
+                return download;
+            default:
+                throw new IllegalArgumentException("No dedicated connections for " + workloadType.getKey());
+        }
+    }
+
+    /**
+     * @return the dedicated connections of the workload to another database of the same deployment.
+     */
+    public MongoDbFactory get(WorkloadType workloadType, String databaseName) {
+        final MongoDbFactory factory = get(workloadType);
+        if (factory.getDb().getName().equals(databaseName)) {
+            return factory;
+        }
+        return new SimpleMongoDbFactory(workloadType == WorkloadType.UPLOAD ? uploadClient : downloadClient, databaseName);
+    }
+
+    @Override
+    public void destroy() {
+        uploadClient.close();
+        downloadClient.close();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.usage")
+public class UsageProperties {
+    /**
+     * Quota of every owner without a quota of its own.
+     */
+    private Quota ownerQuota = new Quota();
+    /**
+     * Quota of every package.
+     */
+    private Quota packageQuota = new Quota();
+    /**
+     * Quotas of given owners, by owner ID.
+     */
+    private Map<String, Quota> owners = new HashMap<>();
+    private boolean reconciliationEnabled = true;
+    /**
+     * Delay (in ms) between two reconciliations of the usage counters with the versions.
+     */
+    private long reconciliationInterval = 10000L;
+    /**
+     * Number of packages reconciled by a pass, the next pass going on from the last one.
+     */
+    private int packagesPerPass = 50;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Quota {
+        /**
+         * Maximum number of versions, or 0 for no limit.
+         */
+        private long maxVersions;
+        /**
+         * Maximum size of the version files, in bytes, or 0 for no limit.
+         */
+        private long maxBytes;
+    }
+}
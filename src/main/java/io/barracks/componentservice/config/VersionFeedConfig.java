@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.repository.VersionFeed;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@EnableConfigurationProperties(VersionFeedProperties.class)
+public class VersionFeedConfig {
+    private final VersionFeedProperties versionFeedProperties;
+
+    public VersionFeedConfig(VersionFeedProperties versionFeedProperties) {
+        this.versionFeedProperties = versionFeedProperties;
+    }
+
+    @Bean
+    public VersionFeed versionFeed(
+            PartitionRouter partitionRouter,
+            BlobStores blobStores,
+            @Qualifier("versionFeedTaskScheduler") TaskScheduler versionFeedTaskScheduler,
+            @Qualifier("versionFeedSenderExecutor") TaskExecutor versionFeedSenderExecutor
+    ) {
+        return new VersionFeed(
+                partitionRouter,
+                blobStores,
+                versionFeedTaskScheduler,
+                versionFeedSenderExecutor,
+                versionFeedProperties.getPollInterval(),
+                versionFeedProperties.getHeartbeatInterval(),
+                versionFeedProperties.getMaxPendingEvents()
+        );
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler versionFeedTaskScheduler() {
+        final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(versionFeedProperties.getThreads());
+        scheduler.setThreadNamePrefix("version-feed-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor versionFeedSenderExecutor() {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(versionFeedProperties.getSenderThreads());
+        executor.setMaxPoolSize(versionFeedProperties.getSenderThreads());
+        executor.setThreadNamePrefix("version-feed-sender-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "io.barracks.componentservice.version-feed")
+public class VersionFeedProperties {
+    /**
+     * Time (in ms) between two reads of the versions created through any instance.
+     */
+    private long pollInterval = 1000L;
+    /**
+     * Time (in ms) between two comments sent to the idle event streams, so that the proxies keep them open.
+     */
+    private long heartbeatInterval = 15000L;
+    /**
+     * Time (in ms) after which an event stream is closed, for the subscriber to reconnect from its last event.
+     */
+    private long streamTimeout = 300000L;
+    /**
+     * Maximum time (in ms) a long-polling request waits for an event.
+     */
+    private long maxWait = 60000L;
+    /**
+     * Number of threads polling the versions and queuing the events and heartbeats.
+     */
+    private int threads = 2;
+    /**
+     * Number of threads sending the queued events and heartbeats to the subscribers.
+     */
+    private int senderThreads = 8;
+    /**
+     * Number of events queued for a subscriber above which it is dropped, for reading them too slowly.
+     */
+    private int maxPendingEvents = 100;
+}
@@ -24,14 +24,139 @@
 
 package io.barracks.componentservice.config;
 
+import io.barracks.componentservice.manager.StorageUsageManager;
+import io.barracks.componentservice.rest.AdmissionInterceptor;
+import io.barracks.componentservice.repository.ReadRouting;
+import io.barracks.componentservice.rest.BulkheadInterceptor;
+import io.barracks.componentservice.rest.QuotaInterceptor;
+import io.barracks.componentservice.rest.ReadYourWritesInterceptor;
+import io.barracks.componentservice.rest.VersionFileInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 @Configuration
+@EnableConfigurationProperties({BulkheadProperties.class, AdmissionProperties.class, BandwidthProperties.class})
+@Import(ReadRoutingConfig.class)
 public class WebMvcConfig extends WebMvcConfigurerAdapter {
+    private final BulkheadProperties bulkheadProperties;
+    private final AdmissionProperties admissionProperties;
+    private final ReadRouting readRouting;
+    private final ObjectProvider<StorageUsageManager> storageUsageManager;
+
+    /**
+     * @param storageUsageManager the usage counters the quotas are checked with, missing from the web slices, where the
+     *                            quotas are not checked.
+     */
+    public WebMvcConfig(
+            BulkheadProperties bulkheadProperties,
+            AdmissionProperties admissionProperties,
+            ReadRouting readRouting,
+            ObjectProvider<StorageUsageManager> storageUsageManager
+    ) {
+        this.bulkheadProperties = bulkheadProperties;
+        this.admissionProperties = admissionProperties;
+        this.readRouting = readRouting;
+        this.storageUsageManager = storageUsageManager;
+    }
+
     @Override
     public void configurePathMatch(PathMatchConfigurer configurer) {
         configurer.setUseSuffixPatternMatch(false);
     }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(downloadTaskExecutor());
+        configurer.setDefaultTimeout(bulkheadProperties.getDownload().getTimeout());
+        configurer.registerDeferredResultInterceptors(new VersionFileInterceptor());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        final Map<WorkloadType, TransferAdmission> admissions = new EnumMap<>(WorkloadType.class);
+        admissions.put(WorkloadType.UPLOAD, uploadAdmission());
+        admissions.put(WorkloadType.DOWNLOAD, downloadAdmission());
+        registry.addInterceptor(new AdmissionInterceptor(admissions)).addPathPatterns("/owners/**");
+
+        final StorageUsageManager usageManager = storageUsageManager.getIfAvailable();
+        if (usageManager != null) {
+            registry.addInterceptor(new QuotaInterceptor(usageManager)).addPathPatterns("/owners/**");
+        }
+
+        final Map<WorkloadType, WorkloadBulkhead> bulkheads = new EnumMap<>(WorkloadType.class);
+        bulkheads.put(WorkloadType.METADATA, metadataBulkhead());
+        bulkheads.put(WorkloadType.UPLOAD, uploadBulkhead());
+        registry.addInterceptor(new BulkheadInterceptor(bulkheads)).addPathPatterns("/owners/**");
+        registry.addInterceptor(new ReadYourWritesInterceptor(readRouting)).addPathPatterns("/owners/**");
+    }
+
+    /**
+     * Writes the chunks of the version files whenever their connections can take more, and streams the catalogue
+     * exports, outside of the servlet container threads. A slow download only holds a thread while its connection
+     * is writable. The pool is bounded and transfers exceeding its queue are rejected.
+     */
+    @Bean
+    public BulkheadTaskExecutor downloadTaskExecutor() {
+        return new BulkheadTaskExecutor(WorkloadType.DOWNLOAD, bulkheadProperties.getDownload());
+    }
+
+    /**
+     * Share of the servlet container threads available to version uploads.
+     */
+    @Bean
+    public WorkloadBulkhead uploadBulkhead() {
+        return new WorkloadBulkhead(WorkloadType.UPLOAD, bulkheadProperties.getUpload());
+    }
+
+    /**
+     * Share of the servlet container threads available to the catalogue calls.
+     */
+    @Bean
+    public WorkloadBulkhead metadataBulkhead() {
+        return new WorkloadBulkhead(WorkloadType.METADATA, bulkheadProperties.getMetadata());
+    }
+
+    /**
+     * Version uploads in progress, shared fairly between owners.
+     */
+    @Bean
+    public TransferAdmission uploadAdmission() {
+        return new TransferAdmission(WorkloadType.UPLOAD, admissionProperties.getUpload());
+    }
+
+    /**
+     * Version file downloads in progress, shared fairly between owners.
+     */
+    @Bean
+    public TransferAdmission downloadAdmission() {
+        return new TransferAdmission(WorkloadType.DOWNLOAD, admissionProperties.getDownload());
+    }
+
+    /**
+     * Resumes the version file downloads paused until their owner is allowed to send more.
+     */
+    @Bean
+    public ThreadPoolTaskScheduler bandwidthTaskScheduler() {
+        final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("bandwidth-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+
+    @Bean
+    public BandwidthScheduler bandwidthScheduler(BandwidthProperties bandwidthProperties) {
+        return new BandwidthScheduler(bandwidthProperties);
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of servlet container threads a workload can hold at the same time. Requests exceeding the limit
+ * wait in a bounded FIFO queue and are rejected when the queue is full or when they waited for too long.
+ */
+public class WorkloadBulkhead implements WorkloadStatistics {
+    private final WorkloadType workloadType;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long timeout;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public WorkloadBulkhead(WorkloadType workloadType, BulkheadProperties.Workload workload) {
+        this.workloadType = workloadType;
+        this.maxConcurrent = workload.getMaxConcurrent();
+        this.queueCapacity = workload.getQueueCapacity();
+        this.timeout = workload.getTimeout();
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    public void acquire() {
+        try {
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            if (queued.incrementAndGet() > queueCapacity) {
+                queued.decrementAndGet();
+                throw reject();
+            }
+            try {
+                if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw reject();
+                }
+            } finally {
+                queued.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    @Override
+    public WorkloadType getWorkloadType() {
+        return workloadType;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private TaskRejectedException reject() {
+        rejected.incrementAndGet();
+        return new TaskRejectedException("Too many " + workloadType.getKey() + " requests");
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.manager.exception.VersionCreationFailedException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.AsyncPackageRepository;
+import io.barracks.componentservice.repository.AsyncVersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.ASYNC_MODE)
+public class AsyncVersionManager {
+    private final AsyncPackageRepository packageRepository;
+    private final AsyncVersionRepository versionRepository;
+    private final TieringManager tieringManager;
+    private final BlobReclaimer blobReclaimer;
+    private final StorageUsageManager storageUsageManager;
+    private final VersionMetadataValidator versionMetadataValidator;
+
+    public AsyncVersionManager(
+            AsyncPackageRepository packageRepository,
+            AsyncVersionRepository versionRepository,
+            TieringManager tieringManager,
+            BlobReclaimer blobReclaimer,
+            StorageUsageManager storageUsageManager,
+            VersionMetadataValidator versionMetadataValidator
+    ) {
+        this.packageRepository = packageRepository;
+        this.versionRepository = versionRepository;
+        this.tieringManager = tieringManager;
+        this.blobReclaimer = blobReclaimer;
+        this.storageUsageManager = storageUsageManager;
+        this.versionMetadataValidator = versionMetadataValidator;
+    }
+
+    /**
+     * Creates a version, then checks its length against the byte quotas, as the length of an upload is not always known
+     * before its file is received. A version exceeding them is deleted again.
+     */
+    public CompletableFuture<Version> createVersion(Version version, InputStream inputStream) {
+        versionMetadataValidator.validate(version.getMetadata());
+        return packageRepository.getPackage(version.getUserId(), version.getPackageRef())
+                .thenCompose(aPackage -> {
+                    aPackage.orElseThrow(() ->
+                            new VersionCreationFailedException(version, new PackageNotFoundException(version.getUserId(), version.getPackageRef()))
+                    );
+                    return versionRepository.createVersion(version, inputStream);
+                })
+                .thenCompose(created -> {
+                    try {
+                        storageUsageManager.checkStoredQuota(created);
+                    } catch (StorageQuotaExceededException e) {
+                        return removeVersion(created.getUserId(), created.getPackageRef(), created.getId()).thenApply(blobs -> {
+                            throw e;
+                        });
+                    }
+                    storageUsageManager.recordCreation(created);
+                    return CompletableFuture.completedFuture(created);
+                });
+    }
+
+    /**
+     * Copies a version to another package of its owner, sharing its binary with the copy.
+     *
+     * @param copy the target package and the identifier, name, description and metadata of the copy, the ones of the
+     *             source being kept for the null ones.
+     * @throws StorageQuotaExceededException when the copy does not fit in the quotas of the target package or its owner.
+     */
+    public CompletableFuture<Version> copyVersion(String packageRef, String id, Version copy) {
+        if (copy.getMetadata() != null) {
+            versionMetadataValidator.validate(copy.getMetadata());
+        }
+        return getVersion(copy.getUserId(), packageRef, id)
+                .thenCompose(source -> {
+                    storageUsageManager.checkQuota(copy.getUserId(), copy.getPackageRef(), source.getLength());
+                    return packageRepository.getPackage(copy.getUserId(), copy.getPackageRef());
+                })
+                .thenCompose(aPackage -> {
+                    aPackage.orElseThrow(() ->
+                            new VersionCreationFailedException(copy, new PackageNotFoundException(copy.getUserId(), copy.getPackageRef()))
+                    );
+                    return versionRepository.copyVersion(packageRef, id, copy);
+                })
+                .thenApply(version -> {
+                    final Version created = version.orElseThrow(() -> new VersionNotFoundException(copy.getUserId(), packageRef, id));
+                    storageUsageManager.recordCreation(created);
+                    return created;
+                });
+    }
+
+    public CompletableFuture<Version> getVersion(String userId, String packageRef, String id) {
+        return versionRepository.getVersion(userId, packageRef, id)
+                .thenApply(version -> version.orElseThrow(() -> new VersionNotFoundException(userId, packageRef, id)));
+    }
+
+    /**
+     * Replaces the name, description and metadata given in the version, leaving the null ones as they are.
+     *
+     * @param revision the revision of the version the changes were made from, or null to apply them to the latest one.
+     */
+    public CompletableFuture<Version> updateVersion(Version changes, Long revision) {
+        if (changes.getMetadata() != null) {
+            versionMetadataValidator.validate(changes.getMetadata());
+        }
+        return versionRepository.updateVersion(changes, revision).thenCompose(updated -> updated.isPresent()
+                ? CompletableFuture.completedFuture(updated.get())
+                : getVersion(changes.getUserId(), changes.getPackageRef(), changes.getId()).thenApply(current -> {
+                    throw new VersionModifiedException(changes.getUserId(), changes.getPackageRef(), changes.getId());
+                }));
+    }
+
+    /**
+     * Deletes a version at once, its binary being deleted in the background unless another version shares it.
+     */
+    public CompletableFuture<Void> deleteVersion(String userId, String packageRef, String id) {
+        return removeVersion(userId, packageRef, id).thenAccept(blobs -> {
+            if (blobs.isEmpty()) {
+                throw new VersionNotFoundException(userId, packageRef, id);
+            }
+            storageUsageManager.recordDeletion(userId, packageRef, blobs.get(0).getLength());
+        });
+    }
+
+    public CompletableFuture<Version> getVersionFile(String userId, String packageRef, String id) {
+        return getVersion(userId, packageRef, id)
+                .thenApply(version -> {
+                    tieringManager.recordAccess(version);
+                    return version;
+                });
+    }
+
+    public CompletableFuture<Page<Version>> getVersions(String userId, String packageRef, Pageable pageable) {
+        return versionRepository.getVersions(userId, packageRef, pageable);
+    }
+
+    /**
+     * Lists the versions of a package with the requested fields only, or the fields of
+     * {@link io.barracks.componentservice.model.VersionField#SUMMARY} when none is.
+     */
+    public CompletableFuture<Page<Map<String, Object>>> getVersionFields(String userId, String packageRef, List<String> fields, Pageable pageable) {
+        return versionRepository.getVersionFields(userId, packageRef, VersionManager.toVersionFields(fields), pageable);
+    }
+
+    /**
+     * Queues the binary of the version for reclamation before removing the version, so that the binary is not left
+     * behind when the removal is interrupted. A binary queued for a version that is not removed is kept, as it is still
+     * referenced.
+     *
+     * @return the blobs the removed documents referenced, none when the version does not exist.
+     */
+    private CompletableFuture<List<BlobReference>> removeVersion(String userId, String packageRef, String id) {
+        return versionRepository.getBlob(userId, packageRef, id).thenCompose(blob -> {
+            if (!blob.isPresent()) {
+                return CompletableFuture.completedFuture(Collections.<BlobReference>emptyList());
+            }
+            blobReclaimer.queue(blob.get());
+            return versionRepository.deleteVersion(userId, packageRef, id).thenApply(blobs -> {
+                blobs.stream().filter(removed -> !VersionManager.isSameBlob(removed, blob.get())).forEach(blobReclaimer::queue);
+                return blobs;
+            });
+        });
+    }
+}
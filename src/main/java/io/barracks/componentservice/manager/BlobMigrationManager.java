@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.BlobStoreProperties;
+import io.barracks.componentservice.manager.exception.BlobMigrationInProgressException;
+import io.barracks.componentservice.manager.exception.BlobMigrationNotFoundException;
+import io.barracks.componentservice.manager.exception.InvalidBlobMigrationException;
+import io.barracks.componentservice.model.BlobMigration;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.LegacyGridFsBlobStore;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves the version binaries between blob stores while the service keeps running, one {@link BlobMover#move} per
+ * version.
+ */
+@Service
+public class BlobMigrationManager {
+    private final VersionRepository versionRepository;
+    private final BlobStores blobStores;
+    private final BlobMover blobMover;
+    private final TaskScheduler taskScheduler;
+    private final BlobStoreProperties.Migration properties;
+    private volatile Migration migration;
+
+    public BlobMigrationManager(VersionRepository versionRepository, BlobStores blobStores, BlobMover blobMover, TaskScheduler taskScheduler, BlobStoreProperties blobStoreProperties) {
+        this.versionRepository = versionRepository;
+        this.blobStores = blobStores;
+        this.blobMover = blobMover;
+        this.taskScheduler = taskScheduler;
+        this.properties = blobStoreProperties.getMigration();
+    }
+
+    public synchronized BlobMigration startMigration(String from, String to) {
+        final BlobStore source = blobStores.get(from)
+                .orElseThrow(() -> new InvalidBlobMigrationException(from, to, "unknown store '" + from + "'"));
+        final BlobStore target = blobStores.get(to)
+                .orElseThrow(() -> new InvalidBlobMigrationException(from, to, "unknown store '" + to + "'"));
+        if (source == target) {
+            throw new InvalidBlobMigrationException(from, to, "stores must be different");
+        }
+        if (LegacyGridFsBlobStore.NAME.equals(to)) {
+            throw new InvalidBlobMigrationException(from, to, "store '" + to + "' is read-only");
+        }
+        if (migration != null && migration.isRunning()) {
+            throw new BlobMigrationInProgressException(migration.toBlobMigration());
+        }
+        migration = new Migration(source, target);
+        taskScheduler.schedule(migration::run, new Date());
+        return migration.toBlobMigration();
+    }
+
+    public BlobMigration getMigration() {
+        final Migration current = migration;
+        if (current == null) {
+            throw new BlobMigrationNotFoundException();
+        }
+        return current.toBlobMigration();
+    }
+
+    private class Migration {
+        private final BlobStore source;
+        private final BlobStore target;
+        private final Date startedAt = new Date();
+        private final AtomicLong migrated = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile BlobMigration.State state = BlobMigration.State.RUNNING;
+        private volatile String lastError;
+        private volatile Date completedAt;
+
+        Migration(BlobStore source, BlobStore target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        boolean isRunning() {
+            return state == BlobMigration.State.RUNNING;
+        }
+
+        void run() {
+            try {
+                String after = null;
+                List<BlobReference> batch;
+                do {
+                    batch = versionRepository.getBlobs(source.getName(), after, properties.getBatchSize());
+                    for (BlobReference blob : batch) {
+                        migrate(blob);
+                        after = blob.getDocumentId();
+                    }
+                } while (batch.size() == properties.getBatchSize());
+                complete(BlobMigration.State.COMPLETED);
+            } catch (RuntimeException e) {
+                lastError = e.getMessage();
+                complete(BlobMigration.State.FAILED);
+            }
+        }
+
+        private void migrate(BlobReference blob) {
+            try {
+                if (blobMover.move(blob, source, target)) {
+                    migrated.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException e) {
+                fail("Failed to migrate blob " + blob.getId() + " of version document " + blob.getDocumentId() + ": " + e.getMessage());
+            }
+        }
+
+        private void fail(String error) {
+            failed.incrementAndGet();
+            lastError = error;
+        }
+
+        private void complete(BlobMigration.State state) {
+            this.completedAt = new Date();
+            this.state = state;
+        }
+
+        BlobMigration toBlobMigration() {
+            return BlobMigration.builder()
+                    .from(source.getName())
+                    .to(target.getName())
+                    .state(state)
+                    .migrated(migrated.get())
+                    .failed(failed.get())
+                    .lastError(lastError)
+                    .startedAt(startedAt)
+                    .completedAt(completedAt)
+                    .build();
+        }
+    }
+}
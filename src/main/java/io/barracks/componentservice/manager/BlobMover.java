@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.BlobStoreProperties;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.StoredBlob;
+import io.barracks.componentservice.repository.exception.BlobStoreException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Moves the binary of a version to another blob store. The blob is copied, checked against the MD5 of its version,
+ * then the version is switched to the copy only if it still uses the original blob. The original is queued to the
+ * {@link BlobReclaimer} to be deleted once the grace period elapsed, so that the downloads already reading it can
+ * complete, unless another version references it by then.
+ */
+@Component
+public class BlobMover {
+    private final VersionRepository versionRepository;
+    private final BlobReclaimer blobReclaimer;
+    private final BlobStoreProperties.Migration properties;
+
+    public BlobMover(VersionRepository versionRepository, BlobReclaimer blobReclaimer, BlobStoreProperties blobStoreProperties) {
+        this.versionRepository = versionRepository;
+        this.blobReclaimer = blobReclaimer;
+        this.properties = blobStoreProperties.getMigration();
+    }
+
+    /**
+     * @return whether the version now uses the copy, false if it was changed while its blob was copied.
+     * @throws IOException        if the original blob could not be read.
+     * @throws BlobStoreException if the copy could not be stored or does not match the original.
+     */
+    public boolean move(BlobReference blob, BlobStore source, BlobStore target) throws IOException {
+        final StoredBlob copy;
+        try (InputStream content = source.open(blob.getId(), 0)) {
+            copy = target.store(content);
+        }
+        if (blob.getMd5() != null && !blob.getMd5().equalsIgnoreCase(copy.getMd5())) {
+            discard(target, copy);
+            throw new BlobStoreException(target.getName(), "copy of blob " + blob.getId() + " of version document " + blob.getDocumentId() + " does not match its MD5", null);
+        }
+        if (!versionRepository.moveBlob(blob, copy)) {
+            discard(target, copy);
+            return false;
+        }
+        blobReclaimer.queue(blob.toBuilder().store(source.getName()).build(), properties.getGrace());
+        return true;
+    }
+
+    private void discard(BlobStore store, StoredBlob blob) {
+        if (blob.isCreated() && versionRepository.countBlobReferences(store.getName(), blob.getId()) == 0) {
+            store.delete(blob.getId());
+        }
+    }
+}
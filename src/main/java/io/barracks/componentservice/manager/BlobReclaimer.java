@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.ReclamationProperties;
+import io.barracks.componentservice.model.BlobReclamation;
+import io.barracks.componentservice.repository.BlobReclamationRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes the blobs of the deleted versions in the background, at a bounded rate.
+ * <p>
+ * The blobs are queued in Mongo, so that they are reclaimed even if the instance stops, and reclaimed once the grace
+ * period elapsed. Each pass deletes at most the configured number of bytes, the stores able to delete a blob in
+ * several steps deleting the large ones over several passes. A blob still referenced by a version, such as a copy or
+ * an upload of the same content, is left in its store and removed from the queue. An upload referencing a blob deleted
+ * meanwhile puts it back.
+ */
+@Service
+public class BlobReclaimer implements InitializingBean, DisposableBean {
+    /**
+     * Number of bytes a blob counts for at least, so that a pass over many small blobs stays bounded too.
+     */
+    static final long MIN_BLOB_COST = 255L * 1024L;
+
+    private final BlobReclamationRepository blobReclamationRepository;
+    private final VersionRepository versionRepository;
+    private final BlobStores blobStores;
+    private final TaskScheduler taskScheduler;
+    private final ReclamationProperties properties;
+    private final AtomicLong reclaimedBlobs = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private ScheduledFuture<?> reclamationTask;
+
+    public BlobReclaimer(
+            BlobReclamationRepository blobReclamationRepository,
+            VersionRepository versionRepository,
+            BlobStores blobStores,
+            TaskScheduler taskScheduler,
+            ReclamationProperties reclamationProperties
+    ) {
+        this.blobReclamationRepository = blobReclamationRepository;
+        this.versionRepository = versionRepository;
+        this.blobStores = blobStores;
+        this.taskScheduler = taskScheduler;
+        this.properties = reclamationProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.isEnabled()) {
+            reclamationTask = taskScheduler.scheduleWithFixedDelay(this::reclaim, properties.getInterval());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (reclamationTask != null) {
+            reclamationTask.cancel(false);
+        }
+    }
+
+    /**
+     * Queues the blob of a version being deleted. Queuing it again postpones its reclamation.
+     */
+    public void queue(BlobReference blob) {
+        queue(blob, properties.getGrace());
+    }
+
+    /**
+     * Queues a blob to be reclaimed once the given grace period elapsed instead of the configured one, such as the
+     * original of a moved blob that downloads may still be reading.
+     */
+    public void queue(BlobReference blob, long grace) {
+        blobReclamationRepository.queue(blob.getStore(), blob.getId(), blob.getLength(), new Date(System.currentTimeMillis() + grace - properties.getGrace()));
+    }
+
+    public long getReclaimedBlobCount() {
+        return reclaimedBlobs.get();
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getPendingCount() {
+        return blobReclamationRepository.count();
+    }
+
+    void reclaim() {
+        final long now = System.currentTimeMillis();
+        long budget = properties.getMaxBytes();
+        while (budget > 0) {
+            final Optional<BlobReclamation> reclamation = blobReclamationRepository.claim(
+                    new Date(now - properties.getGrace()),
+                    new Date(now),
+                    new Date(now + properties.getLease())
+            );
+            if (!reclamation.isPresent()) {
+                return;
+            }
+            budget -= reclaim(reclamation.get(), budget);
+        }
+    }
+
+    /**
+     * A blob that could not be deleted is left claimed, to be taken again once its lease expired.
+     *
+     * @return the number of bytes the deletion counts for.
+     */
+    private long reclaim(BlobReclamation reclamation, long budget) {
+        try {
+            final Optional<BlobStore> store = blobStores.get(reclamation.getStore());
+            if (!store.isPresent()) {
+                failed.incrementAndGet();
+                return 0L;
+            }
+            // Checked right before each deletion, as an upload of the same content may reference the blob again
+            if (versionRepository.countBlobReferences(reclamation.getStore(), reclamation.getBlobId()) > 0) {
+                blobReclamationRepository.delete(reclamation.getId());
+                return 0L;
+            }
+            final long remaining = Math.max(reclamation.getLength() - reclamation.getReclaimed(), 0L);
+            if (store.get().deletePart(reclamation.getBlobId(), budget)) {
+                blobReclamationRepository.delete(reclamation.getId());
+                reclaimedBlobs.incrementAndGet();
+                reclaimedBytes.addAndGet(remaining);
+                return Math.min(Math.max(remaining, MIN_BLOB_COST), budget);
+            }
+            final long deleted = Math.min(remaining, budget);
+            blobReclamationRepository.release(reclamation.getId(), reclamation.getReclaimed() + deleted);
+            reclaimedBytes.addAndGet(deleted);
+            return budget;
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.DownloadProperties;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.DownloadCount;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.VersionRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the downloads of the versions in memory and adds them to the versions in one bulk write per flush, rather
+ * than writing each download. The same write adds the downloads to the access scores of the tiering, weighted at the
+ * time of the flush.
+ * <p>
+ * A download only increments the striped {@link LongAdder}s of its version, without locking. The counters are never
+ * reset: a flush writes the difference with the amounts written by the previous flushes, so that the downloads counted
+ * while it runs, or by a flush that failed, are written by the next one. The counters of the versions no longer
+ * downloaded are dropped, after a last flush for the downloads that may still reach them.
+ */
+@Service
+public class DownloadCounters implements InitializingBean, DisposableBean {
+    private final VersionRepository versionRepository;
+    private final TieringManager tieringManager;
+    private final TaskScheduler taskScheduler;
+    private final DownloadProperties properties;
+    private final Map<VersionKey, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<Counter, VersionKey> retired = new HashMap<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private ScheduledFuture<?> flushTask;
+
+    public DownloadCounters(VersionRepository versionRepository, TieringManager tieringManager, TaskScheduler taskScheduler, DownloadProperties downloadProperties) {
+        this.versionRepository = versionRepository;
+        this.tieringManager = tieringManager;
+        this.taskScheduler = taskScheduler;
+        this.properties = downloadProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.isEnabled()) {
+            flushTask = taskScheduler.scheduleWithFixedDelay(this::flush, properties.getFlushInterval());
+        }
+    }
+
+    /**
+     * Writes the downloads counted since the last flush before the instance stops.
+     */
+    @Override
+    public void destroy() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flush();
+        }
+    }
+
+    /**
+     * Counts a download of the version file that ended, sending the whole file or not.
+     */
+    public void recordDownload(Version version, boolean complete) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        final VersionKey key = VersionKey.of(version);
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, ignored -> new Counter());
+        }
+        if (complete) {
+            counter.completed.increment();
+            completed.increment();
+        } else {
+            counter.aborted.increment();
+            aborted.increment();
+        }
+    }
+
+    /**
+     * @return the downloads written to the version, with the ones counted by this instance and not written yet.
+     */
+    public DownloadCount getDownloadCount(String userId, String packageRef, String versionId) {
+        final DownloadCount written = versionRepository.getDownloadCount(userId, packageRef, versionId).orElseThrow(() ->
+                new VersionNotFoundException(userId, packageRef, versionId)
+        );
+        final Counter counter = counters.get(VersionKey.builder().userId(userId).packageRef(packageRef).versionId(versionId).build());
+        if (counter == null) {
+            return written;
+        }
+        return written.toBuilder()
+                .completed(written.getCompleted() + counter.completed.sum() - counter.writtenCompleted)
+                .aborted(written.getAborted() + counter.aborted.sum() - counter.writtenAborted)
+                .build();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getAbortedCount() {
+        return aborted.sum();
+    }
+
+    public int getPendingVersionCount() {
+        return counters.size();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Writes the downloads counted since the previous flushes. The counters are tracked one by one, as a version may
+     * have a retired counter still reached by late downloads and a new one, whose downloads are written together. Only
+     * the counters of the versions actually written advance, so that the others are written again by the next flush.
+     */
+    synchronized void flush() {
+        final Map<Counter, VersionKey> flushed = new HashMap<>(retired);
+        final Map<Counter, VersionKey> retiring = new HashMap<>();
+        counters.forEach((key, counter) -> {
+            if (counter.completed.sum() == counter.writtenCompleted && counter.aborted.sum() == counter.writtenAborted
+                    && counters.remove(key, counter)) {
+                retiring.put(counter, key);
+            } else {
+                flushed.put(counter, key);
+            }
+        });
+        final Map<Counter, long[]> sums = new HashMap<>();
+        final Map<VersionKey, DownloadCount> increments = new HashMap<>();
+        flushed.forEach((counter, key) -> {
+            final long completedSum = counter.completed.sum();
+            final long abortedSum = counter.aborted.sum();
+            if (completedSum != counter.writtenCompleted || abortedSum != counter.writtenAborted) {
+                sums.put(counter, new long[]{completedSum, abortedSum});
+                increments.merge(key, DownloadCount.builder()
+                        .completed(completedSum - counter.writtenCompleted)
+                        .aborted(abortedSum - counter.writtenAborted)
+                        .build(), DownloadCounters::add);
+            }
+        });
+        final Set<VersionKey> written = increments.isEmpty() ? Collections.emptySet() : write(increments);
+        sums.forEach((counter, sum) -> {
+            if (written.contains(flushed.get(counter))) {
+                counter.writtenCompleted = sum[0];
+                counter.writtenAborted = sum[1];
+            }
+        });
+        retired.keySet().removeIf(counter -> !sums.containsKey(counter) || written.contains(retired.get(counter)));
+        retired.putAll(retiring);
+    }
+
+    private Set<VersionKey> write(Map<VersionKey, DownloadCount> increments) {
+        final long now = System.currentTimeMillis();
+        final Set<VersionKey> written;
+        try {
+            written = versionRepository.incrementDownloadCounts(increments, tieringManager.getAccessWeight(now), new Date(now));
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            return Collections.emptySet();
+        }
+        if (!written.isEmpty()) {
+            flushes.incrementAndGet();
+        }
+        if (written.size() < increments.size()) {
+            failed.incrementAndGet();
+        }
+        return written;
+    }
+
+    private static DownloadCount add(DownloadCount count, DownloadCount other) {
+        return DownloadCount.builder()
+                .completed(count.getCompleted() + other.getCompleted())
+                .aborted(count.getAborted() + other.getAborted())
+                .build();
+    }
+
+    private static class Counter {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder aborted = new LongAdder();
+        /**
+         * Amounts written by the previous flushes, only updated by the flushes.
+         */
+        private volatile long writtenCompleted;
+        private volatile long writtenAborted;
+    }
+}
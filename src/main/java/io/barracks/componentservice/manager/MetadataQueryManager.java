@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.MetadataQueryProperties;
+import io.barracks.componentservice.manager.exception.InvalidMetadataIndexException;
+import io.barracks.componentservice.manager.exception.InvalidMetadataQueryException;
+import io.barracks.componentservice.manager.exception.MetadataIndexNotFoundException;
+import io.barracks.componentservice.manager.exception.UnindexedMetadataQueryException;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.MetadataIndex;
+import io.barracks.componentservice.model.MetadataOperator;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.MetadataIndexRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Queries on the metadata of the versions, and the metadata keys the owners index. A package with more than a few
+ * versions is only queried with a condition on an indexed key, whose index the query then uses, so that a query never
+ * scans a large package.
+ */
+@Service
+public class MetadataQueryManager implements InitializingBean {
+    private static final Pattern KEY_PATTERN = Pattern.compile("^[A-Za-z0-9_-]{1,64}$");
+    private static final int MAX_IN_VALUES = 100;
+
+    private final MetadataIndexRepository metadataIndexRepository;
+    private final VersionRepository versionRepository;
+    private final MetadataQueryProperties metadataQueryProperties;
+
+    public MetadataQueryManager(
+            MetadataIndexRepository metadataIndexRepository,
+            VersionRepository versionRepository,
+            MetadataQueryProperties metadataQueryProperties
+    ) {
+        this.metadataIndexRepository = metadataIndexRepository;
+        this.versionRepository = versionRepository;
+        this.metadataQueryProperties = metadataQueryProperties;
+    }
+
+    /**
+     * Ensures the index of every declared key in every partition, for the partitions added since the keys were
+     * declared and the indexes missing after a failure.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        metadataIndexRepository.findAll().stream()
+                .map(MetadataIndex::getKey)
+                .distinct()
+                .forEach(versionRepository::ensureMetadataIndex);
+    }
+
+    /**
+     * Lists the versions of a package matching all the conditions. The query uses the index of an indexed key with an
+     * equality condition first, as it is the most selective.
+     */
+    public Page<Version> queryVersions(String userId, String packageRef, List<MetadataCondition> conditions, Pageable pageable) {
+        validate(conditions);
+        final Set<String> indexedKeys = getIndexes(userId).stream()
+                .map(MetadataIndex::getKey)
+                .collect(Collectors.toSet());
+        final Optional<String> indexedKey = conditions.stream()
+                .filter(condition -> indexedKeys.contains(condition.getKey()))
+                .sorted(Comparator.comparing(condition -> condition.getOperator() != MetadataOperator.EQ))
+                .map(MetadataCondition::getKey)
+                .findFirst();
+        final long maxUnindexedVersions = metadataQueryProperties.getMaxUnindexedVersions();
+        if (!indexedKey.isPresent() && versionRepository.countVersions(userId, packageRef, maxUnindexedVersions + 1) > maxUnindexedVersions) {
+            throw new UnindexedMetadataQueryException(userId, packageRef, maxUnindexedVersions);
+        }
+        return versionRepository.getVersions(userId, packageRef, conditions, indexedKey.orElse(null), pageable);
+    }
+
+    public List<MetadataIndex> getIndexes(String userId) {
+        return metadataIndexRepository.findByUserIdOrderByKey(userId);
+    }
+
+    /**
+     * Indexes the versions on a metadata key for the owner, creating the index when no other owner declared the key.
+     * The key is declared before the index is ensured, so that an index dropped by a concurrent deletion of the last
+     * other declaration is created again.
+     */
+    public MetadataIndex createIndex(String userId, String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new InvalidMetadataIndexException(userId, key, "keys are made of 1 to 64 letters, digits, '_' or '-'");
+        }
+        final Optional<MetadataIndex> existing = metadataIndexRepository.findByUserIdAndKey(userId, key);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        final Set<String> indexedKeys = versionRepository.getMetadataIndexKeys();
+        if (!indexedKeys.contains(key) && indexedKeys.size() >= metadataQueryProperties.getMaxIndexes()) {
+            throw new InvalidMetadataIndexException(userId, key, "the maximum number of indexed keys is reached");
+        }
+        final MetadataIndex index;
+        try {
+            index = metadataIndexRepository.insert(MetadataIndex.builder()
+                    .userId(userId)
+                    .key(key)
+                    .createdAt(new Date())
+                    .build());
+        } catch (DuplicateKeyException e) {
+            return metadataIndexRepository.findByUserIdAndKey(userId, key).orElseThrow(() -> e);
+        }
+        try {
+            versionRepository.ensureMetadataIndex(key);
+        } catch (RuntimeException e) {
+            metadataIndexRepository.delete(index);
+            throw e;
+        }
+        return index;
+    }
+
+    /**
+     * Stops indexing the versions on a metadata key for the owner, dropping the index when no other owner uses it. The
+     * index is ensured again when the key was declared while it was dropped.
+     */
+    public void deleteIndex(String userId, String key) {
+        final MetadataIndex index = metadataIndexRepository.findByUserIdAndKey(userId, key)
+                .orElseThrow(() -> new MetadataIndexNotFoundException(userId, key));
+        metadataIndexRepository.delete(index);
+        if (metadataIndexRepository.countByKey(key) == 0) {
+            versionRepository.dropMetadataIndex(key);
+            if (metadataIndexRepository.countByKey(key) > 0) {
+                versionRepository.ensureMetadataIndex(key);
+            }
+        }
+    }
+
+    /**
+     * Checks the keys and values of the conditions. A key has a single equality condition, or range conditions with
+     * distinct operators, and the values are scalars so that they cannot be read as query operators.
+     */
+    private static void validate(List<MetadataCondition> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            throw new InvalidMetadataQueryException("at least one condition is required");
+        }
+        for (MetadataCondition condition : conditions) {
+            if (condition.getKey() == null || !KEY_PATTERN.matcher(condition.getKey()).matches()) {
+                throw new InvalidMetadataQueryException("invalid key '" + condition.getKey() + "'");
+            }
+            if (condition.getOperator() == null || condition.getValues() == null || condition.getValues().isEmpty()) {
+                throw new InvalidMetadataQueryException("condition on '" + condition.getKey() + "' needs an operator and values");
+            }
+            final int maxValues = condition.getOperator().isMultiValued() ? MAX_IN_VALUES : 1;
+            if (condition.getValues().size() > maxValues) {
+                throw new InvalidMetadataQueryException("condition on '" + condition.getKey() + "' has more than " + maxValues + " values");
+            }
+            if (!condition.getValues().stream().allMatch(MetadataQueryManager::isScalar)) {
+                throw new InvalidMetadataQueryException("condition on '" + condition.getKey() + "' has values which are not strings, numbers or booleans");
+            }
+        }
+        final Map<String, List<MetadataOperator>> operators = conditions.stream().collect(Collectors.groupingBy(
+                MetadataCondition::getKey,
+                Collectors.mapping(MetadataCondition::getOperator, Collectors.toList())
+        ));
+        operators.forEach((key, keyOperators) -> {
+            final boolean equality = keyOperators.contains(MetadataOperator.EQ) || keyOperators.contains(MetadataOperator.IN);
+            if (equality && keyOperators.size() > 1 || keyOperators.size() != keyOperators.stream().distinct().count()) {
+                throw new InvalidMetadataQueryException("conflicting conditions on '" + key + "'");
+            }
+        });
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.BlobStoreProperties;
+import io.barracks.componentservice.manager.exception.InvalidPartitionMoveException;
+import io.barracks.componentservice.manager.exception.PartitionMoveInProgressException;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.LegacyGridFsBlobStore;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves the versions of an owner to another partition while the service keeps running:
+ * <ol>
+ * <li>the version documents are copied to the new partition while the owner keeps using the current one,</li>
+ * <li>the owner is routed to the new partition, still reading from the previous one the versions not copied yet,</li>
+ * <li>once every instance reloaded the routes, the versions created meanwhile in the previous partition are copied,
+ * the binaries kept in the GridFS store of the previous partition are moved to the one of the new partition, and the
+ * documents of the previous partition are deleted.</li>
+ * </ol>
+ * Each step can be run again, so a move that failed is resumed by asking for the same move again.
+ */
+@Service
+public class PartitionManager {
+    private final PartitionRouter partitionRouter;
+    private final VersionRepository versionRepository;
+    private final BlobStores blobStores;
+    private final BlobMover blobMover;
+    private final TaskScheduler taskScheduler;
+    private final BlobStoreProperties.Migration properties;
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    public PartitionManager(
+            PartitionRouter partitionRouter,
+            VersionRepository versionRepository,
+            BlobStores blobStores,
+            BlobMover blobMover,
+            TaskScheduler taskScheduler,
+            BlobStoreProperties blobStoreProperties
+    ) {
+        this.partitionRouter = partitionRouter;
+        this.versionRepository = versionRepository;
+        this.blobStores = blobStores;
+        this.blobMover = blobMover;
+        this.taskScheduler = taskScheduler;
+        this.properties = blobStoreProperties.getMigration();
+    }
+
+    public PartitionRoute getRoute(String userId) {
+        return partitionRouter.getRoute(userId).orElseGet(() -> PartitionRoute.builder()
+                .userId(userId)
+                .partition(partitionRouter.getDefaultPartition().getName())
+                .build());
+    }
+
+    public synchronized PartitionRoute moveOwner(String userId, String partition) {
+        if (!partitionRouter.getPartition(partition).isPresent()) {
+            throw new InvalidPartitionMoveException(userId, partition, "unknown partition");
+        }
+        PartitionRoute route = getRoute(userId);
+        if (route.isMoving() && !route.getDestination().equals(partition) || running.contains(userId)) {
+            throw new PartitionMoveInProgressException(route);
+        }
+        if (!route.isMoving()) {
+            if (route.getPartition().equals(partition)) {
+                throw new InvalidPartitionMoveException(userId, partition, "owner already in partition");
+            }
+            route = saveRoute(userId, route.getPartition(), null, partition);
+        }
+        running.add(userId);
+        if (route.getNext() != null) {
+            scheduleCopy(userId);
+        } else {
+            scheduleCompletion(userId);
+        }
+        return route;
+    }
+
+    /**
+     * Waits for the instances still using the previous route to reload the moving one, so that every instance writes
+     * the versions to both partitions before they are copied, and no change is lost when the copy keeps the versions
+     * already in the next partition.
+     */
+    private void scheduleCopy(String userId) {
+        taskScheduler.schedule(() -> copy(userId), new Date(System.currentTimeMillis() + 2 * partitionRouter.getRefreshInterval()));
+    }
+
+    private void copy(String userId) {
+        try {
+            final PartitionRoute route = getRoute(userId);
+            versionRepository.copyVersions(userId, route.getPartition(), route.getNext());
+            saveRoute(userId, route.getNext(), route.getPartition(), null);
+            scheduleCompletion(userId);
+        } catch (RuntimeException e) {
+            running.remove(userId);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the instances still using the previous route to reload it, so that no version is created in the
+     * previous partition anymore.
+     */
+    private void scheduleCompletion(String userId) {
+        taskScheduler.schedule(() -> complete(userId), new Date(System.currentTimeMillis() + 2 * partitionRouter.getRefreshInterval()));
+    }
+
+    private void complete(String userId) {
+        try {
+            final PartitionRoute route = getRoute(userId);
+            versionRepository.copyVersions(userId, route.getPrevious(), route.getPartition());
+            if (moveBlobs(userId, partition(route.getPrevious()), partition(route.getPartition()))) {
+                versionRepository.deleteVersions(userId, route.getPrevious());
+                saveRoute(userId, route.getPartition(), null, null);
+            }
+        } finally {
+            running.remove(userId);
+        }
+    }
+
+    /**
+     * Moves the binaries the owner keeps in the GridFS stores of the previous partition, which would otherwise be left
+     * behind, or lost for the versions stored before the blob stores, along with the previous partition.
+     *
+     * @return whether every binary was moved.
+     */
+    private boolean moveBlobs(String userId, Partition previous, Partition partition) {
+        final BlobStore target = store(partition.getBlobStore());
+        boolean moved = moveBlobs(userId, partition, store(previous.getBlobStore()), target);
+        if (previous == partitionRouter.getDefaultPartition()) {
+            moved &= moveBlobs(userId, partition, store(LegacyGridFsBlobStore.NAME), target);
+        }
+        return moved;
+    }
+
+    private boolean moveBlobs(String userId, Partition partition, BlobStore source, BlobStore target) {
+        boolean moved = true;
+        String after = null;
+        List<BlobReference> batch;
+        do {
+            batch = versionRepository.getOwnerBlobs(userId, partition.getName(), source.getName(), after, properties.getBatchSize());
+            for (BlobReference blob : batch) {
+                try {
+                    moved &= blobMover.move(blob, source, target);
+                } catch (IOException | RuntimeException e) {
+                    moved = false;
+                }
+                after = blob.getDocumentId();
+            }
+        } while (batch.size() == properties.getBatchSize());
+        return moved;
+    }
+
+    private PartitionRoute saveRoute(String userId, String partition, String previous, String next) {
+        final PartitionRoute route = PartitionRoute.builder()
+                .userId(userId)
+                .partition(partition)
+                .previous(previous)
+                .next(next)
+                .updatedAt(new Date())
+                .build();
+        partitionRouter.saveRoute(route);
+        return route;
+    }
+
+    private Partition partition(String name) {
+        return partitionRouter.getPartition(name).orElseThrow(() -> new IllegalStateException("Unknown partition '" + name + "'"));
+    }
+
+    private BlobStore store(String name) {
+        return blobStores.get(name).orElseThrow(() -> new IllegalStateException("Unknown blob store '" + name + "'"));
+    }
+}
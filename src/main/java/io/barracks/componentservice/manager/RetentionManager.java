@@ -0,0 +1,212 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.RetentionProperties;
+import io.barracks.componentservice.manager.exception.InvalidRetentionPolicyException;
+import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.manager.exception.RetentionPolicyNotFoundException;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.RetentionPolicy;
+import io.barracks.componentservice.model.RetentionReport;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.PackageRepository;
+import io.barracks.componentservice.repository.RetentionPolicyRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Retention policies of the packages, and the periodic pass deleting the versions they no longer keep.
+ * <p>
+ * A pass applies the policies applied the longest time ago first, deleting a few versions of each package, the
+ * oldest first, and stops once it deleted the maximum number of versions, so that the packages with many expired
+ * versions are pruned over several passes. The versions are deleted as by their owner, their files being reclaimed
+ * by the {@link BlobReclaimer}; only the files no other version references anymore count as pruned bytes.
+ */
+@Service
+public class RetentionManager implements InitializingBean, DisposableBean {
+    static final String DEFAULT_RELEASED_KEY = "released";
+    private static final Pattern KEY_PATTERN = Pattern.compile("^[A-Za-z0-9_-]{1,64}$");
+
+    private final RetentionPolicyRepository retentionPolicyRepository;
+    private final PackageRepository packageRepository;
+    private final VersionRepository versionRepository;
+    private final VersionManager versionManager;
+    private final TaskScheduler taskScheduler;
+    private final RetentionProperties properties;
+    private final AtomicLong prunedVersions = new AtomicLong();
+    private final AtomicLong prunedBytes = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private ScheduledFuture<?> retentionTask;
+
+    public RetentionManager(
+            RetentionPolicyRepository retentionPolicyRepository,
+            PackageRepository packageRepository,
+            VersionRepository versionRepository,
+            VersionManager versionManager,
+            TaskScheduler taskScheduler,
+            RetentionProperties retentionProperties
+    ) {
+        this.retentionPolicyRepository = retentionPolicyRepository;
+        this.packageRepository = packageRepository;
+        this.versionRepository = versionRepository;
+        this.versionManager = versionManager;
+        this.taskScheduler = taskScheduler;
+        this.properties = retentionProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.isEnabled()) {
+            retentionTask = taskScheduler.scheduleWithFixedDelay(this::prune, properties.getInterval());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (retentionTask != null) {
+            retentionTask.cancel(false);
+        }
+    }
+
+    /**
+     * Sets the policy of a package, the versions marked with the {@value #DEFAULT_RELEASED_KEY} metadata key being
+     * kept when the policy names no other key.
+     */
+    public RetentionPolicy setPolicy(RetentionPolicy policy) {
+        if (policy.getKeepLast() == null && policy.getKeepDays() == null) {
+            throw new InvalidRetentionPolicyException(policy.getUserId(), policy.getPackageRef(), "keepLast or keepDays is required");
+        }
+        if (policy.getKeepLast() != null && policy.getKeepLast() < 1 || policy.getKeepDays() != null && policy.getKeepDays() < 1) {
+            throw new InvalidRetentionPolicyException(policy.getUserId(), policy.getPackageRef(), "keepLast and keepDays must be positive");
+        }
+        if (policy.getReleasedKey() != null && !KEY_PATTERN.matcher(policy.getReleasedKey()).matches()) {
+            throw new InvalidRetentionPolicyException(policy.getUserId(), policy.getPackageRef(), "keys are made of 1 to 64 letters, digits, '_' or '-'");
+        }
+        packageRepository.getPackage(policy.getUserId(), policy.getPackageRef()).orElseThrow(() ->
+                new PackageNotFoundException(policy.getUserId(), policy.getPackageRef())
+        );
+        return retentionPolicyRepository.savePolicy(policy.toBuilder()
+                .releasedKey(policy.getReleasedKey() == null ? DEFAULT_RELEASED_KEY : policy.getReleasedKey())
+                .createdAt(new Date())
+                .build());
+    }
+
+    public RetentionPolicy getPolicy(String userId, String packageRef) {
+        return retentionPolicyRepository.findByUserIdAndPackageRef(userId, packageRef).orElseThrow(() ->
+                new RetentionPolicyNotFoundException(userId, packageRef)
+        );
+    }
+
+    public void deletePolicy(String userId, String packageRef) {
+        retentionPolicyRepository.delete(getPolicy(userId, packageRef));
+    }
+
+    /**
+     * @return the versions deleted by the policies of the owner, with the policies.
+     */
+    public RetentionReport getReport(String userId) {
+        final List<RetentionPolicy> policies = retentionPolicyRepository.findByUserIdOrderByPackageRef(userId);
+        return RetentionReport.builder()
+                .prunedVersions(policies.stream().mapToLong(RetentionPolicy::getPrunedVersions).sum())
+                .prunedBytes(policies.stream().mapToLong(RetentionPolicy::getPrunedBytes).sum())
+                .policies(policies)
+                .build();
+    }
+
+    public long getPrunedVersionCount() {
+        return prunedVersions.get();
+    }
+
+    public long getPrunedBytes() {
+        return prunedBytes.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    void prune() {
+        final List<RetentionPolicy> policies = retentionPolicyRepository.findAll(
+                new PageRequest(0, properties.getPoliciesPerPass(), new Sort(Sort.Direction.ASC, "lastPrunedAt"))
+        ).getContent();
+        int remaining = properties.getMaxDeletions();
+        for (RetentionPolicy policy : policies) {
+            if (remaining <= 0) {
+                return;
+            }
+            remaining -= prune(policy, Math.min(remaining, properties.getBatchSize()));
+        }
+    }
+
+    /**
+     * @return the number of versions the pass spent on the policy, deleted or not.
+     */
+    private int prune(RetentionPolicy policy, int limit) {
+        final long now = System.currentTimeMillis();
+        final List<Version> versions;
+        try {
+            versions = versionRepository.getExpiredVersions(
+                    policy.getUserId(),
+                    policy.getPackageRef(),
+                    policy.getKeepLast() == null ? 0 : policy.getKeepLast(),
+                    policy.getKeepDays() == null ? null : new Date(now - TimeUnit.DAYS.toMillis(policy.getKeepDays())),
+                    policy.getReleasedKey(),
+                    limit
+            );
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            return 0;
+        }
+        long deletedVersions = 0L;
+        long deletedBytes = 0L;
+        for (Version version : versions) {
+            try {
+                deletedBytes += versionManager.pruneVersion(version.getUserId(), version.getPackageRef(), version.getId());
+                deletedVersions++;
+            } catch (VersionNotFoundException e) {
+                // Deleted in the meantime, by its owner or by another instance
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+        retentionPolicyRepository.recordPruning(policy.getId(), deletedVersions, deletedBytes, new Date(now));
+        prunedVersions.addAndGet(deletedVersions);
+        prunedBytes.addAndGet(deletedBytes);
+        return versions.size();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.UsageProperties;
+import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.StorageUsage;
+import io.barracks.componentservice.model.UsageReport;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.PackageRepository;
+import io.barracks.componentservice.repository.StorageUsageRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of versions and size of the files of every owner and package, kept in counters incremented on each change of
+ * the versions rather than computed from the versions on each request, and the quotas enforced with them.
+ * <p>
+ * The counters of a change that could not be recorded, or of a change made while its package was reconciled, drift
+ * from the versions. A periodic pass reconciles a few packages at a time, walking through all of them over several
+ * passes, then the owners of these packages with the sum of their package counters.
+ */
+@Service
+public class StorageUsageManager implements InitializingBean, DisposableBean {
+    private final StorageUsageRepository storageUsageRepository;
+    private final PackageRepository packageRepository;
+    private final VersionRepository versionRepository;
+    private final TaskScheduler taskScheduler;
+    private final UsageProperties properties;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong reconciledPackages = new AtomicLong();
+    private final AtomicLong corrected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private ScheduledFuture<?> reconciliationTask;
+    private Package lastReconciled;
+
+    public StorageUsageManager(
+            StorageUsageRepository storageUsageRepository,
+            PackageRepository packageRepository,
+            VersionRepository versionRepository,
+            TaskScheduler taskScheduler,
+            UsageProperties usageProperties
+    ) {
+        this.storageUsageRepository = storageUsageRepository;
+        this.packageRepository = packageRepository;
+        this.versionRepository = versionRepository;
+        this.taskScheduler = taskScheduler;
+        this.properties = usageProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.isReconciliationEnabled()) {
+            reconciliationTask = taskScheduler.scheduleWithFixedDelay(this::reconcile, properties.getReconciliationInterval());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (reconciliationTask != null) {
+            reconciliationTask.cancel(false);
+        }
+    }
+
+    /**
+     * Checks that a new version of the given size fits in the quotas of the package and of its owner. Uploads running
+     * at the same time are not counted yet, so that they may exceed the quotas together.
+     *
+     * @param bytes size of the new version, or 0 when it is not known.
+     * @throws StorageQuotaExceededException when the version does not fit.
+     */
+    public void checkQuota(String userId, String packageRef, long bytes) {
+        checkQuota(userId, null, getOwnerQuota(userId), 1L, bytes);
+        checkQuota(userId, packageRef, properties.getPackageQuota(), 1L, bytes);
+    }
+
+    /**
+     * Checks that a version just stored, and not counted yet, fits in the byte quotas of its package and of its owner.
+     * Uploads of unknown length can only be checked this way, once their file was received.
+     *
+     * @throws StorageQuotaExceededException when the version does not fit.
+     */
+    public void checkStoredQuota(Version version) {
+        checkQuota(version.getUserId(), null, getOwnerQuota(version.getUserId()), 0L, version.getLength());
+        checkQuota(version.getUserId(), version.getPackageRef(), properties.getPackageQuota(), 0L, version.getLength());
+    }
+
+    /**
+     * Adds a created version to the counters. A failure is left to the reconciliation rather than failing the creation.
+     */
+    public void recordCreation(Version version) {
+        recordChange(version.getUserId(), version.getPackageRef(), 1L, version.getLength());
+    }
+
+    /**
+     * Removes a deleted version from the counters. A failure is left to the reconciliation rather than failing the
+     * deletion.
+     */
+    public void recordDeletion(String userId, String packageRef, long length) {
+        recordChange(userId, packageRef, -1L, -length);
+    }
+
+    public UsageReport getReport(String userId) {
+        final UsageProperties.Quota quota = getOwnerQuota(userId);
+        final StorageUsage usage = storageUsageRepository.findByUserIdAndPackageRefIsNull(userId)
+                .orElse(StorageUsage.builder().userId(userId).build());
+        return UsageReport.builder()
+                .versionCount(usage.getVersionCount())
+                .totalBytes(usage.getTotalBytes())
+                .maxVersions(quota.getMaxVersions() > 0 ? quota.getMaxVersions() : null)
+                .maxBytes(quota.getMaxBytes() > 0 ? quota.getMaxBytes() : null)
+                .packages(storageUsageRepository.findByUserIdAndPackageRefIsNotNullOrderByPackageRef(userId))
+                .build();
+    }
+
+    public StorageUsage getPackageUsage(String userId, String packageRef) {
+        return storageUsageRepository.findByUserIdAndPackageRef(userId, packageRef).orElseGet(() -> {
+            packageRepository.getPackage(userId, packageRef).orElseThrow(() -> new PackageNotFoundException(userId, packageRef));
+            return StorageUsage.builder().userId(userId).packageRef(packageRef).build();
+        });
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getReconciledPackageCount() {
+        return reconciledPackages.get();
+    }
+
+    public long getCorrectedCount() {
+        return corrected.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Reconciles the packages following the ones of the previous pass, then their owners. The pass reaching the last
+     * package starts the walk over.
+     */
+    synchronized void reconcile() {
+        final List<Package> packages;
+        try {
+            packages = packageRepository.getPackages(
+                    lastReconciled == null ? null : lastReconciled.getUserId(),
+                    lastReconciled == null ? null : lastReconciled.getReference(),
+                    properties.getPackagesPerPass()
+            );
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            return;
+        }
+        lastReconciled = packages.size() < properties.getPackagesPerPass() ? null : packages.get(packages.size() - 1);
+        final Set<String> owners = new LinkedHashSet<>();
+        for (Package aPackage : packages) {
+            try {
+                final StorageUsage measured = versionRepository.measureUsage(aPackage.getUserId(), aPackage.getReference());
+                reconcile(
+                        aPackage.getUserId(),
+                        aPackage.getReference(),
+                        storageUsageRepository.findByUserIdAndPackageRef(aPackage.getUserId(), aPackage.getReference()),
+                        measured.getVersionCount(),
+                        measured.getTotalBytes()
+                );
+                reconciledPackages.incrementAndGet();
+                owners.add(aPackage.getUserId());
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+        for (String owner : owners) {
+            try {
+                // The owner is read before its packages, so that a change made in between fails the update
+                final Optional<StorageUsage> counted = storageUsageRepository.findByUserIdAndPackageRefIsNull(owner);
+                final List<StorageUsage> usages = storageUsageRepository.findByUserIdAndPackageRefIsNotNullOrderByPackageRef(owner);
+                reconcile(
+                        owner,
+                        null,
+                        counted,
+                        usages.stream().mapToLong(StorageUsage::getVersionCount).sum(),
+                        usages.stream().mapToLong(StorageUsage::getTotalBytes).sum()
+                );
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    private void reconcile(String userId, String packageRef, Optional<StorageUsage> counted, long versionCount, long totalBytes) {
+        final long expectedVersions = counted.map(StorageUsage::getVersionCount).orElse(0L);
+        final long expectedBytes = counted.map(StorageUsage::getTotalBytes).orElse(0L);
+        final boolean replaced = storageUsageRepository.reconcile(userId, packageRef, expectedVersions, expectedBytes, versionCount, totalBytes, new Date());
+        if (replaced && (expectedVersions != versionCount || expectedBytes != totalBytes)) {
+            corrected.incrementAndGet();
+        }
+    }
+
+    private void checkQuota(String userId, String packageRef, UsageProperties.Quota quota, long versions, long bytes) {
+        if ((versions == 0L || quota.getMaxVersions() <= 0) && quota.getMaxBytes() <= 0) {
+            return;
+        }
+        final StorageUsage usage = (packageRef == null
+                ? storageUsageRepository.findByUserIdAndPackageRefIsNull(userId)
+                : storageUsageRepository.findByUserIdAndPackageRef(userId, packageRef)
+        ).orElse(StorageUsage.builder().build());
+        if (quota.getMaxVersions() > 0 && usage.getVersionCount() + versions > quota.getMaxVersions()) {
+            rejected.incrementAndGet();
+            throw new StorageQuotaExceededException(userId, packageRef, "at most " + quota.getMaxVersions() + " versions are allowed");
+        }
+        if (quota.getMaxBytes() > 0 && usage.getTotalBytes() + bytes > quota.getMaxBytes()) {
+            rejected.incrementAndGet();
+            throw new StorageQuotaExceededException(userId, packageRef, "at most " + quota.getMaxBytes() + " bytes are allowed");
+        }
+    }
+
+    private UsageProperties.Quota getOwnerQuota(String userId) {
+        return properties.getOwners().getOrDefault(userId, properties.getOwnerQuota());
+    }
+
+    private void recordChange(String userId, String packageRef, long versions, long bytes) {
+        try {
+            storageUsageRepository.recordChange(userId, packageRef, versions, bytes);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.DownloadProperties;
+import io.barracks.componentservice.config.TieringProperties;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the frequently downloaded versions in the hot store and moves the others to the cold store.
+ * <p>
+ * Access scores use forward decay: a download at time {@code t} adds {@code 2^((t - epoch) / halfLife)} to the score
+ * of its version, so that comparing a stored score with {@code threshold * 2^((now - epoch) / halfLife)} is the same as
+ * comparing the exponentially decayed number of downloads with the threshold. Scores then only ever need to be
+ * incremented, which lets them be written with the download counts by {@link DownloadCounters}, that must be enabled.
+ * <p>
+ * Versions are demoted by a periodic pass, while a download of a cold version promotes it in the background and is
+ * served from the cold store in the meantime. Promotions run on their own bounded executor, as each one copies a whole
+ * binary, and are dropped when it is full, the next download of the version promoting it again.
+ */
+@Service
+public class TieringManager implements InitializingBean, DisposableBean {
+    private final VersionRepository versionRepository;
+    private final BlobStores blobStores;
+    private final BlobMover blobMover;
+    private final TaskScheduler taskScheduler;
+    private final TaskExecutor promotionExecutor;
+    private final TieringProperties properties;
+    private final DownloadProperties downloadProperties;
+    private final Set<VersionKey> promotions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong promoted = new AtomicLong();
+    private final AtomicLong demoted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private BlobStore hotStore;
+    private BlobStore coldStore;
+    private ScheduledFuture<?> demotionTask;
+
+    public TieringManager(
+            VersionRepository versionRepository,
+            BlobStores blobStores,
+            BlobMover blobMover,
+            TaskScheduler taskScheduler,
+            @Qualifier("tieringPromotionExecutor") TaskExecutor promotionExecutor,
+            TieringProperties tieringProperties,
+            DownloadProperties downloadProperties
+    ) {
+        this.versionRepository = versionRepository;
+        this.blobStores = blobStores;
+        this.blobMover = blobMover;
+        this.taskScheduler = taskScheduler;
+        this.promotionExecutor = promotionExecutor;
+        this.properties = tieringProperties;
+        this.downloadProperties = downloadProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        hotStore = properties.getHotStore() == null ? blobStores.getWriteStore() : store(properties.getHotStore());
+        coldStore = store(properties.getColdStore());
+        if (hotStore == coldStore) {
+            throw new IllegalArgumentException("The hot and cold stores must be different");
+        }
+        if (!downloadProperties.isEnabled()) {
+            throw new IllegalArgumentException("The downloads must be counted, as the access scores are written with them");
+        }
+        demotionTask = taskScheduler.scheduleWithFixedDelay(this::demote, properties.getInterval());
+    }
+
+    @Override
+    public void destroy() {
+        if (demotionTask != null) {
+            demotionTask.cancel(false);
+        }
+    }
+
+    /**
+     * Promotes the given version if it is in the cold store. Its download is added to its access score by the
+     * download counters.
+     */
+    public void recordAccess(Version version) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        final VersionKey key = VersionKey.of(version);
+        if (version.getContent() != null
+                && version.getContent().getStore().filter(coldStore.getName()::equals).isPresent()
+                && promotions.add(key)) {
+            try {
+                promotionExecutor.execute(() -> promote(key));
+            } catch (RejectedExecutionException e) {
+                promotions.remove(key);
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    public long getPromotedCount() {
+        return promoted.get();
+    }
+
+    public long getDemotedCount() {
+        return demoted.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the weight a download made at the given time adds to the access score of its version, or 0 when the
+     * tiering is disabled.
+     */
+    public double getAccessWeight(long time) {
+        return properties.isEnabled() ? weight(time) : 0.0;
+    }
+
+    void demote() {
+        final long now = System.currentTimeMillis();
+        final List<BlobReference> blobs = versionRepository.getColdBlobs(
+                hotStore.getName(),
+                properties.getDemotionScore() * weight(now),
+                new Date(now - properties.getMinAge()),
+                properties.getBatchSize()
+        );
+        blobs.forEach(blob -> move(blob, hotStore, coldStore, demoted));
+    }
+
+    private void promote(VersionKey key) {
+        try {
+            versionRepository.getBlob(key.getUserId(), key.getPackageRef(), key.getVersionId())
+                    .filter(blob -> coldStore.getName().equals(blob.getStore()))
+                    .ifPresent(blob -> move(blob, coldStore, hotStore, promoted));
+        } finally {
+            promotions.remove(key);
+        }
+    }
+
+    private void move(BlobReference blob, BlobStore source, BlobStore target, AtomicLong counter) {
+        try {
+            if (blobMover.move(blob, source, target)) {
+                counter.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private double weight(long time) {
+        return Math.pow(2, (double) (time - properties.getEpoch()) / properties.getHalfLife());
+    }
+
+    private BlobStore store(String name) {
+        return blobStores.get(name).orElseThrow(() -> new IllegalArgumentException("Unknown blob store '" + name + "'"));
+    }
+}
@@ -24,11 +24,16 @@
 
 package io.barracks.componentservice.manager;
 
+import io.barracks.componentservice.manager.exception.InvalidVersionFieldException;
 import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
 import io.barracks.componentservice.manager.exception.VersionNotFoundException;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
 import io.barracks.componentservice.repository.PackageRepository;
 import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
 import io.barracks.componentservice.manager.exception.VersionCreationFailedException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -36,25 +41,86 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class VersionManager {
     private final PackageRepository packageRepository;
     private final VersionRepository versionRepository;
+    private final TieringManager tieringManager;
+    private final BlobReclaimer blobReclaimer;
+    private final StorageUsageManager storageUsageManager;
+    private final VersionMetadataValidator versionMetadataValidator;
 
     @Autowired
-    public VersionManager(PackageRepository packageRepository, VersionRepository versionRepository) {
+    public VersionManager(
+            PackageRepository packageRepository,
+            VersionRepository versionRepository,
+            TieringManager tieringManager,
+            BlobReclaimer blobReclaimer,
+            StorageUsageManager storageUsageManager,
+            VersionMetadataValidator versionMetadataValidator
+    ) {
         this.packageRepository = packageRepository;
         this.versionRepository = versionRepository;
+        this.tieringManager = tieringManager;
+        this.blobReclaimer = blobReclaimer;
+        this.storageUsageManager = storageUsageManager;
+        this.versionMetadataValidator = versionMetadataValidator;
     }
 
+    /**
+     * Creates a version, then checks its length against the byte quotas, as the length of an upload is not always known
+     * before its file is received. A version exceeding them is deleted again.
+     *
+     * @throws StorageQuotaExceededException when the version does not fit in the quotas.
+     */
     public Version createVersion(
             Version version,
             InputStream inputStream) {
+        versionMetadataValidator.validate(version.getMetadata());
         packageRepository.getPackage(version.getUserId(), version.getPackageRef()).orElseThrow(() ->
                 new VersionCreationFailedException(version, new PackageNotFoundException(version.getUserId(), version.getPackageRef()))
         );
-        return versionRepository.createVersion(version, inputStream);
+        final Version created = versionRepository.createVersion(version, inputStream);
+        try {
+            storageUsageManager.checkStoredQuota(created);
+        } catch (StorageQuotaExceededException e) {
+            removeVersion(created.getUserId(), created.getPackageRef(), created.getId());
+            throw e;
+        }
+        storageUsageManager.recordCreation(created);
+        return created;
+    }
+
+    /**
+     * Copies a version to another package of its owner, sharing its binary with the copy.
+     *
+     * @param copy the target package and the identifier, name, description and metadata of the copy, the ones of the
+     *             source being kept for the null ones.
+     * @throws StorageQuotaExceededException when the copy does not fit in the quotas of the target package or its owner.
+     */
+    public Version copyVersion(String packageRef, String id, Version copy) {
+        if (copy.getMetadata() != null) {
+            versionMetadataValidator.validate(copy.getMetadata());
+        }
+        final Version source = getVersion(copy.getUserId(), packageRef, id);
+        storageUsageManager.checkQuota(copy.getUserId(), copy.getPackageRef(), source.getLength());
+        packageRepository.getPackage(copy.getUserId(), copy.getPackageRef()).orElseThrow(() ->
+                new VersionCreationFailedException(copy, new PackageNotFoundException(copy.getUserId(), copy.getPackageRef()))
+        );
+        final Version created = versionRepository.copyVersion(packageRef, id, copy).orElseThrow(() ->
+                new VersionNotFoundException(copy.getUserId(), packageRef, id)
+        );
+        storageUsageManager.recordCreation(created);
+        return created;
     }
 
     public Version getVersion(String userId, String packageRef, String id) {
@@ -63,7 +129,102 @@ public class VersionManager {
         );
     }
 
+    /**
+     * Replaces the name, description and metadata given in the version, leaving the null ones as they are.
+     *
+     * @param revision the revision of the version the changes were made from, or null to apply them to the latest one.
+     * @throws VersionModifiedException when the version was updated since the given revision.
+     */
+    public Version updateVersion(Version changes, Long revision) {
+        if (changes.getMetadata() != null) {
+            versionMetadataValidator.validate(changes.getMetadata());
+        }
+        return versionRepository.updateVersion(changes, revision).orElseGet(() -> {
+            getVersion(changes.getUserId(), changes.getPackageRef(), changes.getId());
+            throw new VersionModifiedException(changes.getUserId(), changes.getPackageRef(), changes.getId());
+        });
+    }
+
+    /**
+     * Deletes a version at once, its binary being deleted in the background unless another version shares it.
+     */
+    public void deleteVersion(String userId, String packageRef, String id) {
+        deleteVersionBlobs(userId, packageRef, id);
+    }
+
+    /**
+     * Deletes a version as {@link #deleteVersion(String, String, String)} does.
+     *
+     * @return the size of the binaries no other version references anymore, that is the ones being reclaimed.
+     */
+    public long pruneVersion(String userId, String packageRef, String id) {
+        long reclaimed = 0L;
+        final Set<String> counted = new HashSet<>();
+        for (BlobReference blob : deleteVersionBlobs(userId, packageRef, id)) {
+            if (counted.add(blob.getStore() + '/' + blob.getId()) && versionRepository.countBlobReferences(blob.getStore(), blob.getId()) == 0) {
+                reclaimed += blob.getLength();
+            }
+        }
+        return reclaimed;
+    }
+
+    public Version getVersionFile(String userId, String packageRef, String id) {
+        final Version version = getVersion(userId, packageRef, id);
+        tieringManager.recordAccess(version);
+        return version;
+    }
+
     public Page<Version> getVersions(String userId, String packageRef, Pageable pageable) {
         return versionRepository.getVersions(userId, packageRef, pageable);
     }
+
+    /**
+     * Lists the versions of a package with the requested fields only, or the fields of {@link VersionField#SUMMARY}
+     * when none is.
+     */
+    public Page<Map<String, Object>> getVersionFields(String userId, String packageRef, List<String> fields, Pageable pageable) {
+        return versionRepository.getVersionFields(userId, packageRef, toVersionFields(fields), pageable);
+    }
+
+    static Collection<VersionField> toVersionFields(List<String> properties) {
+        if (properties == null || properties.isEmpty()) {
+            return VersionField.SUMMARY;
+        }
+        final Set<VersionField> fields = new LinkedHashSet<>();
+        for (String property : properties) {
+            fields.add(VersionField.fromProperty(property).orElseThrow(() -> new InvalidVersionFieldException(property)));
+        }
+        return fields;
+    }
+
+    /**
+     * Queues the binary of the version for reclamation before removing the version, so that the binary is not left
+     * behind when the removal is interrupted. A binary queued for a version that is not removed is kept, as it is still
+     * referenced.
+     *
+     * @return the blobs the removed documents referenced, none when the version does not exist.
+     */
+    private List<BlobReference> deleteVersionBlobs(String userId, String packageRef, String id) {
+        final List<BlobReference> blobs = removeVersion(userId, packageRef, id);
+        if (blobs.isEmpty()) {
+            throw new VersionNotFoundException(userId, packageRef, id);
+        }
+        storageUsageManager.recordDeletion(userId, packageRef, blobs.get(0).getLength());
+        return blobs;
+    }
+
+    private List<BlobReference> removeVersion(String userId, String packageRef, String id) {
+        final Optional<BlobReference> blob = versionRepository.getBlob(userId, packageRef, id);
+        if (!blob.isPresent()) {
+            return Collections.emptyList();
+        }
+        blobReclaimer.queue(blob.get());
+        final List<BlobReference> blobs = versionRepository.deleteVersion(userId, packageRef, id);
+        blobs.stream().filter(removed -> !isSameBlob(removed, blob.get())).forEach(blobReclaimer::queue);
+        return blobs;
+    }
+
+    static boolean isSameBlob(BlobReference blob, BlobReference other) {
+        return blob.getStore().equals(other.getStore()) && blob.getId().equals(other.getId());
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import com.mongodb.BasicDBObject;
+import io.barracks.componentservice.manager.exception.InvalidVersionMetadataException;
+import org.bson.BasicBSONEncoder;
+
+import java.util.Map;
+
+/**
+ * Checks the free-form metadata of the versions at upload, so that it is stored and served as is afterwards: it must
+ * hold JSON values only, with keys Mongo accepts, and stay within the size and depth limits.
+ */
+public class VersionMetadataValidator {
+    private final int maxBytes;
+    private final int maxDepth;
+
+    public VersionMetadataValidator(int maxBytes, int maxDepth) {
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @throws InvalidVersionMetadataException if the metadata cannot be stored as is.
+     */
+    public void validate(Map<String, ?> metadata) {
+        if (metadata == null) {
+            return;
+        }
+        validateValue(metadata, 1);
+        final int size = new BasicBSONEncoder().encode(new BasicDBObject(metadata)).length;
+        if (size > maxBytes) {
+            throw new InvalidVersionMetadataException("it takes " + size + " bytes, more than the " + maxBytes + " allowed");
+        }
+    }
+
+    private void validateValue(Object value, int depth) {
+        if (value instanceof Map || value instanceof Iterable) {
+            if (depth > maxDepth) {
+                throw new InvalidVersionMetadataException("it nests more than " + maxDepth + " objects and arrays");
+            }
+            if (value instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    validateKey(String.valueOf(entry.getKey()));
+                    validateValue(entry.getValue(), depth + 1);
+                }
+            } else {
+                for (Object element : (Iterable<?>) value) {
+                    validateValue(element, depth + 1);
+                }
+            }
+        } else if (!(value == null
+                || value instanceof String
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Double
+                || value instanceof Boolean)) {
+            throw new InvalidVersionMetadataException("'" + value + "' is not a supported value");
+        }
+    }
+
+    private static void validateKey(String key) {
+        if (key.isEmpty() || key.startsWith("$") || key.indexOf('.') >= 0 || key.indexOf('\0') >= 0) {
+            throw new InvalidVersionMetadataException("'" + key + "' is not a valid key");
+        }
+    }
+}
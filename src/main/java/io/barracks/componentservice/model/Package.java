@@ -28,17 +28,19 @@ import com.fasterxml.jackson.annotation.*;
 import lombok.*;
 import org.hibernate.validator.constraints.NotBlank;
 import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.util.StringUtils;
 
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
+import java.util.Date;
 
 @Builder(toBuilder = true)
-@AllArgsConstructor(access = AccessLevel.PRIVATE, onConstructor = @__({@PersistenceConstructor}))
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 @Getter
-@EqualsAndHashCode
+@EqualsAndHashCode(exclude = "cachedAt")
 @ToString
 @JsonInclude(JsonInclude.Include.NON_ABSENT)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -60,6 +62,18 @@ public class Package {
     @Size(max = 1000)
     private final String description;
 
+    /**
+     * Time the package was read from the database, set only when it is served from the cache.
+     */
+    @JsonIgnore
+    @Transient
+    private final Date cachedAt;
+
+    @PersistenceConstructor
+    private Package(String userId, String reference, String name, String description) {
+        this(userId, reference, name, description, null);
+    }
+
     @JsonCreator
     public static Package fromJson(
             @JsonProperty("name") String name,
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Rules deciding which versions of a package are deleted in the background. A version is kept when it is one of the
+ * latest {@code keepLast} ones, when it was uploaded less than {@code keepDays} days ago, or when its metadata has
+ * {@code releasedKey} set to true, and deleted otherwise.
+ */
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE, onConstructor = @__({@PersistenceConstructor}))
+@Getter
+@EqualsAndHashCode
+@ToString
+@JsonInclude(JsonInclude.Include.NON_ABSENT)
+@Document(collection = "retentionPolicies")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_package_idx", def = "{'userId' : 1, 'packageRef' : 1}", unique = true),
+        @CompoundIndex(name = "pruned_idx", def = "{'lastPrunedAt' : 1}")
+})
+public class RetentionPolicy {
+    @Id
+    @JsonIgnore
+    private final String id;
+    @JsonIgnore
+    private final String userId;
+    private final String packageRef;
+    private final Integer keepLast;
+    private final Integer keepDays;
+    private final String releasedKey;
+    /**
+     * Number of versions deleted by the policy so far.
+     */
+    private final long prunedVersions;
+    /**
+     * Size of the files reclaimed by the policy so far, the files still shared with other versions being left out.
+     */
+    private final long prunedBytes;
+    private final Date createdAt;
+    private final Date lastPrunedAt;
+}
@@ -27,18 +27,19 @@ package io.barracks.componentservice.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-import java.io.InputStream;
+import java.util.Date;
 import java.util.Map;
 
 @Builder(toBuilder = true)
 @Getter
 @ToString
-@EqualsAndHashCode(exclude = "inputStream")
+@EqualsAndHashCode(exclude = {"content", "cachedAt"})
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(JsonInclude.Include.NON_ABSENT)
 public class Version {
@@ -51,7 +52,18 @@ public class Version {
     private final long length;
     private final String name;
     private final String description;
+    @JsonSerialize(using = MetadataSerializer.class)
     private final Map<String, ?> metadata;
+    /**
+     * Number of updates of the metadata since the version was created, sent as its entity tag.
+     */
     @JsonIgnore
-    private final InputStream inputStream;
+    private final long revision;
+    @JsonIgnore
+    private final BlobContent content;
+    /**
+     * Time the metadata was read from the database, set only when it is served from the cache.
+     */
+    @JsonIgnore
+    private final Date cachedAt;
 }
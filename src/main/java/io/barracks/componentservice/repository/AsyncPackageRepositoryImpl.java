@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ReadPreference;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.config.CircuitBreaker;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.repository.exception.DuplicatePackageException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Asynchronous access to the packages. Every call goes through the Mongo circuit breaker, and a package that cannot
+ * be read while Mongo is unavailable is served from the last known state. The lookups of packages known to not exist
+ * are answered by the {@link LookupFilter}, and all the reads by the {@link CatalogueReplica} when it is enabled.
+ */
+@Repository
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.ASYNC_MODE)
+public class AsyncPackageRepositoryImpl implements AsyncPackageRepository {
+    private static final String USER_ID_KEY = "userId";
+    private final MongoCollection<DBObject> collection;
+    private final MongoConverter converter;
+    private final ReadRouting readRouting;
+    private final CircuitBreaker circuitBreaker;
+    private final StaleCache<Package> staleCache;
+    private final LookupFilter lookupFilter;
+    private final SearchIndex searchIndex;
+    private final CatalogueReplica catalogueReplica;
+
+    public AsyncPackageRepositoryImpl(
+            MongoDatabase asyncMongoDatabase,
+            MongoOperations mongoOperations,
+            ReadRouting readRouting,
+            CircuitBreaker circuitBreaker,
+            StaleCache<Package> staleCache,
+            LookupFilter lookupFilter,
+            SearchIndex searchIndex,
+            CatalogueReplica catalogueReplica
+    ) {
+        this.collection = asyncMongoDatabase.getCollection(mongoOperations.getCollectionName(Package.class), DBObject.class);
+        this.converter = mongoOperations.getConverter();
+        this.readRouting = readRouting;
+        this.circuitBreaker = circuitBreaker;
+        this.staleCache = staleCache;
+        this.lookupFilter = lookupFilter;
+        this.searchIndex = searchIndex;
+        this.catalogueReplica = catalogueReplica;
+    }
+
+    @Override
+    public CompletableFuture<Package> createPackage(Package aPackage) {
+        final DBObject dbObject = new BasicDBObject();
+        converter.write(aPackage, dbObject);
+        return circuitBreaker.<Void>executeAsync(() -> {
+            final FutureCallback<Void> callback = new FutureCallback<>();
+            collection.insertOne(dbObject, callback);
+            return callback;
+        }).handle((result, throwable) -> {
+            if (throwable instanceof MongoWriteException
+                    && ((MongoWriteException) throwable).getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                throw new DuplicatePackageException(aPackage, throwable);
+            } else if (throwable != null) {
+                throw new CompletionException(throwable);
+            }
+            readRouting.recordWrite(aPackage.getUserId());
+            lookupFilter.recordPackage(aPackage.getUserId(), aPackage.getReference());
+            searchIndex.recordPackage(aPackage);
+            return aPackage;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<Package>> getPackage(String userId, String reference) {
+        final Optional<CatalogueReplica.Snapshot> catalogue = catalogueReplica.forOwner(userId);
+        if (catalogue.isPresent()) {
+            return CompletableFuture.completedFuture(catalogue.get().getPackage(userId, reference));
+        }
+        if (!readRouting.hasRecentWrite(userId) && !lookupFilter.mightContainPackage(userId, reference)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        final String key = StaleCache.key(userId, reference);
+        return circuitBreaker.executeAsync(() -> findPackage(userId, reference))
+                .thenApply(aPackage -> staleCache.update(key, aPackage))
+                .exceptionally(throwable -> staleCache.fallback(key, throwable, circuitBreaker));
+    }
+
+    @Override
+    public CompletableFuture<Page<Package>> getPackage(String userId, Pageable pageable) {
+        final Optional<Page<Package>> page = catalogueReplica.forOwner(userId).flatMap(catalogue -> catalogue.getPackages(userId, pageable));
+        if (page.isPresent()) {
+            return CompletableFuture.completedFuture(page.get());
+        }
+        return circuitBreaker.executeAsync(() -> findPackages(userId, pageable));
+    }
+
+    private CompletableFuture<Optional<Package>> findPackage(String userId, String reference) {
+        final Query query = query(where(USER_ID_KEY).is(userId).and("reference").is(reference));
+        final ReadPreference readPreference = readRouting.forLookup(userId);
+        return findFirst(toBson(query.getQueryObject()), readPreference)
+                .thenCompose(dbObject -> dbObject == null && !ReadPreference.primary().equals(readPreference)
+                        ? findFirst(toBson(query.getQueryObject()), ReadPreference.primary())
+                        : CompletableFuture.completedFuture(dbObject))
+                .thenApply(dbObject -> Optional.ofNullable(dbObject).map(this::toPackage));
+    }
+
+    private CompletableFuture<Page<Package>> findPackages(String userId, Pageable pageable) {
+        final MongoCollection<DBObject> collection = this.collection.withReadPreference(readRouting.forList(userId));
+        final Query query = query(where(USER_ID_KEY).is(userId)).with(pageable);
+
+        final FutureCallback<Long> count = new FutureCallback<>();
+        collection.count(toBson(query.getQueryObject()), new CountOptions().maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS), count);
+        final FutureCallback<List<DBObject>> content = new FutureCallback<>();
+        collection.find(toBson(query.getQueryObject()))
+                .sort(toBson(query.getSortObject()))
+                .skip(query.getSkip())
+                .limit(query.getLimit())
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>(), content);
+        return content.thenCombine(count, (dbObjects, total) -> new PageImpl<>(
+                dbObjects.stream().map(this::toPackage).collect(Collectors.toList()),
+                pageable,
+                total
+        ));
+    }
+
+    private CompletableFuture<DBObject> findFirst(BasicDBObject query, ReadPreference readPreference) {
+        final FutureCallback<DBObject> callback = new FutureCallback<>();
+        collection.withReadPreference(readPreference).find(query)
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                .first(callback);
+        return callback;
+    }
+
+    private Package toPackage(DBObject dbObject) {
+        return converter.read(Package.class, dbObject);
+    }
+
+    private static BasicDBObject toBson(DBObject dbObject) {
+        return dbObject == null ? null : new BasicDBObject(dbObject.toMap());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncVersionRepository {
+    CompletableFuture<Version> createVersion(Version version, InputStream file);
+
+    CompletableFuture<Optional<Version>> getVersion(String userId, String packageRef, String versionId);
+
+    /**
+     * Creates a version in the package of the given one, referencing the blob of a version of the same owner instead
+     * of storing its binary again. The identifier, name, description and metadata of the given version replace the
+     * ones of the source, unless they are null.
+     *
+     * @return the copy, or nothing when the source version does not exist.
+     */
+    CompletableFuture<Optional<Version>> copyVersion(String packageRef, String versionId, Version copy);
+
+    /**
+     * Replaces the name, description and metadata given in the version, leaving the null ones as they are, unless the
+     * version was updated since the given revision.
+     *
+     * @param revision the revision the changes apply to, or null to apply them to the latest one.
+     * @return the updated version, or nothing when it does not exist or is at another revision.
+     */
+    CompletableFuture<Optional<Version>> updateVersion(Version changes, Long revision);
+
+    /**
+     * Removes the document of a version from every partition it is read from, leaving its binary in its store.
+     *
+     * @return the blobs the removed documents referenced, none when the version does not exist.
+     */
+    CompletableFuture<List<BlobReference>> deleteVersion(String userId, String packageRef, String versionId);
+
+    /**
+     * Reads the blob of a version from the primary of the partitions it is read from.
+     */
+    CompletableFuture<Optional<BlobReference>> getBlob(String userId, String packageRef, String versionId);
+
+    CompletableFuture<Page<Version>> getVersions(String userId, String packageRef, Pageable pageable);
+
+    /**
+     * Lists the versions of a package, reading only the given fields.
+     *
+     * @return the values of the fields of each version, by property name.
+     */
+    CompletableFuture<Page<Map<String, Object>>> getVersionFields(String userId, String packageRef, Collection<VersionField> fields, Pageable pageable);
+}
@@ -0,0 +1,526 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ReadPreference;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.config.CircuitBreaker;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.StagedBlob;
+import io.barracks.componentservice.repository.blob.StoredBlob;
+import io.barracks.componentservice.repository.exception.BlobDeletedException;
+import io.barracks.componentservice.repository.exception.BlobStoreException;
+import io.barracks.componentservice.repository.exception.DuplicateVersionException;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static io.barracks.componentservice.repository.VersionDocuments.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Asynchronous access to the version documents, in the partition of their owner. The binaries go through the
+ * {@link BlobStores}, whose writes happen on the calling thread, already bounded by the upload bulkhead. Every call
+ * goes through the Mongo circuit breaker, and a version that cannot be read while Mongo is unavailable is served from
+ * the last known state. The lookups of versions known to not exist are answered by the {@link LookupFilter}, and all
+ * the reads by the {@link CatalogueReplica} when it is enabled.
+ */
+@Repository
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.ASYNC_MODE)
+public class AsyncVersionRepositoryImpl implements AsyncVersionRepository {
+    private static final int COPY_ATTEMPTS = 2;
+
+    private final Map<String, MongoCollection<DBObject>> files;
+    private final BlobStores blobStores;
+    private final PartitionRouter partitionRouter;
+    private final ReadRouting readRouting;
+    private final CircuitBreaker circuitBreaker;
+    private final StaleCache<Version> staleCache;
+    private final LookupFilter lookupFilter;
+    private final SearchIndex searchIndex;
+    private final CatalogueReplica catalogueReplica;
+    private final MongoConverter converter;
+
+    public AsyncVersionRepositoryImpl(
+            MongoClient asyncMongoClient,
+            MongoDatabase asyncMongoDatabase,
+            BlobStores blobStores,
+            PartitionRouter partitionRouter,
+            ReadRouting readRouting,
+            CircuitBreaker circuitBreaker,
+            StaleCache<Version> staleCache,
+            LookupFilter lookupFilter,
+            SearchIndex searchIndex,
+            CatalogueReplica catalogueReplica,
+            MongoOperations mongoOperations
+    ) {
+        this.files = partitionRouter.getPartitions().stream()
+                .collect(Collectors.toMap(Partition::getName, partition -> asyncMongoClient.getDatabase(partition.getDatabaseName())
+                        .withCodecRegistry(asyncMongoDatabase.getCodecRegistry())
+                        .getCollection(partition.getCollection(), DBObject.class)));
+        this.blobStores = blobStores;
+        this.partitionRouter = partitionRouter;
+        this.readRouting = readRouting;
+        this.circuitBreaker = circuitBreaker;
+        this.staleCache = staleCache;
+        this.lookupFilter = lookupFilter;
+        this.searchIndex = searchIndex;
+        this.catalogueReplica = catalogueReplica;
+        this.converter = mongoOperations.getConverter();
+    }
+
+    @Override
+    public CompletableFuture<Version> createVersion(Version version, InputStream file) {
+        return circuitBreaker.executeAsync(() -> insertVersion(version, file));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Version>> getVersion(String userId, String packageRef, String versionId) {
+        final Optional<CatalogueReplica.Snapshot> catalogue = catalogueReplica.forOwner(userId);
+        if (catalogue.isPresent()) {
+            return CompletableFuture.completedFuture(catalogue.get().getVersion(userId, packageRef, versionId));
+        }
+        if (!readRouting.hasRecentWrite(userId) && !lookupFilter.mightContainVersion(userId, packageRef, versionId)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        final String key = StaleCache.key(userId, packageRef, versionId);
+        return circuitBreaker.executeAsync(() -> findVersion(userId, packageRef, versionId))
+                .thenApply(version -> staleCache.update(key, version))
+                .exceptionally(throwable -> staleCache.fallback(key, throwable, circuitBreaker));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Version>> copyVersion(String packageRef, String versionId, Version copy) {
+        return circuitBreaker.executeAsync(() -> insertCopy(packageRef, versionId, copy, 1));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Version>> updateVersion(Version changes, Long revision) {
+        final BasicDBObject query = toBson(query(revisionCriteria(changes.getUserId(), changes.getPackageRef(), changes.getId(), revision)).getQueryObject());
+        final BasicDBObject update = toBson(metadataUpdate(changes).getUpdateObject());
+        return circuitBreaker.executeAsync(() -> modifyVersion(changes.getUserId(), partitionRouter.getReadPartitions(changes.getUserId()).iterator(), query, update))
+                .thenApply(version -> {
+                    version.ifPresent(updated -> {
+                        readRouting.recordWrite(updated.getUserId());
+                        staleCache.update(StaleCache.key(updated.getUserId(), updated.getPackageRef(), updated.getId()), version);
+                        searchIndex.recordVersion(updated);
+                    });
+                    return version;
+                });
+    }
+
+    @Override
+    public CompletableFuture<List<BlobReference>> deleteVersion(String userId, String packageRef, String versionId) {
+        final BasicDBObject query = toBson(query(versionCriteria(userId, packageRef, versionId)).getQueryObject());
+        return circuitBreaker.executeAsync(() -> removeVersion(userId, partitionRouter.getReadPartitions(userId).iterator(), query, new ArrayList<>()))
+                .thenApply(blobs -> {
+                    if (!blobs.isEmpty()) {
+                        readRouting.recordWrite(userId);
+                        staleCache.update(StaleCache.key(userId, packageRef, versionId), Optional.empty());
+                        searchIndex.removeVersion(userId, packageRef, versionId);
+                    }
+                    return blobs;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Optional<BlobReference>> getBlob(String userId, String packageRef, String versionId) {
+        final BasicDBObject query = toBson(query(versionCriteria(userId, packageRef, versionId)).getQueryObject());
+        return circuitBreaker.executeAsync(() -> findBlob(partitionRouter.getReadPartitions(userId).iterator(), query));
+    }
+
+    @Override
+    public CompletableFuture<Page<Version>> getVersions(String userId, String packageRef, Pageable pageable) {
+        final Optional<Page<Version>> page = catalogueReplica.forOwner(userId).flatMap(catalogue -> catalogue.getVersions(userId, packageRef, pageable));
+        if (page.isPresent()) {
+            return CompletableFuture.completedFuture(page.get());
+        }
+        return circuitBreaker.executeAsync(() -> findVersions(userId, packageRef, pageable));
+    }
+
+    @Override
+    public CompletableFuture<Page<Map<String, Object>>> getVersionFields(String userId, String packageRef, Collection<VersionField> fields, Pageable pageable) {
+        final Optional<Page<Version>> page = catalogueReplica.forOwner(userId).flatMap(catalogue -> catalogue.getVersions(userId, packageRef, pageable));
+        if (page.isPresent()) {
+            return CompletableFuture.completedFuture(page.get().map(version -> toFields(version, fields)));
+        }
+        return circuitBreaker.executeAsync(() -> findVersions(userId, packageRef, fieldsProjection(fields), dbObject -> toFields(dbObject, fields), pageable));
+    }
+
+    /**
+     * Inserts the version, then checks that its blob is still there, as a blob holding the same content may have been
+     * queued for reclamation and deleted meanwhile. The blob is then put back from the content just received.
+     */
+    private CompletableFuture<Version> insertVersion(Version version, InputStream file) {
+        final Partition partition = partitionRouter.getWritePartition(version.getUserId());
+        final MongoCollection<DBObject> partitionFiles = files.get(partition.getName());
+        final BlobStore store = writeStore(blobStores, partition);
+        final StagedBlob staged;
+        try {
+            staged = store.stage(file);
+        } catch (RuntimeException e) {
+            final CompletableFuture<Version> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        final StoredBlob blob = staged.getBlob();
+        final DBObject document = toDocument(version, blob, converter);
+        final FutureCallback<Void> callback = new FutureCallback<>();
+        partitionFiles.insertOne(document, callback);
+        return callback
+                .handle((result, throwable) -> {
+                    if (throwable instanceof MongoWriteException
+                            && ((MongoWriteException) throwable).getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                        discardBlob(store, blob);
+                        throw new DuplicateVersionException(version, throwable);
+                    } else if (throwable != null) {
+                        throw new CompletionException(throwable);
+                    }
+                    return staged.restore();
+                })
+                .thenCompose(restored -> {
+                    if (restored) {
+                        return CompletableFuture.completedFuture((Void) null);
+                    }
+                    final FutureCallback<DeleteResult> removed = new FutureCallback<>();
+                    partitionFiles.deleteOne(new BasicDBObject(ID_KEY, document.get(ID_KEY)), removed);
+                    return removed.<Void>thenApply(deleted -> {
+                        throw new BlobDeletedException(store.getName(), blob.getId(), version.getId());
+                    });
+                })
+                .whenComplete((result, throwable) -> staged.close())
+                .thenApply(result -> {
+                    readRouting.recordWrite(version.getUserId());
+                    lookupFilter.recordVersion(version.getUserId(), version.getPackageRef(), version.getId());
+                    searchIndex.recordVersion(version);
+                    return result;
+                })
+                .thenCompose(saved -> findVersion(version.getUserId(), version.getPackageRef(), version.getId()))
+                .thenApply(saved -> saved.orElseThrow(() -> new RuntimeException("Version returned null object, this should not happen!")));
+    }
+
+    /**
+     * Inserts the copy, then checks that the blob it references is still there, as it may have been moved to another
+     * store and deleted since the source was read. The copy is then made again from the source as it is now.
+     */
+    private CompletableFuture<Optional<Version>> insertCopy(String packageRef, String versionId, Version copy, int attempt) {
+        final Partition partition = partitionRouter.getWritePartition(copy.getUserId());
+        final MongoCollection<DBObject> partitionFiles = files.get(partition.getName());
+        final BasicDBObject query = toBson(query(versionCriteria(copy.getUserId(), packageRef, versionId)).getQueryObject());
+        return findDocument(partitionRouter.getReadPartitions(copy.getUserId()).iterator(), query, readRouting.forLookup(copy.getUserId()))
+                .thenCompose(source -> {
+                    if (source == null) {
+                        return CompletableFuture.completedFuture(Optional.empty());
+                    }
+                    final DBObject document = toCopyDocument(source, copy, converter);
+                    final FutureCallback<Void> inserted = new FutureCallback<>();
+                    partitionFiles.insertOne(document, inserted);
+                    return inserted
+                            .handle((result, throwable) -> {
+                                if (throwable instanceof MongoWriteException
+                                        && ((MongoWriteException) throwable).getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                                    throw new DuplicateVersionException(dbObjectToVersion(document), throwable);
+                                } else if (throwable != null) {
+                                    throw new CompletionException(throwable);
+                                }
+                                return toBlobReference(document, converter, partition);
+                            })
+                            .thenCompose(blob -> {
+                                if (blobStores.get(blob.getStore()).map(store -> store.exists(blob.getId())).orElse(false)) {
+                                    final Version version = dbObjectToVersion(document);
+                                    readRouting.recordWrite(version.getUserId());
+                                    lookupFilter.recordVersion(version.getUserId(), version.getPackageRef(), version.getId());
+                                    searchIndex.recordVersion(version);
+                                    return CompletableFuture.completedFuture(Optional.of(version));
+                                }
+                                final FutureCallback<DeleteResult> removed = new FutureCallback<>();
+                                partitionFiles.deleteOne(new BasicDBObject(ID_KEY, document.get(ID_KEY)), removed);
+                                return removed.thenCompose(result -> {
+                                    if (attempt == COPY_ATTEMPTS) {
+                                        throw new BlobStoreException(blob.getStore(), "blob " + blob.getId() + " was deleted while version '" + versionId + "' was copied", null);
+                                    }
+                                    return insertCopy(packageRef, versionId, copy, attempt + 1);
+                                });
+                            });
+                });
+    }
+
+    private CompletableFuture<Optional<Version>> findVersion(String userId, String packageRef, String versionId) {
+        final Query query = query(versionCriteria(userId, packageRef, versionId));
+        return findVersion(partitionRouter.getReadPartitions(userId).iterator(), toBson(query.getQueryObject()), readRouting.forLookup(userId));
+    }
+
+    private CompletableFuture<Page<Version>> findVersions(String userId, String packageRef, Pageable pageable) {
+        return findVersions(userId, packageRef, null, this::dbObjectToVersion, pageable);
+    }
+
+    /**
+     * @param projection fields of the documents to read, or null to read them whole.
+     */
+    private <T> CompletableFuture<Page<T>> findVersions(String userId, String packageRef, DBObject projection, Function<DBObject, T> mapper, Pageable pageable) {
+        final List<Partition> partitions = partitionRouter.getReadPartitions(userId);
+        final ReadPreference readPreference = readRouting.forList(userId);
+        final Query query = query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef)).with(pageable);
+        if (partitions.size() > 1) {
+            final CompletableFuture<List<DBObject>> content = findInPartitions(
+                    partitions, toBson(query.getQueryObject()), toBson(projection), toBson(query.getSortObject()), query.getSkip() + query.getLimit(), readPreference
+            );
+            final CompletableFuture<List<DBObject>> count = findInPartitions(
+                    partitions, toBson(query.getQueryObject()), new BasicDBObject(), null, 0, readPreference
+            );
+            return content.thenCombine(count, (dbObjects, counted) -> new PageImpl<>(
+                    dbObjects.stream().skip(query.getSkip()).map(mapper).collect(Collectors.toList()),
+                    pageable,
+                    counted.size()
+            ));
+        }
+        final MongoCollection<DBObject> partitionFiles = files.get(partitions.get(0).getName()).withReadPreference(readPreference);
+
+        final FutureCallback<Long> count = new FutureCallback<>();
+        partitionFiles.count(toBson(query.getQueryObject()), new CountOptions().maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS), count);
+        final FutureCallback<List<DBObject>> content = new FutureCallback<>();
+        partitionFiles.find(toBson(query.getQueryObject()))
+                .projection(toBson(projection))
+                .sort(toBson(query.getSortObject()))
+                .skip(query.getSkip())
+                .limit(query.getLimit())
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>(), content);
+        return content.thenCombine(count, (dbObjects, total) -> new PageImpl<>(
+                dbObjects.stream().map(mapper).collect(Collectors.toList()),
+                pageable,
+                total
+        ));
+    }
+
+    /**
+     * Reads the documents matching the query in each of the partitions at once, for an owner still read from its
+     * previous partition after being moved. A version copied to the new partition is only read from there.
+     *
+     * @param projection fields of the documents to read, or null to read them whole.
+     * @param sort       order of the documents, or null to keep the order they are read in.
+     * @param limit      maximum number of documents to return, or 0 to return them all.
+     */
+    private CompletableFuture<List<DBObject>> findInPartitions(
+            List<Partition> partitions, BasicDBObject query, BasicDBObject projection, BasicDBObject sort, int limit, ReadPreference readPreference
+    ) {
+        final BasicDBObject order = sort == null ? new BasicDBObject() : sort;
+        final BasicDBObject fields = projection == null ? null : new BasicDBObject(projection.toMap());
+        if (fields != null) {
+            fields.put(ID_KEY, 1);
+            order.keySet().forEach(key -> fields.put(key, 1));
+        }
+        final List<CompletableFuture<List<DBObject>>> found = partitions.stream()
+                .map(partition -> {
+                    final FutureCallback<List<DBObject>> callback = new FutureCallback<>();
+                    files.get(partition.getName()).withReadPreference(readPreference).find(query)
+                            .projection(fields)
+                            .sort(order)
+                            .limit(limit)
+                            .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                            .into(new ArrayList<>(), callback);
+                    return callback;
+                })
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(found.toArray(new CompletableFuture<?>[found.size()])).thenApply(result -> {
+            final Map<Object, DBObject> documents = new LinkedHashMap<>();
+            found.forEach(partitionDocuments -> partitionDocuments.join().forEach(dbObject -> documents.putIfAbsent(dbObject.get(ID_KEY), dbObject)));
+            final List<DBObject> sorted = new ArrayList<>(documents.values());
+            sorted.sort(documentComparator(order));
+            return limit > 0 && sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+        });
+    }
+
+    /**
+     * Looks the version up in each partition in turn, until one of them has it. A version missing from a secondary is
+     * looked up again in the primary, as it may have just been created.
+     */
+    private CompletableFuture<Optional<Version>> findVersion(Iterator<Partition> partitions, BasicDBObject query, ReadPreference readPreference) {
+        return findDocument(partitions, query, readPreference)
+                .thenApply(dbObject -> dbObject == null ? Optional.<Version>empty() : Optional.of(dbObjectToVersion(dbObject)));
+    }
+
+    /**
+     * @return the version document, or null when none of the partitions has it.
+     */
+    private CompletableFuture<DBObject> findDocument(Iterator<Partition> partitions, BasicDBObject query, ReadPreference readPreference) {
+        if (!partitions.hasNext()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final MongoCollection<DBObject> partitionFiles = files.get(partitions.next().getName());
+        return findFirst(partitionFiles, query, readPreference)
+                .thenCompose(dbObject -> dbObject == null && !ReadPreference.primary().equals(readPreference)
+                        ? findFirst(partitionFiles, query, ReadPreference.primary())
+                        : CompletableFuture.completedFuture(dbObject))
+                .thenCompose(dbObject -> dbObject == null
+                        ? findDocument(partitions, query, readPreference)
+                        : CompletableFuture.completedFuture(dbObject));
+    }
+
+    private CompletableFuture<Optional<BlobReference>> findBlob(Iterator<Partition> partitions, BasicDBObject query) {
+        if (!partitions.hasNext()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        final Partition partition = partitions.next();
+        return findFirst(files.get(partition.getName()), query, ReadPreference.primary())
+                .thenCompose(dbObject -> dbObject == null
+                        ? findBlob(partitions, query)
+                        : CompletableFuture.completedFuture(Optional.of(toBlobReference(dbObject, converter, partition))));
+    }
+
+    /**
+     * Updates the version in the first partition holding it, the one it is read from. While the owner is copied to
+     * another partition, the copy of the version is replaced with the updated version, as it would prevail over it once
+     * the move completes.
+     */
+    private CompletableFuture<Optional<Version>> modifyVersion(String userId, Iterator<Partition> partitions, BasicDBObject query, BasicDBObject update) {
+        if (!partitions.hasNext()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        final FutureCallback<DBObject> callback = new FutureCallback<>();
+        files.get(partitions.next().getName()).findOneAndUpdate(query, update, new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER), callback);
+        return callback.thenCompose(dbObject -> {
+            if (dbObject == null) {
+                return modifyVersion(userId, partitions, query, update);
+            }
+            final Optional<Partition> next = nextPartition(userId);
+            if (!next.isPresent()) {
+                return CompletableFuture.completedFuture(Optional.of(dbObjectToVersion(dbObject)));
+            }
+            final FutureCallback<UpdateResult> replaced = new FutureCallback<>();
+            files.get(next.get().getName()).replaceOne(new BasicDBObject(ID_KEY, dbObject.get(ID_KEY)), dbObject, replaced);
+            return replaced.thenApply(result -> Optional.of(dbObjectToVersion(dbObject)));
+        });
+    }
+
+    /**
+     * Removes the version from the partitions it may be read from, as it is in two of them while its owner is moved,
+     * and from the partition the owner is being copied to, where its copy would prevail once the move completes. The
+     * copy shares the blob of the version, so that only the blobs of the versions read are returned.
+     */
+    private CompletableFuture<List<BlobReference>> removeVersion(String userId, Iterator<Partition> partitions, BasicDBObject query, List<BlobReference> blobs) {
+        if (!partitions.hasNext()) {
+            final Optional<Partition> next = nextPartition(userId);
+            if (!next.isPresent()) {
+                return CompletableFuture.completedFuture(blobs);
+            }
+            final FutureCallback<DeleteResult> removed = new FutureCallback<>();
+            files.get(next.get().getName()).deleteOne(query, removed);
+            return removed.thenApply(result -> blobs);
+        }
+        final Partition partition = partitions.next();
+        final FutureCallback<DBObject> callback = new FutureCallback<>();
+        files.get(partition.getName()).findOneAndDelete(query, callback);
+        return callback.thenCompose(dbObject -> {
+            if (dbObject != null) {
+                blobs.add(toBlobReference(dbObject, converter, partition));
+            }
+            return removeVersion(userId, partitions, query, blobs);
+        });
+    }
+
+    private CompletableFuture<DBObject> findFirst(MongoCollection<DBObject> collection, BasicDBObject query, ReadPreference readPreference) {
+        final FutureCallback<DBObject> callback = new FutureCallback<>();
+        collection.withReadPreference(readPreference).find(query)
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                .first(callback);
+        return callback;
+    }
+
+    /**
+     * @return the partition the versions of the owner are being copied to, if they are.
+     */
+    private Optional<Partition> nextPartition(String userId) {
+        return partitionRouter.getRoute(userId)
+                .map(PartitionRoute::getNext)
+                .map(name -> partitionRouter.getPartition(name).orElseThrow(() -> new IllegalArgumentException("Unknown partition '" + name + "'")));
+    }
+
+    private void discardBlob(BlobStore store, StoredBlob blob) {
+        if (blob.isCreated()) {
+            final BasicDBObject query = toBson(query(blobCriteria(blob.getStore(), blob.getId())).getQueryObject());
+            final List<CompletableFuture<Long>> references = files.values().stream()
+                    .map(partitionFiles -> {
+                        final FutureCallback<Long> count = new FutureCallback<>();
+                        partitionFiles.count(query, count);
+                        return count;
+                    })
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(references.toArray(new CompletableFuture<?>[references.size()])).thenRun(() -> {
+                if (references.stream().mapToLong(CompletableFuture::join).sum() == 0) {
+                    store.delete(blob.getId());
+                }
+            });
+        }
+    }
+
+    private Version dbObjectToVersion(DBObject dbObject) {
+        return toVersion(dbObject, converter, blobStores);
+    }
+
+    private static BasicDBObject toBson(DBObject dbObject) {
+        return dbObject == null ? null : new BasicDBObject(dbObject.toMap());
+    }
+}
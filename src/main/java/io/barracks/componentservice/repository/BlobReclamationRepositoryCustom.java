@@ -0,0 +1,47 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.model.BlobReclamation;
+
+import java.util.Date;
+import java.util.Optional;
+
+public interface BlobReclamationRepositoryCustom {
+    /**
+     * Queues a blob for deletion, or postpones the deletion of a queued blob to the given date.
+     */
+    void queue(String store, String blobId, long length, Date queuedAt);
+
+    /**
+     * Takes the oldest blob queued before the given date that no instance is reclaiming, until the end of the lease.
+     */
+    Optional<BlobReclamation> claim(Date queuedBefore, Date now, Date claimedUntil);
+
+    /**
+     * Records the progress of a blob still partly stored and lets any instance continue its reclamation.
+     */
+    void release(String id, long reclaimed);
+}
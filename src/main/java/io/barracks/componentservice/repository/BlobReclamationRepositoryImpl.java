@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.model.BlobReclamation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Queue of the blobs to delete, shared by the instances. A blob is reclaimed by one instance at a time, under a lease
+ * that lets another instance take over when the first one stopped.
+ */
+public class BlobReclamationRepositoryImpl implements BlobReclamationRepositoryCustom {
+    private static final String CLAIMED_UNTIL_KEY = "claimedUntil";
+    private static final String QUEUED_AT_KEY = "queuedAt";
+    private final MongoOperations mongoOperations;
+
+    @Autowired
+    public BlobReclamationRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public void queue(String store, String blobId, long length, Date queuedAt) {
+        mongoOperations.upsert(
+                query(where("store").is(store).and("blobId").is(blobId)),
+                new Update().set("length", length).set(QUEUED_AT_KEY, queuedAt).setOnInsert("reclaimed", 0L),
+                BlobReclamation.class
+        );
+    }
+
+    @Override
+    public Optional<BlobReclamation> claim(Date queuedBefore, Date now, Date claimedUntil) {
+        final Criteria criteria = where(QUEUED_AT_KEY).lte(queuedBefore)
+                .orOperator(where(CLAIMED_UNTIL_KEY).is(null), where(CLAIMED_UNTIL_KEY).lt(now));
+        return Optional.ofNullable(mongoOperations.findAndModify(
+                query(criteria).with(new Sort(Sort.Direction.ASC, QUEUED_AT_KEY)),
+                new Update().set(CLAIMED_UNTIL_KEY, claimedUntil),
+                FindAndModifyOptions.options().returnNew(true),
+                BlobReclamation.class
+        ));
+    }
+
+    @Override
+    public void release(String id, long reclaimed) {
+        mongoOperations.updateFirst(
+                query(where("_id").is(id)),
+                new Update().set("reclaimed", reclaimed).unset(CLAIMED_UNTIL_KEY),
+                BlobReclamation.class
+        );
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.barracks.componentservice.model.CatalogueRecord;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.exception.InvalidExportPositionException;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static io.barracks.componentservice.repository.VersionDocuments.*;
+
+/**
+ * Reads all the packages of an owner, then all its versions, from cursors walking the indexes they are unique in. No
+ * page is counted or skipped, and only a batch of documents is held at a time. Each record carries the position to
+ * resume the export after it.
+ */
+@Repository
+public class CatalogueExport {
+    static final int BATCH_SIZE = 1000;
+    private static final String PACKAGE_USER_ID_KEY = "userId";
+    private static final String PACKAGE_REFERENCE_KEY = "reference";
+    private static final Comparator<DBObject> VERSION_ORDER = documentComparator(new BasicDBObject(PACKAGE_REF_KEY, 1).append(VERSION_ID_KEY, 1));
+
+    private final MongoOperations mongoOperations;
+    private final PartitionRouter partitionRouter;
+    private final BlobStores blobStores;
+
+    public CatalogueExport(MongoOperations mongoOperations, PartitionRouter partitionRouter, BlobStores blobStores) {
+        this.mongoOperations = mongoOperations;
+        this.partitionRouter = partitionRouter;
+        this.blobStores = blobStores;
+    }
+
+    /**
+     * Passes the records of the owner following the position to the consumer, in order.
+     */
+    public void export(String userId, Position after, Consumer<CatalogueRecord> consumer) {
+        if (after.getType() != CatalogueRecord.Type.VERSION) {
+            exportPackages(userId, after.getPackageRef(), consumer);
+            exportVersions(userId, null, null, consumer);
+        } else {
+            exportVersions(userId, after.getPackageRef(), after.getVersionId(), consumer);
+        }
+    }
+
+    private void exportPackages(String userId, String afterReference, Consumer<CatalogueRecord> consumer) {
+        final DBObject query = new BasicDBObject(PACKAGE_USER_ID_KEY, userId);
+        if (afterReference != null) {
+            query.put(PACKAGE_REFERENCE_KEY, new BasicDBObject("$gt", afterReference));
+        }
+        final DBObject order = new BasicDBObject(PACKAGE_USER_ID_KEY, 1).append(PACKAGE_REFERENCE_KEY, 1);
+        final MongoConverter converter = mongoOperations.getConverter();
+        final DBCollection packages = mongoOperations.getCollection(mongoOperations.getCollectionName(Package.class));
+        try (DBCursor cursor = packages.find(query).sort(order).hint(order).batchSize(BATCH_SIZE)) {
+            for (DBObject dbObject : cursor) {
+                final Package aPackage = converter.read(Package.class, dbObject);
+                consumer.accept(CatalogueRecord.builder()
+                        .type(CatalogueRecord.Type.PACKAGE)
+                        .position(Position.afterPackage(aPackage.getReference()).encode())
+                        .aPackage(aPackage)
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * Reads the versions from each of the partitions they are listed from, merging the cursors in the order of the
+     * export so that a position stays valid while the owner is moved. A version found in several partitions is
+     * exported once, from the first partition it is looked up in.
+     */
+    private void exportVersions(String userId, String afterPackageRef, String afterVersionId, Consumer<CatalogueRecord> consumer) {
+        final DBObject query = new BasicDBObject(USER_ID_KEY, userId);
+        if (afterPackageRef != null) {
+            query.put("$or", Arrays.asList(
+                    new BasicDBObject(PACKAGE_REF_KEY, new BasicDBObject("$gt", afterPackageRef)),
+                    new BasicDBObject(PACKAGE_REF_KEY, afterPackageRef).append(VERSION_ID_KEY, new BasicDBObject("$gt", afterVersionId))
+            ));
+        }
+        final DBObject order = new BasicDBObject(USER_ID_KEY, 1).append(PACKAGE_REF_KEY, 1).append(VERSION_ID_KEY, 1);
+        final MongoConverter converter = mongoOperations.getConverter();
+        final List<DBCursor> cursors = new ArrayList<>();
+        try {
+            for (Partition partition : partitionRouter.getReadPartitions(userId)) {
+                final DBCollection versions = partition.getMongoOperations().getCollection(partition.getCollection());
+                cursors.add(versions.find(query).sort(order).hint(order).batchSize(BATCH_SIZE));
+            }
+            final DBObject[] heads = new DBObject[cursors.size()];
+            for (int i = 0; i < heads.length; i++) {
+                heads[i] = cursors.get(i).hasNext() ? cursors.get(i).next() : null;
+            }
+            DBObject next;
+            while ((next = first(heads)) != null) {
+                final Version version = toVersion(next, converter, blobStores);
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && VERSION_ORDER.compare(heads[i], next) == 0) {
+                        heads[i] = cursors.get(i).hasNext() ? cursors.get(i).next() : null;
+                    }
+                }
+                consumer.accept(CatalogueRecord.builder()
+                        .type(CatalogueRecord.Type.VERSION)
+                        .position(Position.afterVersion(version.getPackageRef(), version.getId()).encode())
+                        .version(version)
+                        .build());
+            }
+        } finally {
+            cursors.forEach(DBCursor::close);
+        }
+    }
+
+    /**
+     * @return the first of the documents in the order of the export, the one of the first partition on a tie.
+     */
+    private static DBObject first(DBObject[] heads) {
+        DBObject first = null;
+        for (DBObject head : heads) {
+            if (head != null && (first == null || VERSION_ORDER.compare(head, first) < 0)) {
+                first = head;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Position in an export, given to the clients as an opaque token.
+     */
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class Position {
+        public static final Position START = new Position(null, null, null);
+        private static final String SEPARATOR = "\0";
+
+        private final CatalogueRecord.Type type;
+        private final String packageRef;
+        private final String versionId;
+
+        private Position(CatalogueRecord.Type type, String packageRef, String versionId) {
+            this.type = type;
+            this.packageRef = packageRef;
+            this.versionId = versionId;
+        }
+
+        public static Position afterPackage(String reference) {
+            return new Position(CatalogueRecord.Type.PACKAGE, reference, null);
+        }
+
+        public static Position afterVersion(String packageRef, String versionId) {
+            return new Position(CatalogueRecord.Type.VERSION, packageRef, versionId);
+        }
+
+        /**
+         * @param token a token returned by {@link #encode()}, or null for the start of the export.
+         * @throws InvalidExportPositionException if the token is not one.
+         */
+        public static Position decode(String token) {
+            if (token == null) {
+                return START;
+            }
+            final String[] parts;
+            try {
+                parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidExportPositionException(token);
+            }
+            if (parts.length == 2 && CatalogueRecord.Type.PACKAGE.name().equals(parts[0])) {
+                return afterPackage(parts[1]);
+            }
+            if (parts.length == 3 && CatalogueRecord.Type.VERSION.name().equals(parts[0])) {
+                return afterVersion(parts[1], parts[2]);
+            }
+            throw new InvalidExportPositionException(token);
+        }
+
+        public String encode() {
+            final String value = type == CatalogueRecord.Type.VERSION
+                    ? String.join(SEPARATOR, type.name(), packageRef, versionId)
+                    : String.join(SEPARATOR, type.name(), packageRef);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
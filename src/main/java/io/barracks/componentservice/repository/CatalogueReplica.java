@@ -0,0 +1,676 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.bson.types.BSONTimestamp;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static io.barracks.componentservice.repository.VersionDocuments.*;
+
+/**
+ * In-memory copy of every package and version document, answering the metadata reads without querying Mongo. The
+ * copy is loaded once, then kept current by replaying the operations of the replica set oplog on the packages and
+ * version collections. Without a readable oplog (standalone server, missing privileges), it is reloaded every reload
+ * interval instead.
+ * <p>
+ * The versions of a package are kept in two arrays, in creation order for the lists and sorted by identifier for the
+ * lookups, and the owners and package references are interned. The memory used by the copy is estimated as it is
+ * loaded and updated: a copy that would exceed the budget is dropped, and the reads go to Mongo again. So are the reads
+ * of the owners within their read-your-writes window, which the copy may not have caught up with yet.
+ */
+public class CatalogueReplica implements InitializingBean, DisposableBean {
+    private static final String OPLOG_TIMESTAMP_KEY = "ts";
+    private static final String PACKAGE_USER_ID_KEY = "userId";
+    private static final Set<String> ACCESS_KEYS = new HashSet<>(Arrays.asList(
+            ACCESS_SCORE_KEY, ACCESSED_AT_KEY, COMPLETED_DOWNLOADS_KEY, ABORTED_DOWNLOADS_KEY
+    ));
+
+    private final MongoOperations mongoOperations;
+    private final PartitionRouter partitionRouter;
+    private final BlobStores blobStores;
+    private final ReadRouting readRouting;
+    private final DBCollection oplog;
+    private final TaskScheduler taskScheduler;
+    private final boolean enabled;
+    private final long pollInterval;
+    private final long reloadInterval;
+    private final long maxBytes;
+    private final MongoConverter converter;
+    private final AtomicLong hits = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+    private volatile long syncedAt;
+    private volatile boolean overBudget;
+    private BSONTimestamp position;
+    private long loadedAt;
+    private ScheduledFuture<?> sync;
+
+    public CatalogueReplica(
+            MongoOperations mongoOperations,
+            PartitionRouter partitionRouter,
+            BlobStores blobStores,
+            ReadRouting readRouting,
+            DBCollection oplog,
+            TaskScheduler taskScheduler,
+            boolean enabled,
+            long pollInterval,
+            long reloadInterval,
+            long maxBytes
+    ) {
+        this.mongoOperations = mongoOperations;
+        this.partitionRouter = partitionRouter;
+        this.blobStores = blobStores;
+        this.readRouting = readRouting;
+        this.oplog = oplog;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+        this.reloadInterval = reloadInterval;
+        this.maxBytes = maxBytes;
+        this.converter = mongoOperations.getConverter();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            sync = taskScheduler.scheduleWithFixedDelay(this::sync, pollInterval);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (sync != null) {
+            sync.cancel(false);
+        }
+    }
+
+    /**
+     * @return the copy of the catalogue, when it is loaded and within its memory budget.
+     */
+    public Optional<Snapshot> getSnapshot() {
+        return Optional.ofNullable(snapshot);
+    }
+
+    /**
+     * @return the copy of the catalogue to answer the reads of the owner with, unless it wrote recently.
+     */
+    public Optional<Snapshot> forOwner(String userId) {
+        return readRouting.hasRecentWrite(userId) ? Optional.empty() : getSnapshot();
+    }
+
+    /**
+     * Loads the catalogue when it is not loaded yet or due for a reload, or applies the latest operations of the
+     * oplog. A failed sync keeps the current copy, which catches up at the next one.
+     */
+    public synchronized void sync() {
+        if (snapshot == null && !overBudget || position == null && System.currentTimeMillis() - loadedAt >= reloadInterval) {
+            reload();
+        } else if (position != null && !replay()) {
+            reload();
+        }
+    }
+
+    public synchronized void reload() {
+        final long startedAt = System.currentTimeMillis();
+        final BSONTimestamp start = oplogHead();
+        final Snapshot loaded = new Snapshot(hits);
+        final Map<Object, Package> packages = new LinkedHashMap<>();
+        try (DBCursor cursor = packageCollection().find().sort(new BasicDBObject(ID_KEY, 1))) {
+            for (DBObject dbObject : cursor) {
+                packages.put(dbObject.get(ID_KEY), toPackage(dbObject));
+            }
+        }
+        loaded.putPackages(packages);
+        for (Partition partition : partitionRouter.getPartitions()) {
+            final Map<Object, Version> versions = new LinkedHashMap<>();
+            long estimatedBytes = loaded.estimatedBytes;
+            try (DBCursor cursor = versionCollection(partition).find().sort(new BasicDBObject(ID_KEY, 1))) {
+                while (cursor.hasNext() && estimatedBytes <= maxBytes) {
+                    final DBObject dbObject = cursor.next();
+                    final Version version = toCatalogueVersion(dbObject);
+                    versions.put(dbObject.get(ID_KEY), version);
+                    estimatedBytes += Snapshot.footprint(version);
+                }
+            }
+            loaded.putVersions(partition.getName(), versions);
+            if (loaded.estimatedBytes > maxBytes) {
+                break;
+            }
+        }
+        overBudget = loaded.estimatedBytes > maxBytes;
+        snapshot = overBudget ? null : loaded;
+        position = overBudget ? null : start;
+        loadedAt = startedAt;
+        syncedAt = startedAt;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the time (in ms) since the copy was last known to be current.
+     */
+    public long getLag() {
+        return snapshot == null ? -1L : System.currentTimeMillis() - syncedAt;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Applies the operations logged since the last one applied.
+     *
+     * @return false when the oplog does not reach back to the last operation applied any more.
+     */
+    private boolean replay() {
+        final long startedAt = System.currentTimeMillis();
+        final Map<String, Partition> partitions = partitionRouter.getPartitions().stream()
+                .collect(Collectors.toMap(CatalogueReplica::namespace, Function.identity()));
+        final String packages = packageCollection().getFullName();
+        final BasicDBList namespaces = new BasicDBList();
+        namespaces.add(packages);
+        namespaces.addAll(partitions.keySet());
+        final BasicDBList or = new BasicDBList();
+        or.add(new BasicDBObject(OPLOG_TIMESTAMP_KEY, position));
+        or.add(new BasicDBObject("ns", new BasicDBObject("$in", namespaces)));
+        final DBObject query = new BasicDBObject(OPLOG_TIMESTAMP_KEY, new BasicDBObject("$gte", position)).append("$or", or);
+
+        boolean reached = false;
+        try (DBCursor cursor = oplog.find(query).addOption(Bytes.QUERYOPTION_OPLOGREPLAY)) {
+            for (DBObject entry : cursor) {
+                final BSONTimestamp timestamp = (BSONTimestamp) entry.get(OPLOG_TIMESTAMP_KEY);
+                if (timestamp.equals(position)) {
+                    reached = true;
+                    continue;
+                }
+                if (!reached) {
+                    return false;
+                }
+                final String namespace = (String) entry.get("ns");
+                if (namespace.equals(packages)) {
+                    applyToPackages(entry);
+                } else if (partitions.containsKey(namespace)) {
+                    applyToVersions(partitions.get(namespace), entry);
+                }
+                position = timestamp;
+                if (snapshot == null) {
+                    return true;
+                }
+            }
+        }
+        if (reached) {
+            syncedAt = startedAt;
+        }
+        return reached;
+    }
+
+    private void applyToPackages(DBObject entry) {
+        final Object id = documentId(entry);
+        final DBObject dbObject = changedDocument(entry, packageCollection());
+        if (dbObject == entry) {
+            return;
+        }
+        if (dbObject == null) {
+            snapshot.removePackage(id);
+        } else {
+            snapshot.putPackage(id, toPackage(dbObject));
+        }
+        checkBudget();
+    }
+
+    private void applyToVersions(Partition partition, DBObject entry) {
+        final Object id = documentId(entry);
+        final DBObject dbObject = changedDocument(entry, versionCollection(partition));
+        if (dbObject == entry) {
+            return;
+        }
+        if (dbObject == null) {
+            snapshot.removeVersion(partition.getName(), id);
+        } else {
+            snapshot.putVersion(partition.getName(), id, toCatalogueVersion(dbObject));
+        }
+        checkBudget();
+    }
+
+    /**
+     * @return the document after the operation, null when it was deleted, or the entry itself when the operation
+     * only touched the access statistics of a version.
+     */
+    private static DBObject changedDocument(DBObject entry, DBCollection collection) {
+        final DBObject change = (DBObject) entry.get("o");
+        switch ((String) entry.get("op")) {
+            case "i":
+                return change;
+            case "d":
+                return null;
+            case "u":
+                if (isAccessUpdate(change)) {
+                    return entry;
+                }
+                return collection.findOne(new BasicDBObject(ID_KEY, documentId(entry)));
+            default:
+                return entry;
+        }
+    }
+
+    private static boolean isAccessUpdate(DBObject change) {
+        for (String operator : change.keySet()) {
+            if (!operator.startsWith("$")) {
+                return false;
+            }
+            final Object fields = change.get(operator);
+            if (fields instanceof DBObject && !ACCESS_KEYS.containsAll(((DBObject) fields).keySet()) && !"$v".equals(operator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object documentId(DBObject entry) {
+        final DBObject selector = (DBObject) ("u".equals(entry.get("op")) ? entry.get("o2") : entry.get("o"));
+        return selector.get(ID_KEY);
+    }
+
+    private void checkBudget() {
+        if (snapshot.estimatedBytes > maxBytes) {
+            overBudget = true;
+            snapshot = null;
+            position = null;
+        }
+    }
+
+    /**
+     * @return the timestamp of the latest operation of the oplog, or null when there is no oplog to read.
+     */
+    private BSONTimestamp oplogHead() {
+        if (oplog == null) {
+            return null;
+        }
+        try (DBCursor cursor = oplog.find().sort(new BasicDBObject("$natural", -1)).limit(1)) {
+            return cursor.hasNext() ? (BSONTimestamp) cursor.next().get(OPLOG_TIMESTAMP_KEY) : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Package toPackage(DBObject dbObject) {
+        final Package aPackage = converter.read(Package.class, dbObject);
+        return aPackage.toBuilder()
+                .userId(aPackage.getUserId() == null ? null : aPackage.getUserId().intern())
+                .build();
+    }
+
+    private Version toCatalogueVersion(DBObject dbObject) {
+        final Version version = toVersion(dbObject, converter, blobStores);
+        return version.toBuilder()
+                .userId(version.getUserId().intern())
+                .packageRef(version.getPackageRef().intern())
+                .build();
+    }
+
+    private DBCollection packageCollection() {
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Package.class));
+    }
+
+    private static DBCollection versionCollection(Partition partition) {
+        return partition.getMongoOperations().getCollection(partition.getCollection());
+    }
+
+    private static String namespace(Partition partition) {
+        return partition.getDatabaseName() + "." + partition.getCollection();
+    }
+
+    /**
+     * Copy of the catalogue. It is read concurrently and written by the sync only.
+     */
+    public static class Snapshot {
+        private static final long OBJECT = 16L;
+        private static final long REFERENCE = 8L;
+        private static final long MAP_ENTRY = 48L;
+
+        private final Map<String, Owner> owners = new ConcurrentHashMap<>();
+        private final Map<Object, Package> packageIds = new HashMap<>();
+        private final Map<String, Map<Object, Version>> versionIds = new HashMap<>();
+        private final AtomicLong hits;
+        private volatile long packageCount;
+        private volatile long versionCount;
+        private volatile long estimatedBytes;
+
+        private Snapshot(AtomicLong hits) {
+            this.hits = hits;
+        }
+
+        public Optional<Package> getPackage(String userId, String reference) {
+            hits.incrementAndGet();
+            final Owner owner = owners.get(userId);
+            return owner == null ? Optional.empty() : Optional.ofNullable(owner.packagesByReference.get(reference));
+        }
+
+        /**
+         * @return the page of packages in creation order, or nothing when another order is requested.
+         */
+        public Optional<Page<Package>> getPackages(String userId, Pageable pageable) {
+            if (pageable.getSort() != null) {
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            final Owner owner = owners.get(userId);
+            return Optional.of(page(owner == null ? new Package[0] : owner.packages, pageable));
+        }
+
+        public Optional<Version> getVersion(String userId, String packageRef, String versionId) {
+            hits.incrementAndGet();
+            final PackageVersions versions = versions(userId, packageRef);
+            return versions == null ? Optional.empty() : versions.get(versionId);
+        }
+
+        /**
+         * @return the page of versions in creation order, or nothing when another order is requested.
+         */
+        public Optional<Page<Version>> getVersions(String userId, String packageRef, Pageable pageable) {
+            if (pageable.getSort() != null) {
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            final PackageVersions versions = versions(userId, packageRef);
+            return Optional.of(page(versions == null ? new Version[0] : versions.byCreation, pageable));
+        }
+
+        public long getPackageCount() {
+            return packageCount;
+        }
+
+        public long getVersionCount() {
+            return versionCount;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        private PackageVersions versions(String userId, String packageRef) {
+            final Owner owner = owners.get(userId);
+            return owner == null ? null : owner.versions.get(packageRef);
+        }
+
+        /**
+         * Loads packages into an empty copy, in the order of their documents.
+         */
+        private void putPackages(Map<Object, Package> packages) {
+            packages.values().stream()
+                    .collect(Collectors.groupingBy(Package::getUserId, LinkedHashMap::new, Collectors.toList()))
+                    .forEach((userId, ownerPackages) -> {
+                        final Owner owner = owner(userId);
+                        ownerPackages.forEach(aPackage -> {
+                            owner.packagesByReference.put(aPackage.getReference(), aPackage);
+                            estimatedBytes += footprint(aPackage);
+                        });
+                        owner.packages = ownerPackages.toArray(new Package[ownerPackages.size()]);
+                    });
+            packageIds.putAll(packages);
+            packageCount = packageIds.size();
+        }
+
+        /**
+         * Loads the versions of a partition, in the order of their documents. The packages already holding versions
+         * of another partition, as during a move between partitions, take them one by one.
+         */
+        private void putVersions(String partition, Map<Object, Version> versions) {
+            final Map<Version, Object> ids = new IdentityHashMap<>();
+            versions.forEach((id, version) -> ids.put(version, id));
+            versions.values().stream()
+                    .collect(Collectors.groupingBy(version -> StaleCache.key(version.getUserId(), version.getPackageRef()), LinkedHashMap::new, Collectors.toList()))
+                    .forEach((key, packageVersions) -> {
+                        final Version first = packageVersions.get(0);
+                        final Owner owner = owner(first.getUserId());
+                        if (owner.versions.containsKey(first.getPackageRef())) {
+                            packageVersions.forEach(version -> putVersion(partition, ids.get(version), version));
+                            return;
+                        }
+                        final Version[] byCreation = packageVersions.toArray(new Version[packageVersions.size()]);
+                        final Version[] byId = byCreation.clone();
+                        Arrays.sort(byId, PackageVersions.BY_ID);
+                        owner.versions.put(first.getPackageRef(), new PackageVersions(byCreation, byId));
+                        packageVersions.forEach(version -> {
+                            versionIds.computeIfAbsent(partition, name -> new HashMap<>()).put(ids.get(version), version);
+                            versionCount++;
+                            estimatedBytes += footprint(version);
+                        });
+                    });
+        }
+
+        private void putPackage(Object id, Package aPackage) {
+            removePackage(id);
+            final Owner owner = owner(aPackage.getUserId());
+            final Package previous = owner.packagesByReference.put(aPackage.getReference(), aPackage);
+            owner.packages = replaceOrAppend(owner.packages, previous, aPackage);
+            packageIds.put(id, aPackage);
+            if (previous == null) {
+                packageCount++;
+            } else {
+                estimatedBytes -= footprint(previous);
+            }
+            estimatedBytes += footprint(aPackage);
+        }
+
+        private void removePackage(Object id) {
+            final Package aPackage = packageIds.remove(id);
+            final Owner owner = aPackage == null ? null : owners.get(aPackage.getUserId());
+            if (owner != null && owner.packagesByReference.remove(aPackage.getReference(), aPackage)) {
+                owner.packages = remove(owner.packages, aPackage);
+                packageCount--;
+                estimatedBytes -= footprint(aPackage);
+            }
+        }
+
+        private void putVersion(String partition, Object id, Version version) {
+            removeVersion(partition, id);
+            final Owner owner = owner(version.getUserId());
+            final PackageVersions versions = owner.versions.getOrDefault(version.getPackageRef(), PackageVersions.EMPTY);
+            final Version previous = versions.get(version.getId()).orElse(null);
+            owner.versions.put(version.getPackageRef(), versions.with(previous, version));
+            versionIds.computeIfAbsent(partition, name -> new HashMap<>()).put(id, version);
+            if (previous == null) {
+                versionCount++;
+            } else {
+                estimatedBytes -= footprint(previous);
+            }
+            estimatedBytes += footprint(version);
+        }
+
+        /**
+         * Removes the version of the document, unless the version was replaced by another document since, as when
+         * the owner moved to another partition.
+         */
+        private void removeVersion(String partition, Object id) {
+            final Version version = versionIds.getOrDefault(partition, Collections.emptyMap()).remove(id);
+            final PackageVersions versions = version == null ? null : versions(version.getUserId(), version.getPackageRef());
+            if (versions != null && versions.get(version.getId()).orElse(null) == version) {
+                owners.get(version.getUserId()).versions.put(version.getPackageRef(), versions.without(version));
+                versionCount--;
+                estimatedBytes -= footprint(version);
+            }
+        }
+
+        private Owner owner(String userId) {
+            return owners.computeIfAbsent(userId, key -> {
+                estimatedBytes += OBJECT + MAP_ENTRY + footprint(key);
+                return new Owner();
+            });
+        }
+
+        private static <T> Page<T> page(T[] content, Pageable pageable) {
+            final int from = (int) Math.min(content.length, (long) pageable.getPageNumber() * pageable.getPageSize());
+            final int to = (int) Math.min(content.length, (long) from + pageable.getPageSize());
+            return new PageImpl<>(Arrays.asList(Arrays.copyOfRange(content, from, to)), pageable, content.length);
+        }
+
+        private static <T> T[] replaceOrAppend(T[] values, T previous, T value) {
+            final int index = indexOf(values, previous);
+            final T[] copy = Arrays.copyOf(values, index < 0 ? values.length + 1 : values.length);
+            copy[index < 0 ? values.length : index] = value;
+            return copy;
+        }
+
+        private static <T> T[] remove(T[] values, T value) {
+            final int index = indexOf(values, value);
+            if (index < 0) {
+                return values;
+            }
+            final T[] copy = Arrays.copyOf(values, values.length - 1);
+            System.arraycopy(values, index + 1, copy, index, values.length - index - 1);
+            return copy;
+        }
+
+        private static <T> int indexOf(T[] values, T value) {
+            for (int i = values.length - 1; value != null && i >= 0; i--) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Estimates the memory held by a package: the object, its unshared strings and its entries in the maps and
+         * arrays of the copy.
+         */
+        private static long footprint(Package aPackage) {
+            return OBJECT + 5 * REFERENCE + 2 * MAP_ENTRY + REFERENCE
+                    + footprint(aPackage.getReference()) + footprint(aPackage.getName()) + footprint(aPackage.getDescription());
+        }
+
+        private static long footprint(Version version) {
+            long bytes = OBJECT + 12 * REFERENCE + Long.BYTES + MAP_ENTRY + 2 * REFERENCE + 3 * OBJECT
+                    + footprint(version.getId()) + footprint(version.getFilename()) + footprint(version.getMd5())
+                    + footprint(version.getName()) + footprint(version.getDescription());
+            if (version.getMetadata() != null) {
+                bytes += OBJECT + MAP_ENTRY * version.getMetadata().size();
+                for (Map.Entry<String, ?> entry : version.getMetadata().entrySet()) {
+                    bytes += footprint(entry.getKey()) + footprint(String.valueOf(entry.getValue()));
+                }
+            }
+            return bytes;
+        }
+
+        private static long footprint(String value) {
+            return value == null ? 0L : 2 * OBJECT + 8L + 2L * value.length();
+        }
+    }
+
+    private static class Owner {
+        private final Map<String, Package> packagesByReference = new ConcurrentHashMap<>();
+        private final Map<String, PackageVersions> versions = new ConcurrentHashMap<>();
+        private volatile Package[] packages = new Package[0];
+    }
+
+    /**
+     * Versions of a package, replaced as a whole on every change so that the readers never see a partial update.
+     */
+    private static class PackageVersions {
+        private static final PackageVersions EMPTY = new PackageVersions(new Version[0], new Version[0]);
+        private static final Comparator<Version> BY_ID = Comparator.comparing(Version::getId);
+
+        private final Version[] byCreation;
+        private final Version[] byId;
+
+        private PackageVersions(Version[] byCreation, Version[] byId) {
+            this.byCreation = byCreation;
+            this.byId = byId;
+        }
+
+        private Optional<Version> get(String versionId) {
+            int low = 0;
+            int high = byId.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int comparison = byId[middle].getId().compareTo(versionId);
+                if (comparison == 0) {
+                    return Optional.of(byId[middle]);
+                } else if (comparison < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return Optional.empty();
+        }
+
+        private PackageVersions with(Version previous, Version version) {
+            final Version[] sorted;
+            final int index = Arrays.binarySearch(byId, version, BY_ID);
+            if (index >= 0) {
+                sorted = byId.clone();
+                sorted[index] = version;
+            } else {
+                final int insertion = -index - 1;
+                sorted = new Version[byId.length + 1];
+                System.arraycopy(byId, 0, sorted, 0, insertion);
+                sorted[insertion] = version;
+                System.arraycopy(byId, insertion, sorted, insertion + 1, byId.length - insertion);
+            }
+            return new PackageVersions(Snapshot.replaceOrAppend(byCreation, previous, version), sorted);
+        }
+
+        private PackageVersions without(Version version) {
+            return new PackageVersions(Snapshot.remove(byCreation, version), Snapshot.remove(byId, version));
+        }
+    }
+}
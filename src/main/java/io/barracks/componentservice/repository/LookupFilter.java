@@ -0,0 +1,263 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static io.barracks.componentservice.repository.VersionDocuments.*;
+
+/**
+ * Bloom filters over the keys of the existing packages and versions, so that the lookups of keys that do not exist
+ * are answered without querying Mongo. The filters are rebuilt from the database periodically, which forgets the
+ * deleted keys, and the keys created through the other instances are read every refresh interval. Until then, an
+ * owner sending the time of its latest write bypasses the filters, as for the reads from the secondaries.
+ */
+public class LookupFilter implements InitializingBean, DisposableBean {
+    /**
+     * Margin on the creation time of the documents read at each refresh, for the clock skew between the instances and
+     * the time it takes to write them.
+     */
+    static final long REFRESH_OVERLAP = 60000L;
+    private static final String PACKAGE_USER_ID_KEY = "userId";
+    private static final String PACKAGE_REFERENCE_KEY = "reference";
+
+    private final MongoOperations mongoOperations;
+    private final PartitionRouter partitionRouter;
+    private final TaskScheduler taskScheduler;
+    private final boolean enabled;
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    private final long rebuildInterval;
+    private final long refreshInterval;
+
+    private final AtomicLong rejectedPackages = new AtomicLong();
+    private final AtomicLong rejectedVersions = new AtomicLong();
+    private volatile Filters current;
+    private volatile Filters building;
+    private long refreshedAt;
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    public LookupFilter(
+            MongoOperations mongoOperations,
+            PartitionRouter partitionRouter,
+            TaskScheduler taskScheduler,
+            boolean enabled,
+            long expectedKeys,
+            double falsePositiveRate,
+            long rebuildInterval,
+            long refreshInterval
+    ) {
+        this.mongoOperations = mongoOperations;
+        this.partitionRouter = partitionRouter;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildInterval = rebuildInterval;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            rebuild();
+            tasks.add(taskScheduler.scheduleWithFixedDelay(this::rebuild, new Date(System.currentTimeMillis() + rebuildInterval), rebuildInterval));
+            tasks.add(taskScheduler.scheduleWithFixedDelay(this::refresh, new Date(System.currentTimeMillis() + refreshInterval), refreshInterval));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        tasks.forEach(task -> task.cancel(false));
+    }
+
+    /**
+     * @return false when the package definitely does not exist.
+     */
+    public boolean mightContainPackage(String userId, String reference) {
+        final Filters filters = current;
+        if (filters == null || filters.packages.mightContain(StaleCache.key(userId, reference))) {
+            return true;
+        }
+        rejectedPackages.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return false when the version definitely does not exist.
+     */
+    public boolean mightContainVersion(String userId, String packageRef, String versionId) {
+        final Filters filters = current;
+        if (filters == null || filters.versions.mightContain(StaleCache.key(userId, packageRef, versionId))) {
+            return true;
+        }
+        rejectedVersions.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Adds a package that was just written. The filter being rebuilt gets it too, in case its document was already
+     * scanned.
+     */
+    public void recordPackage(String userId, String reference) {
+        record(filters -> filters.packages.put(StaleCache.key(userId, reference)));
+    }
+
+    public void recordVersion(String userId, String packageRef, String versionId) {
+        record(filters -> filters.versions.put(StaleCache.key(userId, packageRef, versionId)));
+    }
+
+    /**
+     * Replaces the filters with new ones read from the database, sized for the current number of keys.
+     */
+    public synchronized void rebuild() {
+        final long startedAt = System.currentTimeMillis();
+        final DBCollection packages = packageCollection();
+        long versionCount = 0;
+        for (Partition partition : partitionRouter.getPartitions()) {
+            versionCount += versionCollection(partition).count();
+        }
+        final Filters filters = new Filters(
+                new BloomFilter(Math.max(expectedKeys, 2 * packages.count()), falsePositiveRate),
+                new BloomFilter(Math.max(expectedKeys, 2 * versionCount), falsePositiveRate)
+        );
+        building = filters;
+        try {
+            readKeys(filters, new BasicDBObject());
+            current = filters;
+            refreshedAt = startedAt;
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Adds the keys created since the previous refresh, through any instance.
+     */
+    public synchronized void refresh() {
+        final Filters filters = current;
+        if (filters == null) {
+            rebuild();
+            return;
+        }
+        final long startedAt = System.currentTimeMillis();
+        readKeys(filters, new BasicDBObject(ID_KEY, new BasicDBObject("$gte", new ObjectId(new Date(refreshedAt - REFRESH_OVERLAP)))));
+        refreshedAt = startedAt;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public BloomFilter getPackageFilter() {
+        return current != null ? current.packages : null;
+    }
+
+    public BloomFilter getVersionFilter() {
+        return current != null ? current.versions : null;
+    }
+
+    public long getRejectedPackageCount() {
+        return rejectedPackages.get();
+    }
+
+    public long getRejectedVersionCount() {
+        return rejectedVersions.get();
+    }
+
+    /**
+     * Reads the filter being built before the current one: a rebuild that completes in between already made it the
+     * current one, and one that starts afterwards scans the document.
+     */
+    private void record(Consumer<Filters> put) {
+        final Filters next = building;
+        final Filters filters = current;
+        if (filters != null) {
+            put.accept(filters);
+        }
+        if (next != null && next != filters) {
+            put.accept(next);
+        }
+    }
+
+    private void readKeys(Filters filters, DBObject query) {
+        try (DBCursor cursor = packageCollection().find(query, new BasicDBObject(PACKAGE_USER_ID_KEY, 1).append(PACKAGE_REFERENCE_KEY, 1))) {
+            for (DBObject dbObject : cursor) {
+                filters.packages.put(StaleCache.key((String) dbObject.get(PACKAGE_USER_ID_KEY), (String) dbObject.get(PACKAGE_REFERENCE_KEY)));
+            }
+        }
+        final DBObject projection = new BasicDBObject(USER_ID_KEY, 1).append(PACKAGE_REF_KEY, 1).append(VERSION_ID_KEY, 1);
+        for (Partition partition : partitionRouter.getPartitions()) {
+            try (DBCursor cursor = versionCollection(partition).find(query, projection)) {
+                for (DBObject dbObject : cursor) {
+                    final DBObject metadata = (DBObject) dbObject.get("metadata");
+                    if (metadata != null) {
+                        filters.versions.put(StaleCache.key(
+                                (String) metadata.get("userId"),
+                                (String) metadata.get("packageRef"),
+                                (String) metadata.get("versionId")
+                        ));
+                    }
+                }
+            }
+        }
+    }
+
+    private DBCollection packageCollection() {
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Package.class));
+    }
+
+    private static DBCollection versionCollection(Partition partition) {
+        return partition.getMongoOperations().getCollection(partition.getCollection());
+    }
+
+    private static class Filters {
+        private final BloomFilter packages;
+        private final BloomFilter versions;
+
+        private Filters(BloomFilter packages, BloomFilter versions) {
+            this.packages = packages;
+            this.versions = versions;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import io.barracks.componentservice.model.Package;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface PackageRepositoryCustom {
@@ -37,4 +38,11 @@ public interface PackageRepositoryCustom {
 
     Page<Package> getPackage(String userId, Pageable pageable);
 
+    /**
+     * Lists the packages of every owner, ordered by owner and reference.
+     *
+     * @param afterUserId    owner of the last package of the previous batch, or null to start from the beginning.
+     * @param afterReference reference of the last package of the previous batch.
+     */
+    List<Package> getPackages(String afterUserId, String afterReference, int limit);
 }
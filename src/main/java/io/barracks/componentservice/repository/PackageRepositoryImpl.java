@@ -24,6 +24,13 @@
 
 package io.barracks.componentservice.repository;
 
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.model.DBCollectionCountOptions;
+import com.mongodb.client.model.DBCollectionFindOptions;
+import io.barracks.componentservice.config.CircuitBreaker;
 import io.barracks.componentservice.model.Package;
 import io.barracks.componentservice.repository.exception.DuplicatePackageException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,28 +38,63 @@ import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
+/**
+ * Packages of the owners. Every call goes through the Mongo circuit breaker, and a package that cannot be read while
+ * Mongo is unavailable is served from the last known state. The lookups of packages known to not exist are answered
+ * by the {@link LookupFilter}, and all the reads by the {@link CatalogueReplica} when it is enabled.
+ */
 public class PackageRepositoryImpl implements PackageRepositoryCustom {
     private static final String USER_ID_KEY = "userId";
     private final MongoOperations mongoOperations;
+    private final ReadRouting readRouting;
+    private final CircuitBreaker circuitBreaker;
+    private final StaleCache<Package> staleCache;
+    private final LookupFilter lookupFilter;
+    private final SearchIndex searchIndex;
+    private final CatalogueReplica catalogueReplica;
 
     @Autowired
-    public PackageRepositoryImpl(MongoOperations mongoOperations) {
+    public PackageRepositoryImpl(
+            MongoOperations mongoOperations,
+            ReadRouting readRouting,
+            CircuitBreaker circuitBreaker,
+            StaleCache<Package> staleCache,
+            LookupFilter lookupFilter,
+            SearchIndex searchIndex,
+            CatalogueReplica catalogueReplica
+    ) {
         this.mongoOperations = mongoOperations;
+        this.readRouting = readRouting;
+        this.circuitBreaker = circuitBreaker;
+        this.staleCache = staleCache;
+        this.lookupFilter = lookupFilter;
+        this.searchIndex = searchIndex;
+        this.catalogueReplica = catalogueReplica;
     }
 
     @Override
     public Package createPackage(Package aPackage) {
         try {
-            mongoOperations.insert(aPackage);
+            circuitBreaker.execute(() -> {
+                mongoOperations.insert(aPackage);
+                return aPackage;
+            });
+            readRouting.recordWrite(aPackage.getUserId());
+            lookupFilter.recordPackage(aPackage.getUserId(), aPackage.getReference());
+            searchIndex.recordPackage(aPackage);
             return aPackage;
         } catch (DuplicateKeyException dke) {
             throw new DuplicatePackageException(aPackage, dke);
@@ -61,15 +103,80 @@ public class PackageRepositoryImpl implements PackageRepositoryCustom {
 
     @Override
     public Optional<Package> getPackage(String userId, String reference) {
-        return Optional.ofNullable(mongoOperations.findOne(Query.query(where("userId").is(userId).and("reference").is(reference)), Package.class));
+        final Optional<CatalogueReplica.Snapshot> catalogue = catalogueReplica.forOwner(userId);
+        if (catalogue.isPresent()) {
+            return catalogue.get().getPackage(userId, reference);
+        }
+        if (!readRouting.hasRecentWrite(userId) && !lookupFilter.mightContainPackage(userId, reference)) {
+            return Optional.empty();
+        }
+        final String key = StaleCache.key(userId, reference);
+        try {
+            return staleCache.update(key, circuitBreaker.execute(() -> findPackage(userId, reference)));
+        } catch (RuntimeException e) {
+            return staleCache.fallback(key, e, circuitBreaker);
+        }
     }
 
     @Override
     public Page<Package> getPackage(String userId, Pageable pageable) {
-        final Query query = query(where(USER_ID_KEY).is(userId));
+        final Optional<Page<Package>> page = catalogueReplica.forOwner(userId).flatMap(catalogue -> catalogue.getPackages(userId, pageable));
+        if (page.isPresent()) {
+            return page.get();
+        }
+        return circuitBreaker.execute(() -> findPackages(userId, pageable));
+    }
 
-        final long count = mongoOperations.count(query, Package.class);
-        final List<Package> aPackages = mongoOperations.find(query.with(pageable), Package.class);
+    @Override
+    public List<Package> getPackages(String afterUserId, String afterReference, int limit) {
+        final Query query = afterUserId == null ? new Query() : query(new Criteria().orOperator(
+                where(USER_ID_KEY).gt(afterUserId),
+                where(USER_ID_KEY).is(afterUserId).and("reference").gt(afterReference)
+        ));
+        query.with(new Sort(Sort.Direction.ASC, USER_ID_KEY, "reference")).limit(limit);
+        return circuitBreaker.execute(() -> mongoOperations.find(query, Package.class));
+    }
+
+    private Optional<Package> findPackage(String userId, String reference) {
+        final DBObject query = Query.query(where("userId").is(userId).and("reference").is(reference)).getQueryObject();
+        final ReadPreference readPreference = readRouting.forLookup(userId);
+        DBObject dbObject = getCollection().findOne(query, findOptions(readPreference));
+        if (dbObject == null && !ReadPreference.primary().equals(readPreference)) {
+            dbObject = getCollection().findOne(query, findOptions(ReadPreference.primary()));
+        }
+        return Optional.ofNullable(dbObject).map(this::toPackage);
+    }
+
+    private Page<Package> findPackages(String userId, Pageable pageable) {
+        final ReadPreference readPreference = readRouting.forList(userId);
+        final Query query = query(where(USER_ID_KEY).is(userId)).with(pageable);
+
+        final long count = getCollection().count(query.getQueryObject(), new DBCollectionCountOptions()
+                .readPreference(readPreference)
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS));
+        final List<Package> aPackages;
+        try (DBCursor cursor = getCollection().find(query.getQueryObject())
+                .sort(query.getSortObject())
+                .skip(query.getSkip())
+                .limit(query.getLimit())
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                .setReadPreference(readPreference)) {
+            aPackages = cursor.toArray().stream().map(this::toPackage).collect(Collectors.toList());
+        }
         return new PageImpl<>(aPackages, pageable, count);
     }
+
+    private DBCollectionFindOptions findOptions(ReadPreference readPreference) {
+        return new DBCollectionFindOptions()
+                .readPreference(readPreference)
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS);
+    }
+
+    private DBCollection getCollection() {
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Package.class));
+    }
+
+    private Package toPackage(DBObject dbObject) {
+        return mongoOperations.getConverter().read(Package.class, dbObject);
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.ReadPreference;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read preference of each kind of read. The reads of an owner go to the primary for a while after it wrote, so that it
+ * sees its own writes even when the secondaries lag behind. The writes made through another instance are known from
+ * the time the owner sends back. Every read is given the same server-side deadline.
+ * <p>
+ * The writes older than the window are evicted by a write once many owners are tracked, at most once per window since
+ * no write recorded after an eviction can expire sooner, so that the writes never scan the owners one by one.
+ */
+public class ReadRouting {
+    private static final int EVICTION_THRESHOLD = 10000;
+    private static final long MIN_EVICTION_INTERVAL = 1000L;
+
+    private final ReadPreference lookups;
+    private final ReadPreference lists;
+    private final ReadPreference chunks;
+    private final long readYourWritesWindow;
+    private final long maxTime;
+    private final ConcurrentMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction = new AtomicLong();
+
+    public ReadRouting(ReadPreference lookups, ReadPreference lists, ReadPreference chunks, long readYourWritesWindow) {
+        this(lookups, lists, chunks, readYourWritesWindow, 0L);
+    }
+
+    public ReadRouting(ReadPreference lookups, ReadPreference lists, ReadPreference chunks, long readYourWritesWindow, long maxTime) {
+        this.lookups = lookups;
+        this.lists = lists;
+        this.chunks = chunks;
+        this.readYourWritesWindow = readYourWritesWindow;
+        this.maxTime = maxTime;
+    }
+
+    public ReadPreference forLookup(String userId) {
+        return forOwner(userId, lookups);
+    }
+
+    public ReadPreference forList(String userId) {
+        return forOwner(userId, lists);
+    }
+
+    public ReadPreference getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the time (in ms) the server may spend on a read, 0 for no limit.
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return the time (in ms) of the latest write of the owner.
+     */
+    public long recordWrite(String userId) {
+        return recordWrite(userId, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a write of the owner made at the given time (in ms), capped to the current time.
+     *
+     * @return the time (in ms) of the latest write of the owner.
+     */
+    public long recordWrite(String userId, long writtenAt) {
+        final long now = System.currentTimeMillis();
+        if (lastWrites.size() > EVICTION_THRESHOLD) {
+            evictExpiredWrites(now);
+        }
+        return lastWrites.merge(userId, Math.min(writtenAt, now), Math::max);
+    }
+
+    /**
+     * @return whether the owner wrote within the read-your-writes window.
+     */
+    public boolean hasRecentWrite(String userId) {
+        final Long lastWrite = lastWrites.get(userId);
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesWindow;
+    }
+
+    public Optional<Long> getLastWrite(String userId) {
+        return Optional.ofNullable(lastWrites.get(userId));
+    }
+
+    /**
+     * Removes the writes older than the window, unless another write did it less than a window ago.
+     */
+    private void evictExpiredWrites(long now) {
+        final long scheduled = nextEviction.get();
+        if (now < scheduled || !nextEviction.compareAndSet(scheduled, now + Math.max(readYourWritesWindow, MIN_EVICTION_INTERVAL))) {
+            return;
+        }
+        lastWrites.values().removeIf(lastWrite -> now - lastWrite >= readYourWritesWindow);
+    }
+
+    int getTrackedOwnerCount() {
+        return lastWrites.size();
+    }
+
+    private ReadPreference forOwner(String userId, ReadPreference readPreference) {
+        final Long lastWrite = lastWrites.get(userId);
+        if (lastWrite == null || readPreference.equals(ReadPreference.primary())) {
+            return readPreference;
+        }
+        if (System.currentTimeMillis() - lastWrite < readYourWritesWindow) {
+            return ReadPreference.primary();
+        }
+        lastWrites.remove(userId, lastWrite);
+        return readPreference;
+    }
+}
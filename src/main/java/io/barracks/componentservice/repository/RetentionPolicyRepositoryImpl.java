@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.model.RetentionPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class RetentionPolicyRepositoryImpl implements RetentionPolicyRepositoryCustom {
+    private final MongoOperations mongoOperations;
+
+    @Autowired
+    public RetentionPolicyRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public RetentionPolicy savePolicy(RetentionPolicy policy) {
+        return mongoOperations.findAndModify(
+                query(where("userId").is(policy.getUserId()).and("packageRef").is(policy.getPackageRef())),
+                new Update()
+                        .set("keepLast", policy.getKeepLast())
+                        .set("keepDays", policy.getKeepDays())
+                        .set("releasedKey", policy.getReleasedKey())
+                        .setOnInsert("prunedVersions", 0L)
+                        .setOnInsert("prunedBytes", 0L)
+                        .setOnInsert("createdAt", policy.getCreatedAt()),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                RetentionPolicy.class
+        );
+    }
+
+    @Override
+    public void recordPruning(String id, long versions, long bytes, Date prunedAt) {
+        mongoOperations.updateFirst(
+                query(where("_id").is(id)),
+                new Update().inc("prunedVersions", versions).inc("prunedBytes", bytes).set("lastPrunedAt", prunedAt),
+                RetentionPolicy.class
+        );
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.SearchHit;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static io.barracks.componentservice.repository.VersionDocuments.*;
+
+/**
+ * Inverted index over the names and descriptions of the packages and versions of each owner, so that they are searched
+ * without querying Mongo. As for the {@link LookupFilter}, the index is rebuilt from the database periodically, which
+ * forgets the deleted documents, the documents written through this instance are added as they are written, and the
+ * ones created through the other instances are read every refresh interval.
+ * <p>
+ * A document matches a search when each of its words is a word, or the prefix of a word, of the document. The
+ * documents are ranked on the words they match, the words of the name weighing more than the ones of the description
+ * and whole words more than prefixes.
+ */
+public class SearchIndex implements InitializingBean, DisposableBean {
+    static final int NAME_WEIGHT = 3;
+    static final int DESCRIPTION_WEIGHT = 1;
+    static final int WORD_BOOST = 2;
+    private static final int MAX_QUERY_WORDS = 10;
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String PACKAGE_USER_ID_KEY = "userId";
+    private static final String PACKAGE_REFERENCE_KEY = "reference";
+    private static final String PACKAGE_NAME_KEY = "name";
+    private static final String PACKAGE_DESCRIPTION_KEY = "description";
+    private static final String VERSION_NAME_KEY = "metadata.name";
+    private static final String VERSION_DESCRIPTION_KEY = "metadata.description";
+
+    private final MongoOperations mongoOperations;
+    private final PartitionRouter partitionRouter;
+    private final TaskScheduler taskScheduler;
+    private final boolean enabled;
+    private final long rebuildInterval;
+    private final long refreshInterval;
+
+    private volatile Map<String, OwnerIndex> current;
+    private volatile Map<String, OwnerIndex> building;
+    private long refreshedAt;
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    public SearchIndex(
+            MongoOperations mongoOperations,
+            PartitionRouter partitionRouter,
+            TaskScheduler taskScheduler,
+            boolean enabled,
+            long rebuildInterval,
+            long refreshInterval
+    ) {
+        this.mongoOperations = mongoOperations;
+        this.partitionRouter = partitionRouter;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.rebuildInterval = rebuildInterval;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            rebuild();
+            tasks.add(taskScheduler.scheduleWithFixedDelay(this::rebuild, new Date(System.currentTimeMillis() + rebuildInterval), rebuildInterval));
+            tasks.add(taskScheduler.scheduleWithFixedDelay(this::refresh, new Date(System.currentTimeMillis() + refreshInterval), refreshInterval));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        tasks.forEach(task -> task.cancel(false));
+    }
+
+    /**
+     * @param type the type of documents to search, or null for both.
+     * @return the documents of the owner matching the query, best ranked first.
+     */
+    public List<SearchHit> search(String userId, String query, SearchHit.Type type, int limit) {
+        final Map<String, OwnerIndex> owners = current;
+        final List<String> words = tokenize(query).stream().distinct().limit(MAX_QUERY_WORDS).collect(Collectors.toList());
+        final OwnerIndex owner = owners == null ? null : owners.get(userId);
+        if (owner == null || words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return owner.search(words, type, limit);
+    }
+
+    public void recordPackage(Package aPackage) {
+        record(aPackage.getUserId(), packageEntry(aPackage.getReference(), aPackage.getName(), aPackage.getDescription()));
+    }
+
+    public void recordVersion(Version version) {
+        record(version.getUserId(), versionEntry(version.getPackageRef(), version.getId(), version.getName(), version.getDescription()));
+    }
+
+    /**
+     * Removes a deleted version from the index of this instance. The other instances keep finding it until their next
+     * rebuild.
+     */
+    public void removeVersion(String userId, String packageRef, String versionId) {
+        final String key = StaleCache.key(SearchHit.Type.VERSION.name(), packageRef, versionId);
+        final Map<String, OwnerIndex> next = building;
+        final Map<String, OwnerIndex> owners = current;
+        final Consumer<Map<String, OwnerIndex>> remove = index -> {
+            final OwnerIndex owner = index.get(userId);
+            if (owner != null) {
+                owner.remove(key);
+            }
+        };
+        if (owners != null) {
+            remove.accept(owners);
+        }
+        if (next != null && next != owners) {
+            remove.accept(next);
+        }
+    }
+
+    /**
+     * Replaces the index with a new one read from the database.
+     */
+    public synchronized void rebuild() {
+        final long startedAt = System.currentTimeMillis();
+        final Map<String, OwnerIndex> owners = new ConcurrentHashMap<>();
+        building = owners;
+        try {
+            readDocuments(owners, new BasicDBObject());
+            current = owners;
+            refreshedAt = startedAt;
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Adds the documents created since the previous refresh, through any instance.
+     */
+    public synchronized void refresh() {
+        final Map<String, OwnerIndex> owners = current;
+        if (owners == null) {
+            rebuild();
+            return;
+        }
+        final long startedAt = System.currentTimeMillis();
+        readDocuments(owners, new BasicDBObject(ID_KEY, new BasicDBObject("$gte", new ObjectId(new Date(refreshedAt - LookupFilter.REFRESH_OVERLAP)))));
+        refreshedAt = startedAt;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getOwnerCount() {
+        final Map<String, OwnerIndex> owners = current;
+        return owners == null ? 0L : owners.size();
+    }
+
+    public long getDocumentCount() {
+        final Map<String, OwnerIndex> owners = current;
+        return owners == null ? 0L : owners.values().stream().mapToLong(OwnerIndex::getDocumentCount).sum();
+    }
+
+    public long getWordCount() {
+        final Map<String, OwnerIndex> owners = current;
+        return owners == null ? 0L : owners.values().stream().mapToLong(OwnerIndex::getWordCount).sum();
+    }
+
+    /**
+     * @return the lower-case words of the text.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(word -> !word.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Adds the document to the index being built too, in case it was already read, as the lookup filter does.
+     */
+    private void record(String userId, Entry entry) {
+        final Map<String, OwnerIndex> next = building;
+        final Map<String, OwnerIndex> owners = current;
+        final Consumer<Map<String, OwnerIndex>> put = index -> index.computeIfAbsent(userId, key -> new OwnerIndex()).put(entry);
+        if (owners != null) {
+            put.accept(owners);
+        }
+        if (next != null && next != owners) {
+            put.accept(next);
+        }
+    }
+
+    private void readDocuments(Map<String, OwnerIndex> owners, DBObject query) {
+        final DBObject packageProjection = new BasicDBObject(PACKAGE_USER_ID_KEY, 1)
+                .append(PACKAGE_REFERENCE_KEY, 1)
+                .append(PACKAGE_NAME_KEY, 1)
+                .append(PACKAGE_DESCRIPTION_KEY, 1);
+        try (DBCursor cursor = packageCollection().find(query, packageProjection)) {
+            for (DBObject dbObject : cursor) {
+                owners.computeIfAbsent((String) dbObject.get(PACKAGE_USER_ID_KEY), key -> new OwnerIndex()).put(packageEntry(
+                        (String) dbObject.get(PACKAGE_REFERENCE_KEY),
+                        (String) dbObject.get(PACKAGE_NAME_KEY),
+                        (String) dbObject.get(PACKAGE_DESCRIPTION_KEY)
+                ));
+            }
+        }
+        final DBObject versionProjection = new BasicDBObject(USER_ID_KEY, 1)
+                .append(PACKAGE_REF_KEY, 1)
+                .append(VERSION_ID_KEY, 1)
+                .append(VERSION_NAME_KEY, 1)
+                .append(VERSION_DESCRIPTION_KEY, 1);
+        for (Partition partition : partitionRouter.getPartitions()) {
+            try (DBCursor cursor = versionCollection(partition).find(query, versionProjection)) {
+                for (DBObject dbObject : cursor) {
+                    final DBObject metadata = (DBObject) dbObject.get("metadata");
+                    if (metadata != null) {
+                        owners.computeIfAbsent((String) metadata.get("userId"), key -> new OwnerIndex()).put(versionEntry(
+                                (String) metadata.get("packageRef"),
+                                (String) metadata.get("versionId"),
+                                (String) metadata.get("name"),
+                                (String) metadata.get("description")
+                        ));
+                    }
+                }
+            }
+        }
+    }
+
+    private DBCollection packageCollection() {
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Package.class));
+    }
+
+    private static DBCollection versionCollection(Partition partition) {
+        return partition.getMongoOperations().getCollection(partition.getCollection());
+    }
+
+    private static Entry packageEntry(String reference, String name, String description) {
+        return new Entry(
+                SearchHit.builder()
+                        .type(SearchHit.Type.PACKAGE)
+                        .packageRef(reference)
+                        .name(name)
+                        .description(description)
+                        .build(),
+                StaleCache.key(SearchHit.Type.PACKAGE.name(), reference)
+        );
+    }
+
+    private static Entry versionEntry(String packageRef, String versionId, String name, String description) {
+        return new Entry(
+                SearchHit.builder()
+                        .type(SearchHit.Type.VERSION)
+                        .packageRef(packageRef)
+                        .versionId(versionId)
+                        .name(name)
+                        .description(description)
+                        .build(),
+                StaleCache.key(SearchHit.Type.VERSION.name(), packageRef, versionId)
+        );
+    }
+
+    /**
+     * Document of the index, with the weight of each of its words.
+     */
+    private static class Entry {
+        private final SearchHit hit;
+        private final String key;
+        private final Map<String, Integer> words = new HashMap<>();
+
+        private Entry(SearchHit hit, String key) {
+            this.hit = hit;
+            this.key = key;
+            tokenize(hit.getName()).forEach(word -> words.merge(word, NAME_WEIGHT, Integer::sum));
+            tokenize(hit.getDescription()).forEach(word -> words.merge(word, DESCRIPTION_WEIGHT, Integer::sum));
+        }
+    }
+
+    /**
+     * Documents of an owner, and the documents each word appears in, sorted by word to find the words starting with a
+     * prefix.
+     */
+    private static class OwnerIndex {
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final NavigableMap<String, Map<Entry, Integer>> postings = new TreeMap<>();
+
+        private synchronized void put(Entry entry) {
+            unindex(entries.put(entry.key, entry));
+            entry.words.forEach((word, weight) -> postings.computeIfAbsent(word, key -> new HashMap<>()).put(entry, weight));
+        }
+
+        private synchronized void remove(String key) {
+            unindex(entries.remove(key));
+        }
+
+        private void unindex(Entry previous) {
+            if (previous != null) {
+                previous.words.keySet().forEach(word -> postings.computeIfPresent(word, (key, documents) -> {
+                    documents.remove(previous);
+                    return documents.isEmpty() ? null : documents;
+                }));
+            }
+        }
+
+        /**
+         * Scores the documents matching each word, keeping the ones matching all of them.
+         */
+        private synchronized List<SearchHit> search(List<String> words, SearchHit.Type type, int limit) {
+            Map<Entry, Double> scores = null;
+            for (String word : words) {
+                final Map<Entry, Double> wordScores = new HashMap<>();
+                postings.subMap(word, true, word + Character.MAX_VALUE, true).forEach((indexed, documents) -> {
+                    final int boost = indexed.equals(word) ? WORD_BOOST : 1;
+                    documents.forEach((entry, weight) -> wordScores.merge(entry, (double) weight * boost, Double::sum));
+                });
+                if (scores != null) {
+                    wordScores.keySet().retainAll(scores.keySet());
+                    final Map<Entry, Double> previous = scores;
+                    wordScores.replaceAll((entry, score) -> score + previous.get(entry));
+                }
+                scores = wordScores;
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            return scores.entrySet().stream()
+                    .filter(scored -> type == null || scored.getKey().hit.getType() == type)
+                    .sorted(Comparator.<Map.Entry<Entry, Double>>comparingDouble(Map.Entry::getValue).reversed()
+                            .thenComparing(scored -> String.valueOf(scored.getKey().hit.getName())))
+                    .limit(limit)
+                    .map(scored -> scored.getKey().hit.toBuilder().score(scored.getValue()).build())
+                    .collect(Collectors.toList());
+        }
+
+        private synchronized long getDocumentCount() {
+            return entries.size();
+        }
+
+        private synchronized long getWordCount() {
+            return postings.size();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.CircuitBreaker;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Last known state of the recently read documents, served when the database is unavailable. The values come back
+ * marked with the time they were read, so that the responses can tell they are stale. The least recently used entries
+ * are evicted first.
+ */
+public class StaleCache<T> {
+    private final int maxEntries;
+    private final long maxAge;
+    private final BiFunction<T, Date, T> marker;
+    private final Map<String, Entry<T>> entries;
+    private final AtomicLong served = new AtomicLong();
+
+    public StaleCache(int maxEntries, long maxAge, BiFunction<T, Date, T> marker) {
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.marker = marker;
+        this.entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > StaleCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Records the result of a successful read: the value when found, nothing when it does not exist any more.
+     */
+    public Optional<T> update(String key, Optional<T> value) {
+        if (maxEntries > 0) {
+            synchronized (entries) {
+                if (value.isPresent()) {
+                    entries.put(key, new Entry<>(value.get(), System.currentTimeMillis()));
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Serves the stale value of the key when the read failed because the database is unavailable.
+     *
+     * @throws RuntimeException the error of the read, when it is not an unavailability or nothing recent enough is
+     *                          known for the key.
+     */
+    public Optional<T> fallback(String key, Throwable error, CircuitBreaker circuitBreaker) {
+        if (!circuitBreaker.isUnavailable(error)) {
+            throw propagate(error);
+        }
+        final Entry<T> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || System.currentTimeMillis() - entry.readAt > maxAge) {
+            throw propagate(error);
+        }
+        served.incrementAndGet();
+        return Optional.of(marker.apply(entry.value, new Date(entry.readAt)));
+    }
+
+    /**
+     * @return a key made of the given parts, which may contain any printable character.
+     */
+    public static String key(String... parts) {
+        return String.join("\0", parts);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getServedCount() {
+        return served.get();
+    }
+
+    private static RuntimeException propagate(Throwable error) {
+        return error instanceof RuntimeException ? (RuntimeException) error : new CompletionException(error);
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long readAt;
+
+        private Entry(T value, long readAt) {
+            this.value = value;
+            this.readAt = readAt;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import java.util.Date;
+
+public interface StorageUsageRepositoryCustom {
+    /**
+     * Adds the given amounts to the usage of a package and to the one of its owner, creating them when needed.
+     */
+    void recordChange(String userId, String packageRef, long versions, long bytes);
+
+    /**
+     * Replaces the counters of a package, or of an owner when the package reference is null, unless they were changed
+     * since they were read.
+     *
+     * @param expectedVersions number of versions read, 0 when the usage did not exist.
+     * @param expectedBytes    size read, 0 when the usage did not exist.
+     * @return whether the counters were replaced.
+     */
+    boolean reconcile(String userId, String packageRef, long expectedVersions, long expectedBytes, long versionCount, long totalBytes, Date reconciledAt);
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.model.StorageUsage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class StorageUsageRepositoryImpl implements StorageUsageRepositoryCustom {
+    private static final String VERSION_COUNT_KEY = "versionCount";
+    private static final String TOTAL_BYTES_KEY = "totalBytes";
+
+    private final MongoOperations mongoOperations;
+
+    @Autowired
+    public StorageUsageRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    /**
+     * Updates the owner first, so that a reconciliation of the owner running in between sees the change and gives up.
+     */
+    @Override
+    public void recordChange(String userId, String packageRef, long versions, long bytes) {
+        increment(byPackage(userId, null), versions, bytes);
+        increment(byPackage(userId, packageRef), versions, bytes);
+    }
+
+    @Override
+    public boolean reconcile(String userId, String packageRef, long expectedVersions, long expectedBytes, long versionCount, long totalBytes, Date reconciledAt) {
+        final Query query = byPackage(userId, packageRef);
+        query.addCriteria(where(VERSION_COUNT_KEY).is(expectedVersions).and(TOTAL_BYTES_KEY).is(expectedBytes));
+        try {
+            return mongoOperations.upsert(
+                    query,
+                    new Update().set(VERSION_COUNT_KEY, versionCount).set(TOTAL_BYTES_KEY, totalBytes).set("reconciledAt", reconciledAt),
+                    StorageUsage.class
+            ).getN() > 0;
+        } catch (DuplicateKeyException e) {
+            // The counters changed since they were read, and the upsert attempted to create them again
+            return false;
+        }
+    }
+
+    /**
+     * Retries once when a concurrent change created the usage between the lookup and the insertion of the upsert.
+     */
+    private void increment(Query query, long versions, long bytes) {
+        final Update update = new Update().inc(VERSION_COUNT_KEY, versions).inc(TOTAL_BYTES_KEY, bytes);
+        try {
+            mongoOperations.upsert(query, update, StorageUsage.class);
+        } catch (DuplicateKeyException e) {
+            mongoOperations.upsert(query, update, StorageUsage.class);
+        }
+    }
+
+    private static Query byPackage(String userId, String packageRef) {
+        return query(where("userId").is(userId).and("packageRef").is(packageRef));
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.GridFsBlobStore;
+import io.barracks.componentservice.repository.blob.LegacyGridFsBlobStore;
+import io.barracks.componentservice.repository.blob.StoredBlob;
+import io.barracks.componentservice.repository.documents.VersionDocument;
+import io.barracks.componentservice.repository.exception.LegacyBlobCopyException;
+import io.barracks.componentservice.repository.partition.Partition;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Mapping of the version documents shared by the blocking and asynchronous repositories. The documents keep the layout
+ * of a GridFS file so that the versions stored in {@code versions.files} before the blob stores are read the same way.
+ */
+final class VersionDocuments {
+    static final String ID_KEY = "_id";
+    static final String USER_ID_KEY = "metadata.userId";
+    static final String PACKAGE_REF_KEY = "metadata.packageRef";
+    static final String VERSION_ID_KEY = "metadata.versionId";
+    static final String BLOB_STORE_KEY = "metadata.blobStore";
+    static final String BLOB_ID_KEY = "metadata.blobId";
+    static final String UPLOAD_DATE_KEY = "uploadDate";
+    static final String LENGTH_KEY = "length";
+    static final String ACCESS_SCORE_KEY = "accessScore";
+    static final String ACCESSED_AT_KEY = "accessedAt";
+    /**
+     * Key of the numbers of completed and aborted downloads of the version, missing until the first one is written.
+     */
+    static final String DOWNLOADS_KEY = "downloads";
+    static final String COMPLETED_KEY = "completed";
+    static final String ABORTED_KEY = "aborted";
+    static final String COMPLETED_DOWNLOADS_KEY = DOWNLOADS_KEY + "." + COMPLETED_KEY;
+    static final String ABORTED_DOWNLOADS_KEY = DOWNLOADS_KEY + "." + ABORTED_KEY;
+    /**
+     * Number of updates of the metadata of the version, missing until the first one.
+     */
+    static final String REVISION_KEY = "revision";
+    static final String METADATA_FIELD_PREFIX = "metadata.metadata.";
+    /**
+     * Key of the free-form metadata of the version, inside the metadata of the document.
+     */
+    private static final String CUSTOM_METADATA_KEY = "metadata";
+    private static final String METADATA_INDEX_PREFIX = "metadata_";
+    private static final String METADATA_INDEX_SUFFIX = "_idx";
+
+    private VersionDocuments() {
+    }
+
+    static DBObject toDocument(Version version, StoredBlob blob, MongoConverter converter) {
+        final VersionDocument.Metadata metadata = VersionDocument.Metadata.builder()
+                .userId(version.getUserId())
+                .packageRef(version.getPackageRef())
+                .versionId(version.getId())
+                .name(version.getName())
+                .description(version.getDescription())
+                .blobStore(blob.getStore())
+                .blobId(blob.getId())
+                .build();
+        final DBObject dbMetadata = new BasicDBObject();
+        converter.write(metadata, dbMetadata);
+        if (version.getMetadata() != null) {
+            dbMetadata.put(CUSTOM_METADATA_KEY, version.getMetadata());
+        }
+        return new BasicDBObject()
+                .append("filename", version.getFilename())
+                .append("length", blob.getLength())
+                .append("md5", blob.getMd5())
+                .append(UPLOAD_DATE_KEY, new Date())
+                .append("metadata", dbMetadata);
+    }
+
+    /**
+     * @return the document of a copy of the version, referencing the blob of the source document. The copy is made in
+     * the package and with the identifier, name, description and metadata of the given version, or those of the source
+     * for the null ones.
+     * @throws LegacyBlobCopyException when the blob is stored in the source document itself.
+     */
+    static DBObject toCopyDocument(DBObject source, Version copy, MongoConverter converter) {
+        final DBObject dbMetadata = (DBObject) source.get("metadata");
+        final VersionDocument.Metadata metadata = readMetadata(dbMetadata, converter);
+        if (metadata.getBlobStore() == null) {
+            throw new LegacyBlobCopyException(metadata.getUserId(), metadata.getPackageRef(), metadata.getVersionId());
+        }
+        final Version version = Version.builder()
+                .userId(metadata.getUserId())
+                .packageRef(copy.getPackageRef())
+                .id(copy.getId() != null ? copy.getId() : metadata.getVersionId())
+                .filename((String) source.get("filename"))
+                .name(copy.getName() != null ? copy.getName() : metadata.getName())
+                .description(copy.getDescription() != null ? copy.getDescription() : metadata.getDescription())
+                .metadata(copy.getMetadata() != null ? copy.getMetadata() : rawMetadata(dbMetadata))
+                .build();
+        final StoredBlob blob = StoredBlob.builder()
+                .store(metadata.getBlobStore())
+                .id(metadata.getBlobId())
+                .length(((Number) source.get("length")).longValue())
+                .md5((String) source.get("md5"))
+                .build();
+        return toDocument(version, blob, converter);
+    }
+
+    static Version toVersion(DBObject dbObject, MongoConverter converter, BlobStores blobStores) {
+        final DBObject dbMetadata = (DBObject) dbObject.get("metadata");
+        final VersionDocument.Metadata metadata = readMetadata(dbMetadata, converter);
+        final BlobReference blob = toBlobReference(dbObject, metadata);
+        return Version.builder()
+                .filename((String) dbObject.get("filename"))
+                .length(((Number) dbObject.get("length")).longValue())
+                .md5((String) dbObject.get("md5"))
+                .userId(metadata.getUserId())
+                .packageRef(metadata.getPackageRef())
+                .id(metadata.getVersionId())
+                .metadata(rawMetadata(dbMetadata))
+                .name(metadata.getName())
+                .description(metadata.getDescription())
+                .revision(dbObject.get(REVISION_KEY) instanceof Number ? ((Number) dbObject.get(REVISION_KEY)).longValue() : 0L)
+                .content(blobStores.content(blob.getStore(), blob.getId()))
+                .build();
+    }
+
+    /**
+     * @param revision the revision the document must be at, or null for any.
+     */
+    static Criteria revisionCriteria(String userId, String packageRef, String versionId, Long revision) {
+        final Criteria criteria = versionCriteria(userId, packageRef, versionId);
+        if (revision == null) {
+            return criteria;
+        }
+        return revision == 0L ? criteria.and(REVISION_KEY).exists(false) : criteria.and(REVISION_KEY).is(revision);
+    }
+
+    /**
+     * @return the update replacing the name, description and free-form metadata given in the version, leaving the
+     * null ones as they are, and moving the document to its next revision. The binary is left untouched.
+     */
+    static Update metadataUpdate(Version changes) {
+        final Update update = new Update().inc(REVISION_KEY, 1L);
+        if (changes.getName() != null) {
+            update.set("metadata.name", changes.getName());
+        }
+        if (changes.getDescription() != null) {
+            update.set("metadata.description", changes.getDescription());
+        }
+        if (changes.getMetadata() != null) {
+            update.set("metadata." + CUSTOM_METADATA_KEY, changes.getMetadata());
+        }
+        return update;
+    }
+
+    /**
+     * @return the projection reading only the given fields of the versions.
+     */
+    static DBObject fieldsProjection(Collection<VersionField> fields) {
+        final BasicDBObject projection = new BasicDBObject(ID_KEY, 0);
+        fields.forEach(field -> projection.append(fieldKey(field), 1));
+        return projection;
+    }
+
+    /**
+     * Maps the fields of a document read with {@link #fieldsProjection(Collection)}, leaving out the missing ones.
+     */
+    static Map<String, Object> toFields(DBObject dbObject, Collection<VersionField> fields) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        for (VersionField field : fields) {
+            Object value = dbObject;
+            for (String part : fieldKey(field).split("\\.")) {
+                value = value instanceof DBObject ? ((DBObject) value).get(part) : null;
+            }
+            if (value != null) {
+                values.put(field.getProperty(), value);
+            }
+        }
+        return values;
+    }
+
+    static Map<String, Object> toFields(Version version, Collection<VersionField> fields) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        for (VersionField field : fields) {
+            final Object value;
+            switch (field) {
+                case ID:
+                    value = version.getId();
+                    break;
+                case PACKAGE_REF:
+                    value = version.getPackageRef();
+                    break;
+                case FILENAME:
+                    value = version.getFilename();
+                    break;
+                case MD5:
+                    value = version.getMd5();
+                    break;
+                case LENGTH:
+                    value = version.getLength();
+                    break;
+                case NAME:
+                    value = version.getName();
+                    break;
+                case DESCRIPTION:
+                    value = version.getDescription();
+                    break;
+                default:
+                    value = version.getMetadata();
+            }
+            if (value != null) {
+                values.put(field.getProperty(), value);
+            }
+        }
+        return values;
+    }
+
+    static BlobReference toBlobReference(DBObject dbObject, MongoConverter converter, Partition partition) {
+        return toBlobReference(dbObject, readMetadata((DBObject) dbObject.get("metadata"), converter)).toBuilder()
+                .partition(partition.getName())
+                .build();
+    }
+
+    /**
+     * @return the store receiving the new binaries of the owners of the partition, which is the GridFS store of the
+     * partition when the new binaries go to GridFS.
+     */
+    static BlobStore writeStore(BlobStores blobStores, Partition partition) {
+        final BlobStore writeStore = blobStores.getWriteStore();
+        return GridFsBlobStore.NAME.equals(writeStore.getName()) ? blobStores.get(partition.getBlobStore()).orElse(writeStore) : writeStore;
+    }
+
+    static Criteria versionCriteria(String userId, String packageRef, String versionId) {
+        return where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef).and(VERSION_ID_KEY).is(versionId);
+    }
+
+    /**
+     * Adds the conditions on the metadata fields to the criteria, each key in a single expression.
+     */
+    static Criteria metadataCriteria(Criteria criteria, List<MetadataCondition> conditions) {
+        final Map<String, List<MetadataCondition>> byKey = conditions.stream()
+                .collect(Collectors.groupingBy(MetadataCondition::getKey, LinkedHashMap::new, Collectors.toList()));
+        byKey.forEach((key, keyConditions) -> {
+            final Criteria field = criteria.and(METADATA_FIELD_PREFIX + key);
+            for (MetadataCondition condition : keyConditions) {
+                final Object value = condition.getValues().get(0);
+                switch (condition.getOperator()) {
+                    case EQ:
+                        field.is(value);
+                        break;
+                    case GT:
+                        field.gt(value);
+                        break;
+                    case GTE:
+                        field.gte(value);
+                        break;
+                    case LT:
+                        field.lt(value);
+                        break;
+                    case LTE:
+                        field.lte(value);
+                        break;
+                    case IN:
+                        field.in(condition.getValues());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported operator " + condition.getOperator());
+                }
+            }
+        });
+        return criteria;
+    }
+
+    /**
+     * @return the name of the index of the versions on a metadata key.
+     */
+    static String metadataIndexName(String key) {
+        return METADATA_INDEX_PREFIX + key + METADATA_INDEX_SUFFIX;
+    }
+
+    /**
+     * @return the metadata key of an index of the versions, or null when it is not one of the indexes on a metadata key.
+     */
+    static String metadataIndexKey(String indexName) {
+        if (!indexName.startsWith(METADATA_INDEX_PREFIX) || !indexName.endsWith(METADATA_INDEX_SUFFIX)
+                || indexName.length() <= METADATA_INDEX_PREFIX.length() + METADATA_INDEX_SUFFIX.length()) {
+            return null;
+        }
+        return indexName.substring(METADATA_INDEX_PREFIX.length(), indexName.length() - METADATA_INDEX_SUFFIX.length());
+    }
+
+    /**
+     * Matches the documents referencing the given blob.
+     */
+    static Criteria blobCriteria(String store, String blobId) {
+        if (LegacyGridFsBlobStore.NAME.equals(store)) {
+            return where(ID_KEY).is(new ObjectId(blobId)).and(BLOB_STORE_KEY).exists(false);
+        }
+        return where(BLOB_STORE_KEY).is(store).and(BLOB_ID_KEY).is(blobId);
+    }
+
+    /**
+     * Matches the document of the given blob reference, as long as it still uses that blob.
+     */
+    static Criteria blobCriteria(BlobReference blob) {
+        final Criteria criteria = blobCriteria(blob.getStore(), blob.getId());
+        return LegacyGridFsBlobStore.NAME.equals(blob.getStore()) ? criteria : criteria.and(ID_KEY).is(new ObjectId(blob.getDocumentId()));
+    }
+
+    /**
+     * Matches the documents whose blob is kept in the given store.
+     */
+    static Criteria storeCriteria(String store) {
+        return LegacyGridFsBlobStore.NAME.equals(store) ? where(BLOB_STORE_KEY).exists(false) : where(BLOB_STORE_KEY).is(store);
+    }
+
+    /**
+     * Maps the fields of the version metadata but its free-form metadata, which is left as read from the database.
+     */
+    private static VersionDocument.Metadata readMetadata(DBObject dbMetadata, MongoConverter converter) {
+        if (!dbMetadata.containsField(CUSTOM_METADATA_KEY)) {
+            return converter.read(VersionDocument.Metadata.class, dbMetadata);
+        }
+        final BasicDBObject fields = new BasicDBObject(dbMetadata.toMap());
+        fields.removeField(CUSTOM_METADATA_KEY);
+        return converter.read(VersionDocument.Metadata.class, fields);
+    }
+
+    /**
+     * @return the free-form metadata as decoded by the driver, with its documents and arrays copied to plain maps and
+     * lists so that it compares equal to the map it was created from. The values are kept as decoded, without looking
+     * up a conversion for each of them.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> rawMetadata(DBObject dbMetadata) {
+        final Object value = dbMetadata.get(CUSTOM_METADATA_KEY);
+        return value instanceof Map ? (Map<String, ?>) plain(value) : null;
+    }
+
+    private static Object plain(Object value) {
+        if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            final List<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                copy.add(plain(item));
+            }
+            return copy;
+        }
+        if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            final Map<Object, Object> copy = new LinkedHashMap<>(map.size() * 2);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), plain(entry.getValue()));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static String fieldKey(VersionField field) {
+        switch (field) {
+            case ID:
+                return VERSION_ID_KEY;
+            case PACKAGE_REF:
+                return PACKAGE_REF_KEY;
+            case FILENAME:
+                return "filename";
+            case MD5:
+                return "md5";
+            case LENGTH:
+                return "length";
+            case NAME:
+                return "metadata.name";
+            case DESCRIPTION:
+                return "metadata.description";
+            default:
+                return "metadata.metadata";
+        }
+    }
+
+    private static BlobReference toBlobReference(DBObject dbObject, VersionDocument.Metadata metadata) {
+        final String documentId = dbObject.get(ID_KEY).toString();
+        return BlobReference.builder()
+                .documentId(documentId)
+                .store(metadata.getBlobStore() == null ? LegacyGridFsBlobStore.NAME : metadata.getBlobStore())
+                .id(metadata.getBlobStore() == null ? documentId : metadata.getBlobId())
+                .md5((String) dbObject.get("md5"))
+                .length(dbObject.get("length") instanceof Number ? ((Number) dbObject.get("length")).longValue() : 0L)
+                .build();
+    }
+
+    /**
+     * Orders documents the way Mongo sorts them with the given sort, for the documents read from several partitions.
+     * Values of different types are only ordered consistently, missing values first.
+     */
+    static Comparator<DBObject> documentComparator(DBObject sort) {
+        Comparator<DBObject> comparator = (first, second) -> 0;
+        for (String key : sort.keySet()) {
+            final Comparator<DBObject> byKey = (first, second) -> compareValues(valueAt(first, key), valueAt(second, key));
+            comparator = comparator.thenComparing(((Number) sort.get(key)).intValue() < 0 ? byKey.reversed() : byKey);
+        }
+        return comparator;
+    }
+
+    private static Object valueAt(DBObject dbObject, String key) {
+        Object value = dbObject;
+        for (String part : key.split("\\.")) {
+            value = value instanceof DBObject ? ((DBObject) value).get(part) : null;
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : -1) : 1;
+        }
+        if (first instanceof Number && second instanceof Number) {
+            return Double.compare(((Number) first).doubleValue(), ((Number) second).doubleValue());
+        }
+        if (first instanceof Comparable && first.getClass().equals(second.getClass())) {
+            return ((Comparable<Object>) first).compareTo(second);
+        }
+        final int byType = first.getClass().getName().compareTo(second.getClass().getName());
+        return byType != 0 ? byType : first.toString().compareTo(second.toString());
+    }
+}
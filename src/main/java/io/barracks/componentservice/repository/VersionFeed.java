@@ -0,0 +1,405 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.barracks.componentservice.model.VersionEvent;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static io.barracks.componentservice.repository.VersionDocuments.*;
+
+/**
+ * Pushes the creations of versions to the subscribers of their owner or package. The version collections are read
+ * every poll interval for the documents created since the previous poll, through any instance, so that a single query
+ * per partition replaces the polling of the version lists by the subscribers. The identifier of an event is the one of
+ * the version document, from which a subscriber resumes its feed.
+ * <p>
+ * The events and heartbeats are queued per subscription and sent by a separate pool, so that a subscriber reading
+ * slowly never holds the threads polling the versions. A subscriber letting too many events pile up is dropped, and
+ * resumes its feed from its last event when it reconnects.
+ */
+public class VersionFeed implements InitializingBean, DisposableBean {
+    private final PartitionRouter partitionRouter;
+    private final BlobStores blobStores;
+    private final TaskScheduler taskScheduler;
+    private final Executor sender;
+    private final long pollInterval;
+    private final long heartbeatInterval;
+    private final int maxPendingEvents;
+
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong subscriptionCount = new AtomicLong();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong pollCount = new AtomicLong();
+    private final Map<ObjectId, Boolean> published = new HashMap<>();
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+    private long polledAt;
+
+    public VersionFeed(
+            PartitionRouter partitionRouter,
+            BlobStores blobStores,
+            TaskScheduler taskScheduler,
+            Executor sender,
+            long pollInterval,
+            long heartbeatInterval,
+            int maxPendingEvents
+    ) {
+        this.partitionRouter = partitionRouter;
+        this.blobStores = blobStores;
+        this.taskScheduler = taskScheduler;
+        this.sender = sender;
+        this.pollInterval = pollInterval;
+        this.heartbeatInterval = heartbeatInterval;
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        polledAt = System.currentTimeMillis();
+        tasks.add(taskScheduler.scheduleWithFixedDelay(this::poll, pollInterval));
+        tasks.add(taskScheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval));
+    }
+
+    @Override
+    public void destroy() {
+        tasks.forEach(task -> task.cancel(false));
+    }
+
+    /**
+     * Subscribes to the versions created for the owner, or for one of its packages when the reference is given. The
+     * versions created after the given event are replayed first, in order, before the new ones. A subscriber further
+     * behind than the events it may have pending is sent as many, then dropped, and resumes from the last one when it
+     * reconnects, so that the replay never holds more than that.
+     *
+     * @param packageRef  the package to follow, or null for all the packages of the owner.
+     * @param lastEventId the identifier of the last event received, or null to receive the new versions only.
+     */
+    public Subscription subscribe(String userId, String packageRef, String lastEventId, Listener listener) {
+        final ObjectId after = lastEventId != null && ObjectId.isValid(lastEventId) ? new ObjectId(lastEventId) : null;
+        final Subscription subscription = new Subscription(userId, packageRef, after, listener);
+        subscriptions.computeIfAbsent(userId, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+        subscriptionCount.incrementAndGet();
+        if (after != null) {
+            final List<VersionEvent> events = getEvents(userId, packageRef, lastEventId, maxPendingEvents + 1);
+            for (VersionEvent event : events.subList(0, Math.min(events.size(), maxPendingEvents))) {
+                if (!subscription.replay(event)) {
+                    return subscription;
+                }
+            }
+            if (events.size() > maxPendingEvents) {
+                subscription.drop();
+                return subscription;
+            }
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * @return the versions created after the given event, in order.
+     */
+    public List<VersionEvent> getEvents(String userId, String packageRef, String afterEventId, int limit) {
+        final BasicDBObject query = new BasicDBObject(USER_ID_KEY, userId)
+                .append(ID_KEY, new BasicDBObject("$gt", new ObjectId(afterEventId)));
+        if (packageRef != null) {
+            query.append(PACKAGE_REF_KEY, packageRef);
+        }
+        final List<DBObject> dbObjects = new ArrayList<>();
+        for (Partition partition : partitionRouter.getReadPartitions(userId)) {
+            try (DBCursor cursor = partition.getMongoOperations().getCollection(partition.getCollection())
+                    .find(query)
+                    .sort(new BasicDBObject(ID_KEY, 1))
+                    .limit(limit)) {
+                cursor.forEach(dbObjects::add);
+            }
+        }
+        return dbObjects.stream()
+                .sorted(Comparator.comparing(dbObject -> (ObjectId) dbObject.get(ID_KEY)))
+                .limit(limit)
+                .map(this::toEvent)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Publishes the versions created since the previous poll. The documents are read with a margin for the clock skew
+     * between the instances, and the ones already published within it are skipped.
+     */
+    public synchronized void poll() {
+        final long startedAt = System.currentTimeMillis();
+        final ObjectId since = new ObjectId(new Date(polledAt - LookupFilter.REFRESH_OVERLAP));
+        final DBObject query = new BasicDBObject(ID_KEY, new BasicDBObject("$gte", since));
+        for (Partition partition : partitionRouter.getPartitions()) {
+            try (DBCursor cursor = partition.getMongoOperations().getCollection(partition.getCollection())
+                    .find(query)
+                    .sort(new BasicDBObject(ID_KEY, 1))) {
+                for (DBObject dbObject : cursor) {
+                    if (published.put((ObjectId) dbObject.get(ID_KEY), Boolean.TRUE) == null) {
+                        publish(dbObject);
+                    }
+                }
+            }
+        }
+        published.keySet().removeIf(id -> id.compareTo(since) < 0);
+        polledAt = startedAt;
+        pollCount.incrementAndGet();
+    }
+
+    public long getSubscriberCount() {
+        return subscriptionCount.get();
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void publish(DBObject dbObject) {
+        final DBObject metadata = (DBObject) dbObject.get("metadata");
+        final Set<Subscription> subscribers = metadata == null ? null : subscriptions.get(metadata.get("userId"));
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        final VersionEvent event = toEvent(dbObject);
+        for (Subscription subscription : subscribers) {
+            if (subscription.packageRef == null || subscription.packageRef.equals(event.getVersion().getPackageRef())) {
+                subscription.deliver(event);
+            }
+        }
+        publishedCount.incrementAndGet();
+    }
+
+    private void heartbeat() {
+        for (Collection<Subscription> subscribers : subscriptions.values()) {
+            for (Subscription subscription : subscribers) {
+                subscription.heartbeat();
+            }
+        }
+    }
+
+    private VersionEvent toEvent(DBObject dbObject) {
+        return VersionEvent.builder()
+                .id(dbObject.get(ID_KEY).toString())
+                .version(toVersion(dbObject, partitionRouter.getDefaultPartition().getMongoOperations().getConverter(), blobStores))
+                .build();
+    }
+
+    /**
+     * Receiver of the events of a subscription. A listener failing to receive an event or a heartbeat is unsubscribed.
+     */
+    public interface Listener {
+        void onEvent(VersionEvent event) throws Exception;
+
+        void onHeartbeat() throws Exception;
+
+        /**
+         * Called once the subscription was dropped because the events were not received fast enough.
+         */
+        default void onDropped() {
+        }
+    }
+
+    /**
+     * Subscription to the versions of an owner or package. The events published while the previous ones are replayed
+     * are held until the replay is over, and the ones that were part of it or preceded it are not sent again. The
+     * replayed events are forgotten once two polls completed after the replay, the versions it read being published by
+     * then. The replay is sent by the thread subscribing, and the next events by the sender pool, one subscription at a
+     * time.
+     */
+    public class Subscription {
+        private final String userId;
+        private final String packageRef;
+        private final ObjectId after;
+        private final Listener listener;
+        private final Set<String> replayed = new HashSet<>();
+        private final Deque<VersionEvent> pending = new ArrayDeque<>();
+        private List<VersionEvent> held = new ArrayList<>();
+        private long forgetReplayedAt;
+        private boolean heartbeatPending;
+        private boolean sending;
+        private boolean cancelled;
+
+        private Subscription(String userId, String packageRef, ObjectId after, Listener listener) {
+            this.userId = userId;
+            this.packageRef = packageRef;
+            this.after = after;
+            this.listener = listener;
+        }
+
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            pending.clear();
+            subscriptions.computeIfPresent(userId, (key, subscribers) -> {
+                subscribers.remove(this);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+            subscriptionCount.decrementAndGet();
+        }
+
+        /**
+         * @return false when the subscription is cancelled.
+         */
+        private boolean replay(VersionEvent event) {
+            synchronized (this) {
+                if (cancelled) {
+                    return false;
+                }
+                replayed.add(event.getId());
+            }
+            return send(event);
+        }
+
+        private synchronized void start() {
+            final List<VersionEvent> events = held;
+            held = null;
+            forgetReplayedAt = pollCount.get() + 2;
+            events.forEach(this::deliver);
+        }
+
+        private synchronized void deliver(VersionEvent event) {
+            if (cancelled) {
+                return;
+            }
+            forgetReplayed();
+            final Collection<VersionEvent> queue = held != null ? held : pending;
+            if (held == null && (replayed.contains(event.getId()) || after != null && new ObjectId(event.getId()).compareTo(after) <= 0)) {
+                return;
+            }
+            if (queue.size() >= maxPendingEvents) {
+                drop();
+                return;
+            }
+            queue.add(event);
+            scheduleSend();
+        }
+
+        private synchronized void heartbeat() {
+            if (cancelled || held != null) {
+                return;
+            }
+            forgetReplayed();
+            heartbeatPending = true;
+            scheduleSend();
+        }
+
+        private void forgetReplayed() {
+            if (held == null && !replayed.isEmpty() && pollCount.get() >= forgetReplayedAt) {
+                replayed.clear();
+            }
+        }
+
+        private void drop() {
+            cancel();
+            droppedCount.incrementAndGet();
+            listener.onDropped();
+        }
+
+        private void scheduleSend() {
+            if (sending || held != null) {
+                return;
+            }
+            sending = true;
+            try {
+                sender.execute(this::sendPending);
+            } catch (RejectedExecutionException e) {
+                sending = false;
+                drop();
+            }
+        }
+
+        /**
+         * Sends the queued events, then a heartbeat when one is due and no event was sent, outside of the lock of the
+         * subscription so that events keep being queued meanwhile.
+         */
+        private void sendPending() {
+            while (true) {
+                final VersionEvent event;
+                synchronized (this) {
+                    event = pending.poll();
+                    if (cancelled || event == null && !heartbeatPending) {
+                        sending = false;
+                        return;
+                    }
+                    heartbeatPending = false;
+                }
+                if (event != null ? !send(event) : !sendHeartbeat()) {
+                    return;
+                }
+            }
+        }
+
+        private boolean send(VersionEvent event) {
+            try {
+                listener.onEvent(event);
+                return true;
+            } catch (Exception e) {
+                cancel();
+                return false;
+            }
+        }
+
+        private boolean sendHeartbeat() {
+            try {
+                listener.onHeartbeat();
+                return true;
+            } catch (Exception e) {
+                cancel();
+                return false;
+            }
+        }
+    }
+}
@@ -24,18 +24,152 @@
 
 package io.barracks.componentservice.repository;
 
+import io.barracks.componentservice.model.DownloadCount;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.StorageUsage;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.StoredBlob;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public interface VersionRepositoryCustom {
     Version createVersion(Version version, InputStream file);
 
     Optional<Version> getVersion(String userId, String packageRef, String versionId);
 
+    /**
+     * Creates a version in the package of the given one, referencing the blob of a version of the same owner instead
+     * of storing its binary again. The identifier, name, description and metadata of the given version replace the
+     * ones of the source, unless they are null.
+     *
+     * @return the copy, or nothing when the source version does not exist.
+     */
+    Optional<Version> copyVersion(String packageRef, String versionId, Version copy);
+
+    /**
+     * Replaces the name, description and metadata given in the version, leaving the null ones as they are, unless the
+     * version was updated since the given revision.
+     *
+     * @param revision the revision the changes apply to, or null to apply them to the latest one.
+     * @return the updated version, or nothing when it does not exist or is at another revision.
+     */
+    Optional<Version> updateVersion(Version changes, Long revision);
+
+    /**
+     * Removes the document of a version from every partition it is read from, leaving its binary in its store.
+     *
+     * @return the blobs the removed documents referenced, none when the version does not exist.
+     */
+    List<BlobReference> deleteVersion(String userId, String packageRef, String versionId);
+
     Page<Version> getVersions(String userId, String packageRef, Pageable pageable);
-}
 
+    /**
+     * Lists the versions of a package, reading only the given fields.
+     *
+     * @return the values of the fields of each version, by property name.
+     */
+    Page<Map<String, Object>> getVersionFields(String userId, String packageRef, Collection<VersionField> fields, Pageable pageable);
+
+    /**
+     * Lists the versions of a package whose metadata match all the conditions.
+     *
+     * @param indexedKey metadata key whose index the query uses, or null to let Mongo choose one.
+     */
+    Page<Version> getVersions(String userId, String packageRef, List<MetadataCondition> conditions, String indexedKey, Pageable pageable);
+
+    /**
+     * @return the number of versions of the package, counted up to the given limit.
+     */
+    long countVersions(String userId, String packageRef, long limit);
+
+    /**
+     * Counts the versions of a package and the size of their files from the versions themselves.
+     */
+    StorageUsage measureUsage(String userId, String packageRef);
+
+    /**
+     * Lists the oldest versions of a package that are neither among its latest ones nor uploaded after the given date,
+     * leaving out the ones whose metadata has the given key set to true.
+     *
+     * @param keepLast       number of latest versions to leave out.
+     * @param uploadedBefore upload date the versions are older than, or null for any date.
+     * @param releasedKey    metadata key marking the versions to leave out, or null to leave out none.
+     */
+    List<Version> getExpiredVersions(String userId, String packageRef, int keepLast, Date uploadedBefore, String releasedKey, int limit);
+
+    /**
+     * Creates in every partition the index of the versions on a metadata key, over the versions having the key only.
+     */
+    void ensureMetadataIndex(String key);
+
+    void dropMetadataIndex(String key);
+
+    /**
+     * @return the metadata keys the versions are indexed on.
+     */
+    Set<String> getMetadataIndexKeys();
+
+    /**
+     * Lists the blobs kept in a store, ordered by version document.
+     *
+     * @param afterDocumentId id of the last document of the previous batch, or null to start from the beginning.
+     */
+    List<BlobReference> getBlobs(String store, String afterDocumentId, int limit);
+
+    /**
+     * Points a version to a copy of its blob, unless it was changed since the blob reference was read.
+     *
+     * @return whether the version now uses the copy.
+     */
+    boolean moveBlob(BlobReference blob, StoredBlob copy);
+
+    long countBlobReferences(String store, String blobId);
+
+    Optional<BlobReference> getBlob(String userId, String packageRef, String versionId);
+
+    /**
+     * Adds the given numbers of completed and aborted downloads to the versions in a single bulk write per partition,
+     * along with their weight to the access scores of the versions.
+     *
+     * @param accessWeight weight of a download in the access score of its version, or 0 to leave the scores as they are.
+     * @return the versions whose increment was written, the writes of the others having failed.
+     */
+    Set<VersionKey> incrementDownloadCounts(Map<VersionKey, DownloadCount> increments, double accessWeight, Date accessedAt);
+
+    Optional<DownloadCount> getDownloadCount(String userId, String packageRef, String versionId);
+
+    /**
+     * Lists the blobs kept in a store whose version has an access score under the given one and was uploaded before
+     * the given date.
+     */
+    List<BlobReference> getColdBlobs(String store, double maxAccessScore, Date uploadedBefore, int limit);
+
+    /**
+     * Copies the version documents of an owner from one partition to another, leaving the documents already in the
+     * target partition as they are.
+     *
+     * @return the number of copied documents.
+     */
+    long copyVersions(String userId, String from, String to);
+
+    long deleteVersions(String userId, String partition);
+
+    /**
+     * Lists the blobs of an owner kept in a store, ordered by version document.
+     *
+     * @param afterDocumentId id of the last document of the previous batch, or null to start from the beginning.
+     */
+    List<BlobReference> getOwnerBlobs(String userId, String partition, String store, String afterDocumentId, int limit);
+}
@@ -24,101 +24,762 @@
 
 package io.barracks.componentservice.repository;
 
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.DuplicateKeyException;
-import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.model.DBCollectionCountOptions;
+import com.mongodb.client.model.DBCollectionFindOptions;
+import io.barracks.componentservice.config.CircuitBreaker;
+import io.barracks.componentservice.model.DownloadCount;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.model.StorageUsage;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.StagedBlob;
+import io.barracks.componentservice.repository.blob.StoredBlob;
 import io.barracks.componentservice.repository.documents.VersionDocument;
+import io.barracks.componentservice.repository.exception.BlobDeletedException;
+import io.barracks.componentservice.repository.exception.BlobStoreException;
 import io.barracks.componentservice.repository.exception.DuplicateVersionException;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoOperations;
-import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.gridfs.GridFsOperations;
-import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.io.InputStream;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static io.barracks.componentservice.repository.VersionDocuments.*;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
+/**
+ * Versions of the owners, in their partition. The calls made on behalf of the clients go through the Mongo circuit
+ * breaker, and a version that cannot be read while Mongo is unavailable is served from the last known state. The
+ * lookups of versions known to not exist are answered by the {@link LookupFilter}, and all the reads by the
+ * {@link CatalogueReplica} when it is enabled.
+ */
 public class VersionRepositoryImpl implements VersionRepositoryCustom {
-    private static final String USER_ID_KEY = "metadata.userId";
-    private static final String PACKAGE_REF_KEY = "metadata.packageRef";
-    private static final String VERSION_ID_KEY = "metadata.versionId";
-    private final GridFsOperations gridFsOperations;
-    private final MongoOperations mongoOperations;
+    private static final int COPY_ATTEMPTS = 2;
+
+    private final BlobStores blobStores;
+    private final PartitionRouter partitionRouter;
+    private final ReadRouting readRouting;
+    private final CircuitBreaker circuitBreaker;
+    private final StaleCache<Version> staleCache;
+    private final LookupFilter lookupFilter;
+    private final SearchIndex searchIndex;
+    private final CatalogueReplica catalogueReplica;
+    private final MongoConverter converter;
 
     @Autowired
-    public VersionRepositoryImpl(MongoDbFactory mongoDbFactory, MongoOperations mongoOperations) {
-        this.gridFsOperations = new GridFsTemplate(mongoDbFactory, mongoOperations.getConverter(), VersionDocument.class.getAnnotation(Document.class).collection().replace(".files", ""));
-        this.mongoOperations = mongoOperations;
+    public VersionRepositoryImpl(
+            BlobStores blobStores,
+            PartitionRouter partitionRouter,
+            ReadRouting readRouting,
+            CircuitBreaker circuitBreaker,
+            StaleCache<Version> staleCache,
+            LookupFilter lookupFilter,
+            SearchIndex searchIndex,
+            CatalogueReplica catalogueReplica,
+            MongoOperations mongoOperations
+    ) {
+        this.blobStores = blobStores;
+        this.partitionRouter = partitionRouter;
+        this.readRouting = readRouting;
+        this.circuitBreaker = circuitBreaker;
+        this.staleCache = staleCache;
+        this.lookupFilter = lookupFilter;
+        this.searchIndex = searchIndex;
+        this.catalogueReplica = catalogueReplica;
+        this.converter = mongoOperations.getConverter();
     }
 
     @Override
     public Version createVersion(Version version, InputStream file) {
-        VersionDocument.Metadata metadata = VersionDocument.Metadata.builder()
-                .userId(version.getUserId())
-                .packageRef(version.getPackageRef())
-                .versionId(version.getId())
-                .metadata(version.getMetadata())
-                .name(version.getName())
-                .description(version.getDescription())
-                .build();
+        return circuitBreaker.execute(() -> insertVersion(version, file));
+    }
+
+    @Override
+    public Optional<Version> getVersion(String userId, String packageRef, String versionId) {
+        final Optional<CatalogueReplica.Snapshot> catalogue = catalogueReplica.forOwner(userId);
+        if (catalogue.isPresent()) {
+            return catalogue.get().getVersion(userId, packageRef, versionId);
+        }
+        if (!readRouting.hasRecentWrite(userId) && !lookupFilter.mightContainVersion(userId, packageRef, versionId)) {
+            return Optional.empty();
+        }
+        final String key = StaleCache.key(userId, packageRef, versionId);
         try {
-            return Optional.ofNullable(this.gridFsOperations.store(file, version.getFilename(), metadata))
-                    .flatMap(saved -> getVersion(version.getUserId(), version.getPackageRef(), version.getId()))
-                    .orElseThrow(() -> new RuntimeException("Version returned null object, this should not happen!"));
-        } catch (DuplicateKeyException dke) {
-            throw new DuplicateVersionException(version, dke);
+            return staleCache.update(key, circuitBreaker.execute(
+                    () -> findVersion(userId, packageRef, versionId, (partition, dbObject) -> dbObjectToVersion(dbObject))
+            ));
+        } catch (RuntimeException e) {
+            return staleCache.fallback(key, e, circuitBreaker);
         }
     }
 
     @Override
-    public Optional<Version> getVersion(String userId, String packageRef, String versionId) {
-        final Query query = Query.query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef).and(VERSION_ID_KEY).is(versionId));
-        return Optional.ofNullable(this.gridFsOperations.findOne(query))
-                .map(this::fileToVersion);
+    public Optional<Version> copyVersion(String packageRef, String versionId, Version copy) {
+        return circuitBreaker.execute(() -> insertCopy(packageRef, versionId, copy));
+    }
+
+    @Override
+    public Optional<Version> updateVersion(Version changes, Long revision) {
+        return circuitBreaker.execute(() -> modifyVersion(changes, revision));
+    }
+
+    @Override
+    public List<BlobReference> deleteVersion(String userId, String packageRef, String versionId) {
+        return circuitBreaker.execute(() -> removeVersion(userId, packageRef, versionId));
     }
 
     @Override
     public Page<Version> getVersions(String userId, String packageRef, Pageable pageable) {
-        final Query query = query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef)).with(pageable);
+        final Optional<Page<Version>> page = catalogueReplica.forOwner(userId).flatMap(catalogue -> catalogue.getVersions(userId, packageRef, pageable));
+        if (page.isPresent()) {
+            return page.get();
+        }
+        return circuitBreaker.execute(() -> findVersions(userId, where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef), null, pageable));
+    }
 
-        final List<Version> versions = this.mongoOperations.find(query, DBObject.class, VersionDocument.class.getAnnotation(Document.class).collection())
+    @Override
+    public Page<Map<String, Object>> getVersionFields(String userId, String packageRef, Collection<VersionField> fields, Pageable pageable) {
+        final Optional<Page<Version>> page = catalogueReplica.forOwner(userId).flatMap(catalogue -> catalogue.getVersions(userId, packageRef, pageable));
+        if (page.isPresent()) {
+            return page.get().map(version -> toFields(version, fields));
+        }
+        return circuitBreaker.execute(() -> findVersions(
+                userId,
+                where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef),
+                null,
+                fieldsProjection(fields),
+                dbObject -> toFields(dbObject, fields),
+                pageable
+        ));
+    }
+
+    @Override
+    public Page<Version> getVersions(String userId, String packageRef, List<MetadataCondition> conditions, String indexedKey, Pageable pageable) {
+        final Criteria criteria = metadataCriteria(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef), conditions);
+        return circuitBreaker.execute(() -> findVersions(userId, criteria, indexedKey == null ? null : metadataIndexName(indexedKey), pageable));
+    }
+
+    @Override
+    public long countVersions(String userId, String packageRef, long limit) {
+        final DBObject packageQuery = query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef)).getQueryObject();
+        final List<Partition> partitions = partitionRouter.getReadPartitions(userId);
+        if (partitions.size() > 1) {
+            return circuitBreaker.execute(() -> Math.min(limit, countInPartitions(partitions, packageQuery, null, readRouting.forList(userId))));
+        }
+        final Partition partition = partitions.get(0);
+        return circuitBreaker.execute(() -> partition.getMongoOperations().getCollection(partition.getCollection()).count(
+                packageQuery,
+                new DBCollectionCountOptions()
+                        .limit(limit)
+                        .readPreference(readRouting.forList(userId))
+                        .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+        ));
+    }
+
+    /**
+     * Sums the versions of the package in the partition its owner is written to, on the primary, so that the usage
+     * counters are not reconciled with a lagging secondary. While the owner is still read from its previous partition,
+     * the lengths of the versions of both partitions are read instead and summed once per version.
+     */
+    @Override
+    public StorageUsage measureUsage(String userId, String packageRef) {
+        final List<Partition> partitions = partitionRouter.getReadPartitions(userId);
+        if (partitions.size() > 1) {
+            return circuitBreaker.execute(() -> {
+                final List<DBObject> versions = findInPartitions(
+                        partitions,
+                        query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef)).getQueryObject(),
+                        new BasicDBObject(LENGTH_KEY, 1),
+                        null,
+                        0,
+                        null,
+                        ReadPreference.primary()
+                );
+                return StorageUsage.builder()
+                        .userId(userId)
+                        .packageRef(packageRef)
+                        .versionCount((long) versions.size())
+                        .totalBytes(versions.stream()
+                                .mapToLong(version -> version.get(LENGTH_KEY) instanceof Number ? ((Number) version.get(LENGTH_KEY)).longValue() : 0L)
+                                .sum())
+                        .build();
+            });
+        }
+        final Partition partition = partitions.get(0);
+        final List<DBObject> pipeline = Arrays.asList(
+                new BasicDBObject("$match", query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef)).getQueryObject()),
+                new BasicDBObject("$group", new BasicDBObject(ID_KEY, null)
+                        .append("versionCount", new BasicDBObject("$sum", 1))
+                        .append("totalBytes", new BasicDBObject("$sum", "$" + LENGTH_KEY)))
+        );
+        return circuitBreaker.execute(() -> {
+            try (Cursor cursor = partition.getMongoOperations().getCollection(partition.getCollection()).aggregate(
+                    pipeline,
+                    AggregationOptions.builder()
+                            .outputMode(AggregationOptions.OutputMode.CURSOR)
+                            .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                            .build(),
+                    ReadPreference.primary()
+            )) {
+                final DBObject totals = cursor.hasNext() ? cursor.next() : new BasicDBObject();
+                return StorageUsage.builder()
+                        .userId(userId)
+                        .packageRef(packageRef)
+                        .versionCount(totals.get("versionCount") instanceof Number ? ((Number) totals.get("versionCount")).longValue() : 0L)
+                        .totalBytes(totals.get("totalBytes") instanceof Number ? ((Number) totals.get("totalBytes")).longValue() : 0L)
+                        .build();
+            }
+        });
+    }
+
+    /**
+     * Reads the upload date of the oldest version to keep, then the versions uploaded before it, both through the index
+     * of the versions of a package by upload date, in each of the partitions the owner is read from.
+     */
+    @Override
+    public List<Version> getExpiredVersions(String userId, String packageRef, int keepLast, Date uploadedBefore, String releasedKey, int limit) {
+        final List<Partition> partitions = partitionRouter.getReadPartitions(userId);
+        Date before = uploadedBefore;
+        if (keepLast > 0) {
+            final List<DBObject> kept = findInPartitions(
+                    partitions,
+                    query(where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef)).getQueryObject(),
+                    new BasicDBObject(UPLOAD_DATE_KEY, 1),
+                    new BasicDBObject(UPLOAD_DATE_KEY, -1),
+                    keepLast,
+                    VersionDocument.UPLOAD_DATE_INDEX,
+                    null
+            );
+            if (kept.size() < keepLast) {
+                return Collections.emptyList();
+            }
+            final Date oldestKept = (Date) kept.get(keepLast - 1).get(UPLOAD_DATE_KEY);
+            before = before == null || oldestKept.before(before) ? oldestKept : before;
+        }
+        final Criteria criteria = where(USER_ID_KEY).is(userId).and(PACKAGE_REF_KEY).is(packageRef);
+        if (before != null) {
+            criteria.and(UPLOAD_DATE_KEY).lt(before);
+        }
+        if (releasedKey != null) {
+            criteria.and(METADATA_FIELD_PREFIX + releasedKey).ne(true);
+        }
+        return findInPartitions(partitions, query(criteria).getQueryObject(), null, new BasicDBObject(UPLOAD_DATE_KEY, 1), limit, VersionDocument.UPLOAD_DATE_INDEX, null)
                 .stream()
                 .map(this::dbObjectToVersion)
                 .collect(Collectors.toList());
-        final long count = mongoOperations.count(query, Version.class);
+    }
+
+    @Override
+    public void ensureMetadataIndex(String key) {
+        for (Partition partition : partitionRouter.getPartitions()) {
+            partition.getMongoOperations().indexOps(partition.getCollection()).ensureIndex(
+                    new CompoundIndexDefinition(new BasicDBObject(USER_ID_KEY, 1).append(PACKAGE_REF_KEY, 1).append(METADATA_FIELD_PREFIX + key, 1))
+                            .named(metadataIndexName(key))
+                            .partial(PartialIndexFilter.of(where(METADATA_FIELD_PREFIX + key).exists(true)))
+                            .background()
+            );
+        }
+    }
+
+    @Override
+    public void dropMetadataIndex(String key) {
+        for (Partition partition : partitionRouter.getPartitions()) {
+            final DBCollection collection = partition.getMongoOperations().getCollection(partition.getCollection());
+            if (indexNames(collection).contains(metadataIndexName(key))) {
+                collection.dropIndex(metadataIndexName(key));
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getMetadataIndexKeys() {
+        final Partition partition = partitionRouter.getDefaultPartition();
+        return indexNames(partition.getMongoOperations().getCollection(partition.getCollection())).stream()
+                .map(VersionDocuments::metadataIndexKey)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<BlobReference> getBlobs(String store, String afterDocumentId, int limit) {
+        final Criteria criteria = storeCriteria(store);
+        if (afterDocumentId != null) {
+            criteria.and(ID_KEY).gt(new ObjectId(afterDocumentId));
+        }
+        final Query query = query(criteria).with(new Sort(Sort.Direction.ASC, ID_KEY)).limit(limit);
+        return partitionRouter.getPartitions().stream()
+                .flatMap(partition -> findBlobs(partition, query).stream())
+                .sorted(Comparator.comparing(BlobReference::getDocumentId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean moveBlob(BlobReference blob, StoredBlob copy) {
+        final Partition partition = partition(blob.getPartition());
+        final Query query = query(blobCriteria(blob));
+        final Update update = new Update()
+                .set(BLOB_STORE_KEY, copy.getStore())
+                .set(BLOB_ID_KEY, copy.getId());
+        return partition.getMongoOperations().updateFirst(query, update, partition.getCollection()).getN() > 0;
+    }
+
+    @Override
+    public long countBlobReferences(String store, String blobId) {
+        final Query query = query(blobCriteria(store, blobId));
+        return partitionRouter.getPartitions().stream()
+                .mapToLong(partition -> partition.getMongoOperations().count(query, partition.getCollection()))
+                .sum();
+    }
+
+    @Override
+    public Optional<BlobReference> getBlob(String userId, String packageRef, String versionId) {
+        return circuitBreaker.execute(
+                () -> findVersion(userId, packageRef, versionId, (partition, dbObject) -> toBlobReference(dbObject, converter, partition))
+        );
+    }
+
+    @Override
+    public Set<VersionKey> incrementDownloadCounts(Map<VersionKey, DownloadCount> increments, double accessWeight, Date accessedAt) {
+        return updateVersions(increments.entrySet().stream().collect(Collectors.toMap(
+                Map.Entry::getKey,
+                increment -> {
+                    final DownloadCount count = increment.getValue();
+                    final Update update = new Update()
+                            .inc(COMPLETED_DOWNLOADS_KEY, count.getCompleted())
+                            .inc(ABORTED_DOWNLOADS_KEY, count.getAborted());
+                    if (accessWeight > 0) {
+                        update.inc(ACCESS_SCORE_KEY, accessWeight * (count.getCompleted() + count.getAborted())).set(ACCESSED_AT_KEY, accessedAt);
+                    }
+                    return update;
+                }
+        )));
+    }
+
+    @Override
+    public Optional<DownloadCount> getDownloadCount(String userId, String packageRef, String versionId) {
+        return circuitBreaker.execute(
+                () -> findVersion(userId, packageRef, versionId, (partition, dbObject) -> toDownloadCount(userId, packageRef, versionId, dbObject))
+        );
+    }
+
+    @Override
+    public List<BlobReference> getColdBlobs(String store, double maxAccessScore, Date uploadedBefore, int limit) {
+        final Criteria criteria = storeCriteria(store).and(UPLOAD_DATE_KEY).lt(uploadedBefore)
+                .orOperator(where(ACCESS_SCORE_KEY).lt(maxAccessScore), where(ACCESS_SCORE_KEY).exists(false));
+        final List<BlobReference> blobs = new ArrayList<>();
+        for (Partition partition : partitionRouter.getPartitions()) {
+            if (blobs.size() < limit) {
+                blobs.addAll(findBlobs(partition, query(criteria).limit(limit - blobs.size())));
+            }
+        }
+        return blobs;
+    }
+
+    @Override
+    public long copyVersions(String userId, String from, String to) {
+        final Partition source = partition(from);
+        final DBCollection target = partition(to).getMongoOperations().getCollection(partition(to).getCollection());
+        long copied = 0;
+        try (DBCursor cursor = source.getMongoOperations().getCollection(source.getCollection())
+                .find(query(where(USER_ID_KEY).is(userId)).getQueryObject())) {
+            for (DBObject dbObject : cursor) {
+                try {
+                    target.insert(dbObject);
+                    copied++;
+                } catch (DuplicateKeyException dke) {
+                    // Already copied, or created in the target partition since then: the target document prevails
+                }
+            }
+        }
+        return copied;
+    }
+
+    @Override
+    public long deleteVersions(String userId, String partition) {
+        final Partition source = partition(partition);
+        return source.getMongoOperations().remove(query(where(USER_ID_KEY).is(userId)), source.getCollection()).getN();
+    }
+
+    @Override
+    public List<BlobReference> getOwnerBlobs(String userId, String partition, String store, String afterDocumentId, int limit) {
+        final Criteria criteria = storeCriteria(store).and(USER_ID_KEY).is(userId);
+        if (afterDocumentId != null) {
+            criteria.and(ID_KEY).gt(new ObjectId(afterDocumentId));
+        }
+        return findBlobs(partition(partition), query(criteria).with(new Sort(Sort.Direction.ASC, ID_KEY)).limit(limit));
+    }
+
+    /**
+     * Inserts the version, then checks that its blob is still there, as a blob holding the same content may have been
+     * queued for reclamation and deleted meanwhile. The blob is then put back from the content just received.
+     */
+    private Version insertVersion(Version version, InputStream file) {
+        final Partition partition = partitionRouter.getWritePartition(version.getUserId());
+        final DBCollection collection = partition.getMongoOperations().getCollection(partition.getCollection());
+        final BlobStore store = writeStore(blobStores, partition);
+        try (StagedBlob staged = store.stage(file)) {
+            final StoredBlob blob = staged.getBlob();
+            final DBObject document = toDocument(version, blob, converter);
+            try {
+                collection.insert(document);
+            } catch (DuplicateKeyException dke) {
+                discardBlob(store, blob);
+                throw new DuplicateVersionException(version, dke);
+            }
+            if (!staged.restore()) {
+                collection.remove(new BasicDBObject(ID_KEY, document.get(ID_KEY)));
+                throw new BlobDeletedException(store.getName(), blob.getId(), version.getId());
+            }
+        }
+        readRouting.recordWrite(version.getUserId());
+        lookupFilter.recordVersion(version.getUserId(), version.getPackageRef(), version.getId());
+        searchIndex.recordVersion(version);
+        return findVersion(version.getUserId(), version.getPackageRef(), version.getId(), (found, dbObject) -> dbObjectToVersion(dbObject))
+                .orElseThrow(() -> new RuntimeException("Version returned null object, this should not happen!"));
+    }
+
+    /**
+     * Inserts the copy, then checks that the blob it references is still there, as it may have been moved to another
+     * store and deleted since the source was read. The copy is then made again from the source as it is now.
+     */
+    private Optional<Version> insertCopy(String packageRef, String versionId, Version copy) {
+        final Partition partition = partitionRouter.getWritePartition(copy.getUserId());
+        final DBCollection collection = partition.getMongoOperations().getCollection(partition.getCollection());
+        for (int attempt = 1; ; attempt++) {
+            final Optional<DBObject> source = findVersion(copy.getUserId(), packageRef, versionId, (found, dbObject) -> dbObject);
+            if (!source.isPresent()) {
+                return Optional.empty();
+            }
+            final DBObject document = toCopyDocument(source.get(), copy, converter);
+            try {
+                collection.insert(document);
+            } catch (DuplicateKeyException dke) {
+                throw new DuplicateVersionException(dbObjectToVersion(document), dke);
+            }
+            final Version version = dbObjectToVersion(document);
+            final BlobReference blob = toBlobReference(document, converter, partition);
+            if (blobStores.get(blob.getStore()).map(store -> store.exists(blob.getId())).orElse(false)) {
+                readRouting.recordWrite(version.getUserId());
+                lookupFilter.recordVersion(version.getUserId(), version.getPackageRef(), version.getId());
+                searchIndex.recordVersion(version);
+                return Optional.of(version);
+            }
+            collection.remove(new BasicDBObject(ID_KEY, document.get(ID_KEY)));
+            if (attempt == COPY_ATTEMPTS) {
+                throw new BlobStoreException(blob.getStore(), "blob " + blob.getId() + " was deleted while version '" + versionId + "' was copied", null);
+            }
+        }
+    }
+
+    /**
+     * Updates the version in the first partition of the owner holding it, the one it is read from. While the owner is
+     * copied to another partition, the copy of the version is replaced with the updated version, as it would prevail
+     * over it once the move completes.
+     */
+    private Optional<Version> modifyVersion(Version changes, Long revision) {
+        final DBObject query = query(revisionCriteria(changes.getUserId(), changes.getPackageRef(), changes.getId(), revision)).getQueryObject();
+        final DBObject update = metadataUpdate(changes).getUpdateObject();
+        for (Partition partition : partitionRouter.getReadPartitions(changes.getUserId())) {
+            final DBObject dbObject = partition.getMongoOperations().getCollection(partition.getCollection())
+                    .findAndModify(query, null, null, false, update, true, false);
+            if (dbObject != null) {
+                nextPartition(changes.getUserId()).ifPresent(next -> next.getMongoOperations().getCollection(next.getCollection())
+                        .update(new BasicDBObject(ID_KEY, dbObject.get(ID_KEY)), dbObject));
+                final Version version = dbObjectToVersion(dbObject);
+                readRouting.recordWrite(version.getUserId());
+                staleCache.update(StaleCache.key(version.getUserId(), version.getPackageRef(), version.getId()), Optional.of(version));
+                searchIndex.recordVersion(version);
+                return Optional.of(version);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the version from the partitions it may be read from, as it is in two of them while its owner is moved,
+     * and from the partition the owner is being copied to, where its copy would prevail once the move completes. The
+     * copy shares the blob of the version, so that only the blobs of the versions read are returned. The lookup filter
+     * cannot forget it, so that its lookups keep reaching the database.
+     */
+    private List<BlobReference> removeVersion(String userId, String packageRef, String versionId) {
+        final DBObject query = query(versionCriteria(userId, packageRef, versionId)).getQueryObject();
+        final List<BlobReference> blobs = new ArrayList<>();
+        for (Partition partition : partitionRouter.getReadPartitions(userId)) {
+            final DBObject dbObject = partition.getMongoOperations().getCollection(partition.getCollection()).findAndRemove(query);
+            if (dbObject != null) {
+                blobs.add(toBlobReference(dbObject, converter, partition));
+            }
+        }
+        nextPartition(userId).ifPresent(next -> next.getMongoOperations().getCollection(next.getCollection()).remove(query));
+        if (!blobs.isEmpty()) {
+            readRouting.recordWrite(userId);
+            staleCache.update(StaleCache.key(userId, packageRef, versionId), Optional.empty());
+            searchIndex.removeVersion(userId, packageRef, versionId);
+        }
+        return blobs;
+    }
+
+    /**
+     * Reads the names of the indexes from the collection directly, as the hashed index of the owners cannot be read as
+     * an {@link org.springframework.data.mongodb.core.index.IndexInfo}.
+     */
+    private static List<String> indexNames(DBCollection collection) {
+        return collection.getIndexInfo().stream()
+                .map(index -> (String) index.get("name"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param index name of the index to use, or null to let Mongo choose one.
+     */
+    private Page<Version> findVersions(String userId, Criteria criteria, String index, Pageable pageable) {
+        return findVersions(userId, criteria, index, null, this::dbObjectToVersion, pageable);
+    }
+
+    /**
+     * @param index      name of the index to use, or null to let Mongo choose one.
+     * @param projection fields of the documents to read, or null to read them whole.
+     */
+    private <T> Page<T> findVersions(String userId, Criteria criteria, String index, DBObject projection, Function<DBObject, T> mapper, Pageable pageable) {
+        final List<Partition> partitions = partitionRouter.getReadPartitions(userId);
+        final ReadPreference readPreference = readRouting.forList(userId);
+        final Query query = query(criteria).with(pageable);
+        if (partitions.size() > 1) {
+            final List<DBObject> found = findInPartitions(
+                    partitions, query.getQueryObject(), projection, query.getSortObject(), query.getSkip() + query.getLimit(), index, readPreference
+            );
+            return new PageImpl<>(
+                    found.stream().skip(query.getSkip()).map(mapper).collect(Collectors.toList()),
+                    pageable,
+                    countInPartitions(partitions, query.getQueryObject(), index, readPreference)
+            );
+        }
+        final Partition partition = partitions.get(0);
+        final DBCollection collection = partition.getMongoOperations().getCollection(partition.getCollection());
+
+        final List<T> versions;
+        final DBCursor find = collection.find(query.getQueryObject(), projection)
+                .sort(query.getSortObject())
+                .skip(query.getSkip())
+                .limit(query.getLimit())
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS)
+                .setReadPreference(readPreference);
+        try (DBCursor cursor = index == null ? find : find.hint(index)) {
+            versions = cursor.toArray().stream()
+                    .map(mapper)
+                    .collect(Collectors.toList());
+        }
+        final DBCollectionCountOptions countOptions = new DBCollectionCountOptions()
+                .readPreference(readPreference)
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS);
+        final long count = collection.count(query.getQueryObject(), index == null ? countOptions : countOptions.hintString(index));
         return new PageImpl<>(versions, pageable, count);
     }
 
-    private Version dbObjectToVersion(DBObject dbObject) {
-        GridFSDBFile file = new GridFSDBFile();
-        dbObject.keySet().forEach(key -> file.put(key, dbObject.get(key)));
-        return fileToVersion(file);
-    }
-
-    private Version fileToVersion(GridFSDBFile file) {
-        VersionDocument.Metadata metadata = mongoOperations.getConverter().read(VersionDocument.Metadata.class, file.getMetaData());
-        return Version.builder()
-                .filename(file.getFilename())
-                .length(file.getLength())
-                .md5(file.getMD5())
-                .userId(metadata.getUserId())
-                .packageRef(metadata.getPackageRef())
-                .id(metadata.getVersionId())
-                .metadata(metadata.getMetadata())
-                .name(metadata.getName())
-                .description(metadata.getDescription())
-                .inputStream(file.getInputStream())
+    /**
+     * Reads the documents matching the query in each of the partitions, for an owner still read from its previous
+     * partition after being moved. A version copied to the new partition is only read from there.
+     *
+     * @param projection fields of the documents to read, or null to read them whole.
+     * @param sort       order of the documents, or null to keep the order they are read in.
+     * @param limit      maximum number of documents to return, or 0 to return them all.
+     * @param index      name of the index to use, or null to let Mongo choose one.
+     */
+    private List<DBObject> findInPartitions(
+            List<Partition> partitions, DBObject query, DBObject projection, DBObject sort, int limit, String index, ReadPreference readPreference
+    ) {
+        final DBObject order = sort == null ? new BasicDBObject() : sort;
+        final BasicDBObject fields = projection == null ? null : new BasicDBObject(projection.toMap());
+        if (fields != null) {
+            fields.put(ID_KEY, 1);
+            order.keySet().forEach(key -> fields.put(key, 1));
+        }
+        final Map<Object, DBObject> found = new LinkedHashMap<>();
+        for (Partition partition : partitions) {
+            final DBCursor find = partition.getMongoOperations().getCollection(partition.getCollection()).find(query, fields)
+                    .sort(order)
+                    .limit(limit)
+                    .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS);
+            if (readPreference != null) {
+                find.setReadPreference(readPreference);
+            }
+            try (DBCursor cursor = index == null ? find : find.hint(index)) {
+                cursor.forEach(dbObject -> found.putIfAbsent(dbObject.get(ID_KEY), dbObject));
+            }
+        }
+        final List<DBObject> sorted = new ArrayList<>(found.values());
+        sorted.sort(documentComparator(order));
+        return limit > 0 && sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+    }
+
+    /**
+     * Counts the documents matching the query in the partitions, once for the versions found in several of them.
+     */
+    private long countInPartitions(List<Partition> partitions, DBObject query, String index, ReadPreference readPreference) {
+        return findInPartitions(partitions, query, new BasicDBObject(), null, 0, index, readPreference).size();
+    }
+
+    /**
+     * Applies the updates to the versions, in a single bulk write per partition. The versions of an owner being moved
+     * are updated one by one instead, in every partition whose document may prevail once the move completed: both the
+     * current and the next partition during the copy, and the new partition, or the previous one for the versions not
+     * copied yet, after the switch.
+     * <p>
+     * A failed write does not stop the others, so that the caller only retries the updates that were not applied.
+     *
+     * @return the versions whose update was written, whether they still exist or not.
+     */
+    private Set<VersionKey> updateVersions(Map<VersionKey, Update> updates) {
+        final Set<VersionKey> written = new HashSet<>();
+        final Map<Partition, List<Map.Entry<VersionKey, Update>>> bulks = new HashMap<>();
+        updates.entrySet().forEach(update -> {
+            final Optional<PartitionRoute> route = partitionRouter.getRoute(update.getKey().getUserId()).filter(PartitionRoute::isMoving);
+            if (!route.isPresent()) {
+                bulks.computeIfAbsent(partitionRouter.getWritePartition(update.getKey().getUserId()), partition -> new ArrayList<>()).add(update);
+                return;
+            }
+            try {
+                updateMovingVersion(route.get(), update.getKey(), update.getValue());
+                written.add(update.getKey());
+            } catch (RuntimeException e) {
+                // Not written, left to the caller
+            }
+        });
+        bulks.forEach((partition, partitionUpdates) -> {
+            final BulkOperations bulkOperations = partition.getMongoOperations().bulkOps(BulkOperations.BulkMode.UNORDERED, partition.getCollection());
+            partitionUpdates.forEach(update -> bulkOperations.updateOne(versionQuery(update.getKey()), update.getValue()));
+            try {
+                bulkOperations.execute();
+                partitionUpdates.forEach(update -> written.add(update.getKey()));
+            } catch (BulkOperationException e) {
+                // The bulk write is unordered, so that only the updates reported as failed were not applied
+                final Set<Integer> failed = e.getErrors().stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+                for (int i = 0; i < partitionUpdates.size(); i++) {
+                    if (!failed.contains(i)) {
+                        written.add(partitionUpdates.get(i).getKey());
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Not written, left to the caller
+            }
+        });
+        return written;
+    }
+
+    private void updateMovingVersion(PartitionRoute route, VersionKey key, Update update) {
+        final Partition partition = partition(route.getPartition());
+        final int updated = partition.getMongoOperations().updateFirst(versionQuery(key), update, partition.getCollection()).getN();
+        if (route.getNext() != null) {
+            final Partition next = partition(route.getNext());
+            next.getMongoOperations().updateFirst(versionQuery(key), update, next.getCollection());
+        } else if (updated == 0 && route.getPrevious() != null) {
+            final Partition previous = partition(route.getPrevious());
+            previous.getMongoOperations().updateFirst(versionQuery(key), update, previous.getCollection());
+        }
+    }
+
+    private static Query versionQuery(VersionKey key) {
+        return query(versionCriteria(key.getUserId(), key.getPackageRef(), key.getVersionId()));
+    }
+
+    /**
+     * Looks the version up in the partitions of the owner. A version missing from a secondary is looked up again in
+     * the primary, as it may have just been created.
+     */
+    private <T> Optional<T> findVersion(String userId, String packageRef, String versionId, BiFunction<Partition, DBObject, T> mapper) {
+        final DBObject query = query(versionCriteria(userId, packageRef, versionId)).getQueryObject();
+        final ReadPreference readPreference = readRouting.forLookup(userId);
+        for (Partition partition : partitionRouter.getReadPartitions(userId)) {
+            final DBCollection collection = partition.getMongoOperations().getCollection(partition.getCollection());
+            DBObject dbObject = collection.findOne(query, findOptions(readPreference));
+            if (dbObject == null && !ReadPreference.primary().equals(readPreference)) {
+                dbObject = collection.findOne(query, findOptions(ReadPreference.primary()));
+            }
+            if (dbObject != null) {
+                return Optional.of(mapper.apply(partition, dbObject));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static DownloadCount toDownloadCount(String userId, String packageRef, String versionId, DBObject dbObject) {
+        final Object downloads = dbObject.get(DOWNLOADS_KEY);
+        final DBObject counts = downloads instanceof DBObject ? (DBObject) downloads : new BasicDBObject();
+        return DownloadCount.builder()
+                .userId(userId)
+                .packageRef(packageRef)
+                .versionId(versionId)
+                .completed(counts.get(COMPLETED_KEY) instanceof Number ? ((Number) counts.get(COMPLETED_KEY)).longValue() : 0L)
+                .aborted(counts.get(ABORTED_KEY) instanceof Number ? ((Number) counts.get(ABORTED_KEY)).longValue() : 0L)
                 .build();
     }
+
+    private DBCollectionFindOptions findOptions(ReadPreference readPreference) {
+        return new DBCollectionFindOptions()
+                .readPreference(readPreference)
+                .maxTime(readRouting.getMaxTime(), TimeUnit.MILLISECONDS);
+    }
+
+    private List<BlobReference> findBlobs(Partition partition, Query query) {
+        return partition.getMongoOperations().find(query, DBObject.class, partition.getCollection())
+                .stream()
+                .map(dbObject -> toBlobReference(dbObject, converter, partition))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the partition the versions of the owner are being copied to, if they are.
+     */
+    private Optional<Partition> nextPartition(String userId) {
+        return partitionRouter.getRoute(userId).map(PartitionRoute::getNext).map(this::partition);
+    }
+
+    private Partition partition(String name) {
+        return partitionRouter.getPartition(name).orElseThrow(() -> new IllegalArgumentException("Unknown partition '" + name + "'"));
+    }
+
+    private void discardBlob(BlobStore store, StoredBlob blob) {
+        if (blob.isCreated() && countBlobReferences(blob.getStore(), blob.getId()) == 0) {
+            store.delete(blob.getId());
+        }
+    }
+
+    private Version dbObjectToVersion(DBObject dbObject) {
+        return toVersion(dbObject, converter, blobStores);
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Storage of the version binaries. The version metadata stays in Mongo and refers to a blob by the name of its store
+ * and its id in that store.
+ */
+public interface BlobStore {
+    String getName();
+
+    /**
+     * Stores the given content and closes it.
+     *
+     * @throws io.barracks.componentservice.repository.exception.BlobStoreException if the content could not be stored.
+     */
+    StoredBlob store(InputStream content);
+
+    /**
+     * Stores the given content and closes it, keeping it until the returned blob is closed when the store deduplicates
+     * contents and already held this one. The stores writing a new blob every time keep nothing, as no one else may
+     * delete the blob meanwhile.
+     *
+     * @throws io.barracks.componentservice.repository.exception.BlobStoreException if the content could not be stored.
+     */
+    default StagedBlob stage(InputStream content) {
+        final StoredBlob blob = store(content);
+        return new StagedBlob() {
+            @Override
+            public StoredBlob getBlob() {
+                return blob;
+            }
+
+            @Override
+            public boolean restore() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Opens a blob, starting at the given offset.
+     */
+    InputStream open(String id, long position) throws IOException;
+
+    /**
+     * Local file holding the blob, for stores keeping blobs on the local filesystem.
+     */
+    default Optional<Path> getFile(String id) {
+        return Optional.empty();
+    }
+
+    boolean exists(String id);
+
+    /**
+     * @throws io.barracks.componentservice.repository.exception.BlobStoreException if the blob could not be deleted.
+     */
+    void delete(String id);
+
+    /**
+     * Deletes at most about the given number of bytes of a blob, for the stores able to delete a blob in several steps.
+     * The blob can no longer be opened once the first step is done.
+     *
+     * @return whether the blob is now entirely deleted.
+     * @throws io.barracks.componentservice.repository.exception.BlobStoreException if the blob could not be deleted.
+     */
+    default boolean deletePart(String id, long maxBytes) {
+        delete(id);
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.blob;
+
+import io.barracks.componentservice.model.BlobContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Registry of the configured blob stores. New versions are written to a single store, while existing versions are
+ * read from the store recorded in their metadata, so that several stores can be used at once during a migration.
+ */
+public class BlobStores {
+    private final Map<String, BlobStore> stores = new LinkedHashMap<>();
+    private final BlobStore writeStore;
+
+    public BlobStores(String writeStoreName, BlobStore... stores) {
+        for (BlobStore store : stores) {
+            this.stores.put(store.getName(), store);
+        }
+        this.writeStore = get(writeStoreName)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown blob store '" + writeStoreName + "', available stores are " + getNames()));
+    }
+
+    public Optional<BlobStore> get(String name) {
+        return Optional.ofNullable(stores.get(name));
+    }
+
+    public BlobStore getWriteStore() {
+        return writeStore;
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(stores.keySet());
+    }
+
+    /**
+     * Lazy handle on a stored blob, the store is only accessed once the content is opened.
+     */
+    public BlobContent content(String storeName, String id) {
+        return new BlobContent() {
+            @Override
+            public InputStream open(long position) throws IOException {
+                return get(storeName)
+                        .orElseThrow(() -> new IOException("Blob store '" + storeName + "' is not configured"))
+                        .open(id, position);
+            }
+
+            @Override
+            public Optional<String> getStore() {
+                return Optional.of(storeName);
+            }
+
+            @Override
+            public Optional<Path> getFile() {
+                return get(storeName).flatMap(store -> store.getFile(id));
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.blob;
+
+import io.barracks.componentservice.repository.exception.BlobStoreException;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store keeping every blob in a file named after the SHA-256 of its content. Blobs are written to a
+ * temporary file, synced, then atomically renamed, so that a blob file is either absent or complete. Storing the same
+ * content twice keeps a single file.
+ */
+public class FileSystemBlobStore implements BlobStore {
+    public static final String NAME = "filesystem";
+    public static final String ARCHIVE_NAME = "filesystem-archive";
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final Path root;
+    private final Path incoming;
+
+    public FileSystemBlobStore(Path root) {
+        this(NAME, root);
+    }
+
+    public FileSystemBlobStore(String name, Path root) {
+        this.name = name;
+        this.root = root;
+        this.incoming = root.resolve("incoming");
+        try {
+            Files.createDirectories(incoming);
+        } catch (IOException e) {
+            throw new BlobStoreException(name, "cannot create " + incoming, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) {
+        try (StagedBlob staged = stage(content)) {
+            return staged.getBlob();
+        }
+    }
+
+    /**
+     * Keeps the temporary file of a content already stored, to be moved in place of the blob if it is deleted meanwhile.
+     */
+    @Override
+    public StagedBlob stage(InputStream content) {
+        Path temporary = null;
+        try (InputStream input = content) {
+            temporary = Files.createTempFile(incoming, "blob-", ".part");
+            final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            final MessageDigest md5 = MessageDigest.getInstance("MD5");
+            final long length = write(new DigestInputStream(new DigestInputStream(input, sha256), md5), temporary);
+
+            final String id = DatatypeConverter.printHexBinary(sha256.digest()).toLowerCase();
+            final boolean created = moveInPlace(temporary, id);
+            final StoredBlob blob = StoredBlob.builder()
+                    .store(name)
+                    .id(id)
+                    .length(length)
+                    .md5(DatatypeConverter.printHexBinary(md5.digest()).toLowerCase())
+                    .created(created)
+                    .build();
+            final Path kept = created ? null : temporary;
+            temporary = null;
+            return new StagedBlob() {
+                @Override
+                public StoredBlob getBlob() {
+                    return blob;
+                }
+
+                @Override
+                public boolean restore() {
+                    if (exists(id)) {
+                        return true;
+                    }
+                    try {
+                        return kept != null && (moveInPlace(kept, id) || exists(id));
+                    } catch (IOException e) {
+                        throw new BlobStoreException(name, "failed to restore blob " + id, e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    deleteQuietly(kept);
+                }
+            };
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new BlobStoreException(name, "failed to store blob", e);
+        } finally {
+            deleteQuietly(temporary);
+        }
+    }
+
+    @Override
+    public InputStream open(String id, long position) throws IOException {
+        final FileChannel channel = FileChannel.open(path(id), StandardOpenOption.READ);
+        channel.position(position);
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public Optional<Path> getFile(String id) {
+        return Optional.of(path(id));
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return Files.exists(path(id));
+    }
+
+    @Override
+    public void delete(String id) {
+        try {
+            Files.deleteIfExists(path(id));
+        } catch (IOException e) {
+            throw new BlobStoreException(name, "failed to delete blob " + id, e);
+        }
+    }
+
+    /**
+     * Links the temporary file as the blob file, unless the blob already exists, then removes its temporary name. Unlike
+     * a rename, which replaces an existing target, creating the link fails when the same content was stored
+     * concurrently, so that a single upload reports the blob as created.
+     *
+     * @return whether the file was linked.
+     */
+    private boolean moveInPlace(Path temporary, String id) throws IOException {
+        final Path target = path(id);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, temporary);
+        } catch (FileAlreadyExistsException e) {
+            // Stored concurrently with the same content
+            return false;
+        }
+        deleteQuietly(temporary);
+        return true;
+    }
+
+    private Path path(String id) {
+        if (!ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("Invalid blob id '" + id + "'");
+        }
+        return root.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id);
+    }
+
+    private static long write(InputStream input, Path file) throws IOException {
+        long length = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                length += read;
+            }
+            channel.force(true);
+        }
+        return length;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Left in the incoming directory
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.blob;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFS;
+import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.gridfs.GridFSFile;
+import io.barracks.componentservice.repository.exception.BlobStoreException;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsOperations;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Blobs kept in a GridFS bucket. Writes and reads go through the templates of the upload and download workloads.
+ */
+public class GridFsBlobStore implements BlobStore {
+    public static final String NAME = "gridfs";
+    public static final String BUCKET = "blobs";
+    public static final String ARCHIVE_NAME = "gridfs-archive";
+    public static final String ARCHIVE_BUCKET = "archive";
+
+    private static final String FILES_ID_KEY = "files_id";
+    private static final String CHUNK_NUMBER_KEY = "n";
+
+    private final String name;
+    private final MongoDbFactory uploadMongoDbFactory;
+    private final String bucket;
+    private final GridFsOperations uploadGridFsOperations;
+    private final GridFsOperations downloadGridFsOperations;
+
+    public GridFsBlobStore(String name, MongoDbFactory uploadMongoDbFactory, MongoDbFactory downloadMongoDbFactory, MongoConverter converter, String bucket) {
+        this.name = name;
+        this.uploadMongoDbFactory = uploadMongoDbFactory;
+        this.bucket = bucket;
+        this.uploadGridFsOperations = new GridFsTemplate(uploadMongoDbFactory, converter, bucket);
+        this.downloadGridFsOperations = new GridFsTemplate(downloadMongoDbFactory, converter, bucket);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) {
+        try (InputStream input = content) {
+            final GridFSFile file = uploadGridFsOperations.store(input, (String) null);
+            return StoredBlob.builder()
+                    .store(name)
+                    .id(file.getId().toString())
+                    .length(file.getLength())
+                    .md5(file.getMD5())
+                    .created(true)
+                    .build();
+        } catch (IOException | RuntimeException e) {
+            throw new BlobStoreException(name, "failed to store blob", e);
+        }
+    }
+
+    @Override
+    public InputStream open(String id, long position) throws IOException {
+        final GridFSDBFile file = find(id);
+        if (file == null) {
+            throw new FileNotFoundException("Blob " + id + " not found in store " + name);
+        }
+        final InputStream inputStream = file.getInputStream();
+        if (position > 0) {
+            inputStream.skip(position);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return find(id) != null;
+    }
+
+    @Override
+    public void delete(String id) {
+        uploadGridFsOperations.delete(byId(id));
+    }
+
+    /**
+     * Removes the file first, so that the blob can no longer be opened, then its chunks in order, as many at a time as
+     * fit in the given number of bytes.
+     */
+    @Override
+    public boolean deletePart(String id, long maxBytes) {
+        try {
+            final DB db = uploadMongoDbFactory.getDb();
+            final ObjectId fileId = new ObjectId(id);
+            db.getCollection(bucket + ".files").remove(new BasicDBObject("_id", fileId));
+            return deleteChunks(db.getCollection(bucket + ".chunks"), fileId, maxBytes);
+        } catch (RuntimeException e) {
+            throw new BlobStoreException(name, "failed to delete blob " + id, e);
+        }
+    }
+
+    /**
+     * Removes the first chunks of a file, counting them at the default GridFS chunk size. At least one chunk is removed
+     * whatever the number of bytes, so that the deletion always progresses.
+     *
+     * @return whether no chunk of the file is left.
+     */
+    static boolean deleteChunks(DBCollection chunks, ObjectId fileId, long maxBytes) {
+        final DBObject byFile = new BasicDBObject(FILES_ID_KEY, fileId);
+        final DBObject first;
+        try (DBCursor cursor = chunks.find(byFile, new BasicDBObject(CHUNK_NUMBER_KEY, 1)).sort(new BasicDBObject(CHUNK_NUMBER_KEY, 1)).limit(1)) {
+            first = cursor.hasNext() ? cursor.next() : null;
+        }
+        if (first == null) {
+            return true;
+        }
+        final long count = Math.max(1L, maxBytes / GridFS.DEFAULT_CHUNKSIZE);
+        final long until = ((Number) first.get(CHUNK_NUMBER_KEY)).longValue() + count;
+        chunks.remove(new BasicDBObject(FILES_ID_KEY, fileId).append(CHUNK_NUMBER_KEY, new BasicDBObject("$lt", until)));
+        return chunks.findOne(byFile, new BasicDBObject(CHUNK_NUMBER_KEY, 1)) == null;
+    }
+
+    /**
+     * Looks the file up with the download connections, which may read from a secondary, then from the primary through
+     * the upload connections when the file was just stored and did not reach the secondary yet. The chunks of a file
+     * are written before it, so they are found wherever the file is.
+     */
+    private GridFSDBFile find(String id) {
+        final GridFSDBFile file = downloadGridFsOperations.findOne(byId(id));
+        return file != null ? file : uploadGridFsOperations.findOne(byId(id));
+    }
+
+    private static Query byId(String id) {
+        return query(where("_id").is(new ObjectId(id)));
+    }
+}
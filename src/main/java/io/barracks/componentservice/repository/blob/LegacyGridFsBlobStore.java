@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.blob;
+
+import com.mongodb.gridfs.GridFSDBFile;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.gridfs.GridFsOperations;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Read-only view over the versions stored before the blob stores existed, when the {@code versions.files} document
+ * was itself the GridFS file of the binary. A blob is identified by the id of its version document, and deleting it
+ * only removes its chunks so that the version document is left untouched.
+ */
+public class LegacyGridFsBlobStore implements BlobStore {
+    public static final String NAME = "gridfs-legacy";
+    public static final String BUCKET = "versions";
+    private static final String CHUNKS_COLLECTION = BUCKET + ".chunks";
+
+    private final GridFsOperations downloadGridFsOperations;
+    private final MongoOperations mongoOperations;
+
+    public LegacyGridFsBlobStore(GridFsOperations downloadGridFsOperations, MongoOperations mongoOperations) {
+        this.downloadGridFsOperations = downloadGridFsOperations;
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) {
+        throw new UnsupportedOperationException("Blob store '" + NAME + "' is read-only");
+    }
+
+    @Override
+    public InputStream open(String id, long position) throws IOException {
+        final GridFSDBFile file = downloadGridFsOperations.findOne(query(where("_id").is(new ObjectId(id))));
+        if (file == null) {
+            throw new FileNotFoundException("Blob " + id + " not found in store " + NAME);
+        }
+        final InputStream inputStream = file.getInputStream();
+        if (position > 0) {
+            inputStream.skip(position);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return mongoOperations.exists(query(where("files_id").is(new ObjectId(id))), CHUNKS_COLLECTION);
+    }
+
+    @Override
+    public void delete(String id) {
+        mongoOperations.remove(query(where("files_id").is(new ObjectId(id))), CHUNKS_COLLECTION);
+    }
+
+    @Override
+    public boolean deletePart(String id, long maxBytes) {
+        return GridFsBlobStore.deleteChunks(mongoOperations.getCollection(CHUNKS_COLLECTION), new ObjectId(id), maxBytes);
+    }
+}
@@ -29,13 +29,20 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Map;
 
 @Document(collection = "versions.files")
-@CompoundIndex(name = "user_package_version_idx", def = "{'metadata.userId' : 1, 'metadata.packageRef' : 1, 'metadata.versionId' : 1}", unique = true)
+@CompoundIndexes({
+        @CompoundIndex(name = "user_package_version_idx", def = "{'metadata.userId' : 1, 'metadata.packageRef' : 1, 'metadata.versionId' : 1}", unique = true),
+        @CompoundIndex(name = "blob_idx", def = "{'metadata.blobStore' : 1, 'metadata.blobId' : 1}"),
+        @CompoundIndex(name = "blob_store_access_score_idx", def = "{'metadata.blobStore' : 1, 'accessScore' : 1}"),
+        @CompoundIndex(name = VersionDocument.UPLOAD_DATE_INDEX, def = "{'metadata.userId' : 1, 'metadata.packageRef' : 1, 'uploadDate' : -1}")
+})
 public class VersionDocument {
+    public static final String UPLOAD_DATE_INDEX = "user_package_upload_date_idx";
 
     @Builder(toBuilder = true)
     @Getter
@@ -48,5 +55,10 @@ public class VersionDocument {
         private final String name;
         private final String description;
         private final Map<String, ?> metadata;
+        /**
+         * Store holding the binary, missing for the versions stored directly in this GridFS bucket.
+         */
+        private final String blobStore;
+        private final String blobId;
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.partition;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+/**
+ * Set of owners whose version documents are kept in their own GridFS-like bucket, possibly in another database. The
+ * binaries written to GridFS go to a blob store of the partition as well.
+ */
+@Builder
+@Getter
+@ToString(exclude = "mongoOperations")
+public class Partition {
+    public static final String DEFAULT = "default";
+
+    private final String name;
+    private final String databaseName;
+    /**
+     * Bucket of the version documents, kept in its {@code files} collection.
+     */
+    private final String bucket;
+    /**
+     * Name of the GridFS blob store of the partition.
+     */
+    private final String blobStore;
+    private final String blobBucket;
+    private final MongoOperations mongoOperations;
+
+    public String getCollection() {
+        return bucket + ".files";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.partition;
+
+import com.mongodb.BasicDBObject;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.repository.documents.VersionDocument;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes the versions of an owner to its partition. The routes are kept in memory and reloaded periodically, so that
+ * finding the partition of an owner never queries the database. An instance may keep using an outdated route for up
+ * to the refresh interval after a route changed.
+ */
+public class PartitionRouter implements InitializingBean, DisposableBean {
+    static final String SHARD_KEY_INDEX = "user_hashed_idx";
+
+    private final Map<String, Partition> partitions;
+    private final Partition defaultPartition;
+    private final MongoOperations mongoOperations;
+    private final TaskScheduler taskScheduler;
+    private final long refreshInterval;
+    private volatile Map<String, PartitionRoute> routes = Collections.emptyMap();
+    private ScheduledFuture<?> refresh;
+
+    public PartitionRouter(List<Partition> partitions, MongoOperations mongoOperations, TaskScheduler taskScheduler, long refreshInterval) {
+        this.partitions = Collections.unmodifiableMap(partitions.stream()
+                .collect(Collectors.toMap(Partition::getName, Function.identity(), (first, second) -> {
+                    throw new IllegalArgumentException("Duplicate partition '" + first.getName() + "'");
+                }, LinkedHashMap::new)));
+        this.defaultPartition = getPartition(Partition.DEFAULT)
+                .orElseThrow(() -> new IllegalArgumentException("Missing partition '" + Partition.DEFAULT + "'"));
+        this.mongoOperations = mongoOperations;
+        this.taskScheduler = taskScheduler;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        partitions.values().forEach(PartitionRouter::ensureIndexes);
+        refresh();
+        refresh = taskScheduler.scheduleWithFixedDelay(this::refresh, new Date(System.currentTimeMillis() + refreshInterval), refreshInterval);
+    }
+
+    @Override
+    public void destroy() {
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public Partition getDefaultPartition() {
+        return defaultPartition;
+    }
+
+    public Optional<Partition> getPartition(String name) {
+        return Optional.ofNullable(partitions.get(name));
+    }
+
+    public Collection<Partition> getPartitions() {
+        return partitions.values();
+    }
+
+    public Optional<PartitionRoute> getRoute(String userId) {
+        return Optional.ofNullable(routes.get(userId));
+    }
+
+    /**
+     * @return the partition receiving the new versions of the owner.
+     */
+    public Partition getWritePartition(String userId) {
+        final PartitionRoute route = routes.get(userId);
+        return route == null ? defaultPartition : partition(route.getPartition());
+    }
+
+    /**
+     * @return the partitions to look a version of the owner up in, in order, and to list its versions from.
+     */
+    public List<Partition> getReadPartitions(String userId) {
+        final PartitionRoute route = routes.get(userId);
+        if (route == null) {
+            return Collections.singletonList(defaultPartition);
+        }
+        if (route.getPrevious() == null) {
+            return Collections.singletonList(partition(route.getPartition()));
+        }
+        return Arrays.asList(partition(route.getPartition()), partition(route.getPrevious()));
+    }
+
+    public void saveRoute(PartitionRoute route) {
+        mongoOperations.save(route);
+        final Map<String, PartitionRoute> updated = new HashMap<>(routes);
+        updated.put(route.getUserId(), route);
+        routes = Collections.unmodifiableMap(updated);
+    }
+
+    public void refresh() {
+        routes = Collections.unmodifiableMap(mongoOperations.findAll(PartitionRoute.class).stream()
+                .collect(Collectors.toMap(PartitionRoute::getUserId, Function.identity())));
+    }
+
+    private Partition partition(String name) {
+        return getPartition(name).orElseThrow(() -> new IllegalStateException("Unknown partition '" + name + "'"));
+    }
+
+    /**
+     * Creates the indexes of {@link VersionDocument} in the bucket of the partition, along with a hashed index on the
+     * owner to shard the bucket with.
+     */
+    private static void ensureIndexes(Partition partition) {
+        final IndexOperations indexOperations = partition.getMongoOperations().indexOps(partition.getCollection());
+        for (CompoundIndex compoundIndex : VersionDocument.class.getAnnotation(CompoundIndexes.class).value()) {
+            final Index index = new CompoundIndexDefinition(BasicDBObject.parse(compoundIndex.def())).named(compoundIndex.name());
+            indexOperations.ensureIndex(compoundIndex.unique() ? index.unique() : index);
+        }
+        indexOperations.ensureIndex(new CompoundIndexDefinition(new BasicDBObject("metadata.userId", "hashed")).named(SHARD_KEY_INDEX));
+    }
+}
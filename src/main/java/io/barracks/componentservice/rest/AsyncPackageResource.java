@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.manager.AsyncPackageManager;
+import io.barracks.componentservice.model.Package;
+import org.hibernate.validator.constraints.NotBlank;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.validation.Valid;
+
+@RestController
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.ASYNC_MODE)
+@RequestMapping("/owners/{userId}/packages")
+public class AsyncPackageResource {
+
+    private final PagedResourcesAssembler<Package> assembler;
+    private final AsyncPackageManager packageManager;
+
+    public AsyncPackageResource(PagedResourcesAssembler<Package> assembler, AsyncPackageManager packageManager) {
+        this.assembler = assembler;
+        this.packageManager = packageManager;
+    }
+
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseStatus(HttpStatus.CREATED)
+    public DeferredResult<Package> createPackage(@PathVariable("userId") @Valid @NotBlank String userId, @Valid @RequestBody Package aPackage) {
+        return DeferredResults.of(packageManager.createPackage(aPackage.toBuilder().userId(userId).build()));
+    }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET)
+    public DeferredResult<PagedResources<Resource<Package>>> getPackages(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            Pageable pageable
+    ) {
+        return DeferredResults.of(packageManager.getPackages(userId, pageable).thenApply(DeferredResults.inCurrentRequest(assembler::toResource)));
+    }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, path = "/{reference}")
+    public DeferredResult<Package> getPackage(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            @PathVariable("reference") @Valid @NotBlank String reference
+    ) {
+        return DeferredResults.of(packageManager.getPackage(userId, reference));
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.config.WorkloadType;
+import io.barracks.componentservice.manager.AsyncVersionManager;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.rest.entity.CompactPage;
+import io.barracks.componentservice.rest.entity.VersionCopyEntity;
+import io.barracks.componentservice.rest.entity.VersionEntity;
+import io.barracks.componentservice.rest.entity.VersionUpdateEntity;
+import org.hibernate.validator.constraints.NotBlank;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.ASYNC_MODE)
+@RequestMapping("/owners/{userId}/packages/{reference}/versions")
+public class AsyncVersionResource {
+    private final PagedResourcesAssembler<Version> assembler;
+    private final AsyncVersionManager versionManager;
+    private final VersionFileSender versionFileSender;
+
+    public AsyncVersionResource(PagedResourcesAssembler<Version> assembler, AsyncVersionManager versionManager, VersionFileSender versionFileSender) {
+        this.versionManager = versionManager;
+        this.assembler = assembler;
+        this.versionFileSender = versionFileSender;
+    }
+
+    @Bulkhead(WorkloadType.UPLOAD)
+    @StorageQuota
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseBody
+    @ResponseStatus(value = HttpStatus.CREATED)
+    public DeferredResult<Version> createVersion(
+            @RequestParam("file") MultipartFile file,
+            @RequestPart("version") @Valid VersionEntity versionEntity,
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference) {
+        try {
+            final Version version = Version.builder()
+                    .userId(userId)
+                    .id(versionEntity.getId())
+                    .packageRef(reference)
+                    .name(versionEntity.getName())
+                    .description(versionEntity.getDescription())
+                    .filename(file.getOriginalFilename())
+                    .metadata(versionEntity.getMetadata())
+                    .build();
+            return DeferredResults.of(versionManager.createVersion(version, file.getInputStream()));
+        } catch (IOException e) {
+            throw new MultipartException("Failed to access file.", e);
+        }
+    }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET)
+    public DeferredResult<PagedResources<Resource<Version>>> getVersions(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            @PathVariable("reference") @Valid @NotBlank String reference,
+            Pageable pageable
+    ) {
+        return DeferredResults.of(versionManager.getVersions(userId, reference, pageable).thenApply(DeferredResults.inCurrentRequest(assembler::toResource)));
+    }
+
+    /**
+     * Lists the versions without links, with the requested fields only, when the compact representation is accepted.
+     */
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = CompactPage.MEDIA_TYPE)
+    public DeferredResult<CompactPage<Map<String, Object>>> getCompactVersions(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            @PathVariable("reference") @Valid @NotBlank String reference,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            Pageable pageable
+    ) {
+        return DeferredResults.of(versionManager.getVersionFields(userId, reference, fields, pageable).thenApply(CompactPage::of));
+    }
+
+    /**
+     * Lists the versions in the compact representation, for the clients that cannot set the accepted media type.
+     */
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, params = CompactPage.VIEW_PARAMETER)
+    public DeferredResult<CompactPage<Map<String, Object>>> getCompactVersionsView(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            @PathVariable("reference") @Valid @NotBlank String reference,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            Pageable pageable
+    ) {
+        return getCompactVersions(userId, reference, fields, pageable);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/{version}")
+    @ResponseBody
+    @ResponseStatus(value = HttpStatus.OK)
+    public DeferredResult<Version> getVersion(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        return DeferredResults.of(versionManager.getVersion(userId, reference, version));
+    }
+
+    /**
+     * Copies the version to another package of the owner, such as the production package of a release, without
+     * copying its file.
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/{version}/copies")
+    @ResponseBody
+    @ResponseStatus(value = HttpStatus.CREATED)
+    public DeferredResult<Version> copyVersion(
+            @RequestBody @Valid VersionCopyEntity versionCopyEntity,
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        final Version copy = Version.builder()
+                .userId(userId)
+                .packageRef(versionCopyEntity.getPackageRef())
+                .id(versionCopyEntity.getId())
+                .name(versionCopyEntity.getName())
+                .description(versionCopyEntity.getDescription())
+                .metadata(versionCopyEntity.getMetadata())
+                .build();
+        return DeferredResults.of(versionManager.copyVersion(reference, version, copy));
+    }
+
+    /**
+     * Updates the metadata of the version, at the revision of the {@code If-Match} header, without uploading its file
+     * again.
+     */
+    @RequestMapping(method = RequestMethod.PATCH, path = "/{version}")
+    @ResponseBody
+    @ResponseStatus(value = HttpStatus.OK)
+    public DeferredResult<Version> updateVersion(
+            @RequestBody @Valid VersionUpdateEntity versionUpdateEntity,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        final Version changes = Version.builder()
+                .userId(userId)
+                .packageRef(reference)
+                .id(version)
+                .name(versionUpdateEntity.getName())
+                .description(versionUpdateEntity.getDescription())
+                .metadata(versionUpdateEntity.getMetadata())
+                .build();
+        return DeferredResults.of(versionManager.updateVersion(changes, VersionRevisionAdvice.ifMatchRevision(ifMatch, userId, reference, version)));
+    }
+
+    /**
+     * Deletes the version at once, its file being deleted in the background.
+     */
+    @RequestMapping(method = RequestMethod.DELETE, path = "/{version}")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public DeferredResult<Void> deleteVersion(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        return DeferredResults.of(versionManager.deleteVersion(userId, reference, version));
+    }
+
+    @Bulkhead(WorkloadType.DOWNLOAD)
+    @RequestMapping(method = RequestMethod.GET, path = "/{version}/file", produces = "application/octet-stream")
+    public DeferredResult<Void> getVersionFile(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String versionId) {
+        return versionFileSender.send(versionManager.getVersionFile(userId, reference, versionId));
+    }
+}
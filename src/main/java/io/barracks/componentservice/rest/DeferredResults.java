@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+final class DeferredResults {
+    private DeferredResults() {
+    }
+
+    /**
+     * Adapts a {@link CompletionStage} to a {@link DeferredResult}, unwrapping {@link CompletionException} so that
+     * failures reach the exception handlers with their original type.
+     */
+    static <T> DeferredResult<T> of(CompletionStage<T> stage) {
+        final DeferredResult<T> result = new DeferredResult<>();
+        stage.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.setResult(value);
+            } else if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                result.setErrorResult(throwable.getCause());
+            } else {
+                result.setErrorResult(throwable);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Binds the current request to the thread completing the stage while the function runs, for code relying on
+     * {@link RequestContextHolder} such as the {@link org.springframework.data.web.PagedResourcesAssembler}.
+     */
+    static <T, R> Function<T, R> inCurrentRequest(Function<T, R> function) {
+        final RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+        return value -> {
+            final RequestAttributes previous = RequestContextHolder.getRequestAttributes();
+            RequestContextHolder.setRequestAttributes(attributes);
+            try {
+                return function.apply(value);
+            } finally {
+                RequestContextHolder.setRequestAttributes(previous);
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.DownloadCounters;
+import io.barracks.componentservice.model.DownloadCount;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/owners/{userId}/packages/{reference}/versions/{version}/downloads")
+public class DownloadResource {
+    private final DownloadCounters downloadCounters;
+
+    public DownloadResource(DownloadCounters downloadCounters) {
+        this.downloadCounters = downloadCounters;
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public DownloadCount getDownloadCount(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String versionId
+    ) {
+        return downloadCounters.getDownloadCount(userId, reference, versionId);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.MetadataQueryManager;
+import io.barracks.componentservice.model.MetadataIndex;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.rest.entity.VersionQueryEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+import java.util.List;
+
+@RestController
+@RequestMapping("/owners/{userId}")
+public class MetadataQueryResource {
+    private final PagedResourcesAssembler<Version> assembler;
+    private final MetadataQueryManager metadataQueryManager;
+
+    public MetadataQueryResource(PagedResourcesAssembler<Version> assembler, MetadataQueryManager metadataQueryManager) {
+        this.assembler = assembler;
+        this.metadataQueryManager = metadataQueryManager;
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "/packages/{reference}/versions/query")
+    @ResponseBody
+    public PagedResources<Resource<Version>> queryVersions(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @RequestBody @Valid VersionQueryEntity query,
+            Pageable pageable) {
+        return assembler.toResource(metadataQueryManager.queryVersions(userId, reference, query.getConditions(), pageable));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/metadata-indexes")
+    @ResponseBody
+    public List<MetadataIndex> getIndexes(@PathVariable("userId") String userId) {
+        return metadataQueryManager.getIndexes(userId);
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/metadata-indexes/{key}")
+    @ResponseBody
+    public MetadataIndex createIndex(@PathVariable("userId") String userId, @PathVariable("key") String key) {
+        return metadataQueryManager.createIndex(userId, key);
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, path = "/metadata-indexes/{key}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteIndex(@PathVariable("userId") String userId, @PathVariable("key") String key) {
+        metadataQueryManager.deleteIndex(userId, key);
+    }
+}
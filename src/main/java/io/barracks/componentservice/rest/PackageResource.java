@@ -24,9 +24,11 @@
 
 package io.barracks.componentservice.rest;
 
+import io.barracks.componentservice.config.AsyncMongoConfig;
 import io.barracks.componentservice.manager.PackageManager;
 import io.barracks.componentservice.model.Package;
 import org.hibernate.validator.constraints.NotBlank;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.PagedResources;
@@ -37,6 +39,7 @@ import org.springframework.web.bind.annotation.*;
 import javax.validation.Valid;
 
 @RestController
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.BLOCKING_MODE, matchIfMissing = true)
 @RequestMapping("/owners/{userId}/packages")
 public class PackageResource {
 
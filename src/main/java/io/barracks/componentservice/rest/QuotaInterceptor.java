@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.StorageUsageManager;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Rejects the uploads exceeding the storage quotas of their owner or package before their multipart body is parsed,
+ * counting the length of the whole request as the size of the file. Uploads of unknown length are only rejected here
+ * once the quotas are already reached, their file being checked against the byte quotas once stored, see
+ * {@link io.barracks.componentservice.manager.VersionManager#createVersion}.
+ */
+public class QuotaInterceptor extends HandlerInterceptorAdapter {
+    private static final String OWNER_VARIABLE = "userId";
+    private static final String PACKAGE_VARIABLE = "reference";
+
+    private final StorageUsageManager storageUsageManager;
+
+    public QuotaInterceptor(StorageUsageManager storageUsageManager) {
+        this.storageUsageManager = storageUsageManager;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC
+                || !((HandlerMethod) handler).hasMethodAnnotation(StorageQuota.class)) {
+            return true;
+        }
+        final Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables == null) {
+            return true;
+        }
+        storageUsageManager.checkQuota(variables.get(OWNER_VARIABLE), variables.get(PACKAGE_VARIABLE), Math.max(0L, request.getContentLengthLong()));
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.repository.ReadRouting;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Takes the time of the latest write of an owner sent back in the {@value #READ_AFTER_HEADER} header into account, so
+ * that an owner reads its own writes whichever instance handled them. The time is sent with the responses to the writes
+ * without a body, such as the deletions, the others getting it from the {@link ReadYourWritesAdvice}.
+ */
+public class ReadYourWritesInterceptor extends HandlerInterceptorAdapter {
+    public static final String READ_AFTER_HEADER = "X-Read-After";
+    static final String OWNER_VARIABLE = "userId";
+
+    private final ReadRouting readRouting;
+
+    public ReadYourWritesInterceptor(ReadRouting readRouting) {
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        final String readAfter = request.getHeader(READ_AFTER_HEADER);
+        final Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (request.getDispatcherType() == DispatcherType.ASYNC || !StringUtils.hasText(readAfter) || variables == null || !variables.containsKey(OWNER_VARIABLE)) {
+            return true;
+        }
+        try {
+            readRouting.recordWrite(variables.get(OWNER_VARIABLE), Long.parseLong(readAfter.trim()));
+        } catch (NumberFormatException e) {
+            // Not a time sent by this service, the reads keep their usual preference
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        final Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod()) || response.isCommitted()
+                || response.containsHeader(READ_AFTER_HEADER) || variables == null || !variables.containsKey(OWNER_VARIABLE)) {
+            return;
+        }
+        readRouting.getLastWrite(variables.get(OWNER_VARIABLE))
+                .ifPresent(lastWrite -> response.setHeader(READ_AFTER_HEADER, String.valueOf(lastWrite)));
+    }
+}
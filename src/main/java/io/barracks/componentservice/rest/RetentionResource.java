@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.RetentionManager;
+import io.barracks.componentservice.model.RetentionPolicy;
+import io.barracks.componentservice.model.RetentionReport;
+import io.barracks.componentservice.rest.entity.RetentionPolicyEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+
+@RestController
+@RequestMapping("/owners/{userId}")
+public class RetentionResource {
+    private final RetentionManager retentionManager;
+
+    public RetentionResource(RetentionManager retentionManager) {
+        this.retentionManager = retentionManager;
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/packages/{reference}/retention")
+    @ResponseBody
+    public RetentionPolicy setPolicy(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @RequestBody @Valid RetentionPolicyEntity policy) {
+        return retentionManager.setPolicy(RetentionPolicy.builder()
+                .userId(userId)
+                .packageRef(reference)
+                .keepLast(policy.getKeepLast())
+                .keepDays(policy.getKeepDays())
+                .releasedKey(policy.getReleasedKey())
+                .build());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/packages/{reference}/retention")
+    @ResponseBody
+    public RetentionPolicy getPolicy(@PathVariable("userId") String userId, @PathVariable("reference") String reference) {
+        return retentionManager.getPolicy(userId, reference);
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, path = "/packages/{reference}/retention")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deletePolicy(@PathVariable("userId") String userId, @PathVariable("reference") String reference) {
+        retentionManager.deletePolicy(userId, reference);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/retention")
+    @ResponseBody
+    public RetentionReport getReport(@PathVariable("userId") String userId) {
+        return retentionManager.getReport(userId);
+    }
+}
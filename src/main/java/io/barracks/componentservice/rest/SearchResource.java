@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.SearchIndexProperties;
+import io.barracks.componentservice.model.SearchHit;
+import io.barracks.componentservice.repository.SearchIndex;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.InitBinder;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.beans.PropertyEditorSupport;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Searches the packages and versions of an owner on the words of their names and descriptions.
+ */
+@RestController
+@RequestMapping("/owners/{userId}/search")
+public class SearchResource {
+    private final SearchIndex searchIndex;
+    private final SearchIndexProperties searchIndexProperties;
+
+    public SearchResource(SearchIndex searchIndex, SearchIndexProperties searchIndexProperties) {
+        this.searchIndex = searchIndex;
+        this.searchIndexProperties = searchIndexProperties;
+    }
+
+    @InitBinder
+    public void initBinder(WebDataBinder binder) {
+        binder.registerCustomEditor(SearchHit.Type.class, new PropertyEditorSupport() {
+            @Override
+            public void setAsText(String text) {
+                setValue(SearchHit.Type.valueOf(text.trim().toUpperCase(Locale.ROOT)));
+            }
+        });
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    public List<SearchHit> search(
+            @PathVariable("userId") String userId,
+            @RequestParam("q") String query,
+            @RequestParam(value = "type", required = false) SearchHit.Type type,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        final int maxResults = searchIndexProperties.getMaxResults();
+        return searchIndex.search(userId, query, type, limit == null ? maxResults : Math.max(1, Math.min(limit, maxResults)));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.StorageUsageManager;
+import io.barracks.componentservice.model.StorageUsage;
+import io.barracks.componentservice.model.UsageReport;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/owners/{userId}")
+public class UsageResource {
+    private final StorageUsageManager storageUsageManager;
+
+    public UsageResource(StorageUsageManager storageUsageManager) {
+        this.storageUsageManager = storageUsageManager;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/usage")
+    @ResponseBody
+    public UsageReport getReport(@PathVariable("userId") String userId) {
+        return storageUsageManager.getReport(userId);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/packages/{reference}/usage")
+    @ResponseBody
+    public StorageUsage getPackageUsage(@PathVariable("userId") String userId, @PathVariable("reference") String reference) {
+        return storageUsageManager.getPackageUsage(userId, reference);
+    }
+}
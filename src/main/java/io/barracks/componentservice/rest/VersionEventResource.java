@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.VersionFeedProperties;
+import io.barracks.componentservice.model.VersionEvent;
+import io.barracks.componentservice.repository.VersionFeed;
+import org.bson.types.ObjectId;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Feed of the versions created for an owner or one of its packages, as an event stream or by long polling. Both resume
+ * after the last event received, so that a subscriber reconnecting does not miss the versions created in between.
+ */
+@RestController
+@RequestMapping(value = {"/owners/{userId}/version-events", "/owners/{userId}/packages/{reference}/version-events"})
+public class VersionEventResource {
+    static final String EVENT_NAME = "version-created";
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    private static final int MAX_EVENTS = 100;
+
+    private final VersionFeed versionFeed;
+    private final VersionFeedProperties versionFeedProperties;
+
+    public VersionEventResource(VersionFeed versionFeed, VersionFeedProperties versionFeedProperties) {
+        this.versionFeed = versionFeed;
+        this.versionFeedProperties = versionFeedProperties;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @PathVariable("userId") String userId,
+            @PathVariable(value = "reference", required = false) String reference,
+            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        final SseEmitter emitter = new SseEmitter(versionFeedProperties.getStreamTimeout());
+        final VersionFeed.Subscription subscription = versionFeed.subscribe(userId, reference, lastEventId, new VersionFeed.Listener() {
+            @Override
+            public void onEvent(VersionEvent event) throws Exception {
+                emitter.send(SseEmitter.event().id(event.getId()).name(EVENT_NAME).data(event.getVersion(), MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onHeartbeat() throws Exception {
+                emitter.send(SseEmitter.event().comment(""));
+            }
+
+            @Override
+            public void onDropped() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        return emitter;
+    }
+
+    /**
+     * Answers with the versions created after the given event as soon as there are some, or with none once the wait
+     * is over.
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<List<VersionEvent>> pollEvents(
+            @PathVariable("userId") String userId,
+            @PathVariable(value = "reference", required = false) String reference,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "wait", required = false) Long wait) {
+        final long timeout = wait == null ? versionFeedProperties.getMaxWait() : Math.max(0L, Math.min(wait, versionFeedProperties.getMaxWait()));
+        final DeferredResult<List<VersionEvent>> result = new DeferredResult<>(timeout, Collections.emptyList());
+        final List<VersionEvent> events = after != null && ObjectId.isValid(after)
+                ? versionFeed.getEvents(userId, reference, after, MAX_EVENTS)
+                : Collections.emptyList();
+        // A timeout of 0 would make the container wait for the next version, however long it takes
+        if (!events.isEmpty() || timeout == 0L) {
+            result.setResult(events);
+            return result;
+        }
+        final VersionFeed.Subscription subscription = versionFeed.subscribe(userId, reference, after, new VersionFeed.Listener() {
+            @Override
+            public void onEvent(VersionEvent event) {
+                result.setResult(Collections.singletonList(event));
+            }
+
+            @Override
+            public void onHeartbeat() {
+            }
+        });
+        result.onCompletion(subscription::cancel);
+        if (result.isSetOrExpired()) {
+            subscription.cancel();
+        }
+        return result;
+    }
+}
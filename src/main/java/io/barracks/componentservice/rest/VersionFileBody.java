@@ -0,0 +1,267 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.BandwidthScheduler;
+import io.barracks.componentservice.manager.DownloadCounters;
+import io.barracks.componentservice.model.Version;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a version binary with non-blocking servlet writes, so that a download only holds a thread while its
+ * connection can take more bytes: the chunks are written on the download executor whenever the container reports the
+ * connection writable, and a download over its owner's bandwidth share is paused on a timer instead of sleeping.
+ * Binaries kept on the local filesystem are memory-mapped and copied from the page cache instead of being read through
+ * a stream. Each download is counted once it ended, as completed when the whole binary was written and as aborted
+ * otherwise.
+ * <p>
+ * The transfer starts once the asynchronous processing of the request started, see {@link VersionFileInterceptor},
+ * and its result is set when it ended, so that the request completes as any other asynchronous one.
+ */
+class VersionFileBody extends DeferredResult<Void> implements WriteListener {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+    /**
+     * Shortest pause worth a timer, the shorter ones being added to the next wait for bandwidth.
+     */
+    private static final long MIN_PAUSE = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CompletionStage<Version> version;
+    private final BandwidthScheduler bandwidthScheduler;
+    private final DownloadCounters downloadCounters;
+    private final TaskExecutor taskExecutor;
+    private final TaskScheduler taskScheduler;
+    private final Object lock = new Object();
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private Version resolved;
+    private BandwidthScheduler.Lease lease;
+    private Chunks chunks;
+    private ServletOutputStream outputStream;
+    private boolean finished;
+
+    /**
+     * @param taskExecutor  the executor writing the chunks.
+     * @param taskScheduler the timer resuming the downloads paused for bandwidth.
+     */
+    VersionFileBody(
+            CompletionStage<Version> version,
+            BandwidthScheduler bandwidthScheduler,
+            DownloadCounters downloadCounters,
+            TaskExecutor taskExecutor,
+            TaskScheduler taskScheduler
+    ) {
+        super(null, null);
+        this.version = version;
+        this.bandwidthScheduler = bandwidthScheduler;
+        this.downloadCounters = downloadCounters;
+        this.taskExecutor = taskExecutor;
+        this.taskScheduler = taskScheduler;
+        onTimeout(() -> finish(false));
+    }
+
+    /**
+     * Starts the transfer once the version is known, the asynchronous processing of the request being started.
+     */
+    void start(HttpServletResponse response) {
+        version.whenComplete((resolved, throwable) -> {
+            if (throwable == null) {
+                start(resolved, response);
+            } else {
+                setErrorResult(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
+        });
+    }
+
+    @Override
+    public void onWritePossible() {
+        try {
+            taskExecutor.execute(this::write);
+        } catch (RejectedExecutionException e) {
+            finish(false);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        finish(false);
+    }
+
+    private void start(Version resolved, HttpServletResponse response) {
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            this.resolved = resolved;
+            lease = bandwidthScheduler.open(resolved.getUserId());
+            try {
+                final Optional<Path> file = resolved.getContent().getFile();
+                chunks = file.isPresent() ? new MappedChunks(file.get()) : new StreamChunks(resolved.getContent().open());
+            } catch (IOException | RuntimeException e) {
+                finished = true;
+                lease.close();
+                downloadCounters.recordDownload(resolved, false);
+                setErrorResult(e);
+                return;
+            }
+            final HttpHeaders headers = new HttpHeaders();
+            StaleMetadataAdvice.addStaleHeaders(headers, resolved.getCachedAt());
+            headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setContentLengthLong(resolved.getLength());
+            try {
+                outputStream = response.getOutputStream();
+                outputStream.setWriteListener(this);
+            } catch (IOException | RuntimeException e) {
+                finish(false);
+            }
+        }
+    }
+
+    /**
+     * Writes chunks as long as the connection takes them, the container calling {@link #onWritePossible()} again
+     * once it can take more, unless the owner has to wait for bandwidth.
+     */
+    private void write() {
+        synchronized (lock) {
+            try {
+                while (!finished && outputStream.isReady()) {
+                    final int read = chunks.read(buffer);
+                    if (read == -1) {
+                        finish(true);
+                        return;
+                    }
+                    outputStream.write(buffer, 0, read);
+                    final long wait = lease.take(read);
+                    if (wait >= MIN_PAUSE) {
+                        taskScheduler.schedule(this::onWritePossible, new Date(System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(wait)));
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                finish(false);
+            }
+        }
+    }
+
+    private void finish(boolean complete) {
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (chunks != null) {
+                try {
+                    chunks.close();
+                } catch (IOException e) {
+                    // The binary was read, or will not be anymore
+                }
+            }
+            if (lease != null) {
+                lease.close();
+            }
+            if (resolved != null) {
+                downloadCounters.recordDownload(resolved, complete);
+            }
+        }
+        setResult(null);
+    }
+
+    private interface Chunks extends Closeable {
+        /**
+         * @return the number of bytes read into the buffer, or -1 at the end of the binary.
+         */
+        int read(byte[] buffer) throws IOException;
+    }
+
+    private static class StreamChunks implements Chunks {
+        private final InputStream inputStream;
+
+        private StreamChunks(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            return inputStream.read(buffer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    private static class MappedChunks implements Chunks {
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer window;
+
+        private MappedChunks(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            if (window == null || !window.hasRemaining()) {
+                if (position >= size) {
+                    return -1;
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_WINDOW_SIZE, size - position));
+                position += window.remaining();
+            }
+            final int read = Math.min(buffer.length, window.remaining());
+            window.get(buffer, 0, read);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
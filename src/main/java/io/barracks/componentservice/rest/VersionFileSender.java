@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.BandwidthScheduler;
+import io.barracks.componentservice.manager.DownloadCounters;
+import io.barracks.componentservice.model.Version;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Sends version binaries to the clients, applying the owners' bandwidth shares and counting the downloads.
+ */
+@Component
+public class VersionFileSender {
+    private final BandwidthScheduler bandwidthScheduler;
+    private final DownloadCounters downloadCounters;
+    private final TaskExecutor taskExecutor;
+    private final TaskScheduler taskScheduler;
+
+    public VersionFileSender(
+            BandwidthScheduler bandwidthScheduler,
+            DownloadCounters downloadCounters,
+            @Qualifier("downloadTaskExecutor") TaskExecutor taskExecutor,
+            @Qualifier("bandwidthTaskScheduler") TaskScheduler taskScheduler
+    ) {
+        this.bandwidthScheduler = bandwidthScheduler;
+        this.downloadCounters = downloadCounters;
+        this.taskExecutor = taskExecutor;
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * @param version the version to send, as soon as it is found.
+     * @return the result set once the binary was sent, or the error the version could not be found with.
+     */
+    public DeferredResult<Void> send(CompletionStage<Version> version) {
+        return new VersionFileBody(version, bandwidthScheduler, downloadCounters, taskExecutor, taskScheduler);
+    }
+}
@@ -24,39 +24,51 @@
 
 package io.barracks.componentservice.rest;
 
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.config.WorkloadType;
 import io.barracks.componentservice.manager.VersionManager;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.rest.entity.CompactPage;
+import io.barracks.componentservice.rest.entity.VersionCopyEntity;
 import io.barracks.componentservice.rest.entity.VersionEntity;
+import io.barracks.componentservice.rest.entity.VersionUpdateEntity;
 import org.hibernate.validator.constraints.NotBlank;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.PagedResources;
 import org.springframework.hateoas.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartException;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
 import java.io.IOException;
-import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
+@ConditionalOnProperty(name = AsyncMongoConfig.MODE_PROPERTY, havingValue = AsyncMongoConfig.BLOCKING_MODE, matchIfMissing = true)
 @RequestMapping("/owners/{userId}/packages/{reference}/versions")
 public class VersionResource {
     private final PagedResourcesAssembler<Version> assembler;
     private final VersionManager versionManager;
+    private final VersionFileSender versionFileSender;
 
     @Autowired
-    public VersionResource(PagedResourcesAssembler<Version> assembler, VersionManager versionManager) {
+    public VersionResource(PagedResourcesAssembler<Version> assembler, VersionManager versionManager, VersionFileSender versionFileSender) {
         this.versionManager = versionManager;
         this.assembler = assembler;
+        this.versionFileSender = versionFileSender;
     }
 
+    @Bulkhead(WorkloadType.UPLOAD)
+    @StorageQuota
     @RequestMapping(method = RequestMethod.POST)
     @ResponseBody
     @ResponseStatus(value = HttpStatus.CREATED)
@@ -91,6 +103,34 @@ public class VersionResource {
         return assembler.toResource(versionManager.getVersions(userId, reference, pageable));
     }
 
+    /**
+     * Lists the versions without links, with the requested fields only, when the compact representation is accepted.
+     */
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = CompactPage.MEDIA_TYPE)
+    public CompactPage<Map<String, Object>> getCompactVersions(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            @PathVariable("reference") @Valid @NotBlank String reference,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            Pageable pageable
+    ) {
+        return CompactPage.of(versionManager.getVersionFields(userId, reference, fields, pageable));
+    }
+
+    /**
+     * Lists the versions in the compact representation, for the clients that cannot set the accepted media type.
+     */
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, params = CompactPage.VIEW_PARAMETER)
+    public CompactPage<Map<String, Object>> getCompactVersionsView(
+            @PathVariable("userId") @Valid @NotBlank String userId,
+            @PathVariable("reference") @Valid @NotBlank String reference,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            Pageable pageable
+    ) {
+        return getCompactVersions(userId, reference, fields, pageable);
+    }
+
     @RequestMapping(method = RequestMethod.GET, path = "/{version}")
     @ResponseBody
     @ResponseStatus(value = HttpStatus.OK)
@@ -101,16 +141,72 @@ public class VersionResource {
         return versionManager.getVersion(userId, reference, version);
     }
 
+    /**
+     * Copies the version to another package of the owner, such as the production package of a release, without
+     * copying its file.
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/{version}/copies")
+    @ResponseBody
+    @ResponseStatus(value = HttpStatus.CREATED)
+    public Version copyVersion(
+            @RequestBody @Valid VersionCopyEntity versionCopyEntity,
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        final Version copy = Version.builder()
+                .userId(userId)
+                .packageRef(versionCopyEntity.getPackageRef())
+                .id(versionCopyEntity.getId())
+                .name(versionCopyEntity.getName())
+                .description(versionCopyEntity.getDescription())
+                .metadata(versionCopyEntity.getMetadata())
+                .build();
+        return versionManager.copyVersion(reference, version, copy);
+    }
+
+    /**
+     * Updates the metadata of the version, at the revision of the {@code If-Match} header, without uploading its file
+     * again.
+     */
+    @RequestMapping(method = RequestMethod.PATCH, path = "/{version}")
+    @ResponseBody
+    @ResponseStatus(value = HttpStatus.OK)
+    public Version updateVersion(
+            @RequestBody @Valid VersionUpdateEntity versionUpdateEntity,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        final Version changes = Version.builder()
+                .userId(userId)
+                .packageRef(reference)
+                .id(version)
+                .name(versionUpdateEntity.getName())
+                .description(versionUpdateEntity.getDescription())
+                .metadata(versionUpdateEntity.getMetadata())
+                .build();
+        return versionManager.updateVersion(changes, VersionRevisionAdvice.ifMatchRevision(ifMatch, userId, reference, version));
+    }
+
+    /**
+     * Deletes the version at once, its file being deleted in the background.
+     */
+    @RequestMapping(method = RequestMethod.DELETE, path = "/{version}")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void deleteVersion(
+            @PathVariable("userId") String userId,
+            @PathVariable("reference") String reference,
+            @PathVariable("version") String version) {
+        versionManager.deleteVersion(userId, reference, version);
+    }
 
+    @Bulkhead(WorkloadType.DOWNLOAD)
     @RequestMapping(method = RequestMethod.GET, path = "/{version}/file", produces = "application/octet-stream")
-    public ResponseEntity<?> getVersionFile(
+    public DeferredResult<Void> getVersionFile(
             @PathVariable("userId") String userId,
             @PathVariable("reference") String reference,
             @PathVariable("version") String versionId) {
-        final Version version = versionManager.getVersion(userId, reference, versionId);
-        InputStreamResource inputStreamResource = new InputStreamResource(version.getInputStream());
-        HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.setContentLength(version.getLength());
-        return new ResponseEntity<>(inputStreamResource, httpHeaders, HttpStatus.OK);
+        final Version version = versionManager.getVersionFile(userId, reference, versionId);
+        return versionFileSender.send(CompletableFuture.completedFuture(version));
     }
 }
\ No newline at end of file
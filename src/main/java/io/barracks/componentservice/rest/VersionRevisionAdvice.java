@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.exception.RevisionRequiredException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
+import io.barracks.componentservice.model.Version;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends the revision of the versions as their {@code ETag}, for the clients to send it back in the {@code If-Match}
+ * header of their updates.
+ */
+@ControllerAdvice
+public class VersionRevisionAdvice implements ResponseBodyAdvice<Object> {
+    private static final Pattern REVISION_TAG = Pattern.compile("\"(\\d{1,18})\"");
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(
+            Object body,
+            MethodParameter returnType,
+            MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType,
+            ServerHttpRequest request,
+            ServerHttpResponse response
+    ) {
+        if (body instanceof Version) {
+            response.getHeaders().setETag(eTag(((Version) body).getRevision()));
+        }
+        return body;
+    }
+
+    static String eTag(long revision) {
+        return "\"" + revision + "\"";
+    }
+
+    /**
+     * @return the revision the {@code If-Match} header of an update of the version requires, or null for any.
+     * @throws RevisionRequiredException when there is no header.
+     * @throws VersionModifiedException  when the header holds no entity tag the version may have.
+     */
+    static Long ifMatchRevision(String ifMatch, String userId, String packageRef, String versionId) {
+        if (ifMatch == null || ifMatch.trim().isEmpty()) {
+            throw new RevisionRequiredException(userId, packageRef, versionId);
+        }
+        if ("*".equals(ifMatch.trim())) {
+            return null;
+        }
+        final Matcher matcher = REVISION_TAG.matcher(ifMatch.trim());
+        if (!matcher.matches()) {
+            throw new VersionModifiedException(userId, packageRef, versionId);
+        }
+        return Long.valueOf(matcher.group(1));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.entity;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.domain.Page;
+import org.springframework.hateoas.PagedResources;
+
+import java.util.List;
+
+/**
+ * Page of a listing without the links and wrapping of the HAL representation.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class CompactPage<T> {
+    public static final String MEDIA_TYPE = "application/vnd.barracks.compact+json";
+    public static final String VIEW_PARAMETER = "view=compact";
+
+    private final List<T> content;
+    private final PagedResources.PageMetadata page;
+
+    private CompactPage(List<T> content, PagedResources.PageMetadata page) {
+        this.content = content;
+        this.page = page;
+    }
+
+    public static <T> CompactPage<T> of(Page<T> page) {
+        return new CompactPage<>(
+                page.getContent(),
+                new PagedResources.PageMetadata(page.getSize(), page.getNumber(), page.getTotalElements(), page.getTotalPages())
+        );
+    }
+}
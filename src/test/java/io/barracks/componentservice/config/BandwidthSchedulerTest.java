@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import org.junit.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class BandwidthSchedulerTest {
+
+    @Test
+    public void open_whenNoLimit_shouldNotThrottle() throws Exception {
+        // Given
+        final BandwidthScheduler scheduler = new BandwidthScheduler(new BandwidthProperties());
+        final long start = System.nanoTime();
+
+        // When
+        try (BandwidthScheduler.Lease lease = scheduler.open(UUID.randomUUID().toString())) {
+            for (int i = 0; i < 1000; i++) {
+                assertThat(lease.take(1024 * 1024)).isZero();
+            }
+        }
+
+        // Then
+        assertThat(System.nanoTime() - start).isLessThan(1000000000L);
+        assertThat(scheduler.getOwnerCount()).isZero();
+    }
+
+    @Test
+    public void open_whenOwnersHaveWeights_shouldShareTotalByWeight() {
+        // Given
+        final String heavy = UUID.randomUUID().toString(), light = UUID.randomUUID().toString();
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.setTotal(3000);
+        properties.getWeights().put(heavy, 2.0);
+        final BandwidthScheduler scheduler = new BandwidthScheduler(properties);
+
+        // When
+        scheduler.open(heavy);
+        scheduler.open(light);
+        scheduler.open(light);
+
+        // Then
+        assertThat(scheduler.getRate(heavy)).isCloseTo(2000, within(0.1));
+        assertThat(scheduler.getRate(light)).isCloseTo(1000, within(0.1));
+    }
+
+    @Test
+    public void open_whenOwnerLimitedBelowShare_shouldGiveRemainderToOthers() {
+        // Given
+        final String limited = UUID.randomUUID().toString(), other = UUID.randomUUID().toString();
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.setTotal(3000);
+        properties.getOwnerLimits().put(limited, 500L);
+        final BandwidthScheduler scheduler = new BandwidthScheduler(properties);
+
+        // When
+        scheduler.open(limited);
+        scheduler.open(other);
+
+        // Then
+        assertThat(scheduler.getRate(limited)).isCloseTo(500, within(0.1));
+        assertThat(scheduler.getRate(other)).isCloseTo(2500, within(0.1));
+    }
+
+    @Test
+    public void close_whenLastLeaseOfOwner_shouldGiveBandwidthBack() {
+        // Given
+        final String leaving = UUID.randomUUID().toString(), staying = UUID.randomUUID().toString();
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.setTotal(2000);
+        final BandwidthScheduler scheduler = new BandwidthScheduler(properties);
+        final BandwidthScheduler.Lease lease = scheduler.open(leaving);
+        scheduler.open(staying);
+
+        // When
+        lease.close();
+        lease.close();
+
+        // Then
+        assertThat(scheduler.getOwnerCount()).isEqualTo(1);
+        assertThat(scheduler.getRate(staying)).isCloseTo(2000, within(0.1));
+    }
+
+    @Test
+    public void take_whenAboveRate_shouldReturnTimeToWaitForTokens() {
+        // Given
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.setOwnerLimit(1000000L);
+        properties.setBurst(100000L);
+        final BandwidthScheduler scheduler = new BandwidthScheduler(properties);
+        long wait = 0;
+
+        // When
+        try (BandwidthScheduler.Lease lease = scheduler.open(UUID.randomUUID().toString())) {
+            for (int i = 0; i < 4; i++) {
+                wait = lease.take(100000);
+            }
+        }
+
+        // Then
+        assertThat(wait).isGreaterThanOrEqualTo(250000000L);
+    }
+
+    @Test
+    public void take_whenOwnerUsesLessThanShare_shouldGiveUnusedBandwidthToOthers() throws Exception {
+        // Given
+        final String slow = UUID.randomUUID().toString(), fast = UUID.randomUUID().toString();
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.setTotal(1000000L);
+        properties.setBurst(1000L);
+        properties.setRebalanceInterval(10L);
+        final BandwidthScheduler scheduler = new BandwidthScheduler(properties);
+        final BandwidthScheduler.Lease slowLease = scheduler.open(slow);
+        final BandwidthScheduler.Lease fastLease = scheduler.open(fast);
+        slowLease.take(1000);
+        fastLease.take(10000);
+        Thread.sleep(20);
+
+        // When
+        fastLease.take(10000);
+
+        // Then
+        assertThat(scheduler.getRate(slow)).isLessThan(200000);
+        assertThat(scheduler.getRate(fast)).isGreaterThan(800000);
+    }
+
+    @Test
+    public void validate_whenWeightNotPositive_shouldRejectProperties() {
+        // Given
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.getWeights().put(UUID.randomUUID().toString(), 0.0);
+        final Errors errors = new BeanPropertyBindingResult(properties, "bandwidth");
+
+        // When
+        properties.validate(properties, errors);
+
+        // Then
+        assertThat(errors.hasErrors()).isTrue();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the size and encoding time of the packages and versions in JSON, CBOR and Smile. Run it by hand, as its
+ * timings depend on the machine running it.
+ */
+@Ignore("Benchmark, run by hand")
+public class BinaryFormatBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 50000;
+    private static final int MEASURED_ITERATIONS = 200000;
+
+    @Test
+    public void encode_shouldBeSmallerAndFasterInBinaryFormats() throws Exception {
+        final Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+        mappers.put("json", new ObjectMapper());
+        mappers.put("cbor", new ObjectMapper(new CBORFactory()));
+        mappers.put("smile", new ObjectMapper(new SmileFactory()));
+        final Map<String, Object> payloads = new LinkedHashMap<>();
+        payloads.put("version", VersionUtils.getVersion());
+        payloads.put("package", PackageUtils.getPackage());
+
+        for (Map.Entry<String, Object> payload : payloads.entrySet()) {
+            final Map<String, Long> times = new LinkedHashMap<>();
+            final Map<String, Integer> sizes = new LinkedHashMap<>();
+            for (Map.Entry<String, ObjectMapper> mapper : mappers.entrySet()) {
+                final ObjectWriter writer = mapper.getValue().writerFor(payload.getValue().getClass());
+                times.put(mapper.getKey(), encodeTime(writer, payload.getValue()));
+                sizes.put(mapper.getKey(), writer.writeValueAsBytes(payload.getValue()).length);
+            }
+            System.out.printf("%s: sizes (bytes) %s, encode times (ns) %s%n", payload.getKey(), sizes, times);
+            assertThat(sizes.get("cbor")).isLessThan(sizes.get("json"));
+            assertThat(sizes.get("smile")).isLessThan(sizes.get("json"));
+        }
+    }
+
+    /**
+     * @return the average time to encode the value, in nanoseconds, once the writer is warmed up.
+     */
+    private static long encodeTime(ObjectWriter writer, Object value) throws Exception {
+        long length = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            length += writer.writeValueAsBytes(value).length;
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            length += writer.writeValueAsBytes(value).length;
+        }
+        final long elapsed = System.nanoTime() - start;
+        // Uses the encoded lengths so that the encoding cannot be left out by the JIT
+        assertThat(length).isPositive();
+        return elapsed / MEASURED_ITERATIONS;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import io.barracks.componentservice.config.exception.CircuitOpenException;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class CircuitBreakerTest {
+    private static final RuntimeException UNAVAILABLE = new MongoSocketReadException("Prematurely reached end of stream", new ServerAddress());
+
+    @Test
+    public void execute_whenFailuresReachThreshold_shouldOpenCircuit() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(2, 60000L, 1);
+        fail(circuitBreaker);
+        fail(circuitBreaker);
+
+        // Then When
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatExceptionOfType(CircuitOpenException.class)
+                .isThrownBy(() -> circuitBreaker.execute(() -> "result"))
+                .satisfies(e -> assertThat(e.getRetryAfter()).isEqualTo(60L));
+        assertThat(circuitBreaker.getFailureCount()).isEqualTo(2);
+        assertThat(circuitBreaker.getRejectedCount()).isEqualTo(1);
+        assertThat(circuitBreaker.getOpenedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void execute_whenSuccessBetweenFailures_shouldKeepCircuitClosed() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(2, 60000L, 1);
+        fail(circuitBreaker);
+
+        // When
+        circuitBreaker.execute(() -> "result");
+        fail(circuitBreaker);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void execute_whenErrorIsNotUnavailability_shouldNotCountFailure() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(1, 60000L, 1);
+
+        // When
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> circuitBreaker.execute(() -> {
+            throw new IllegalArgumentException();
+        }));
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getFailureCount()).isZero();
+    }
+
+    @Test
+    public void execute_whenOpenDurationElapsedAndProbesSucceed_shouldCloseCircuit() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(1, 0L, 2);
+        fail(circuitBreaker);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        // When
+        circuitBreaker.execute(() -> "probe");
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        circuitBreaker.execute(() -> "probe");
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void execute_whenProbeFails_shouldOpenCircuitAgain() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(1, 0L, 2);
+        fail(circuitBreaker);
+
+        // When
+        fail(circuitBreaker);
+
+        // Then
+        assertThat(circuitBreaker.getOpenedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void executeAsync_whenProbesInFlight_shouldRejectOtherCalls() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(1, 0L, 1);
+        fail(circuitBreaker);
+        final CompletableFuture<String> probe = new CompletableFuture<>();
+        circuitBreaker.executeAsync(() -> probe);
+
+        // When
+        final CompletableFuture<String> result = circuitBreaker.executeAsync(() -> CompletableFuture.completedFuture("result"));
+
+        // Then
+        assertThatExceptionOfType(CompletionException.class)
+                .isThrownBy(result::join)
+                .withCauseInstanceOf(CircuitOpenException.class);
+        probe.complete("probe");
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void executeAsync_whenFutureFailsWithUnavailability_shouldCountFailure() {
+        // Given
+        final CircuitBreaker circuitBreaker = circuitBreaker(1, 60000L, 1);
+        final CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new CompletionException(UNAVAILABLE));
+
+        // When
+        circuitBreaker.executeAsync(() -> failed);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.isUnavailable(new CompletionException(new CircuitOpenException("mongo", 1L)))).isTrue();
+        assertThat(circuitBreaker.isUnavailable(new IllegalStateException())).isFalse();
+    }
+
+    private static CircuitBreaker circuitBreaker(int failureThreshold, long openDuration, int halfOpenProbes) {
+        return new CircuitBreaker("mongo", failureThreshold, openDuration, halfOpenProbes, MongoResilienceConfig.isMongoUnavailable());
+    }
+
+    private static void fail(CircuitBreaker circuitBreaker) {
+        assertThatExceptionOfType(RuntimeException.class).isThrownBy(() -> circuitBreaker.execute(() -> {
+            throw UNAVAILABLE;
+        }));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import io.barracks.componentservice.config.exception.TransferRejectedException;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class TransferAdmissionTest {
+
+    @Test
+    public void admit_whenUnderLimit_shouldCountTransfer() {
+        // Given
+        final TransferAdmission admission = new TransferAdmission(WorkloadType.DOWNLOAD, new AdmissionProperties.Transfer(2, 1000L, 60L));
+        final String owner = UUID.randomUUID().toString();
+
+        // When
+        admission.admit(owner);
+
+        // Then
+        assertThat(admission.getInFlightCount()).isEqualTo(1);
+        assertThat(admission.getOwnerCount()).isEqualTo(1);
+        assertThat(admission.getRejectedCount()).isZero();
+    }
+
+    @Test
+    public void admit_whenLimitReached_shouldRejectWithRetryAfterFromExpectedDuration() {
+        // Given
+        final TransferAdmission admission = new TransferAdmission(WorkloadType.DOWNLOAD, new AdmissionProperties.Transfer(2, 20000L, 60L));
+        final String owner = UUID.randomUUID().toString();
+        admission.admit(owner);
+        admission.admit(owner);
+
+        // Then When
+        assertThatExceptionOfType(TransferRejectedException.class)
+                .isThrownBy(() -> admission.admit(UUID.randomUUID().toString()))
+                .matches(e -> e.getRetryAfter() == 10);
+        assertThat(admission.getRejectedCount()).isEqualTo(1);
+        assertThat(admission.getWaitingOwnerCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void admit_whenRetryAfterTooLong_shouldCapRetryAfter() {
+        // Given
+        final TransferAdmission admission = new TransferAdmission(WorkloadType.UPLOAD, new AdmissionProperties.Transfer(1, 3600000L, 60L));
+        admission.admit(UUID.randomUUID().toString());
+
+        // Then When
+        assertThatExceptionOfType(TransferRejectedException.class)
+                .isThrownBy(() -> admission.admit(UUID.randomUUID().toString()))
+                .matches(e -> e.getRetryAfter() == 60);
+    }
+
+    @Test
+    public void admit_whenAnotherOwnerIsWaiting_shouldLimitOwnerToItsFairShare() {
+        // Given
+        final TransferAdmission admission = new TransferAdmission(WorkloadType.DOWNLOAD, new AdmissionProperties.Transfer(4, 60000L, 60L));
+        final String greedy = UUID.randomUUID().toString(), other = UUID.randomUUID().toString();
+        final TransferAdmission.Permit first = admission.admit(greedy);
+        admission.admit(greedy);
+        admission.admit(greedy);
+        admission.admit(greedy);
+        assertThatExceptionOfType(TransferRejectedException.class).isThrownBy(() -> admission.admit(other));
+        first.release();
+
+        // Then When
+        assertThatExceptionOfType(TransferRejectedException.class).isThrownBy(() -> admission.admit(greedy));
+        admission.admit(other);
+        assertThat(admission.getOwnerCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void release_whenCalledTwice_shouldFreeOneSlot() {
+        // Given
+        final TransferAdmission admission = new TransferAdmission(WorkloadType.UPLOAD, new AdmissionProperties.Transfer(2, 1000L, 60L));
+        final String owner = UUID.randomUUID().toString();
+        admission.admit(owner);
+        final TransferAdmission.Permit permit = admission.admit(owner);
+
+        // When
+        permit.release();
+        permit.release();
+
+        // Then
+        assertThat(admission.getInFlightCount()).isEqualTo(1);
+        assertThat(admission.getOwnerCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void release_shouldUpdateAverageDuration() {
+        // Given
+        final TransferAdmission admission = new TransferAdmission(WorkloadType.UPLOAD, new AdmissionProperties.Transfer(2, 100000L, 60L));
+        final TransferAdmission.Permit permit = admission.admit(UUID.randomUUID().toString());
+
+        // When
+        permit.release();
+
+        // Then
+        assertThat(admission.getAverageDuration()).isLessThan(100000L);
+        assertThat(admission.getInFlightCount()).isZero();
+        assertThat(admission.getOwnerCount()).isZero();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.config;
+
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class WorkloadBulkheadTest {
+
+    @Test
+    public void acquire_whenSlotAvailable_shouldCountActiveRequest() {
+        // Given
+        final WorkloadBulkhead bulkhead = new WorkloadBulkhead(WorkloadType.METADATA, new BulkheadProperties.Workload(2, 0, 0L, 1));
+
+        // When
+        bulkhead.acquire();
+
+        // Then
+        assertThat(bulkhead.getActiveCount()).isEqualTo(1);
+        assertThat(bulkhead.getRejectedCount()).isZero();
+    }
+
+    @Test
+    public void acquire_whenFullAndNoQueue_shouldRejectRequest() {
+        // Given
+        final WorkloadBulkhead bulkhead = new WorkloadBulkhead(WorkloadType.UPLOAD, new BulkheadProperties.Workload(1, 0, 1000L, 1));
+        bulkhead.acquire();
+
+        // Then When
+        assertThatExceptionOfType(TaskRejectedException.class).isThrownBy(bulkhead::acquire);
+        assertThat(bulkhead.getRejectedCount()).isEqualTo(1);
+        assertThat(bulkhead.getQueuedCount()).isZero();
+    }
+
+    @Test
+    public void acquire_whenFullAndTimeoutElapses_shouldRejectRequest() {
+        // Given
+        final WorkloadBulkhead bulkhead = new WorkloadBulkhead(WorkloadType.UPLOAD, new BulkheadProperties.Workload(1, 1, 10L, 1));
+        bulkhead.acquire();
+
+        // Then When
+        assertThatExceptionOfType(TaskRejectedException.class).isThrownBy(bulkhead::acquire);
+        assertThat(bulkhead.getRejectedCount()).isEqualTo(1);
+        assertThat(bulkhead.getQueuedCount()).isZero();
+    }
+
+    @Test
+    public void acquire_whenFullAndSlotReleased_shouldAdmitQueuedRequest() throws Exception {
+        // Given
+        final WorkloadBulkhead bulkhead = new WorkloadBulkhead(WorkloadType.METADATA, new BulkheadProperties.Workload(1, 1, 10000L, 1));
+        bulkhead.acquire();
+        final CompletableFuture<Void> queued = CompletableFuture.runAsync(bulkhead::acquire);
+        while (bulkhead.getQueuedCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        // When
+        bulkhead.release();
+
+        // Then
+        queued.get(5, TimeUnit.SECONDS);
+        assertThat(bulkhead.getActiveCount()).isEqualTo(1);
+        assertThat(bulkhead.getQueuedCount()).isZero();
+        assertThat(bulkhead.getRejectedCount()).isZero();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.repository.AsyncPackageRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static io.barracks.componentservice.utils.PackageUtils.getPackage;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncPackageManagerTest {
+    @Mock
+    private AsyncPackageRepository packageRepository;
+
+    @InjectMocks
+    private AsyncPackageManager packageManager;
+
+    @Test
+    public void createPackage_shouldCallRepository_andReturnResult() {
+        // Given
+        final Package aPackage = getPackage();
+        doReturn(CompletableFuture.completedFuture(aPackage)).when(packageRepository).createPackage(aPackage);
+
+        // When
+        final Package result = packageManager.createPackage(aPackage).join();
+
+        // Then
+        verify(packageRepository).createPackage(aPackage);
+        assertThat(result).isEqualTo(aPackage);
+    }
+
+    @Test
+    public void getPackages_shouldCallRepository_andReturnResult() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final Page<Package> expected = new PageImpl<>(Arrays.asList(getPackage(), getPackage()), pageable, 2);
+        doReturn(CompletableFuture.completedFuture(expected)).when(packageRepository).getPackage(userId, pageable);
+
+        // When
+        final Page<Package> result = packageManager.getPackages(userId, pageable).join();
+
+        // Then
+        verify(packageRepository).getPackage(userId, pageable);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void getPackage_whenPackageExists_shouldReturnPackage() {
+        // Given
+        final Package expected = getPackage();
+        doReturn(CompletableFuture.completedFuture(Optional.of(expected))).when(packageRepository).getPackage(expected.getUserId(), expected.getReference());
+
+        // When
+        final Package result = packageManager.getPackage(expected.getUserId(), expected.getReference()).join();
+
+        // Then
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void getPackage_whenPackageNotPresent_shouldFailWithException() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        doReturn(CompletableFuture.completedFuture(Optional.empty())).when(packageRepository).getPackage(userId, reference);
+
+        // When
+        final CompletableFuture<Package> result = packageManager.getPackage(userId, reference);
+
+        // Then
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(PackageNotFoundException.class);
+    }
+}
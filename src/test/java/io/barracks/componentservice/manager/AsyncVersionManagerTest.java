@@ -0,0 +1,274 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.manager.exception.VersionCreationFailedException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.AsyncPackageRepository;
+import io.barracks.componentservice.repository.AsyncVersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncVersionManagerTest {
+    @Mock
+    private AsyncPackageRepository packageRepository;
+    @Mock
+    private AsyncVersionRepository versionRepository;
+    @Mock
+    private TieringManager tieringManager;
+    @Mock
+    private BlobReclaimer blobReclaimer;
+    @Mock
+    private StorageUsageManager storageUsageManager;
+    @Mock
+    private VersionMetadataValidator versionMetadataValidator;
+    @InjectMocks
+    private AsyncVersionManager versionManager;
+
+    @Test
+    public void createVersion_shouldCallRepositoryWithCompleteVersion_andReturnResult() {
+        // Given
+        final InputStream inputStream = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        final Version toCreate = VersionUtils.getVersion();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(CompletableFuture.completedFuture(Optional.of(PackageUtils.getPackage()))).when(packageRepository).getPackage(toCreate.getUserId(), toCreate.getPackageRef());
+        doReturn(CompletableFuture.completedFuture(expected)).when(versionRepository).createVersion(toCreate, inputStream);
+
+        // When
+        final Version result = versionManager.createVersion(toCreate, inputStream).join();
+
+        // Then
+        verify(packageRepository).getPackage(toCreate.getUserId(), toCreate.getPackageRef());
+        verify(versionRepository).createVersion(toCreate, inputStream);
+        verify(storageUsageManager).recordCreation(expected);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void createVersion_whenPackageDoesNotExist_shouldFailWithException() {
+        // Given
+        final Version toCreate = VersionUtils.getVersion();
+        final InputStream inputStream = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        doReturn(CompletableFuture.completedFuture(Optional.empty())).when(packageRepository).getPackage(toCreate.getUserId(), toCreate.getPackageRef());
+
+        // When
+        final CompletableFuture<Version> result = versionManager.createVersion(toCreate, inputStream);
+
+        // Then
+        verifyZeroInteractions(versionRepository);
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(VersionCreationFailedException.class);
+    }
+
+    @Test
+    public void createVersion_whenStoredVersionExceedsQuota_shouldDeleteItAndFailWithException() {
+        // Given
+        final InputStream inputStream = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        final Version toCreate = VersionUtils.getVersion();
+        final Version created = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(created.getLength()).build();
+        doReturn(CompletableFuture.completedFuture(Optional.of(PackageUtils.getPackage()))).when(packageRepository).getPackage(toCreate.getUserId(), toCreate.getPackageRef());
+        doReturn(CompletableFuture.completedFuture(created)).when(versionRepository).createVersion(toCreate, inputStream);
+        doThrow(new StorageQuotaExceededException(created.getUserId(), created.getPackageRef(), "at most 10 bytes are allowed"))
+                .when(storageUsageManager).checkStoredQuota(created);
+        doReturn(CompletableFuture.completedFuture(Optional.of(blob))).when(versionRepository)
+                .getBlob(created.getUserId(), created.getPackageRef(), created.getId());
+        doReturn(CompletableFuture.completedFuture(Collections.singletonList(blob))).when(versionRepository)
+                .deleteVersion(created.getUserId(), created.getPackageRef(), created.getId());
+
+        // When
+        final CompletableFuture<Version> result = versionManager.createVersion(toCreate, inputStream);
+
+        // Then
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(StorageQuotaExceededException.class);
+        verify(blobReclaimer).queue(blob);
+        verify(storageUsageManager, never()).recordCreation(created);
+    }
+
+    @Test
+    public void copyVersion_shouldCheckQuotaWithSourceLength_andReturnCopy() {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(UUID.randomUUID().toString()).build();
+        final Version expected = source.toBuilder().packageRef(copy.getPackageRef()).build();
+        doReturn(CompletableFuture.completedFuture(Optional.of(source))).when(versionRepository).getVersion(source.getUserId(), source.getPackageRef(), source.getId());
+        doReturn(CompletableFuture.completedFuture(Optional.of(PackageUtils.getPackage()))).when(packageRepository).getPackage(copy.getUserId(), copy.getPackageRef());
+        doReturn(CompletableFuture.completedFuture(Optional.of(expected))).when(versionRepository).copyVersion(source.getPackageRef(), source.getId(), copy);
+
+        // When
+        final Version result = versionManager.copyVersion(source.getPackageRef(), source.getId(), copy).join();
+
+        // Then
+        verify(storageUsageManager).checkQuota(copy.getUserId(), copy.getPackageRef(), source.getLength());
+        verify(storageUsageManager).recordCreation(expected);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void copyVersion_whenQuotaReached_shouldFailWithExceptionBeforeCopying() {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(UUID.randomUUID().toString()).build();
+        doReturn(CompletableFuture.completedFuture(Optional.of(source))).when(versionRepository).getVersion(source.getUserId(), source.getPackageRef(), source.getId());
+        doThrow(new StorageQuotaExceededException(copy.getUserId(), copy.getPackageRef(), "at most 10 bytes are allowed"))
+                .when(storageUsageManager).checkQuota(copy.getUserId(), copy.getPackageRef(), source.getLength());
+
+        // When
+        final CompletableFuture<Version> result = versionManager.copyVersion(source.getPackageRef(), source.getId(), copy);
+
+        // Then
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(StorageQuotaExceededException.class);
+        verify(versionRepository, never()).copyVersion(source.getPackageRef(), source.getId(), copy);
+    }
+
+    @Test
+    public void deleteVersion_shouldQueueBlobBeforeRemovingDocument() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(3L).build();
+        doReturn(CompletableFuture.completedFuture(Optional.of(blob))).when(versionRepository)
+                .getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(CompletableFuture.completedFuture(Collections.singletonList(blob))).when(versionRepository)
+                .deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // When
+        versionManager.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId()).join();
+
+        // Then
+        final InOrder inOrder = inOrder(blobReclaimer, versionRepository);
+        inOrder.verify(blobReclaimer).queue(blob);
+        inOrder.verify(versionRepository).deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+        verify(blobReclaimer, times(1)).queue(any(BlobReference.class));
+        verify(storageUsageManager).recordDeletion(version.getUserId(), version.getPackageRef(), 3L);
+    }
+
+    @Test
+    public void updateVersion_whenVersionWasModified_shouldFailWithException() {
+        // Given
+        final Version changes = VersionUtils.getVersion();
+        doReturn(CompletableFuture.completedFuture(Optional.empty())).when(versionRepository).updateVersion(changes, 2L);
+        doReturn(CompletableFuture.completedFuture(Optional.of(changes.toBuilder().revision(3L).build()))).when(versionRepository)
+                .getVersion(changes.getUserId(), changes.getPackageRef(), changes.getId());
+
+        // When
+        final CompletableFuture<Version> result = versionManager.updateVersion(changes, 2L);
+
+        // Then
+        verify(versionMetadataValidator).validate(changes.getMetadata());
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(VersionModifiedException.class);
+    }
+
+    @Test
+    public void getVersion_shouldCallRepository_andReturnVersion() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(CompletableFuture.completedFuture(Optional.of(expected))).when(versionRepository).getVersion(userId, reference, versionId);
+
+        // When
+        final Version result = versionManager.getVersion(userId, reference, versionId).join();
+
+        // Then
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void getVersion_whenVersionNotPresent_shouldFailWithException() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        doReturn(CompletableFuture.completedFuture(Optional.empty())).when(versionRepository).getVersion(userId, reference, versionId);
+
+        // When
+        final CompletableFuture<Version> result = versionManager.getVersion(userId, reference, versionId);
+
+        // Then
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(VersionNotFoundException.class);
+    }
+
+    @Test
+    public void getVersionFile_shouldRecordAccess_andReturnVersion() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(CompletableFuture.completedFuture(Optional.of(expected))).when(versionRepository).getVersion(userId, reference, versionId);
+
+        // When
+        final Version result = versionManager.getVersionFile(userId, reference, versionId).join();
+
+        // Then
+        verify(tieringManager).recordAccess(expected);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void getVersions_shouldCallRepository_andReturnResult() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final Page<Version> expected = new PageImpl<>(Arrays.asList(VersionUtils.getVersion(), VersionUtils.getVersion()), pageable, 2);
+        doReturn(CompletableFuture.completedFuture(expected)).when(versionRepository).getVersions(userId, reference, pageable);
+
+        // When
+        final Page<Version> result = versionManager.getVersions(userId, reference, pageable).join();
+
+        // Then
+        verify(versionRepository).getVersions(userId, reference, pageable);
+        assertThat(result).isEqualTo(expected);
+    }
+}
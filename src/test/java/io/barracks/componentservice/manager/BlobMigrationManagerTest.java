@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.BlobStoreProperties;
+import io.barracks.componentservice.manager.exception.BlobMigrationInProgressException;
+import io.barracks.componentservice.manager.exception.BlobMigrationNotFoundException;
+import io.barracks.componentservice.manager.exception.InvalidBlobMigrationException;
+import io.barracks.componentservice.model.BlobMigration;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.StoredBlob;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BlobMigrationManagerTest {
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private BlobStore source;
+    @Mock
+    private BlobStore target;
+    @Mock
+    private BlobReclaimer blobReclaimer;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private BlobMigrationManager blobMigrationManager;
+
+    @Before
+    public void setUp() {
+        doReturn("source").when(source).getName();
+        doReturn("target").when(target).getName();
+        final BlobStoreProperties blobStoreProperties = new BlobStoreProperties();
+        blobMigrationManager = new BlobMigrationManager(
+                versionRepository,
+                new BlobStores("source", source, target),
+                new BlobMover(versionRepository, blobReclaimer, blobStoreProperties),
+                taskScheduler,
+                blobStoreProperties
+        );
+    }
+
+    @Test
+    public void startMigration_withUnknownStore_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(InvalidBlobMigrationException.class).isThrownBy(() -> blobMigrationManager.startMigration("source", "unknown"));
+        verifyZeroInteractions(taskScheduler);
+    }
+
+    @Test
+    public void startMigration_withSameStores_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(InvalidBlobMigrationException.class).isThrownBy(() -> blobMigrationManager.startMigration("source", "source"));
+        verifyZeroInteractions(taskScheduler);
+    }
+
+    @Test
+    public void startMigration_whenMigrationRunning_shouldThrowException() {
+        // Given
+        blobMigrationManager.startMigration("source", "target");
+
+        // Then When
+        assertThatExceptionOfType(BlobMigrationInProgressException.class).isThrownBy(() -> blobMigrationManager.startMigration("source", "target"));
+    }
+
+    @Test
+    public void getMigration_whenNoMigrationStarted_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(BlobMigrationNotFoundException.class).isThrownBy(() -> blobMigrationManager.getMigration());
+    }
+
+    @Test
+    public void startMigration_shouldMoveVersionsToCopy_andQueueOriginalForGracePeriod() throws Exception {
+        // Given
+        final BlobReference blob = getBlobReference("900150983cd24fb0d6963f7d28e17f72");
+        final StoredBlob copy = getCopy("900150983cd24fb0d6963f7d28e17f72");
+        final InputStream content = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        doReturn(Collections.singletonList(blob)).when(versionRepository).getBlobs("source", null, 100);
+        doReturn(content).when(source).open(blob.getId(), 0);
+        doReturn(copy).when(target).store(content);
+        doReturn(true).when(versionRepository).moveBlob(blob, copy);
+
+        // When
+        final BlobMigration started = blobMigrationManager.startMigration("source", "target");
+        runLastScheduledTask(1);
+        final BlobMigration completed = blobMigrationManager.getMigration();
+
+        // Then
+        assertThat(started.getState()).isEqualTo(BlobMigration.State.RUNNING);
+        assertThat(completed.getState()).isEqualTo(BlobMigration.State.COMPLETED);
+        assertThat(completed.getMigrated()).isEqualTo(1);
+        assertThat(completed.getFailed()).isZero();
+        verify(versionRepository).moveBlob(blob, copy);
+        verify(blobReclaimer).queue(blob, new BlobStoreProperties().getMigration().getGrace());
+        verify(source, never()).delete(any());
+    }
+
+    @Test
+    public void startMigration_whenCopyDoesNotMatchMd5_shouldDiscardCopyAndKeepVersion() throws Exception {
+        // Given
+        final BlobReference blob = getBlobReference("900150983cd24fb0d6963f7d28e17f72");
+        final StoredBlob copy = getCopy(UUID.randomUUID().toString());
+        final InputStream content = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        doReturn(Collections.singletonList(blob)).when(versionRepository).getBlobs("source", null, 100);
+        doReturn(content).when(source).open(blob.getId(), 0);
+        doReturn(copy).when(target).store(content);
+        doReturn(0L).when(versionRepository).countBlobReferences("target", copy.getId());
+
+        // When
+        blobMigrationManager.startMigration("source", "target");
+        runLastScheduledTask(1);
+        final BlobMigration result = blobMigrationManager.getMigration();
+
+        // Then
+        assertThat(result.getState()).isEqualTo(BlobMigration.State.COMPLETED);
+        assertThat(result.getMigrated()).isZero();
+        assertThat(result.getFailed()).isEqualTo(1);
+        verify(versionRepository, never()).moveBlob(any(), any());
+        verify(target).delete(copy.getId());
+        verify(source, never()).delete(any());
+        verifyZeroInteractions(blobReclaimer);
+    }
+
+    private void runLastScheduledTask(int expected) {
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler, times(expected)).schedule(captor.capture(), any(Date.class));
+        final List<Runnable> tasks = captor.getAllValues();
+        tasks.get(tasks.size() - 1).run();
+    }
+
+    private BlobReference getBlobReference(String md5) {
+        return BlobReference.builder()
+                .documentId(UUID.randomUUID().toString())
+                .store("source")
+                .id(UUID.randomUUID().toString())
+                .md5(md5)
+                .build();
+    }
+
+    private StoredBlob getCopy(String md5) {
+        return StoredBlob.builder()
+                .store("target")
+                .id(UUID.randomUUID().toString())
+                .length(3)
+                .md5(md5)
+                .created(true)
+                .build();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.ReclamationProperties;
+import io.barracks.componentservice.model.BlobReclamation;
+import io.barracks.componentservice.repository.BlobReclamationRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BlobReclaimerTest {
+    @Mock
+    private BlobReclamationRepository blobReclamationRepository;
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private TaskScheduler taskScheduler;
+    @Mock
+    private BlobStore store;
+
+    private ReclamationProperties reclamationProperties;
+    private BlobReclaimer blobReclaimer;
+
+    @Before
+    public void setUp() {
+        doReturn("store").when(store).getName();
+        reclamationProperties = new ReclamationProperties();
+        reclamationProperties.setMaxBytes(1024L * 1024L);
+        blobReclaimer = new BlobReclaimer(blobReclamationRepository, versionRepository, new BlobStores("store", store), taskScheduler, reclamationProperties);
+    }
+
+    @Test
+    public void afterPropertiesSet_whenDisabled_shouldNotSchedulePasses() {
+        // Given
+        reclamationProperties.setEnabled(false);
+
+        // When
+        blobReclaimer.afterPropertiesSet();
+
+        // Then
+        verifyZeroInteractions(taskScheduler);
+    }
+
+    @Test
+    public void queue_shouldQueueBlobWithItsLength() {
+        // Given
+        final BlobReference blob = BlobReference.builder().store("store").id(UUID.randomUUID().toString()).length(42L).build();
+
+        // When
+        blobReclaimer.queue(blob);
+
+        // Then
+        verify(blobReclamationRepository).queue(eq("store"), eq(blob.getId()), eq(42L), any(Date.class));
+    }
+
+    @Test
+    public void queue_withLongerGrace_shouldPostponeReclamationByDifference() {
+        // Given
+        final BlobReference blob = BlobReference.builder().store("store").id(UUID.randomUUID().toString()).length(42L).build();
+        final long before = System.currentTimeMillis();
+
+        // When
+        blobReclaimer.queue(blob, reclamationProperties.getGrace() + 60000L);
+
+        // Then
+        final ArgumentCaptor<Date> captor = ArgumentCaptor.forClass(Date.class);
+        verify(blobReclamationRepository).queue(eq("store"), eq(blob.getId()), eq(42L), captor.capture());
+        assertThat(captor.getValue().getTime()).isBetween(before + 60000L, System.currentTimeMillis() + 60000L);
+    }
+
+    @Test
+    public void reclaim_shouldDeleteUnreferencedBlobsUntilQueueIsEmpty() {
+        // Given
+        final BlobReclamation first = getReclamation(1000L);
+        final BlobReclamation second = getReclamation(1000L);
+        when(blobReclamationRepository.claim(any(Date.class), any(Date.class), any(Date.class)))
+                .thenReturn(Optional.of(first), Optional.of(second), Optional.empty());
+        doReturn(true).when(store).deletePart(anyString(), anyLong());
+
+        // When
+        blobReclaimer.reclaim();
+
+        // Then
+        verify(store).deletePart(first.getBlobId(), 1024L * 1024L);
+        verify(blobReclamationRepository).delete(first.getId());
+        verify(blobReclamationRepository).delete(second.getId());
+        assertThat(blobReclaimer.getReclaimedBlobCount()).isEqualTo(2);
+        assertThat(blobReclaimer.getReclaimedBytes()).isEqualTo(2000L);
+    }
+
+    @Test
+    public void reclaim_whenBlobStillReferenced_shouldOnlyRemoveItFromQueue() {
+        // Given
+        final BlobReclamation reclamation = getReclamation(1000L);
+        when(blobReclamationRepository.claim(any(Date.class), any(Date.class), any(Date.class)))
+                .thenReturn(Optional.of(reclamation), Optional.empty());
+        doReturn(1L).when(versionRepository).countBlobReferences("store", reclamation.getBlobId());
+
+        // When
+        blobReclaimer.reclaim();
+
+        // Then
+        verify(store, never()).deletePart(anyString(), anyLong());
+        verify(blobReclamationRepository).delete(reclamation.getId());
+        assertThat(blobReclaimer.getReclaimedBlobCount()).isZero();
+    }
+
+    @Test
+    public void reclaim_whenBlobLargerThanBudget_shouldDeletePartAndStopPass() {
+        // Given
+        final BlobReclamation reclamation = getReclamation(10L * 1024L * 1024L);
+        doReturn(Optional.of(reclamation))
+                .when(blobReclamationRepository).claim(any(Date.class), any(Date.class), any(Date.class));
+        doReturn(false).when(store).deletePart(reclamation.getBlobId(), 1024L * 1024L);
+
+        // When
+        blobReclaimer.reclaim();
+
+        // Then
+        verify(blobReclamationRepository, times(1)).claim(any(Date.class), any(Date.class), any(Date.class));
+        verify(blobReclamationRepository).release(reclamation.getId(), 1024L * 1024L);
+        verify(blobReclamationRepository, never()).delete(anyString());
+        assertThat(blobReclaimer.getReclaimedBytes()).isEqualTo(1024L * 1024L);
+    }
+
+    @Test
+    public void reclaim_whenDeletionFails_shouldLeaveBlobClaimed() {
+        // Given
+        final BlobReclamation reclamation = getReclamation(1000L);
+        when(blobReclamationRepository.claim(any(Date.class), any(Date.class), any(Date.class)))
+                .thenReturn(Optional.of(reclamation), Optional.empty());
+        doThrow(IllegalStateException.class).when(store).deletePart(anyString(), anyLong());
+
+        // When
+        blobReclaimer.reclaim();
+
+        // Then
+        verify(blobReclamationRepository, never()).delete(anyString());
+        verify(blobReclamationRepository, never()).release(anyString(), anyLong());
+        assertThat(blobReclaimer.getFailedCount()).isEqualTo(1);
+    }
+
+    private BlobReclamation getReclamation(long length) {
+        return BlobReclamation.builder()
+                .id(UUID.randomUUID().toString())
+                .store("store")
+                .blobId(UUID.randomUUID().toString())
+                .length(length)
+                .queuedAt(new Date())
+                .build();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.DownloadProperties;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.DownloadCount;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DownloadCountersTest {
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private TieringManager tieringManager;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private DownloadProperties downloadProperties;
+    private DownloadCounters downloadCounters;
+
+    @Before
+    public void setUp() {
+        downloadProperties = new DownloadProperties();
+        downloadCounters = new DownloadCounters(versionRepository, tieringManager, taskScheduler, downloadProperties);
+        doAnswer(invocation -> ((Map<?, ?>) invocation.getArguments()[0]).keySet())
+                .when(versionRepository).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), anyDouble(), any(Date.class));
+    }
+
+    @Test
+    public void recordDownload_whenDisabled_shouldNotCountDownload() {
+        // Given
+        downloadProperties.setEnabled(false);
+        downloadCounters.afterPropertiesSet();
+
+        // When
+        downloadCounters.recordDownload(VersionUtils.getVersion(), true);
+        downloadCounters.flush();
+
+        // Then
+        verifyZeroInteractions(versionRepository, taskScheduler);
+        assertThat(downloadCounters.getCompletedCount()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flush_shouldWriteDownloadsOfAllVersionsAtOnce() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final Version other = VersionUtils.getVersion();
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.recordDownload(version, false);
+        downloadCounters.recordDownload(other, false);
+
+        // When
+        downloadCounters.flush();
+
+        // Then
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(versionRepository).incrementDownloadCounts(captor.capture(), anyDouble(), any(Date.class));
+        final Map<VersionKey, DownloadCount> increments = captor.getValue();
+        assertThat(increments).containsOnlyKeys(VersionKey.of(version), VersionKey.of(other));
+        assertThat(increments.get(VersionKey.of(version))).isEqualTo(DownloadCount.builder().completed(2L).aborted(1L).build());
+        assertThat(increments.get(VersionKey.of(other))).isEqualTo(DownloadCount.builder().aborted(1L).build());
+        assertThat(downloadCounters.getCompletedCount()).isEqualTo(2L);
+        assertThat(downloadCounters.getAbortedCount()).isEqualTo(2L);
+        assertThat(downloadCounters.getFlushCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void flush_shouldAddDownloadsToAccessScoresWithCurrentWeight() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        downloadCounters.recordDownload(version, true);
+        doReturn(8.0).when(tieringManager).getAccessWeight(anyLong());
+
+        // When
+        downloadCounters.flush();
+
+        // Then
+        verify(versionRepository).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), eq(8.0), any(Date.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flush_shouldOnlyWriteDownloadsCountedSinceLastFlush() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.flush();
+        downloadCounters.recordDownload(version, true);
+
+        // When
+        downloadCounters.flush();
+
+        // Then
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(versionRepository, times(2)).incrementDownloadCounts(captor.capture(), anyDouble(), any(Date.class));
+        final Map<VersionKey, DownloadCount> increments = captor.getAllValues().get(1);
+        assertThat(increments).containsOnlyKeys(VersionKey.of(version));
+        assertThat(increments.get(VersionKey.of(version))).isEqualTo(DownloadCount.builder().completed(1L).build());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flush_whenWriteFails_shouldWriteDownloadsOnNextFlush() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        downloadCounters.recordDownload(version, true);
+        doThrow(IllegalStateException.class).doAnswer(invocation -> ((Map<?, ?>) invocation.getArguments()[0]).keySet())
+                .when(versionRepository).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), anyDouble(), any(Date.class));
+        downloadCounters.flush();
+        downloadCounters.recordDownload(version, false);
+
+        // When
+        downloadCounters.flush();
+
+        // Then
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(versionRepository, times(2)).incrementDownloadCounts(captor.capture(), anyDouble(), any(Date.class));
+        final Map<VersionKey, DownloadCount> increments = captor.getAllValues().get(1);
+        assertThat(increments.get(VersionKey.of(version))).isEqualTo(DownloadCount.builder().completed(1L).aborted(1L).build());
+        assertThat(downloadCounters.getFailedCount()).isEqualTo(1L);
+        assertThat(downloadCounters.getFlushCount()).isEqualTo(1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flush_whenSomeVersionsNotWritten_shouldOnlyWriteThemAgain() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final Version other = VersionUtils.getVersion();
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.recordDownload(other, true);
+        doReturn(Collections.singleton(VersionKey.of(version)))
+                .when(versionRepository).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), anyDouble(), any(Date.class));
+        downloadCounters.flush();
+        doAnswer(invocation -> ((Map<?, ?>) invocation.getArguments()[0]).keySet())
+                .when(versionRepository).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), anyDouble(), any(Date.class));
+
+        // When
+        downloadCounters.flush();
+
+        // Then
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(versionRepository, times(2)).incrementDownloadCounts(captor.capture(), anyDouble(), any(Date.class));
+        final Map<VersionKey, DownloadCount> increments = captor.getAllValues().get(1);
+        assertThat(increments).containsOnlyKeys(VersionKey.of(other));
+        assertThat(increments.get(VersionKey.of(other))).isEqualTo(DownloadCount.builder().completed(1L).build());
+        assertThat(downloadCounters.getFailedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void flush_whenVersionNoLongerDownloaded_shouldDropItsCounters() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.flush();
+
+        // When
+        downloadCounters.flush();
+        downloadCounters.flush();
+
+        // Then
+        verify(versionRepository, times(1)).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), anyDouble(), any(Date.class));
+        assertThat(downloadCounters.getPendingVersionCount()).isZero();
+    }
+
+    @Test
+    public void destroy_shouldCancelFlushesAndWritePendingDownloads() throws Exception {
+        // Given
+        final ScheduledFuture<?> flushTask = mock(ScheduledFuture.class);
+        doReturn(flushTask).when(taskScheduler).scheduleWithFixedDelay(any(Runnable.class), eq(downloadProperties.getFlushInterval()));
+        downloadCounters.afterPropertiesSet();
+        downloadCounters.recordDownload(VersionUtils.getVersion(), true);
+
+        // When
+        downloadCounters.destroy();
+
+        // Then
+        verify(flushTask).cancel(false);
+        verify(versionRepository).incrementDownloadCounts(anyMapOf(VersionKey.class, DownloadCount.class), anyDouble(), any(Date.class));
+    }
+
+    @Test
+    public void getDownloadCount_shouldAddDownloadsNotWrittenYet() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final DownloadCount written = DownloadCount.builder()
+                .userId(version.getUserId())
+                .packageRef(version.getPackageRef())
+                .versionId(version.getId())
+                .completed(10L)
+                .aborted(3L)
+                .build();
+        doReturn(Optional.of(written)).when(versionRepository).getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId());
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.flush();
+        downloadCounters.recordDownload(version, true);
+        downloadCounters.recordDownload(version, false);
+
+        // When
+        final DownloadCount result = downloadCounters.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).isEqualTo(written.toBuilder().completed(11L).aborted(4L).build());
+    }
+
+    @Test
+    public void getDownloadCount_whenVersionDoesNotExist_shouldThrowException() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        doReturn(Optional.empty()).when(versionRepository).getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then When
+        assertThatExceptionOfType(VersionNotFoundException.class).isThrownBy(() ->
+                downloadCounters.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId())
+        );
+    }
+}
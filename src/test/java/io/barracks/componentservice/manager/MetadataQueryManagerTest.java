@@ -0,0 +1,262 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.MetadataQueryProperties;
+import io.barracks.componentservice.manager.exception.InvalidMetadataIndexException;
+import io.barracks.componentservice.manager.exception.InvalidMetadataQueryException;
+import io.barracks.componentservice.manager.exception.MetadataIndexNotFoundException;
+import io.barracks.componentservice.manager.exception.UnindexedMetadataQueryException;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.MetadataIndex;
+import io.barracks.componentservice.model.MetadataOperator;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.MetadataIndexRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MetadataQueryManagerTest {
+    @Mock
+    private MetadataIndexRepository metadataIndexRepository;
+    @Mock
+    private VersionRepository versionRepository;
+    private MetadataQueryProperties metadataQueryProperties;
+    private MetadataQueryManager metadataQueryManager;
+
+    private final String userId = UUID.randomUUID().toString();
+    private final String packageRef = UUID.randomUUID().toString();
+    private final Pageable pageable = new PageRequest(0, 10);
+
+    @Before
+    public void setUp() {
+        metadataQueryProperties = new MetadataQueryProperties();
+        metadataQueryProperties.setMaxIndexes(2);
+        metadataQueryProperties.setMaxUnindexedVersions(100L);
+        metadataQueryManager = new MetadataQueryManager(metadataIndexRepository, versionRepository, metadataQueryProperties);
+    }
+
+    @Test
+    public void queryVersions_withIndexedKey_shouldUseTheIndexOfTheEqualityCondition() {
+        // Given
+        final List<MetadataCondition> conditions = Arrays.asList(
+                condition("revision", MetadataOperator.GTE, 3),
+                condition("channel", MetadataOperator.EQ, "beta")
+        );
+        final Page<Version> expected = new PageImpl<>(Collections.singletonList(VersionUtils.getVersion()));
+        doReturn(Arrays.asList(index("revision"), index("channel"))).when(metadataIndexRepository).findByUserIdOrderByKey(userId);
+        doReturn(expected).when(versionRepository).getVersions(userId, packageRef, conditions, "channel", pageable);
+
+        // When
+        final Page<Version> result = metadataQueryManager.queryVersions(userId, packageRef, conditions, pageable);
+
+        // Then
+        verify(versionRepository, never()).countVersions(anyString(), anyString(), anyLong());
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void queryVersions_withoutIndexedKeyOnSmallPackage_shouldQueryWithoutIndex() {
+        // Given
+        final List<MetadataCondition> conditions = Collections.singletonList(condition("channel", MetadataOperator.IN, "beta", "stable"));
+        final Page<Version> expected = new PageImpl<>(Collections.emptyList());
+        doReturn(Collections.emptyList()).when(metadataIndexRepository).findByUserIdOrderByKey(userId);
+        doReturn(100L).when(versionRepository).countVersions(userId, packageRef, 101L);
+        doReturn(expected).when(versionRepository).getVersions(userId, packageRef, conditions, null, pageable);
+
+        // When
+        final Page<Version> result = metadataQueryManager.queryVersions(userId, packageRef, conditions, pageable);
+
+        // Then
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void queryVersions_withoutIndexedKeyOnLargePackage_shouldThrowException() {
+        // Given
+        final List<MetadataCondition> conditions = Collections.singletonList(condition("channel", MetadataOperator.EQ, "beta"));
+        doReturn(Collections.emptyList()).when(metadataIndexRepository).findByUserIdOrderByKey(userId);
+        doReturn(101L).when(versionRepository).countVersions(userId, packageRef, 101L);
+
+        // Then When
+        assertThatExceptionOfType(UnindexedMetadataQueryException.class)
+                .isThrownBy(() -> metadataQueryManager.queryVersions(userId, packageRef, conditions, pageable));
+        verify(versionRepository, never()).getVersions(anyString(), anyString(), anyListOf(MetadataCondition.class), anyString(), any(Pageable.class));
+    }
+
+    @Test
+    public void queryVersions_withInvalidConditions_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(InvalidMetadataQueryException.class)
+                .isThrownBy(() -> metadataQueryManager.queryVersions(userId, packageRef, Collections.singletonList(condition("a.b", MetadataOperator.EQ, 1)), pageable));
+        assertThatExceptionOfType(InvalidMetadataQueryException.class)
+                .isThrownBy(() -> metadataQueryManager.queryVersions(userId, packageRef, Collections.singletonList(condition("a", MetadataOperator.GT, 1, 2)), pageable));
+        assertThatExceptionOfType(InvalidMetadataQueryException.class)
+                .isThrownBy(() -> metadataQueryManager.queryVersions(userId, packageRef, Collections.singletonList(condition("a", MetadataOperator.EQ, Collections.singletonMap("$ne", 1))), pageable));
+        assertThatExceptionOfType(InvalidMetadataQueryException.class)
+                .isThrownBy(() -> metadataQueryManager.queryVersions(userId, packageRef, Arrays.asList(condition("a", MetadataOperator.EQ, 1), condition("a", MetadataOperator.LT, 2)), pageable));
+        verifyZeroInteractions(versionRepository);
+    }
+
+    @Test
+    public void createIndex_whenKeyIsNew_shouldCreateTheIndexAndSaveIt() {
+        // Given
+        doReturn(Optional.empty()).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+        doReturn(Collections.singleton("revision")).when(versionRepository).getMetadataIndexKeys();
+        doAnswer(invocation -> invocation.getArguments()[0]).when(metadataIndexRepository).insert(any(MetadataIndex.class));
+
+        // When
+        final MetadataIndex result = metadataQueryManager.createIndex(userId, "channel");
+
+        // Then
+        verify(versionRepository).ensureMetadataIndex("channel");
+        assertThat(result.getUserId()).isEqualTo(userId);
+        assertThat(result.getKey()).isEqualTo("channel");
+        assertThat(result.getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    public void createIndex_whenIndexCannotBeCreated_shouldRemoveDeclaration() {
+        // Given
+        final RuntimeException exception = new RuntimeException("index build failed");
+        doReturn(Optional.empty()).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+        doReturn(Collections.emptySet()).when(versionRepository).getMetadataIndexKeys();
+        doAnswer(invocation -> invocation.getArguments()[0]).when(metadataIndexRepository).insert(any(MetadataIndex.class));
+        doThrow(exception).when(versionRepository).ensureMetadataIndex("channel");
+
+        // Then When
+        assertThatExceptionOfType(RuntimeException.class).isThrownBy(() -> metadataQueryManager.createIndex(userId, "channel")).isEqualTo(exception);
+        verify(metadataIndexRepository).delete(any(MetadataIndex.class));
+    }
+
+    @Test
+    public void createIndex_whenTooManyKeysAreIndexed_shouldThrowException() {
+        // Given
+        doReturn(Optional.empty()).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+        doReturn(new HashSet<>(Arrays.asList("revision", "hardware"))).when(versionRepository).getMetadataIndexKeys();
+
+        // Then When
+        assertThatExceptionOfType(InvalidMetadataIndexException.class).isThrownBy(() -> metadataQueryManager.createIndex(userId, "channel"));
+        verify(versionRepository, never()).ensureMetadataIndex(anyString());
+    }
+
+    @Test
+    public void deleteIndex_whenLastOwnerOfTheKey_shouldDropTheIndex() {
+        // Given
+        final MetadataIndex index = index("channel");
+        doReturn(Optional.of(index)).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+        doReturn(0L).when(metadataIndexRepository).countByKey("channel");
+
+        // When
+        metadataQueryManager.deleteIndex(userId, "channel");
+
+        // Then
+        verify(metadataIndexRepository).delete(index);
+        verify(versionRepository).dropMetadataIndex("channel");
+    }
+
+    @Test
+    public void deleteIndex_whenKeyDeclaredWhileDropping_shouldEnsureTheIndexAgain() {
+        // Given
+        final MetadataIndex index = index("channel");
+        doReturn(Optional.of(index)).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+        doReturn(0L).doReturn(1L).when(metadataIndexRepository).countByKey("channel");
+
+        // When
+        metadataQueryManager.deleteIndex(userId, "channel");
+
+        // Then
+        final InOrder inOrder = inOrder(versionRepository);
+        inOrder.verify(versionRepository).dropMetadataIndex("channel");
+        inOrder.verify(versionRepository).ensureMetadataIndex("channel");
+    }
+
+    @Test
+    public void deleteIndex_whenKeyUsedByOtherOwners_shouldKeepTheIndex() {
+        // Given
+        final MetadataIndex index = index("channel");
+        doReturn(Optional.of(index)).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+        doReturn(1L).when(metadataIndexRepository).countByKey("channel");
+
+        // When
+        metadataQueryManager.deleteIndex(userId, "channel");
+
+        // Then
+        verify(metadataIndexRepository).delete(index);
+        verify(versionRepository, never()).dropMetadataIndex(anyString());
+    }
+
+    @Test
+    public void deleteIndex_whenKeyNotIndexed_shouldThrowException() {
+        // Given
+        doReturn(Optional.empty()).when(metadataIndexRepository).findByUserIdAndKey(userId, "channel");
+
+        // Then When
+        assertThatExceptionOfType(MetadataIndexNotFoundException.class).isThrownBy(() -> metadataQueryManager.deleteIndex(userId, "channel"));
+    }
+
+    @Test
+    public void afterPropertiesSet_shouldEnsureIndexOfEveryDeclaredKey() {
+        // Given
+        doReturn(Arrays.asList(index("channel"), index("revision"), index("channel"))).when(metadataIndexRepository).findAll();
+
+        // When
+        metadataQueryManager.afterPropertiesSet();
+
+        // Then
+        verify(versionRepository).ensureMetadataIndex("channel");
+        verify(versionRepository).ensureMetadataIndex("revision");
+        verifyNoMoreInteractions(versionRepository);
+    }
+
+    private MetadataIndex index(String key) {
+        return MetadataIndex.builder().userId(userId).key(key).build();
+    }
+
+    private static MetadataCondition condition(String key, MetadataOperator operator, Object... values) {
+        return MetadataCondition.builder().key(key).operator(operator).values(Arrays.asList(values)).build();
+    }
+}
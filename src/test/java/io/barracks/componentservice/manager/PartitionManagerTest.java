@@ -0,0 +1,232 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.BlobStoreProperties;
+import io.barracks.componentservice.manager.exception.InvalidPartitionMoveException;
+import io.barracks.componentservice.manager.exception.PartitionMoveInProgressException;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.GridFsBlobStore;
+import io.barracks.componentservice.repository.blob.LegacyGridFsBlobStore;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartitionManagerTest {
+    private static final String LARGE = "large";
+    private static final String LARGE_STORE = GridFsBlobStore.NAME + ":" + LARGE;
+
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private MongoOperations mongoOperations;
+    @Mock
+    private BlobStore defaultStore;
+    @Mock
+    private BlobStore largeStore;
+    @Mock
+    private BlobStore legacyStore;
+    @Mock
+    private BlobMover blobMover;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private PartitionRouter partitionRouter;
+    private PartitionManager partitionManager;
+    private final String userId = UUID.randomUUID().toString();
+
+    @Before
+    public void setUp() {
+        doReturn(GridFsBlobStore.NAME).when(defaultStore).getName();
+        doReturn(LARGE_STORE).when(largeStore).getName();
+        doReturn(LegacyGridFsBlobStore.NAME).when(legacyStore).getName();
+        partitionRouter = new PartitionRouter(
+                Arrays.asList(getPartition(Partition.DEFAULT, GridFsBlobStore.NAME), getPartition(LARGE, LARGE_STORE)),
+                mongoOperations,
+                taskScheduler,
+                1000L
+        );
+        partitionManager = new PartitionManager(
+                partitionRouter,
+                versionRepository,
+                new BlobStores(GridFsBlobStore.NAME, defaultStore, largeStore, legacyStore),
+                blobMover,
+                taskScheduler,
+                new BlobStoreProperties()
+        );
+        doReturn(Collections.emptyList()).when(versionRepository).getOwnerBlobs(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void getRoute_whenOwnerNeverMoved_shouldReturnDefaultPartition() {
+        // When
+        final PartitionRoute result = partitionManager.getRoute(userId);
+
+        // Then
+        assertThat(result.getPartition()).isEqualTo(Partition.DEFAULT);
+        assertThat(result.isMoving()).isFalse();
+    }
+
+    @Test
+    public void moveOwner_withUnknownPartition_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(InvalidPartitionMoveException.class).isThrownBy(() -> partitionManager.moveOwner(userId, "unknown"));
+        verifyZeroInteractions(taskScheduler);
+    }
+
+    @Test
+    public void moveOwner_toCurrentPartition_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(InvalidPartitionMoveException.class).isThrownBy(() -> partitionManager.moveOwner(userId, Partition.DEFAULT));
+        verifyZeroInteractions(taskScheduler);
+    }
+
+    @Test
+    public void moveOwner_whenMoveRunning_shouldThrowException() {
+        // Given
+        partitionManager.moveOwner(userId, LARGE);
+
+        // Then When
+        assertThatExceptionOfType(PartitionMoveInProgressException.class).isThrownBy(() -> partitionManager.moveOwner(userId, LARGE));
+    }
+
+    @Test
+    public void moveOwner_shouldCopyVersions_thenRouteOwner_thenMoveBinariesAndDeletePreviousVersions() throws Exception {
+        // Given
+        final BlobReference blob = getBlobReference(GridFsBlobStore.NAME);
+        doReturn(Collections.singletonList(blob)).when(versionRepository).getOwnerBlobs(userId, LARGE, GridFsBlobStore.NAME, null, 100);
+        doReturn(true).when(blobMover).move(blob, defaultStore, largeStore);
+
+        // When
+        final PartitionRoute started = partitionManager.moveOwner(userId, LARGE);
+        runLastScheduledTask(1);
+        final PartitionRoute copied = partitionManager.getRoute(userId);
+        runLastScheduledTask(2);
+        final PartitionRoute completed = partitionManager.getRoute(userId);
+
+        // Then
+        assertThat(started.getPartition()).isEqualTo(Partition.DEFAULT);
+        assertThat(started.getNext()).isEqualTo(LARGE);
+        assertThat(partitionRouter.getReadPartitions(userId)).extracting(Partition::getName).containsExactly(LARGE);
+        assertThat(copied.getPartition()).isEqualTo(LARGE);
+        assertThat(copied.getPrevious()).isEqualTo(Partition.DEFAULT);
+        assertThat(completed.getPartition()).isEqualTo(LARGE);
+        assertThat(completed.isMoving()).isFalse();
+        verify(versionRepository, times(2)).copyVersions(userId, Partition.DEFAULT, LARGE);
+        verify(blobMover).move(blob, defaultStore, largeStore);
+        verify(versionRepository).getOwnerBlobs(userId, LARGE, LegacyGridFsBlobStore.NAME, null, 100);
+        verify(versionRepository).deleteVersions(userId, Partition.DEFAULT);
+    }
+
+    @Test
+    public void moveOwner_shouldWaitForInstancesToReloadRoute_beforeCopyingVersions() {
+        // Given
+        final long start = System.currentTimeMillis();
+
+        // When
+        partitionManager.moveOwner(userId, LARGE);
+
+        // Then
+        final ArgumentCaptor<Date> captor = ArgumentCaptor.forClass(Date.class);
+        verify(taskScheduler).schedule(any(Runnable.class), captor.capture());
+        assertThat(captor.getValue().getTime()).isGreaterThanOrEqualTo(start + 2 * partitionRouter.getRefreshInterval());
+        verify(versionRepository, never()).copyVersions(any(), any(), any());
+    }
+
+    @Test
+    public void moveOwner_whenBinaryCannotBeMoved_shouldKeepPreviousVersions_andResumeOnRetry() throws Exception {
+        // Given
+        final BlobReference blob = getBlobReference(GridFsBlobStore.NAME);
+        doReturn(Collections.singletonList(blob)).when(versionRepository).getOwnerBlobs(userId, LARGE, GridFsBlobStore.NAME, null, 100);
+        doThrow(new IOException("Unreadable")).doReturn(true).when(blobMover).move(blob, defaultStore, largeStore);
+
+        // When
+        partitionManager.moveOwner(userId, LARGE);
+        runLastScheduledTask(1);
+        runLastScheduledTask(2);
+        final PartitionRoute failed = partitionManager.getRoute(userId);
+        partitionManager.moveOwner(userId, LARGE);
+        runLastScheduledTask(3);
+        final PartitionRoute completed = partitionManager.getRoute(userId);
+
+        // Then
+        assertThat(failed.getPrevious()).isEqualTo(Partition.DEFAULT);
+        assertThat(completed.isMoving()).isFalse();
+        verify(versionRepository, times(1)).deleteVersions(userId, Partition.DEFAULT);
+    }
+
+    private void runLastScheduledTask(int expected) {
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler, times(expected)).schedule(captor.capture(), any(Date.class));
+        final List<Runnable> tasks = captor.getAllValues();
+        tasks.get(tasks.size() - 1).run();
+    }
+
+    private Partition getPartition(String name, String blobStore) {
+        return Partition.builder()
+                .name(name)
+                .databaseName("test")
+                .bucket(name)
+                .blobStore(blobStore)
+                .blobBucket(name + ".blobs")
+                .mongoOperations(mongoOperations)
+                .build();
+    }
+
+    private BlobReference getBlobReference(String store) {
+        return BlobReference.builder()
+                .partition(LARGE)
+                .documentId(UUID.randomUUID().toString())
+                .store(store)
+                .id(UUID.randomUUID().toString())
+                .md5("900150983cd24fb0d6963f7d28e17f72")
+                .build();
+    }
+}
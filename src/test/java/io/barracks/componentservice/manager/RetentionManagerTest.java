@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.RetentionProperties;
+import io.barracks.componentservice.manager.exception.InvalidRetentionPolicyException;
+import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.manager.exception.RetentionPolicyNotFoundException;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.RetentionPolicy;
+import io.barracks.componentservice.model.RetentionReport;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.PackageRepository;
+import io.barracks.componentservice.repository.RetentionPolicyRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetentionManagerTest {
+    @Mock
+    private RetentionPolicyRepository retentionPolicyRepository;
+    @Mock
+    private PackageRepository packageRepository;
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private VersionManager versionManager;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private RetentionProperties retentionProperties;
+    private RetentionManager retentionManager;
+
+    @Before
+    public void setUp() {
+        retentionProperties = new RetentionProperties();
+        retentionProperties.setBatchSize(2);
+        retentionProperties.setMaxDeletions(3);
+        retentionManager = new RetentionManager(retentionPolicyRepository, packageRepository, versionRepository, versionManager, taskScheduler, retentionProperties);
+    }
+
+    @Test
+    public void setPolicy_withoutReleasedKey_shouldKeepReleasedVersions() {
+        // Given
+        final RetentionPolicy policy = getPolicy().toBuilder().releasedKey(null).build();
+        doReturn(Optional.of(PackageUtils.getPackage())).when(packageRepository).getPackage(policy.getUserId(), policy.getPackageRef());
+        doAnswer(invocation -> invocation.getArguments()[0]).when(retentionPolicyRepository).savePolicy(any(RetentionPolicy.class));
+
+        // When
+        final RetentionPolicy result = retentionManager.setPolicy(policy);
+
+        // Then
+        assertThat(result.getReleasedKey()).isEqualTo(RetentionManager.DEFAULT_RELEASED_KEY);
+        assertThat(result.getKeepLast()).isEqualTo(policy.getKeepLast());
+        assertThat(result.getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    public void setPolicy_withoutRules_shouldThrowException() {
+        // Given
+        final RetentionPolicy policy = getPolicy().toBuilder().keepLast(null).keepDays(null).build();
+
+        // Then When
+        assertThatExceptionOfType(InvalidRetentionPolicyException.class).isThrownBy(() -> retentionManager.setPolicy(policy));
+        verifyZeroInteractions(retentionPolicyRepository);
+    }
+
+    @Test
+    public void setPolicy_whenPackageNotPresent_shouldThrowException() {
+        // Given
+        final RetentionPolicy policy = getPolicy();
+        doReturn(Optional.empty()).when(packageRepository).getPackage(policy.getUserId(), policy.getPackageRef());
+
+        // Then When
+        assertThatExceptionOfType(PackageNotFoundException.class).isThrownBy(() -> retentionManager.setPolicy(policy));
+        verifyZeroInteractions(retentionPolicyRepository);
+    }
+
+    @Test
+    public void getPolicy_whenPolicyNotPresent_shouldThrowException() {
+        // Given
+        doReturn(Optional.empty()).when(retentionPolicyRepository).findByUserIdAndPackageRef("user", "package");
+
+        // Then When
+        assertThatExceptionOfType(RetentionPolicyNotFoundException.class).isThrownBy(() -> retentionManager.getPolicy("user", "package"));
+    }
+
+    @Test
+    public void getReport_shouldSumPrunedVersionsOfPolicies() {
+        // Given
+        final RetentionPolicy first = getPolicy().toBuilder().prunedVersions(2L).prunedBytes(100L).build();
+        final RetentionPolicy second = getPolicy().toBuilder().prunedVersions(3L).prunedBytes(50L).build();
+        doReturn(Arrays.asList(first, second)).when(retentionPolicyRepository).findByUserIdOrderByPackageRef("user");
+
+        // When
+        final RetentionReport result = retentionManager.getReport("user");
+
+        // Then
+        assertThat(result).isEqualTo(RetentionReport.builder()
+                .prunedVersions(5L)
+                .prunedBytes(150L)
+                .policies(Arrays.asList(first, second))
+                .build());
+    }
+
+    @Test
+    public void prune_shouldDeleteExpiredVersionsInBatchesUntilMaxDeletions() {
+        // Given
+        final RetentionPolicy first = getPolicy();
+        final RetentionPolicy second = getPolicy();
+        final RetentionPolicy third = getPolicy();
+        final Version expired = VersionUtils.getVersion();
+        final Version concurrentlyDeleted = VersionUtils.getVersion();
+        final Version other = VersionUtils.getVersion();
+        doReturn(new PageImpl<>(Arrays.asList(first, second, third))).when(retentionPolicyRepository).findAll(any(Pageable.class));
+        doReturn(Arrays.asList(expired, concurrentlyDeleted)).when(versionRepository)
+                .getExpiredVersions(eq(first.getUserId()), eq(first.getPackageRef()), eq(10), any(Date.class), eq("released"), eq(2));
+        doReturn(Collections.singletonList(other)).when(versionRepository)
+                .getExpiredVersions(eq(second.getUserId()), eq(second.getPackageRef()), eq(10), any(Date.class), eq("released"), eq(1));
+        doReturn(expired.getLength()).when(versionManager).pruneVersion(expired.getUserId(), expired.getPackageRef(), expired.getId());
+        doReturn(0L).when(versionManager).pruneVersion(other.getUserId(), other.getPackageRef(), other.getId());
+        doThrow(new VersionNotFoundException(concurrentlyDeleted.getUserId(), concurrentlyDeleted.getPackageRef(), concurrentlyDeleted.getId()))
+                .when(versionManager).pruneVersion(concurrentlyDeleted.getUserId(), concurrentlyDeleted.getPackageRef(), concurrentlyDeleted.getId());
+
+        // When
+        retentionManager.prune();
+
+        // Then
+        verify(versionManager).pruneVersion(expired.getUserId(), expired.getPackageRef(), expired.getId());
+        verify(versionManager).pruneVersion(other.getUserId(), other.getPackageRef(), other.getId());
+        verify(retentionPolicyRepository).recordPruning(eq(first.getId()), eq(1L), eq(expired.getLength()), any(Date.class));
+        verify(retentionPolicyRepository).recordPruning(eq(second.getId()), eq(1L), eq(0L), any(Date.class));
+        verify(versionRepository, never()).getExpiredVersions(eq(third.getUserId()), anyString(), anyInt(), any(Date.class), anyString(), anyInt());
+        assertThat(retentionManager.getPrunedVersionCount()).isEqualTo(2);
+        assertThat(retentionManager.getPrunedBytes()).isEqualTo(expired.getLength());
+    }
+
+    @Test
+    public void prune_withoutAgeRule_shouldNotLimitUploadDate() {
+        // Given
+        final RetentionPolicy policy = getPolicy().toBuilder().keepDays(null).build();
+        doReturn(new PageImpl<>(Collections.singletonList(policy))).when(retentionPolicyRepository).findAll(any(Pageable.class));
+
+        // When
+        retentionManager.prune();
+
+        // Then
+        final ArgumentCaptor<Date> captor = ArgumentCaptor.forClass(Date.class);
+        verify(versionRepository).getExpiredVersions(eq(policy.getUserId()), eq(policy.getPackageRef()), eq(10), captor.capture(), eq("released"), eq(2));
+        assertThat(captor.getValue()).isNull();
+        verify(retentionPolicyRepository).recordPruning(eq(policy.getId()), eq(0L), eq(0L), any(Date.class));
+    }
+
+    private static RetentionPolicy getPolicy() {
+        return RetentionPolicy.builder()
+                .id(UUID.randomUUID().toString())
+                .userId(UUID.randomUUID().toString())
+                .packageRef(UUID.randomUUID().toString())
+                .keepLast(10)
+                .keepDays(30)
+                .releasedKey("released")
+                .build();
+    }
+}
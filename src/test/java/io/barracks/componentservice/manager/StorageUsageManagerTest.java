@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.UsageProperties;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.StorageUsage;
+import io.barracks.componentservice.model.UsageReport;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.PackageRepository;
+import io.barracks.componentservice.repository.StorageUsageRepository;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StorageUsageManagerTest {
+    @Mock
+    private StorageUsageRepository storageUsageRepository;
+    @Mock
+    private PackageRepository packageRepository;
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private UsageProperties usageProperties;
+    private StorageUsageManager storageUsageManager;
+
+    @Before
+    public void setUp() {
+        usageProperties = new UsageProperties();
+        usageProperties.setPackagesPerPass(2);
+        storageUsageManager = new StorageUsageManager(storageUsageRepository, packageRepository, versionRepository, taskScheduler, usageProperties);
+    }
+
+    @Test
+    public void checkQuota_withoutQuota_shouldNotReadUsage() {
+        // When
+        storageUsageManager.checkQuota("user", "package", 1000L);
+
+        // Then
+        verifyZeroInteractions(storageUsageRepository);
+    }
+
+    @Test
+    public void checkQuota_whenOwnerWouldExceedBytes_shouldThrowException() {
+        // Given
+        usageProperties.setOwnerQuota(new UsageProperties.Quota(0L, 1000L));
+        doReturn(Optional.of(getUsage("user", null, 3L, 900L))).when(storageUsageRepository).findByUserIdAndPackageRefIsNull("user");
+
+        // Then When
+        assertThatExceptionOfType(StorageQuotaExceededException.class).isThrownBy(() -> storageUsageManager.checkQuota("user", "package", 101L));
+        assertThat(storageUsageManager.getRejectedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void checkQuota_whenOwnerHasOwnQuota_shouldUseIt() {
+        // Given
+        usageProperties.setOwnerQuota(new UsageProperties.Quota(0L, 1000L));
+        usageProperties.getOwners().put("user", new UsageProperties.Quota(0L, 5000L));
+        doReturn(Optional.of(getUsage("user", null, 3L, 900L))).when(storageUsageRepository).findByUserIdAndPackageRefIsNull("user");
+
+        // When
+        storageUsageManager.checkQuota("user", "package", 101L);
+
+        // Then
+        assertThat(storageUsageManager.getRejectedCount()).isZero();
+    }
+
+    @Test
+    public void checkQuota_whenPackageHasMaxVersions_shouldThrowException() {
+        // Given
+        usageProperties.setPackageQuota(new UsageProperties.Quota(10L, 0L));
+        doReturn(Optional.of(getUsage("user", "package", 10L, 900L))).when(storageUsageRepository).findByUserIdAndPackageRef("user", "package");
+
+        // Then When
+        assertThatExceptionOfType(StorageQuotaExceededException.class).isThrownBy(() -> storageUsageManager.checkQuota("user", "package", 0L));
+    }
+
+    @Test
+    public void checkStoredQuota_whenPackageWouldExceedBytes_shouldThrowException() {
+        // Given
+        usageProperties.setPackageQuota(new UsageProperties.Quota(0L, 1000L));
+        final Version version = VersionUtils.getVersion().toBuilder().userId("user").packageRef("package").length(101L).build();
+        doReturn(Optional.of(getUsage("user", "package", 3L, 900L))).when(storageUsageRepository).findByUserIdAndPackageRef("user", "package");
+
+        // Then When
+        assertThatExceptionOfType(StorageQuotaExceededException.class).isThrownBy(() -> storageUsageManager.checkStoredQuota(version));
+        assertThat(storageUsageManager.getRejectedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void checkStoredQuota_whenPackageReachedMaxVersions_shouldNotCountTheStoredVersionTwice() {
+        // Given
+        usageProperties.setPackageQuota(new UsageProperties.Quota(10L, 0L));
+        final Version version = VersionUtils.getVersion().toBuilder().userId("user").packageRef("package").build();
+
+        // When
+        storageUsageManager.checkStoredQuota(version);
+
+        // Then
+        verifyZeroInteractions(storageUsageRepository);
+    }
+
+    @Test
+    public void recordCreation_whenRepositoryFails_shouldNotThrowException() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        doThrow(new RuntimeException()).when(storageUsageRepository).recordChange(version.getUserId(), version.getPackageRef(), 1L, version.getLength());
+
+        // When
+        storageUsageManager.recordCreation(version);
+
+        // Then
+        assertThat(storageUsageManager.getFailedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void getReport_shouldReturnOwnerUsageWithQuotaAndPackages() {
+        // Given
+        usageProperties.setOwnerQuota(new UsageProperties.Quota(0L, 1000L));
+        final StorageUsage packageUsage = getUsage("user", "package", 3L, 300L);
+        doReturn(Optional.of(getUsage("user", null, 3L, 300L))).when(storageUsageRepository).findByUserIdAndPackageRefIsNull("user");
+        doReturn(Collections.singletonList(packageUsage)).when(storageUsageRepository).findByUserIdAndPackageRefIsNotNullOrderByPackageRef("user");
+
+        // When
+        final UsageReport result = storageUsageManager.getReport("user");
+
+        // Then
+        assertThat(result).isEqualTo(UsageReport.builder()
+                .versionCount(3L)
+                .totalBytes(300L)
+                .maxBytes(1000L)
+                .packages(Collections.singletonList(packageUsage))
+                .build());
+    }
+
+    @Test
+    public void reconcile_shouldReplaceDriftedCountersOfNextPackages_thenOfTheirOwners() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Package first = Package.builder().userId(userId).reference("first").build();
+        final Package second = Package.builder().userId(userId).reference("second").build();
+        doReturn(Arrays.asList(first, second)).when(packageRepository).getPackages(null, null, 2);
+        doReturn(getUsage(userId, "first", 2L, 20L)).when(versionRepository).measureUsage(userId, "first");
+        doReturn(getUsage(userId, "second", 1L, 5L)).when(versionRepository).measureUsage(userId, "second");
+        doReturn(Optional.of(getUsage(userId, "first", 3L, 30L))).when(storageUsageRepository).findByUserIdAndPackageRef(userId, "first");
+        doReturn(Optional.empty()).when(storageUsageRepository).findByUserIdAndPackageRef(userId, "second");
+        doReturn(Optional.of(getUsage(userId, null, 3L, 30L))).when(storageUsageRepository).findByUserIdAndPackageRefIsNull(userId);
+        doReturn(Arrays.asList(getUsage(userId, "first", 2L, 20L), getUsage(userId, "second", 1L, 5L)))
+                .when(storageUsageRepository).findByUserIdAndPackageRefIsNotNullOrderByPackageRef(userId);
+        doReturn(true).when(storageUsageRepository).reconcile(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyLong(), any(Date.class));
+
+        // When
+        storageUsageManager.reconcile();
+        storageUsageManager.reconcile();
+
+        // Then
+        verify(storageUsageRepository).reconcile(eq(userId), eq("first"), eq(3L), eq(30L), eq(2L), eq(20L), any(Date.class));
+        verify(storageUsageRepository).reconcile(eq(userId), eq("second"), eq(0L), eq(0L), eq(1L), eq(5L), any(Date.class));
+        verify(storageUsageRepository).reconcile(eq(userId), isNull(String.class), eq(3L), eq(30L), eq(3L), eq(25L), any(Date.class));
+        verify(packageRepository).getPackages(userId, "second", 2);
+        assertThat(storageUsageManager.getReconciledPackageCount()).isEqualTo(2L);
+    }
+
+    private static StorageUsage getUsage(String userId, String packageRef, long versionCount, long totalBytes) {
+        return StorageUsage.builder()
+                .userId(userId)
+                .packageRef(packageRef)
+                .versionCount(versionCount)
+                .totalBytes(totalBytes)
+                .build();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.config.DownloadProperties;
+import io.barracks.componentservice.config.TieringProperties;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStore;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TieringManagerTest {
+    @Mock
+    private VersionRepository versionRepository;
+    @Mock
+    private BlobMover blobMover;
+    @Mock
+    private TaskScheduler taskScheduler;
+    @Mock
+    private TaskExecutor promotionExecutor;
+    @Mock
+    private BlobStore hotStore;
+    @Mock
+    private BlobStore coldStore;
+
+    private BlobStores blobStores;
+    private TieringProperties tieringProperties;
+    private DownloadProperties downloadProperties;
+    private TieringManager tieringManager;
+
+    @Before
+    public void setUp() {
+        doReturn("hot").when(hotStore).getName();
+        doReturn("cold").when(coldStore).getName();
+        blobStores = new BlobStores("hot", hotStore, coldStore);
+        tieringProperties = new TieringProperties();
+        tieringProperties.setEnabled(true);
+        tieringProperties.setColdStore("cold");
+        downloadProperties = new DownloadProperties();
+        tieringManager = new TieringManager(versionRepository, blobStores, blobMover, taskScheduler, promotionExecutor, tieringProperties, downloadProperties);
+    }
+
+    @Test
+    public void recordAccess_whenDisabled_shouldNotCountAccess() {
+        // Given
+        tieringProperties.setEnabled(false);
+        tieringManager.afterPropertiesSet();
+
+        // When
+        tieringManager.recordAccess(VersionUtils.getVersion());
+
+        // Then
+        verifyZeroInteractions(versionRepository, promotionExecutor);
+    }
+
+    @Test
+    public void getAccessWeight_shouldDoubleEveryHalfLife() {
+        // Given
+        tieringManager.afterPropertiesSet();
+
+        // When
+        final double first = tieringManager.getAccessWeight(tieringProperties.getEpoch() + tieringProperties.getHalfLife());
+        final double second = tieringManager.getAccessWeight(tieringProperties.getEpoch() + 2 * tieringProperties.getHalfLife());
+
+        // Then
+        assertThat(first).isEqualTo(2.0);
+        assertThat(second).isEqualTo(4.0);
+    }
+
+    @Test
+    public void getAccessWeight_whenDisabled_shouldReturnZero() {
+        // Given
+        tieringProperties.setEnabled(false);
+        tieringManager.afterPropertiesSet();
+
+        // When
+        final double result = tieringManager.getAccessWeight(System.currentTimeMillis());
+
+        // Then
+        assertThat(result).isZero();
+    }
+
+    @Test
+    public void afterPropertiesSet_whenDownloadsNotCounted_shouldThrowException() {
+        // Given
+        downloadProperties.setEnabled(false);
+
+        // Then When
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> tieringManager.afterPropertiesSet());
+    }
+
+    @Test
+    public void recordAccess_whenVersionInColdStore_shouldPromoteInBackground() throws Exception {
+        // Given
+        final Version version = getVersion("cold");
+        final BlobReference blob = getBlobReference("cold");
+        tieringManager.afterPropertiesSet();
+        doReturn(Optional.of(blob)).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(true).when(blobMover).move(blob, coldStore, hotStore);
+
+        // When
+        tieringManager.recordAccess(version);
+        tieringManager.recordAccess(version);
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(promotionExecutor).execute(captor.capture());
+        captor.getValue().run();
+
+        // Then
+        verify(blobMover).move(blob, coldStore, hotStore);
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Date.class));
+        assertThat(tieringManager.getPromotedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void recordAccess_whenPromotionsFull_shouldDropPromotion_andPromoteOnNextAccess() {
+        // Given
+        final Version version = getVersion("cold");
+        tieringManager.afterPropertiesSet();
+        doThrow(new TaskRejectedException("Full")).doNothing().when(promotionExecutor).execute(any(Runnable.class));
+
+        // When
+        tieringManager.recordAccess(version);
+        tieringManager.recordAccess(version);
+
+        // Then
+        verify(promotionExecutor, times(2)).execute(any(Runnable.class));
+        assertThat(tieringManager.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void demote_shouldMoveRarelyDownloadedVersionsToColdStore() throws Exception {
+        // Given
+        final BlobReference blob = getBlobReference("hot");
+        tieringManager.afterPropertiesSet();
+        doReturn(Collections.singletonList(blob)).when(versionRepository).getColdBlobs(eq("hot"), anyDouble(), any(Date.class), eq(100));
+        doReturn(true).when(blobMover).move(blob, hotStore, coldStore);
+
+        // When
+        tieringManager.demote();
+
+        // Then
+        verify(blobMover).move(blob, hotStore, coldStore);
+        assertThat(tieringManager.getDemotedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void afterPropertiesSet_whenColdStoreUnknown_shouldThrowException() {
+        // Given
+        tieringProperties.setColdStore("unknown");
+
+        // Then When
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> tieringManager.afterPropertiesSet());
+    }
+
+    private Version getVersion(String store) {
+        return VersionUtils.getVersion().toBuilder()
+                .content(blobStores.content(store, UUID.randomUUID().toString()))
+                .build();
+    }
+
+    private BlobReference getBlobReference(String store) {
+        return BlobReference.builder()
+                .documentId(UUID.randomUUID().toString())
+                .store(store)
+                .id(UUID.randomUUID().toString())
+                .md5(UUID.randomUUID().toString())
+                .build();
+    }
+}
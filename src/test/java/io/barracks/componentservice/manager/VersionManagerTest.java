@@ -24,15 +24,22 @@
 
 package io.barracks.componentservice.manager;
 
+import io.barracks.componentservice.manager.exception.InvalidVersionFieldException;
+import io.barracks.componentservice.manager.exception.InvalidVersionMetadataException;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
 import io.barracks.componentservice.manager.exception.VersionCreationFailedException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
 import io.barracks.componentservice.manager.exception.VersionNotFoundException;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
 import io.barracks.componentservice.repository.PackageRepository;
 import io.barracks.componentservice.repository.VersionRepository;
+import io.barracks.componentservice.repository.blob.BlobReference;
 import io.barracks.componentservice.utils.PackageUtils;
 import io.barracks.componentservice.utils.VersionUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -44,7 +51,9 @@ import org.springframework.data.domain.Pageable;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -58,6 +67,14 @@ public class VersionManagerTest {
     private PackageRepository packageRepository;
     @Mock
     private VersionRepository versionRepository;
+    @Mock
+    private TieringManager tieringManager;
+    @Mock
+    private BlobReclaimer blobReclaimer;
+    @Mock
+    private StorageUsageManager storageUsageManager;
+    @Mock
+    private VersionMetadataValidator versionMetadataValidator;
     @InjectMocks
     private VersionManager versionManager;
 
@@ -76,6 +93,7 @@ public class VersionManagerTest {
         // Then
         verify(packageRepository).getPackage(toCreate.getUserId(), toCreate.getPackageRef());
         verify(versionRepository).createVersion(toCreate, inputStream);
+        verify(storageUsageManager).recordCreation(expected);
         assertThat(result).isEqualTo(expected);
     }
 
@@ -90,6 +108,97 @@ public class VersionManagerTest {
         assertThatExceptionOfType(VersionCreationFailedException.class).isThrownBy(() -> versionManager.createVersion(toCreate, inputStream));
     }
 
+    @Test
+    public void createVersion_withInvalidMetadata_shouldThrowExceptionBeforeStoringIt() {
+        // Given
+        final Version toCreate = VersionUtils.getVersion();
+        final InputStream inputStream = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        doThrow(new InvalidVersionMetadataException("too large")).when(versionMetadataValidator).validate(toCreate.getMetadata());
+
+        // Then When
+        assertThatExceptionOfType(InvalidVersionMetadataException.class).isThrownBy(() -> versionManager.createVersion(toCreate, inputStream));
+        verifyZeroInteractions(packageRepository, versionRepository);
+    }
+
+    @Test
+    public void createVersion_whenStoredVersionExceedsQuota_shouldDeleteItAndThrowException() {
+        // Given
+        final InputStream inputStream = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+        final Version toCreate = VersionUtils.getVersion();
+        final Version created = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(created.getLength()).build();
+        doReturn(Optional.of(PackageUtils.getPackage())).when(packageRepository).getPackage(toCreate.getUserId(), toCreate.getPackageRef());
+        doReturn(created).when(versionRepository).createVersion(toCreate, inputStream);
+        doThrow(new StorageQuotaExceededException(created.getUserId(), created.getPackageRef(), "at most 10 bytes are allowed"))
+                .when(storageUsageManager).checkStoredQuota(created);
+        doReturn(Optional.of(blob)).when(versionRepository).getBlob(created.getUserId(), created.getPackageRef(), created.getId());
+        doReturn(Collections.singletonList(blob)).when(versionRepository).deleteVersion(created.getUserId(), created.getPackageRef(), created.getId());
+
+        // Then When
+        assertThatExceptionOfType(StorageQuotaExceededException.class).isThrownBy(() -> versionManager.createVersion(toCreate, inputStream));
+        verify(blobReclaimer).queue(blob);
+        verify(storageUsageManager, never()).recordCreation(created);
+    }
+
+    @Test
+    public void copyVersion_shouldCheckQuotaWithSourceLength_andReturnCopy() {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(UUID.randomUUID().toString()).build();
+        final Version expected = source.toBuilder().packageRef(copy.getPackageRef()).build();
+        doReturn(Optional.of(source)).when(versionRepository).getVersion(source.getUserId(), source.getPackageRef(), source.getId());
+        doReturn(Optional.of(PackageUtils.getPackage())).when(packageRepository).getPackage(copy.getUserId(), copy.getPackageRef());
+        doReturn(Optional.of(expected)).when(versionRepository).copyVersion(source.getPackageRef(), source.getId(), copy);
+
+        // When
+        final Version result = versionManager.copyVersion(source.getPackageRef(), source.getId(), copy);
+
+        // Then
+        verify(storageUsageManager).checkQuota(copy.getUserId(), copy.getPackageRef(), source.getLength());
+        verify(versionRepository).copyVersion(source.getPackageRef(), source.getId(), copy);
+        verify(storageUsageManager).recordCreation(expected);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void copyVersion_whenQuotaReached_shouldThrowExceptionBeforeCopying() {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(UUID.randomUUID().toString()).build();
+        doReturn(Optional.of(source)).when(versionRepository).getVersion(source.getUserId(), "staging", "1.0.0");
+        doThrow(new StorageQuotaExceededException(copy.getUserId(), copy.getPackageRef(), "at most 10 versions are allowed"))
+                .when(storageUsageManager).checkQuota(copy.getUserId(), copy.getPackageRef(), source.getLength());
+
+        // Then When
+        assertThatExceptionOfType(StorageQuotaExceededException.class).isThrownBy(() -> versionManager.copyVersion("staging", "1.0.0", copy));
+        verify(versionRepository, never()).copyVersion("staging", "1.0.0", copy);
+    }
+
+    @Test
+    public void copyVersion_whenTargetPackageDoesNotExist_shouldThrowException() {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(UUID.randomUUID().toString()).build();
+        doReturn(Optional.of(source)).when(versionRepository).getVersion(source.getUserId(), "staging", "1.0.0");
+        doReturn(Optional.empty()).when(packageRepository).getPackage(copy.getUserId(), copy.getPackageRef());
+
+        // Then When
+        assertThatExceptionOfType(VersionCreationFailedException.class).isThrownBy(() -> versionManager.copyVersion("staging", "1.0.0", copy));
+        verify(versionRepository, never()).copyVersion("staging", "1.0.0", copy);
+    }
+
+    @Test
+    public void copyVersion_whenSourceDoesNotExist_shouldThrowException() {
+        // Given
+        final Version copy = Version.builder().userId(UUID.randomUUID().toString()).packageRef(UUID.randomUUID().toString()).build();
+        doReturn(Optional.empty()).when(versionRepository).getVersion(copy.getUserId(), "staging", "1.0.0");
+
+        // Then When
+        assertThatExceptionOfType(VersionNotFoundException.class).isThrownBy(() -> versionManager.copyVersion("staging", "1.0.0", copy));
+        verifyZeroInteractions(storageUsageManager);
+        verify(versionRepository, never()).copyVersion("staging", "1.0.0", copy);
+    }
+
     @Test
     public void getVersion_shouldCallRepository_andReturnVersion() {
         // Given
@@ -118,6 +227,167 @@ public class VersionManagerTest {
         assertThatExceptionOfType(VersionNotFoundException.class).isThrownBy(() -> versionManager.getVersion(userId, reference, versionId));
     }
 
+    @Test
+    public void updateVersion_shouldCallRepositoryWithRevision_andReturnUpdatedVersion() {
+        // Given
+        final Version changes = VersionUtils.getVersion();
+        final Version expected = changes.toBuilder().revision(3L).build();
+        doReturn(Optional.of(expected)).when(versionRepository).updateVersion(changes, 2L);
+
+        // When
+        final Version result = versionManager.updateVersion(changes, 2L);
+
+        // Then
+        verify(versionMetadataValidator).validate(changes.getMetadata());
+        verify(versionRepository).updateVersion(changes, 2L);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void updateVersion_whenVersionWasModified_shouldThrowException() {
+        // Given
+        final Version changes = VersionUtils.getVersion();
+        doReturn(Optional.empty()).when(versionRepository).updateVersion(changes, 2L);
+        doReturn(Optional.of(changes.toBuilder().revision(3L).build())).when(versionRepository).getVersion(changes.getUserId(), changes.getPackageRef(), changes.getId());
+
+        // Then When
+        assertThatExceptionOfType(VersionModifiedException.class).isThrownBy(() -> versionManager.updateVersion(changes, 2L));
+    }
+
+    @Test
+    public void updateVersion_whenVersionNotPresent_shouldThrowException() {
+        // Given
+        final Version changes = VersionUtils.getVersion();
+        doReturn(Optional.empty()).when(versionRepository).updateVersion(changes, null);
+        doReturn(Optional.empty()).when(versionRepository).getVersion(changes.getUserId(), changes.getPackageRef(), changes.getId());
+
+        // Then When
+        assertThatExceptionOfType(VersionNotFoundException.class).isThrownBy(() -> versionManager.updateVersion(changes, null));
+    }
+
+    @Test
+    public void updateVersion_withInvalidMetadata_shouldThrowExceptionBeforeUpdatingVersion() {
+        // Given
+        final Version changes = VersionUtils.getVersion();
+        doThrow(new InvalidVersionMetadataException("too deep")).when(versionMetadataValidator).validate(changes.getMetadata());
+
+        // Then When
+        assertThatExceptionOfType(InvalidVersionMetadataException.class).isThrownBy(() -> versionManager.updateVersion(changes, 0L));
+        verifyZeroInteractions(versionRepository);
+    }
+
+    @Test
+    public void deleteVersion_shouldQueueBlobBeforeRemovingDocument() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(3L).build();
+        doReturn(Optional.of(blob)).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(Collections.singletonList(blob)).when(versionRepository).deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // When
+        versionManager.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        final InOrder inOrder = inOrder(blobReclaimer, versionRepository);
+        inOrder.verify(blobReclaimer).queue(blob);
+        inOrder.verify(versionRepository).deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+        verify(blobReclaimer, times(1)).queue(any(BlobReference.class));
+        verify(storageUsageManager).recordDeletion(version.getUserId(), version.getPackageRef(), 3L);
+    }
+
+    @Test
+    public void deleteVersion_whenRemovedDocumentsReferenceOtherBlob_shouldQueueItToo() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(3L).build();
+        final BlobReference other = blob.toBuilder().store("fs").build();
+        doReturn(Optional.of(blob)).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(Arrays.asList(blob, other)).when(versionRepository).deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // When
+        versionManager.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        verify(blobReclaimer).queue(blob);
+        verify(blobReclaimer).queue(other);
+    }
+
+    @Test
+    public void deleteVersion_whenVersionNotPresent_shouldThrowException() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        doReturn(Optional.empty()).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then When
+        assertThatExceptionOfType(VersionNotFoundException.class).isThrownBy(() -> versionManager.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId()));
+        verifyZeroInteractions(blobReclaimer);
+    }
+
+    @Test
+    public void pruneVersion_shouldReturnSizeOfBlobsNoLongerReferenced() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(3L).build();
+        final BlobReference copy = blob.toBuilder().documentId(UUID.randomUUID().toString()).build();
+        final BlobReference other = BlobReference.builder().store("fs").id(UUID.randomUUID().toString()).length(5L).build();
+        doReturn(Optional.of(blob)).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(Arrays.asList(blob, copy, other)).when(versionRepository).deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(0L).when(versionRepository).countBlobReferences(blob.getStore(), blob.getId());
+
+        // When
+        final long result = versionManager.pruneVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).isEqualTo(8L);
+        verify(versionRepository).countBlobReferences(blob.getStore(), blob.getId());
+        verify(storageUsageManager).recordDeletion(version.getUserId(), version.getPackageRef(), 3L);
+    }
+
+    @Test
+    public void pruneVersion_whenBlobSharedWithOtherVersion_shouldNotCountIt() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final BlobReference blob = BlobReference.builder().store("gridfs").id(UUID.randomUUID().toString()).length(3L).build();
+        doReturn(Optional.of(blob)).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(Collections.singletonList(blob)).when(versionRepository).deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+        doReturn(1L).when(versionRepository).countBlobReferences(blob.getStore(), blob.getId());
+
+        // When
+        final long result = versionManager.pruneVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).isZero();
+        verify(blobReclaimer).queue(blob);
+    }
+
+    @Test
+    public void pruneVersion_whenVersionNotPresent_shouldThrowException() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        doReturn(Optional.empty()).when(versionRepository).getBlob(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then When
+        assertThatExceptionOfType(VersionNotFoundException.class).isThrownBy(() -> versionManager.pruneVersion(version.getUserId(), version.getPackageRef(), version.getId()));
+        verifyZeroInteractions(storageUsageManager);
+    }
+
+    @Test
+    public void getVersionFile_shouldRecordAccess_andReturnVersion() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(Optional.of(expected)).when(versionRepository).getVersion(userId, reference, versionId);
+
+        // When
+        final Version result = versionManager.getVersionFile(userId, reference, versionId);
+
+        // Then
+        verify(tieringManager).recordAccess(expected);
+        assertThat(result).isEqualTo(expected);
+    }
+
     @Test
     public void getVersions_shouldCallRepository_andReturnResult() {
         // Given
@@ -138,4 +408,30 @@ public class VersionManagerTest {
         verify(versionRepository).getVersions(userId, reference, pageable);
         assertThat(result).isEqualTo(expected);
     }
+
+    @Test
+    public void getVersionFields_withoutFields_shouldRequestSummaryFields() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final Page<Map<String, Object>> expected = new PageImpl<>(Collections.emptyList(), pageable, 0);
+        when(versionRepository.getVersionFields(userId, reference, VersionField.SUMMARY, pageable)).thenReturn(expected);
+
+        // When
+        final Page<Map<String, Object>> result = versionManager.getVersionFields(userId, reference, null, pageable);
+
+        // Then
+        verify(versionRepository).getVersionFields(userId, reference, VersionField.SUMMARY, pageable);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void getVersionFields_withUnknownField_shouldThrowException() {
+        // Then When
+        assertThatExceptionOfType(InvalidVersionFieldException.class).isThrownBy(() ->
+                versionManager.getVersionFields("user", "package", Arrays.asList("id", "blobId"), new PageRequest(0, 10))
+        );
+        verifyZeroInteractions(versionRepository);
+    }
 }
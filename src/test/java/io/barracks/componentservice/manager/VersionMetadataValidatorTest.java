@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.manager;
+
+import io.barracks.componentservice.manager.exception.InvalidVersionMetadataException;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class VersionMetadataValidatorTest {
+    private final VersionMetadataValidator validator = new VersionMetadataValidator(256, 3);
+
+    @Test
+    public void validate_withJsonValues_shouldAcceptMetadata() {
+        // Given
+        final Map<String, Object> metadata = new HashMap<>();
+        metadata.put("channel", "beta");
+        metadata.put("revision", 3);
+        metadata.put("ratio", 0.5);
+        metadata.put("signed", true);
+        metadata.put("none", null);
+        metadata.put("targets", Arrays.asList("a", Collections.singletonMap("b", 1L)));
+
+        // When Then
+        validator.validate(metadata);
+        validator.validate(null);
+    }
+
+    @Test
+    public void validate_withTooLargeMetadata_shouldThrowException() {
+        // Given
+        final Map<String, Object> metadata = Collections.singletonMap("notes", String.join("", Collections.nCopies(256, "x")));
+
+        // Then When
+        assertThatExceptionOfType(InvalidVersionMetadataException.class).isThrownBy(() -> validator.validate(metadata));
+    }
+
+    @Test
+    public void validate_withTooDeepMetadata_shouldThrowException() {
+        // Given
+        final Map<String, Object> metadata = Collections.singletonMap("a", Collections.singletonMap("b", Collections.singletonList(Collections.emptyMap())));
+
+        // Then When
+        assertThatExceptionOfType(InvalidVersionMetadataException.class).isThrownBy(() -> validator.validate(metadata));
+    }
+
+    @Test
+    public void validate_withInvalidKeyOrValue_shouldThrowException() {
+        assertThatExceptionOfType(InvalidVersionMetadataException.class)
+                .isThrownBy(() -> validator.validate(Collections.singletonMap("a.b", 1)));
+        assertThatExceptionOfType(InvalidVersionMetadataException.class)
+                .isThrownBy(() -> validator.validate(Collections.singletonMap("$where", 1)));
+        assertThatExceptionOfType(InvalidVersionMetadataException.class)
+                .isThrownBy(() -> validator.validate(Collections.singletonMap("big", BigInteger.TEN.pow(30))));
+    }
+}
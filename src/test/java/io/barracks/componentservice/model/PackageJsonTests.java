@@ -62,7 +62,7 @@ public class PackageJsonTests {
         final Package result = json.parseObject(jsonNode.toString());
 
         // Then
-        assertThat(expected).hasNoNullFieldsOrPropertiesExcept("id", "userId");
+        assertThat(expected).hasNoNullFieldsOrPropertiesExcept("id", "userId", "cachedAt");
         assertThat(result).isEqualTo(expected);
     }
 
@@ -75,7 +75,7 @@ public class PackageJsonTests {
         JsonContent<Package> result = json.write(aPackage);
 
         // Then
-        assertThat(aPackage).hasNoNullFieldsOrProperties();
+        assertThat(aPackage).hasNoNullFieldsOrPropertiesExcept("cachedAt");
         assertThat(result).doesNotHaveJsonPathValue("@.id");
         assertThat(result).doesNotHaveJsonPathValue("@.userId");
         assertThat(result).extractingJsonPathStringValue("@.name").isEqualTo(aPackage.getName());
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.AsyncMongoConfig;
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.repository.exception.DuplicatePackageException;
+import io.barracks.componentservice.utils.PackageUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class, AsyncMongoConfig.class, AsyncPackageRepositoryImpl.class})
+@TestPropertySource(properties = AsyncMongoConfig.MODE_PROPERTY + "=" + AsyncMongoConfig.ASYNC_MODE)
+public class AsyncPackageRepositoryTest {
+    @Autowired
+    private AsyncPackageRepository asyncPackageRepository;
+    @Autowired
+    private PackageRepository packageRepository;
+
+    @Test
+    public void createPackage_shouldReturnSamePackage() {
+        // Given
+        final Package aPackage = PackageUtils.getPackage();
+
+        // When
+        final Package result = asyncPackageRepository.createPackage(aPackage).join();
+
+        // Then
+        assertThat(result).isEqualTo(aPackage);
+        assertThat(packageRepository.getPackage(aPackage.getUserId(), aPackage.getReference())).contains(aPackage);
+    }
+
+    @Test
+    public void createPackage_withSameUserAndReference_shouldFailWithException() {
+        // Given
+        final Package aPackage = PackageUtils.getPackage();
+        packageRepository.createPackage(aPackage);
+
+        // Then When
+        assertThatExceptionOfType(CompletionException.class)
+                .isThrownBy(() -> asyncPackageRepository.createPackage(aPackage).join())
+                .withCauseInstanceOf(DuplicatePackageException.class);
+    }
+
+    @Test
+    public void getPackage_whenNoPackage_shouldReturnEmptyResult() {
+        // Given
+        final String userId = UUID.randomUUID().toString(), reference = UUID.randomUUID().toString();
+
+        // When
+        final Optional<Package> result = asyncPackageRepository.getPackage(userId, reference).join();
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void getPackage_whenPackage_shouldReturnPackage() {
+        // Given
+        final Package aPackage = packageRepository.createPackage(PackageUtils.getPackage());
+
+        // When
+        final Optional<Package> result = asyncPackageRepository.getPackage(aPackage.getUserId(), aPackage.getReference()).join();
+
+        // Then
+        assertThat(result).contains(aPackage);
+    }
+
+    @Test
+    public void getPackages_shouldReturnOnlyUserPackages() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Package first = packageRepository.createPackage(PackageUtils.getPackage().toBuilder().userId(userId).build());
+        final Package second = packageRepository.createPackage(PackageUtils.getPackage().toBuilder().userId(userId).build());
+        packageRepository.createPackage(PackageUtils.getPackage());
+
+        // When
+        final Page<Package> result = asyncPackageRepository.getPackage(userId, new PageRequest(0, 10)).join();
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        assertThat(result.getContent()).containsOnly(first, second);
+    }
+}
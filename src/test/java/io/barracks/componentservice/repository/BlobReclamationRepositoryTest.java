@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.BlobReclamation;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
+public class BlobReclamationRepositoryTest {
+    @Autowired
+    private BlobReclamationRepository blobReclamationRepository;
+
+    @Before
+    public void setUp() {
+        blobReclamationRepository.deleteAll();
+    }
+
+    @Test
+    public void queue_whenBlobAlreadyQueued_shouldPostponeItsReclamation() {
+        // Given
+        blobReclamationRepository.queue("gridfs", "blob", 3L, new Date(1000L));
+
+        // When
+        blobReclamationRepository.queue("gridfs", "blob", 3L, new Date(2000L));
+
+        // Then
+        assertThat(blobReclamationRepository.findAll())
+                .extracting(BlobReclamation::getBlobId, BlobReclamation::getQueuedAt)
+                .containsExactly(tuple("blob", new Date(2000L)));
+    }
+
+    @Test
+    public void claim_shouldTakeOldestQueuedBlobUntilLeaseExpires() {
+        // Given
+        blobReclamationRepository.queue("gridfs", "recent", 3L, new Date(5000L));
+        blobReclamationRepository.queue("gridfs", "old", 3L, new Date(1000L));
+        blobReclamationRepository.queue("gridfs", "older", 3L, new Date(2000L));
+
+        // When
+        final Optional<BlobReclamation> first = blobReclamationRepository.claim(new Date(3000L), new Date(10000L), new Date(20000L));
+        final Optional<BlobReclamation> second = blobReclamationRepository.claim(new Date(3000L), new Date(10000L), new Date(20000L));
+        final Optional<BlobReclamation> third = blobReclamationRepository.claim(new Date(3000L), new Date(10000L), new Date(20000L));
+        final Optional<BlobReclamation> afterLease = blobReclamationRepository.claim(new Date(3000L), new Date(30000L), new Date(40000L));
+
+        // Then
+        assertThat(first.map(BlobReclamation::getBlobId)).contains("old");
+        assertThat(first.map(BlobReclamation::getClaimedUntil)).contains(new Date(20000L));
+        assertThat(second.map(BlobReclamation::getBlobId)).contains("older");
+        assertThat(third).isEmpty();
+        assertThat(afterLease.map(BlobReclamation::getBlobId)).contains("old");
+    }
+
+    @Test
+    public void release_shouldRecordProgressAndLetBlobBeClaimedAgain() {
+        // Given
+        blobReclamationRepository.queue("gridfs", "blob", 3L, new Date(1000L));
+        final BlobReclamation claimed = blobReclamationRepository.claim(new Date(3000L), new Date(10000L), new Date(20000L)).get();
+
+        // When
+        blobReclamationRepository.release(claimed.getId(), 2L);
+
+        // Then
+        final Optional<BlobReclamation> result = blobReclamationRepository.claim(new Date(3000L), new Date(10000L), new Date(20000L));
+        assertThat(result.map(BlobReclamation::getReclaimed)).contains(2L);
+    }
+}
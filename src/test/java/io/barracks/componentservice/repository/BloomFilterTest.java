@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BloomFilterTest {
+
+    @Test
+    public void mightContain_whenKeyPut_shouldReturnTrue() {
+        // Given
+        final BloomFilter filter = new BloomFilter(1000, 0.01);
+        final String key = UUID.randomUUID().toString();
+
+        // When
+        filter.put(key);
+
+        // Then
+        assertThat(filter.mightContain(key)).isTrue();
+        assertThat(filter.getKeyCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void mightContain_whenFilterFull_shouldKeepFalsePositiveRateNearConfiguredOne() {
+        // Given
+        final BloomFilter filter = new BloomFilter(10000, 0.01);
+        IntStream.range(0, 10000).forEach(i -> filter.put("present-" + i));
+
+        // When
+        final long falsePositives = IntStream.range(0, 100000).filter(i -> filter.mightContain("absent-" + i)).count();
+
+        // Then
+        assertThat(falsePositives).isLessThan(2000);
+        assertThat(filter.getExpectedFalsePositiveRate()).isBetween(0.005, 0.02);
+        assertThat(filter.getHashFunctions()).isEqualTo(7);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.CatalogueRecord;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.exception.InvalidExportPositionException;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class, CatalogueExport.class})
+@TestPropertySource(properties = "io.barracks.componentservice.partitioning.partitions.large.bucket=versions-large")
+public class CatalogueExportTest {
+    @Autowired
+    private CatalogueExport catalogueExport;
+    @Autowired
+    private PackageRepository packageRepository;
+    @Autowired
+    private VersionRepository versionRepository;
+    @Autowired
+    private PartitionRouter partitionRouter;
+
+    @Test
+    public void export_shouldReturnPackagesThenVersionsInKeyOrder() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Package first = createPackage(userId, "a");
+        final Package second = createPackage(userId, "b");
+        final Version secondVersion = createVersion(userId, "b", "1");
+        final Version firstVersion = createVersion(userId, "a", "2");
+        createPackage(UUID.randomUUID().toString(), "a");
+
+        // When
+        final List<CatalogueRecord> records = export(userId, CatalogueExport.Position.START);
+
+        // Then
+        assertThat(records).extracting(CatalogueRecord::getType).containsExactly(
+                CatalogueRecord.Type.PACKAGE, CatalogueRecord.Type.PACKAGE, CatalogueRecord.Type.VERSION, CatalogueRecord.Type.VERSION
+        );
+        assertThat(records.get(0).getPackage()).isEqualTo(first);
+        assertThat(records.get(1).getPackage()).isEqualTo(second);
+        assertThat(records.get(2).getVersion().getId()).isEqualTo(firstVersion.getId());
+        assertThat(records.get(3).getVersion().getId()).isEqualTo(secondVersion.getId());
+    }
+
+    @Test
+    public void export_afterPosition_shouldResumeAfterTheRecord() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        createPackage(userId, "a");
+        createPackage(userId, "b");
+        createVersion(userId, "a", "1");
+        createVersion(userId, "a", "2");
+        createVersion(userId, "b", "1");
+        final List<CatalogueRecord> all = export(userId, CatalogueExport.Position.START);
+
+        // When
+        final List<CatalogueRecord> afterPackage = export(userId, CatalogueExport.Position.decode(all.get(0).getPosition()));
+        final List<CatalogueRecord> afterVersion = export(userId, CatalogueExport.Position.decode(all.get(3).getPosition()));
+
+        // Then
+        assertThat(afterPackage).isEqualTo(all.subList(1, all.size()));
+        assertThat(afterVersion).isEqualTo(all.subList(4, all.size()));
+    }
+
+    @Test
+    public void export_whenOwnerReadFromPreviousPartition_shouldMergeVersionsOfBothPartitionsOnce() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        createPackage(userId, "a");
+        createVersion(userId, "a", "2");
+        versionRepository.copyVersions(userId, Partition.DEFAULT, "large");
+        createVersion(userId, "a", "3");
+        partitionRouter.saveRoute(PartitionRoute.builder().userId(userId).partition("large").previous(Partition.DEFAULT).updatedAt(new Date()).build());
+        createVersion(userId, "a", "1");
+        createVersion(userId, "a", "4");
+        final List<CatalogueRecord> all = export(userId, CatalogueExport.Position.START);
+
+        // When
+        final List<CatalogueRecord> afterVersion = export(userId, CatalogueExport.Position.decode(all.get(2).getPosition()));
+
+        // Then
+        assertThat(all).extracting(record -> record.getType() == CatalogueRecord.Type.VERSION ? record.getVersion().getId() : null)
+                .containsExactly(null, "1", "2", "3", "4");
+        assertThat(afterVersion).isEqualTo(all.subList(3, all.size()));
+    }
+
+    @Test
+    public void decode_withInvalidToken_shouldThrowException() {
+        assertThatThrownBy(() -> CatalogueExport.Position.decode("not a token")).isInstanceOf(InvalidExportPositionException.class);
+        assertThatThrownBy(() -> CatalogueExport.Position.decode("Zm9v")).isInstanceOf(InvalidExportPositionException.class);
+    }
+
+    private List<CatalogueRecord> export(String userId, CatalogueExport.Position position) {
+        final List<CatalogueRecord> records = new ArrayList<>();
+        catalogueExport.export(userId, position, records::add);
+        return records;
+    }
+
+    private Package createPackage(String userId, String reference) {
+        return packageRepository.createPackage(PackageUtils.getPackage().toBuilder().userId(userId).reference(reference).build());
+    }
+
+    private Version createVersion(String userId, String packageRef, String versionId) {
+        return versionRepository.createVersion(
+                VersionUtils.getVersion().toBuilder().userId(userId).packageRef(packageRef).id(versionId).build(),
+                new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})
+        );
+    }
+}
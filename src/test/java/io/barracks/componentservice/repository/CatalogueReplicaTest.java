@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
+public class CatalogueReplicaTest {
+    @Autowired
+    private CatalogueReplica catalogueReplica;
+    @Autowired
+    private PackageRepository packageRepository;
+    @Autowired
+    private VersionRepository versionRepository;
+    @Autowired
+    private MongoOperations mongoOperations;
+    @Autowired
+    private PartitionRouter partitionRouter;
+    @Autowired
+    private BlobStores blobStores;
+    @Autowired
+    private ReadRouting readRouting;
+
+    @Test
+    public void reload_shouldAnswerPackageLookups() {
+        // Given
+        final Package aPackage = packageRepository.createPackage(PackageUtils.getPackage());
+
+        // When
+        catalogueReplica.reload();
+
+        // Then
+        final CatalogueReplica.Snapshot snapshot = catalogueReplica.getSnapshot().get();
+        assertThat(snapshot.getPackage(aPackage.getUserId(), aPackage.getReference())).contains(aPackage);
+        assertThat(snapshot.getPackage(aPackage.getUserId(), UUID.randomUUID().toString())).isEmpty();
+        assertThat(snapshot.getPackage(UUID.randomUUID().toString(), aPackage.getReference())).isEmpty();
+    }
+
+    @Test
+    public void reload_shouldAnswerVersionLookupsAndPagesInCreationOrder() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final List<Version> versions = IntStream.range(0, 5)
+                .mapToObj(index -> VersionUtils.getVersion().toBuilder().userId(userId).packageRef(packageRef).build())
+                .map(version -> versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})))
+                .collect(Collectors.toList());
+
+        // When
+        catalogueReplica.reload();
+
+        // Then
+        final CatalogueReplica.Snapshot snapshot = catalogueReplica.getSnapshot().get();
+        final Version last = versions.get(4);
+        assertThat(snapshot.getVersion(userId, packageRef, last.getId()).map(Version::getId)).contains(last.getId());
+        assertThat(snapshot.getVersion(userId, packageRef, UUID.randomUUID().toString())).isEmpty();
+        final Optional<Page<Version>> page = snapshot.getVersions(userId, packageRef, new PageRequest(1, 2));
+        assertThat(page).isPresent();
+        assertThat(page.get().getTotalElements()).isEqualTo(5);
+        assertThat(page.get().getContent()).extracting(Version::getId)
+                .containsExactly(versions.get(2).getId(), versions.get(3).getId());
+    }
+
+    @Test
+    public void getVersions_withSort_shouldNotAnswer() {
+        // Given
+        catalogueReplica.reload();
+
+        // When
+        final Optional<Page<Version>> page = catalogueReplica.getSnapshot().get()
+                .getVersions(UUID.randomUUID().toString(), UUID.randomUUID().toString(), new PageRequest(0, 10, new Sort("id")));
+
+        // Then
+        assertThat(page).isEmpty();
+    }
+
+    @Test
+    public void reload_whenOverBudget_shouldDropTheCopy() {
+        // Given
+        packageRepository.createPackage(PackageUtils.getPackage());
+        final CatalogueReplica replica = new CatalogueReplica(
+                mongoOperations, partitionRouter, blobStores, readRouting, null, null, false, 500L, 60000L, 1L
+        );
+
+        // When
+        replica.reload();
+
+        // Then
+        assertThat(replica.isOverBudget()).isTrue();
+        assertThat(replica.getSnapshot()).isEmpty();
+    }
+
+    @Test
+    public void forOwner_whenOwnerWroteRecently_shouldNotAnswer() {
+        // Given
+        final Package aPackage = packageRepository.createPackage(PackageUtils.getPackage());
+        catalogueReplica.reload();
+
+        // When
+        final Optional<CatalogueReplica.Snapshot> snapshot = catalogueReplica.forOwner(aPackage.getUserId());
+
+        // Then
+        assertThat(snapshot).isEmpty();
+        assertThat(catalogueReplica.forOwner(UUID.randomUUID().toString())).isPresent();
+    }
+}
@@ -24,6 +24,9 @@
 
 package io.barracks.componentservice.repository;
 
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
 import io.barracks.componentservice.model.Package;
 import io.barracks.componentservice.repository.exception.DuplicatePackageException;
 import io.barracks.componentservice.utils.PackageUtils;
@@ -31,11 +34,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -47,9 +52,12 @@ import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 @RunWith(SpringRunner.class)
 @DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
 public class PackageRepositoryTest {
     @Autowired
     private PackageRepository packageRepository;
+    @Autowired
+    private LookupFilter lookupFilter;
 
     @Test
     public void createPackage_shouldReturnSamePackage() {
@@ -90,6 +98,7 @@ public class PackageRepositoryTest {
         // Given
         final Package aPackage = PackageUtils.getPackage();
         packageRepository.save(aPackage);
+        lookupFilter.refresh();
 
         // When
         final Optional<Package> result = packageRepository.getPackage(aPackage.getUserId(), aPackage.getReference());
@@ -98,6 +107,40 @@ public class PackageRepositoryTest {
         assertThat(result).contains(aPackage);
     }
 
+    @Test
+    public void getPackage_whenPackageWrittenElsewhere_shouldBeFoundOnceFilterRefreshed() {
+        // Given
+        final Package aPackage = PackageUtils.getPackage();
+        packageRepository.save(aPackage);
+        final long rejected = lookupFilter.getRejectedPackageCount();
+
+        // When
+        final Optional<Package> beforeRefresh = packageRepository.getPackage(aPackage.getUserId(), aPackage.getReference());
+        lookupFilter.refresh();
+        final Optional<Package> afterRefresh = packageRepository.getPackage(aPackage.getUserId(), aPackage.getReference());
+
+        // Then
+        assertThat(beforeRefresh).isEmpty();
+        assertThat(lookupFilter.getRejectedPackageCount()).isEqualTo(rejected + 1);
+        assertThat(afterRefresh).contains(aPackage);
+    }
+
+    @Test
+    public void getPackages_afterPackage_shouldListNextPackagesByOwnerAndReference() {
+        // Given
+        final String prefix = UUID.randomUUID().toString();
+        final Package first = Package.builder().userId(prefix + "-1").reference("b").name("first").build();
+        final Package second = Package.builder().userId(prefix + "-1").reference("c").name("second").build();
+        final Package third = Package.builder().userId(prefix + "-2").reference("a").name("third").build();
+        packageRepository.save(Arrays.asList(third, second, first));
+
+        // When
+        final List<Package> result = packageRepository.getPackages(first.getUserId(), first.getReference(), 2);
+
+        // Then
+        assertThat(result).containsExactly(second, third);
+    }
+
     @Test
     public void getPackages_whenNoPackage_shouldReturnEmptyList() {
         // Given
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.ReadPreference;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadRoutingTest {
+    private final ReadRouting readRouting = new ReadRouting(
+            ReadPreference.secondaryPreferred(),
+            ReadPreference.secondary(),
+            ReadPreference.nearest(),
+            60000L
+    );
+
+    @Test
+    public void forLookupAndForList_whenOwnerNeverWrote_shouldReturnConfiguredPreferences() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        final ReadPreference lookup = readRouting.forLookup(userId);
+        final ReadPreference list = readRouting.forList(userId);
+
+        // Then
+        assertThat(lookup).isEqualTo(ReadPreference.secondaryPreferred());
+        assertThat(list).isEqualTo(ReadPreference.secondary());
+        assertThat(readRouting.getChunks()).isEqualTo(ReadPreference.nearest());
+    }
+
+    @Test
+    public void forLookupAndForList_afterRecentWrite_shouldReturnPrimary() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        readRouting.recordWrite(userId);
+
+        // When
+        final ReadPreference lookup = readRouting.forLookup(userId);
+        final ReadPreference list = readRouting.forList(userId);
+
+        // Then
+        assertThat(lookup).isEqualTo(ReadPreference.primary());
+        assertThat(list).isEqualTo(ReadPreference.primary());
+    }
+
+    @Test
+    public void forList_afterWriteOutsideOfWindow_shouldReturnConfiguredPreference_andForgetWrite() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        readRouting.recordWrite(userId, System.currentTimeMillis() - 60000L);
+
+        // When
+        final ReadPreference result = readRouting.forList(userId);
+
+        // Then
+        assertThat(result).isEqualTo(ReadPreference.secondary());
+        assertThat(readRouting.getLastWrite(userId)).isEmpty();
+    }
+
+    @Test
+    public void recordWrite_shouldKeepLatestWrite_andIgnoreFutureTimes() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final long latest = readRouting.recordWrite(userId);
+
+        // When
+        final long afterOlder = readRouting.recordWrite(userId, latest - 10000L);
+        final long afterFuture = readRouting.recordWrite(userId, Long.MAX_VALUE);
+
+        // Then
+        assertThat(afterOlder).isEqualTo(latest);
+        assertThat(afterFuture).isLessThan(Long.MAX_VALUE).isGreaterThanOrEqualTo(latest);
+    }
+
+    @Test
+    public void recordWrite_whenManyOwnersTracked_shouldEvictExpiredWritesOncePerWindow() {
+        // Given
+        final long expired = System.currentTimeMillis() - 120000L;
+        recordWrites(10001, expired);
+
+        // When
+        readRouting.recordWrite(UUID.randomUUID().toString());
+        final int afterEviction = readRouting.getTrackedOwnerCount();
+        recordWrites(10001, expired);
+
+        // Then
+        assertThat(afterEviction).isEqualTo(1);
+        assertThat(readRouting.getTrackedOwnerCount()).isEqualTo(10002);
+    }
+
+    private void recordWrites(int owners, long writtenAt) {
+        for (int i = 0; i < owners; i++) {
+            readRouting.recordWrite(UUID.randomUUID().toString(), writtenAt);
+        }
+    }
+}
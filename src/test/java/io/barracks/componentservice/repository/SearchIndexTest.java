@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.SearchHit;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
+public class SearchIndexTest {
+    @Autowired
+    private SearchIndex searchIndex;
+    @Autowired
+    private PackageRepository packageRepository;
+    @Autowired
+    private VersionRepository versionRepository;
+    @Autowired
+    private MongoOperations mongoOperations;
+
+    @Test
+    public void createPackage_shouldBeSearchableByWordPrefix() {
+        // Given
+        final Package aPackage = packageRepository.createPackage(PackageUtils.getPackage().toBuilder()
+                .name("Bootloader firmware")
+                .description("Signed image")
+                .build());
+
+        // When
+        final List<SearchHit> hits = searchIndex.search(aPackage.getUserId(), "boot SIGN", null, 10);
+
+        // Then
+        assertThat(hits).containsExactly(SearchHit.builder()
+                .type(SearchHit.Type.PACKAGE)
+                .packageRef(aPackage.getReference())
+                .name(aPackage.getName())
+                .description(aPackage.getDescription())
+                .score(SearchIndex.NAME_WEIGHT + SearchIndex.DESCRIPTION_WEIGHT)
+                .build());
+        assertThat(searchIndex.search(aPackage.getUserId(), "boot unsigned", null, 10)).isEmpty();
+        assertThat(searchIndex.search(UUID.randomUUID().toString(), "boot", null, 10)).isEmpty();
+    }
+
+    @Test
+    public void search_shouldRankNameAndWholeWordMatchesFirst() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Version inDescription = createVersion(userId, packageRef, "Release 1", "Radio driver");
+        final Version prefixOfName = createVersion(userId, packageRef, "Radios", "Release 2");
+        final Version inName = createVersion(userId, packageRef, "Radio", "Release 3");
+
+        // When
+        final List<SearchHit> hits = searchIndex.search(userId, "radio", SearchHit.Type.VERSION, 10);
+
+        // Then
+        assertThat(hits).extracting(SearchHit::getVersionId, SearchHit::getScore).containsExactly(
+                tuple(inName.getId(), (double) SearchIndex.NAME_WEIGHT * SearchIndex.WORD_BOOST),
+                tuple(prefixOfName.getId(), (double) SearchIndex.NAME_WEIGHT),
+                tuple(inDescription.getId(), (double) SearchIndex.DESCRIPTION_WEIGHT * SearchIndex.WORD_BOOST)
+        );
+        assertThat(searchIndex.search(userId, "radio", SearchHit.Type.VERSION, 1)).hasSize(1);
+        assertThat(searchIndex.search(userId, "radio", SearchHit.Type.PACKAGE, 10)).isEmpty();
+    }
+
+    @Test
+    public void deleteVersion_shouldNoLongerBeSearchable() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Version deleted = createVersion(userId, packageRef, "Modem firmware", null);
+        final Version kept = createVersion(userId, packageRef, "Modem driver", null);
+
+        // When
+        versionRepository.deleteVersion(userId, packageRef, deleted.getId());
+
+        // Then
+        assertThat(searchIndex.search(userId, "modem", null, 10))
+                .extracting(SearchHit::getVersionId)
+                .containsExactly(kept.getId());
+        assertThat(searchIndex.search(userId, "firmware", null, 10)).isEmpty();
+    }
+
+    @Test
+    public void rebuild_shouldIndexDocumentsWrittenByOtherInstances() {
+        // Given
+        final Package aPackage = PackageUtils.getPackage().toBuilder().name("Sensor calibration").build();
+        mongoOperations.insert(aPackage);
+        assertThat(searchIndex.search(aPackage.getUserId(), "calibration", null, 10)).isEmpty();
+
+        // When
+        searchIndex.rebuild();
+
+        // Then
+        assertThat(searchIndex.search(aPackage.getUserId(), "calibration", null, 10))
+                .extracting(SearchHit::getPackageRef)
+                .containsExactly(aPackage.getReference());
+    }
+
+    @Test
+    public void tokenize_shouldSplitOnPunctuationAndLowerCase() {
+        // When
+        final List<String> words = SearchIndex.tokenize("  Über-Firmware_v2.1 ");
+
+        // Then
+        assertThat(words).containsExactly("über", "firmware", "v2", "1");
+        assertThat(SearchIndex.tokenize(null)).isEmpty();
+    }
+
+    private Version createVersion(String userId, String packageRef, String name, String description) {
+        return versionRepository.createVersion(
+                VersionUtils.getVersion().toBuilder().userId(userId).packageRef(packageRef).name(name).description(description).build(),
+                new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})
+        );
+    }
+}
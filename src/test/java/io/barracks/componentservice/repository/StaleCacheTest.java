@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import com.mongodb.MongoTimeoutException;
+import io.barracks.componentservice.config.CircuitBreaker;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.utils.PackageUtils;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class StaleCacheTest {
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("mongo", 5, 10000L, 1, MongoTimeoutException.class::isInstance);
+    private final StaleCache<Package> staleCache = new StaleCache<>(2, 60000L, (aPackage, cachedAt) -> aPackage.toBuilder().cachedAt(cachedAt).build());
+
+    @Test
+    public void fallback_whenUnavailableAndKnown_shouldReturnStaleValue() {
+        // Given
+        final Package aPackage = PackageUtils.getPackage();
+        staleCache.update("key", Optional.of(aPackage));
+
+        // When
+        final Optional<Package> result = staleCache.fallback("key", new MongoTimeoutException("timeout"), circuitBreaker);
+
+        // Then
+        assertThat(result).contains(aPackage);
+        assertThat(result.get().getCachedAt()).isNotNull();
+        assertThat(staleCache.getServedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void fallback_whenErrorIsNotUnavailability_shouldRethrowError() {
+        // Given
+        staleCache.update("key", Optional.of(PackageUtils.getPackage()));
+
+        // Then When
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> staleCache.fallback("key", new IllegalStateException(), circuitBreaker));
+    }
+
+    @Test
+    public void fallback_whenValueRemoved_shouldRethrowError() {
+        // Given
+        staleCache.update("key", Optional.of(PackageUtils.getPackage()));
+        staleCache.update("key", Optional.empty());
+
+        // Then When
+        assertThatExceptionOfType(MongoTimeoutException.class)
+                .isThrownBy(() -> staleCache.fallback("key", new MongoTimeoutException("timeout"), circuitBreaker));
+    }
+
+    @Test
+    public void update_whenFull_shouldEvictLeastRecentlyUsedEntry() {
+        // Given
+        staleCache.update("first", Optional.of(PackageUtils.getPackage()));
+        staleCache.update("second", Optional.of(PackageUtils.getPackage()));
+        staleCache.fallback("first", new MongoTimeoutException("timeout"), circuitBreaker);
+
+        // When
+        staleCache.update("third", Optional.of(PackageUtils.getPackage()));
+
+        // Then
+        assertThat(staleCache.size()).isEqualTo(2);
+        assertThat(staleCache.fallback("first", new MongoTimeoutException("timeout"), circuitBreaker)).isPresent();
+        assertThatExceptionOfType(MongoTimeoutException.class)
+                .isThrownBy(() -> staleCache.fallback("second", new MongoTimeoutException("timeout"), circuitBreaker));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.StorageUsage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
+public class StorageUsageRepositoryTest {
+    @Autowired
+    private StorageUsageRepository storageUsageRepository;
+
+    @Test
+    public void recordChange_shouldIncrementPackageAndOwner() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        storageUsageRepository.recordChange(userId, "first", 1L, 100L);
+        storageUsageRepository.recordChange(userId, "second", 1L, 20L);
+        storageUsageRepository.recordChange(userId, "first", -1L, -100L);
+        storageUsageRepository.recordChange(userId, "first", 1L, 3L);
+
+        // Then
+        assertThat(storageUsageRepository.findByUserIdAndPackageRefIsNull(userId))
+                .hasValueSatisfying(usage -> assertThat(usage.getTotalBytes()).isEqualTo(23L));
+        assertThat(storageUsageRepository.findByUserIdAndPackageRefIsNotNullOrderByPackageRef(userId))
+                .extracting(StorageUsage::getPackageRef, StorageUsage::getVersionCount, StorageUsage::getTotalBytes)
+                .containsExactly(tuple("first", 1L, 3L), tuple("second", 1L, 20L));
+    }
+
+    @Test
+    public void reconcile_whenCountersUnchanged_shouldReplaceThem() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        storageUsageRepository.recordChange(userId, "package", 2L, 10L);
+
+        // When
+        final boolean result = storageUsageRepository.reconcile(userId, "package", 2L, 10L, 3L, 12L, new Date(1000L));
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(storageUsageRepository.findByUserIdAndPackageRef(userId, "package"))
+                .hasValueSatisfying(usage -> {
+                    assertThat(usage.getVersionCount()).isEqualTo(3L);
+                    assertThat(usage.getTotalBytes()).isEqualTo(12L);
+                    assertThat(usage.getReconciledAt()).isEqualTo(new Date(1000L));
+                });
+    }
+
+    @Test
+    public void reconcile_whenCountersChanged_shouldKeepThem() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        storageUsageRepository.recordChange(userId, "package", 2L, 10L);
+
+        // When
+        final boolean result = storageUsageRepository.reconcile(userId, "package", 0L, 0L, 3L, 12L, new Date());
+
+        // Then
+        assertThat(result).isFalse();
+        assertThat(storageUsageRepository.findByUserIdAndPackageRef(userId, "package"))
+                .hasValueSatisfying(usage -> assertThat(usage.getVersionCount()).isEqualTo(2L));
+    }
+
+    @Test
+    public void reconcile_whenNoCounters_shouldCreateThem() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        final boolean result = storageUsageRepository.reconcile(userId, null, 0L, 0L, 5L, 50L, new Date());
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(storageUsageRepository.findByUserIdAndPackageRefIsNull(userId))
+                .hasValueSatisfying(usage -> assertThat(usage.getTotalBytes()).isEqualTo(50L));
+    }
+}
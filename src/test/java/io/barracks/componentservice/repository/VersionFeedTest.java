@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository;
+
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionEvent;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
+public class VersionFeedTest {
+    @Autowired
+    private VersionRepository versionRepository;
+    @Autowired
+    private PartitionRouter partitionRouter;
+    @Autowired
+    private BlobStores blobStores;
+
+    private VersionFeed versionFeed;
+
+    @Before
+    public void setUp() {
+        versionFeed = new VersionFeed(partitionRouter, blobStores, null, Runnable::run, 1000L, 15000L, 100);
+        versionFeed.poll();
+    }
+
+    @Test
+    public void poll_whenVersionCreated_shouldSendItToTheSubscribersOfItsOwnerAndPackage() {
+        // Given
+        final Version version = createVersion(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        final List<VersionEvent> ownerEvents = new ArrayList<>();
+        final List<VersionEvent> packageEvents = new ArrayList<>();
+        final List<VersionEvent> otherEvents = new ArrayList<>();
+        versionFeed.subscribe(version.getUserId(), null, null, new RecordingListener(ownerEvents));
+        versionFeed.subscribe(version.getUserId(), version.getPackageRef(), null, new RecordingListener(packageEvents));
+        versionFeed.subscribe(version.getUserId(), UUID.randomUUID().toString(), null, new RecordingListener(otherEvents));
+
+        // When
+        versionFeed.poll();
+        versionFeed.poll();
+
+        // Then
+        assertThat(ownerEvents).extracting(event -> event.getVersion().getId()).containsExactly(version.getId());
+        assertThat(packageEvents).extracting(event -> event.getVersion().getId()).containsExactly(version.getId());
+        assertThat(otherEvents).isEmpty();
+        assertThat(versionFeed.getPublishedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void subscribe_withLastEventId_shouldReplayTheVersionsCreatedAfterIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final List<VersionEvent> first = new ArrayList<>();
+        versionFeed.subscribe(userId, packageRef, null, new RecordingListener(first)).cancel();
+        final Version seen = createVersion(userId, packageRef);
+        final Version missed1 = createVersion(userId, packageRef);
+        final Version missed2 = createVersion(userId, packageRef);
+        final String lastEventId = versionFeed.getEvents(userId, packageRef, "000000000000000000000000", 1).get(0).getId();
+        final List<VersionEvent> events = new ArrayList<>();
+
+        // When
+        final VersionFeed.Subscription subscription = versionFeed.subscribe(userId, packageRef, lastEventId, new RecordingListener(events));
+        versionFeed.poll();
+
+        // Then
+        assertThat(first).isEmpty();
+        assertThat(events).extracting(event -> event.getVersion().getId()).containsExactly(missed1.getId(), missed2.getId());
+        assertThat(seen.getId()).isNotIn(missed1.getId(), missed2.getId());
+        assertThat(versionFeed.getSubscriberCount()).isEqualTo(1L);
+        subscription.cancel();
+        assertThat(versionFeed.getSubscriberCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void subscribe_whenFurtherBehindThanPendingEvents_shouldReplayAsManyThenDrop() {
+        // Given
+        final VersionFeed smallFeed = new VersionFeed(partitionRouter, blobStores, null, Runnable::run, 1000L, 15000L, 2);
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        createVersion(userId, packageRef);
+        final Version missed1 = createVersion(userId, packageRef);
+        final Version missed2 = createVersion(userId, packageRef);
+        createVersion(userId, packageRef);
+        final String lastEventId = smallFeed.getEvents(userId, packageRef, "000000000000000000000000", 1).get(0).getId();
+        final List<VersionEvent> events = new ArrayList<>();
+        final AtomicBoolean dropped = new AtomicBoolean();
+
+        // When
+        smallFeed.subscribe(userId, packageRef, lastEventId, new RecordingListener(events) {
+            @Override
+            public void onDropped() {
+                dropped.set(true);
+            }
+        });
+
+        // Then
+        assertThat(events).extracting(event -> event.getVersion().getId()).containsExactly(missed1.getId(), missed2.getId());
+        assertThat(dropped.get()).isTrue();
+        assertThat(smallFeed.getDroppedCount()).isEqualTo(1L);
+        assertThat(smallFeed.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    public void poll_whenListenerFails_shouldCancelItsSubscription() {
+        // Given
+        final Version version = createVersion(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        versionFeed.subscribe(version.getUserId(), null, null, new VersionFeed.Listener() {
+            @Override
+            public void onEvent(VersionEvent event) throws Exception {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onHeartbeat() {
+            }
+        });
+
+        // When
+        versionFeed.poll();
+
+        // Then
+        assertThat(versionFeed.getSubscriberCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void poll_whenSubscriberReadsTooSlowly_shouldDropItWithoutWaitingForIt() {
+        // Given
+        final List<Runnable> sends = new ArrayList<>();
+        final VersionFeed slowFeed = new VersionFeed(partitionRouter, blobStores, null, sends::add, 1000L, 15000L, 2);
+        slowFeed.poll();
+        final String userId = UUID.randomUUID().toString();
+        final AtomicBoolean dropped = new AtomicBoolean();
+        slowFeed.subscribe(userId, null, null, new VersionFeed.Listener() {
+            @Override
+            public void onEvent(VersionEvent event) {
+            }
+
+            @Override
+            public void onHeartbeat() {
+            }
+
+            @Override
+            public void onDropped() {
+                dropped.set(true);
+            }
+        });
+        IntStream.range(0, 3).forEach(index -> createVersion(userId, UUID.randomUUID().toString()));
+
+        // When
+        slowFeed.poll();
+
+        // Then
+        assertThat(sends).hasSize(1);
+        assertThat(dropped.get()).isTrue();
+        assertThat(slowFeed.getDroppedCount()).isEqualTo(1L);
+        assertThat(slowFeed.getSubscriberCount()).isZero();
+    }
+
+    private Version createVersion(String userId, String packageRef) {
+        final Version version = VersionUtils.getVersion().toBuilder().userId(userId).packageRef(packageRef).build();
+        return versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+    }
+
+    private static class RecordingListener implements VersionFeed.Listener {
+        private final List<VersionEvent> events;
+
+        private RecordingListener(List<VersionEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onEvent(VersionEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onHeartbeat() {
+        }
+    }
+}
@@ -24,37 +24,79 @@
 
 package io.barracks.componentservice.repository;
 
+import com.mongodb.DBObject;
+import io.barracks.componentservice.config.BlobStoreConfig;
+import io.barracks.componentservice.config.MongoBulkheadConfig;
+import io.barracks.componentservice.config.PartitionConfig;
+import io.barracks.componentservice.model.DownloadCount;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.MetadataOperator;
 import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.model.StorageUsage;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.model.VersionField;
+import io.barracks.componentservice.model.VersionKey;
+import io.barracks.componentservice.repository.blob.BlobReference;
+import io.barracks.componentservice.repository.blob.BlobStores;
+import io.barracks.componentservice.repository.blob.StoredBlob;
 import io.barracks.componentservice.repository.exception.DuplicateVersionException;
+import io.barracks.componentservice.repository.exception.LegacyBlobCopyException;
+import io.barracks.componentservice.repository.partition.Partition;
+import io.barracks.componentservice.repository.partition.PartitionRouter;
 import io.barracks.componentservice.utils.PackageUtils;
 import io.barracks.componentservice.utils.VersionUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @RunWith(SpringRunner.class)
 @DataMongoTest
+@Import({MongoBulkheadConfig.class, PartitionConfig.class, BlobStoreConfig.class})
+@TestPropertySource(properties = "io.barracks.componentservice.partitioning.partitions.large.bucket=versions-large")
 public class VersionRepositoryTest {
 
     @Autowired
     private VersionRepository versionRepository;
+    @Autowired
+    private BlobStores blobStores;
+    @Autowired
+    private MongoOperations mongoOperations;
+    @Autowired
+    private PartitionRouter partitionRouter;
 
     @Test
     public void createVersion_shouldReturnIdenticalDocuments_exceptForIdAndLengthAndMd5() throws Exception {
@@ -70,7 +112,7 @@ public class VersionRepositoryTest {
         final Version result = versionRepository.createVersion(version, inputStream);
 
         // Then
-        assertThat(result).hasNoNullFieldsOrProperties().isEqualTo(expected);
+        assertThat(result).hasNoNullFieldsOrPropertiesExcept("cachedAt").isEqualTo(expected);
     }
 
     @Test
@@ -110,9 +152,320 @@ public class VersionRepositoryTest {
         final Version result = versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId()).orElseThrow(() -> new RuntimeException("Document should not be null"));
 
         // Then
-        assertThat(result).hasNoNullFieldsOrProperties();
+        assertThat(result).hasNoNullFieldsOrPropertiesExcept("cachedAt");
         assertThat(result).isEqualTo(expected);
-        assertThat(result.getInputStream()).isNotNull();
+        assertThat(StreamUtils.copyToByteArray(result.getContent().open())).containsExactly(new byte[]{'a', 'b', 'c'});
+        assertThat(StreamUtils.copyToByteArray(result.getContent().open(1))).containsExactly(new byte[]{'b', 'c'});
+    }
+
+    @Test
+    public void getVersion_withNestedMetadata_shouldReturnMetadataAsStored() throws Exception {
+        // Given
+        final Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("channel", "beta");
+        nested.put("targets", Arrays.asList("a", 2, true, null));
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("release", nested);
+        metadata.put("revision", 3L);
+        final Version version = VersionUtils.getVersion().toBuilder().metadata(metadata).build();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final Version result = versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId()).get();
+
+        // Then
+        assertThat(result.getMetadata()).isEqualTo(metadata);
+        assertThat(new ArrayList<>(result.getMetadata().keySet())).containsExactly("release", "revision");
+    }
+
+    @Test
+    public void copyVersion_shouldCreateVersionSharingBlobOfSource() throws Exception {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version created = versionRepository.createVersion(source, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final BlobReference blob = getBlob(source);
+        final String targetRef = UUID.randomUUID().toString();
+
+        // When
+        final Optional<Version> result = versionRepository.copyVersion(
+                source.getPackageRef(),
+                source.getId(),
+                Version.builder().userId(source.getUserId()).packageRef(targetRef).build()
+        );
+
+        // Then
+        final Version expected = created.toBuilder().packageRef(targetRef).build();
+        assertThat(result).contains(expected);
+        assertThat(versionRepository.getVersion(source.getUserId(), targetRef, source.getId())).contains(expected);
+        assertThat(StreamUtils.copyToByteArray(result.get().getContent().open())).containsExactly(new byte[]{'a', 'b', 'c'});
+        assertThat(versionRepository.countBlobReferences(blob.getStore(), blob.getId())).isEqualTo(2L);
+    }
+
+    @Test
+    public void copyVersion_withGivenFields_shouldReplaceFieldsOfSource() throws Exception {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        final Version created = versionRepository.createVersion(source, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final Version copy = Version.builder()
+                .userId(source.getUserId())
+                .packageRef(UUID.randomUUID().toString())
+                .id("1.0.0")
+                .name("Release 1.0.0")
+                .metadata(Collections.singletonMap("channel", "production"))
+                .build();
+
+        // When
+        final Optional<Version> result = versionRepository.copyVersion(source.getPackageRef(), source.getId(), copy);
+
+        // Then
+        assertThat(result).contains(created.toBuilder()
+                .packageRef(copy.getPackageRef())
+                .id(copy.getId())
+                .name(copy.getName())
+                .metadata(copy.getMetadata())
+                .build());
+    }
+
+    @Test
+    public void copyVersion_whenSourceDoesNotExist_shouldReturnEmpty() throws Exception {
+        // Given
+        final Version copy = Version.builder().userId(UUID.randomUUID().toString()).packageRef(UUID.randomUUID().toString()).build();
+
+        // When
+        final Optional<Version> result = versionRepository.copyVersion(UUID.randomUUID().toString(), "1.0.0", copy);
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void copyVersion_whenTargetExists_shouldThrowException() throws Exception {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        versionRepository.createVersion(source, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final Version target = source.toBuilder().packageRef(UUID.randomUUID().toString()).build();
+        versionRepository.createVersion(target, new ByteArrayInputStream(new byte[]{'d', 'e', 'f'}));
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(target.getPackageRef()).build();
+
+        // Then When
+        assertThatExceptionOfType(DuplicateVersionException.class).isThrownBy(() -> versionRepository.copyVersion(source.getPackageRef(), source.getId(), copy));
+    }
+
+    @Test
+    public void copyVersion_whenSourceIsInLegacyBucket_shouldThrowException() throws Exception {
+        // Given
+        final Version source = VersionUtils.getVersion();
+        versionRepository.createVersion(source, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        mongoOperations.updateFirst(
+                query(where("metadata.versionId").is(source.getId())),
+                new Update().unset("metadata.blobStore").unset("metadata.blobId"),
+                "versions.files"
+        );
+        final Version copy = Version.builder().userId(source.getUserId()).packageRef(UUID.randomUUID().toString()).build();
+
+        // Then When
+        assertThatExceptionOfType(LegacyBlobCopyException.class).isThrownBy(() -> versionRepository.copyVersion(source.getPackageRef(), source.getId(), copy));
+    }
+
+    @Test
+    public void getExpiredVersions_shouldLeaveOutLatestRecentAndReleasedVersions() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Version released = createVersionUploadedAt(userId, packageRef, new Date(1000L), Collections.singletonMap("released", true));
+        final Version oldest = createVersionUploadedAt(userId, packageRef, new Date(2000L), Collections.emptyMap());
+        final Version old = createVersionUploadedAt(userId, packageRef, new Date(3000L), Collections.singletonMap("released", false));
+        createVersionUploadedAt(userId, packageRef, new Date(4000L), Collections.emptyMap());
+        createVersionUploadedAt(userId, packageRef, new Date(5000L), Collections.emptyMap());
+
+        // When
+        final List<Version> keepingLast = versionRepository.getExpiredVersions(userId, packageRef, 2, null, "released", 10);
+        final List<Version> keepingRecent = versionRepository.getExpiredVersions(userId, packageRef, 2, new Date(3000L), "released", 10);
+        final List<Version> withoutReleases = versionRepository.getExpiredVersions(userId, packageRef, 2, null, null, 2);
+
+        // Then
+        assertThat(keepingLast).extracting(Version::getId).containsExactly(oldest.getId(), old.getId());
+        assertThat(keepingRecent).extracting(Version::getId).containsExactly(oldest.getId());
+        assertThat(withoutReleases).extracting(Version::getId).containsExactly(released.getId(), oldest.getId());
+    }
+
+    @Test
+    public void getExpiredVersions_whenPackageHasFewerVersionsThanKept_shouldReturnNone() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        createVersionUploadedAt(userId, packageRef, new Date(1000L), Collections.emptyMap());
+
+        // When
+        final List<Version> result = versionRepository.getExpiredVersions(userId, packageRef, 2, new Date(), "released", 10);
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void deleteVersion_shouldRemoveVersionAndReturnItsBlob() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final BlobReference blob = getBlob(version);
+
+        // When
+        final List<BlobReference> result = versionRepository.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).containsExactly(blob);
+        assertThat(blob.getLength()).isEqualTo(3L);
+        assertThat(versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId())).isEmpty();
+        assertThat(versionRepository.countBlobReferences(blob.getStore(), blob.getId())).isZero();
+        assertThat(blobStores.get(blob.getStore()).get().exists(blob.getId())).isTrue();
+    }
+
+    @Test
+    public void deleteVersion_whenVersionDoesNotExist_shouldReturnNoBlob() {
+        // When
+        final List<BlobReference> result = versionRepository.deleteVersion(UUID.randomUUID().toString(), UUID.randomUUID().toString(), "1.0.0");
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void deletePart_shouldDeleteChunksOfGridFsBlobInSteps() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[600 * 1024]));
+        final BlobReference blob = getBlob(version);
+        versionRepository.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // When
+        final boolean first = blobStores.get(blob.getStore()).get().deletePart(blob.getId(), 256 * 1024);
+        final boolean second = blobStores.get(blob.getStore()).get().deletePart(blob.getId(), 1024 * 1024);
+
+        // Then
+        assertThat(first).isFalse();
+        assertThat(second).isTrue();
+        assertThat(blobStores.get(blob.getStore()).get().exists(blob.getId())).isFalse();
+    }
+
+    @Test
+    public void updateVersion_atCurrentRevision_shouldReplaceGivenFieldsAndKeepBinary() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final Version created = versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final BlobReference blob = getBlob(version);
+        final Version changes = Version.builder()
+                .userId(version.getUserId())
+                .packageRef(version.getPackageRef())
+                .id(version.getId())
+                .description("Fixed description")
+                .metadata(Collections.singletonMap("critical", true))
+                .build();
+
+        // When
+        final Optional<Version> result = versionRepository.updateVersion(changes, 0L);
+
+        // Then
+        assertThat(result).contains(created.toBuilder()
+                .description(changes.getDescription())
+                .metadata(changes.getMetadata())
+                .revision(1L)
+                .build());
+        assertThat(versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId())).isEqualTo(result);
+        assertThat(getBlob(version)).isEqualTo(blob);
+    }
+
+    @Test
+    public void updateVersion_atPreviousRevision_shouldLeaveVersionUnchanged() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final Version first = versionRepository.updateVersion(version.toBuilder().name("First fix").build(), 0L).get();
+
+        // When
+        final Optional<Version> result = versionRepository.updateVersion(version.toBuilder().name("Second fix").build(), 0L);
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId())).contains(first);
+    }
+
+    @Test
+    public void updateVersion_withoutRevision_shouldUpdateLatestRevision() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.updateVersion(version.toBuilder().name("First fix").build(), null);
+
+        // When
+        final Optional<Version> result = versionRepository.updateVersion(version.toBuilder().name("Second fix").build(), null);
+
+        // Then
+        assertThat(result).hasValueSatisfying(updated -> {
+            assertThat(updated.getName()).isEqualTo("Second fix");
+            assertThat(updated.getRevision()).isEqualTo(2L);
+        });
+    }
+
+    @Test
+    public void updateVersion_whenVersionDoesNotExist_shouldReturnEmpty() throws Exception {
+        // When
+        final Optional<Version> result = versionRepository.updateVersion(VersionUtils.getVersion(), null);
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void createVersion_shouldStoreBinaryInWriteStore() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final List<BlobReference> result = versionRepository.getBlobs(blobStores.getWriteStore().getName(), null, Integer.MAX_VALUE);
+
+        // Then
+        final BlobReference blob = getBlob(version);
+        assertThat(result).contains(blob);
+        assertThat(blob.getMd5()).isEqualTo("900150983cd24fb0d6963f7d28e17f72");
+        assertThat(versionRepository.countBlobReferences(blob.getStore(), blob.getId())).isEqualTo(1L);
+    }
+
+    @Test
+    public void moveBlob_whenVersionStillUsesBlob_shouldReadVersionFromCopy() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final BlobReference blob = getBlob(version);
+        final StoredBlob copy = blobStores.getWriteStore().store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final boolean result = versionRepository.moveBlob(blob, copy);
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(getBlob(version).getId()).isEqualTo(copy.getId());
+        assertThat(versionRepository.countBlobReferences(blob.getStore(), blob.getId())).isZero();
+        assertThat(versionRepository.countBlobReferences(copy.getStore(), copy.getId())).isEqualTo(1);
+    }
+
+    @Test
+    public void moveBlob_whenVersionChangedBlob_shouldNotUpdateVersion() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final BlobReference blob = getBlob(version);
+        final StoredBlob first = blobStores.getWriteStore().store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final StoredBlob second = blobStores.getWriteStore().store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.moveBlob(blob, first);
+
+        // When
+        final boolean result = versionRepository.moveBlob(blob, second);
+
+        // Then
+        assertThat(result).isFalse();
+        assertThat(getBlob(version).getId()).isEqualTo(first.getId());
     }
 
     @Test
@@ -144,6 +497,30 @@ public class VersionRepositoryTest {
         assertThat(result).containsOnlyElementsOf(expected);
     }
 
+    @Test
+    public void getVersionFields_shouldReturnRequestedFieldsOnly() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10, Sort.Direction.ASC, "metadata.versionId");
+        final List<Version> created = getVersions(userId, packageRef).stream()
+                .map(version -> versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})))
+                .sorted(Comparator.comparing(Version::getId))
+                .collect(Collectors.toList());
+
+        // When
+        final Page<Map<String, Object>> result = versionRepository.getVersionFields(userId, packageRef, Arrays.asList(VersionField.ID, VersionField.LENGTH), pageable);
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(created.size());
+        assertThat(result.getContent()).hasSameSizeAs(created);
+        for (int i = 0; i < created.size(); i++) {
+            assertThat(result.getContent().get(i)).containsOnlyKeys("id", "length")
+                    .containsEntry("id", created.get(i).getId())
+                    .containsEntry("length", 3L);
+        }
+    }
+
     @Test
     public void getVersions_whenVersionsForMoreThanOneUser_shouldReturnVersionsOfCurrentUserOnly() {
         // Given
@@ -227,12 +604,377 @@ public class VersionRepositoryTest {
                 .isSubsetOf(expected);
     }
 
+    @Test
+    public void getDownloadCount_whenNoDownloadWritten_shouldReturnZeroCounts() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final Optional<DownloadCount> result = versionRepository.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).hasValueSatisfying(count -> {
+            assertThat(count.getCompleted()).isZero();
+            assertThat(count.getAborted()).isZero();
+        });
+    }
+
+    @Test
+    public void getDownloadCount_whenVersionDoesNotExist_shouldReturnEmpty() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+
+        // When
+        final Optional<DownloadCount> result = versionRepository.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void incrementDownloadCounts_shouldAddCountsToEachVersion() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final Version other = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.createVersion(other, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.incrementDownloadCounts(Collections.singletonMap(VersionKey.of(version), DownloadCount.builder().completed(3L).aborted(1L).build()), 0.0, new Date());
+        final Map<VersionKey, DownloadCount> increments = new HashMap<>();
+        increments.put(VersionKey.of(version), DownloadCount.builder().completed(2L).build());
+        increments.put(VersionKey.of(other), DownloadCount.builder().aborted(5L).build());
+
+        // When
+        final Set<VersionKey> written = versionRepository.incrementDownloadCounts(increments, 0.0, new Date());
+
+        // Then
+        assertThat(written).containsOnly(VersionKey.of(version), VersionKey.of(other));
+        assertThat(versionRepository.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId()))
+                .hasValueSatisfying(count -> {
+                    assertThat(count.getCompleted()).isEqualTo(5L);
+                    assertThat(count.getAborted()).isEqualTo(1L);
+                });
+        assertThat(versionRepository.getDownloadCount(other.getUserId(), other.getPackageRef(), other.getId()))
+                .hasValueSatisfying(count -> {
+                    assertThat(count.getCompleted()).isZero();
+                    assertThat(count.getAborted()).isEqualTo(5L);
+                });
+    }
+
+    @Test
+    public void getColdBlobs_shouldReturnVersionsUnderAccessScoreOnly() {
+        // Given
+        final Version popular = VersionUtils.getVersion();
+        final Version unpopular = VersionUtils.getVersion();
+        versionRepository.createVersion(popular, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.createVersion(unpopular, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.incrementDownloadCounts(Collections.singletonMap(VersionKey.of(popular), DownloadCount.builder().completed(10L).build()), 1.0, new Date());
+        versionRepository.incrementDownloadCounts(Collections.singletonMap(VersionKey.of(unpopular), DownloadCount.builder().aborted(1L).build()), 1.0, new Date());
+
+        // When
+        final List<BlobReference> result = versionRepository.getColdBlobs(
+                blobStores.getWriteStore().getName(),
+                5.0,
+                new Date(System.currentTimeMillis() + 60000),
+                Integer.MAX_VALUE
+        );
+
+        // Then
+        assertThat(result).contains(getBlob(unpopular)).doesNotContain(getBlob(popular));
+    }
+
+    @Test
+    public void getColdBlobs_whenVersionsUploadedAfterDate_shouldReturnEmpty() {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final List<BlobReference> result = versionRepository.getColdBlobs(
+                blobStores.getWriteStore().getName(),
+                5.0,
+                new Date(System.currentTimeMillis() - 60000),
+                Integer.MAX_VALUE
+        );
+
+        // Then
+        assertThat(result).doesNotContain(getBlob(version));
+    }
+
+    @Test
+    public void createVersion_whenOwnerRoutedToPartition_shouldStoreVersionAndBinaryInPartition() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", null));
+
+        // When
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final Optional<Version> result = versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(StreamUtils.copyToByteArray(result.get().getContent().open())).containsExactly(new byte[]{'a', 'b', 'c'});
+        assertThat(result.get().getContent().getStore()).contains("gridfs:large");
+        assertThat(mongoOperations.exists(query(where("metadata.versionId").is(version.getId())), "versions-large.files")).isTrue();
+        assertThat(mongoOperations.exists(query(where("metadata.versionId").is(version.getId())), "versions.files")).isFalse();
+    }
+
+    @Test
+    public void getVersion_whenVersionOnlyInPreviousPartition_shouldReturnVersion() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", Partition.DEFAULT));
+
+        // When
+        final Optional<Version> result = versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(versionRepository.getVersions(version.getUserId(), version.getPackageRef(), new PageRequest(0, 10))).containsExactly(result.get());
+    }
+
+    @Test
+    public void getVersions_whenOwnerReadFromPreviousPartition_shouldListVersionsOfBothPartitionsOnce() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Version copied = versionRepository.createVersion(getVersion(userId, packageRef), new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        versionRepository.copyVersions(userId, Partition.DEFAULT, "large");
+        final Version notCopied = versionRepository.createVersion(getVersion(userId, packageRef), new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        partitionRouter.saveRoute(getRoute(userId, "large", Partition.DEFAULT));
+        final Version created = versionRepository.createVersion(getVersion(userId, packageRef), new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final Page<Version> result = versionRepository.getVersions(userId, packageRef, new PageRequest(0, 2, new Sort(Sort.Direction.ASC, "metadata.versionId")));
+
+        // Then
+        final List<Version> expected = Arrays.asList(copied, notCopied, created);
+        expected.sort(Comparator.comparing(Version::getId));
+        assertThat(result.getContent()).containsExactly(expected.get(0), expected.get(1));
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        assertThat(versionRepository.countVersions(userId, packageRef, 10)).isEqualTo(3);
+        assertThat(versionRepository.measureUsage(userId, packageRef).getVersionCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void incrementDownloadCounts_whenVersionOnlyInPreviousPartition_shouldUpdatePreviousPartition() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", Partition.DEFAULT));
+
+        // When
+        versionRepository.incrementDownloadCounts(Collections.singletonMap(VersionKey.of(version), DownloadCount.builder().completed(2L).build()), 0.0, new Date());
+
+        // Then
+        assertThat(versionRepository.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId()))
+                .hasValueSatisfying(count -> assertThat(count.getCompleted()).isEqualTo(2L));
+    }
+
+    @Test
+    public void incrementDownloadCounts_whenOwnerBeingCopied_shouldUpdateCopyInNextPartition() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        partitionRouter.saveRoute(PartitionRoute.builder().userId(version.getUserId()).partition(Partition.DEFAULT).next("large").build());
+        versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+
+        // When
+        versionRepository.incrementDownloadCounts(Collections.singletonMap(VersionKey.of(version), DownloadCount.builder().aborted(1L).build()), 0.0, new Date());
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", Partition.DEFAULT));
+
+        // Then
+        assertThat(versionRepository.getDownloadCount(version.getUserId(), version.getPackageRef(), version.getId()))
+                .hasValueSatisfying(count -> assertThat(count.getAborted()).isEqualTo(1L));
+    }
+
+    @Test
+    public void deleteVersion_whenOwnerBeingCopied_shouldDeleteCopyInNextPartition() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        partitionRouter.saveRoute(PartitionRoute.builder().userId(version.getUserId()).partition(Partition.DEFAULT).next("large").build());
+        versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+
+        // When
+        final List<BlobReference> blobs = versionRepository.deleteVersion(version.getUserId(), version.getPackageRef(), version.getId());
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", Partition.DEFAULT));
+        versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+
+        // Then
+        assertThat(blobs).hasSize(1);
+        assertThat(versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId())).isEmpty();
+    }
+
+    @Test
+    public void updateVersion_whenOwnerBeingCopied_shouldUpdateCopyInNextPartition() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        partitionRouter.saveRoute(PartitionRoute.builder().userId(version.getUserId()).partition(Partition.DEFAULT).next("large").build());
+        versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+        final Version changes = Version.builder()
+                .userId(version.getUserId())
+                .packageRef(version.getPackageRef())
+                .id(version.getId())
+                .description("Fixed description")
+                .build();
+
+        // When
+        final Optional<Version> updated = versionRepository.updateVersion(changes, null);
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", Partition.DEFAULT));
+        versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+
+        // Then
+        assertThat(updated).isPresent();
+        assertThat(versionRepository.getVersion(version.getUserId(), version.getPackageRef(), version.getId()))
+                .hasValueSatisfying(result -> assertThat(result.getDescription()).isEqualTo("Fixed description"));
+    }
+
+    @Test
+    public void copyVersions_thenDeleteVersions_shouldMoveVersionsToOtherPartition() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final Version expected = versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final long copied = versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+        final long copiedAgain = versionRepository.copyVersions(version.getUserId(), Partition.DEFAULT, "large");
+        final long deleted = versionRepository.deleteVersions(version.getUserId(), Partition.DEFAULT);
+        partitionRouter.saveRoute(getRoute(version.getUserId(), "large", null));
+
+        // Then
+        assertThat(copied).isEqualTo(1);
+        assertThat(copiedAgain).isZero();
+        assertThat(deleted).isEqualTo(1);
+        assertThat(versionRepository.getVersions(version.getUserId(), version.getPackageRef(), new PageRequest(0, 10))).containsExactly(expected);
+        assertThat(versionRepository.getOwnerBlobs(version.getUserId(), "large", blobStores.getWriteStore().getName(), null, 10))
+                .extracting(BlobReference::getPartition)
+                .containsExactly("large");
+    }
+
+    @Test
+    public void getVersions_withMetadataConditions_shouldReturnMatchingVersionsOnly() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final List<Version> versions = IntStream.range(0, 6)
+                .mapToObj(index -> getVersion(userId, packageRef).toBuilder()
+                        .metadata(getMetadata(index, index % 2 == 0 ? "beta" : "stable"))
+                        .build())
+                .map(version -> versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})))
+                .collect(Collectors.toList());
+        final List<MetadataCondition> conditions = Arrays.asList(
+                MetadataCondition.builder().key("channel").operator(MetadataOperator.IN).values(Arrays.asList("beta", "alpha")).build(),
+                MetadataCondition.builder().key("revision").operator(MetadataOperator.GTE).values(Collections.singletonList(1)).build(),
+                MetadataCondition.builder().key("revision").operator(MetadataOperator.LT).values(Collections.singletonList(5)).build()
+        );
+        versionRepository.ensureMetadataIndex("channel");
+
+        // When
+        final Page<Version> unhinted = versionRepository.getVersions(userId, packageRef, conditions, null, new PageRequest(0, 10));
+        final Page<Version> hinted = versionRepository.getVersions(userId, packageRef, conditions, "channel", new PageRequest(0, 10));
+
+        // Then
+        assertThat(unhinted).containsOnly(versions.get(2), versions.get(4));
+        assertThat(hinted).containsOnly(versions.get(2), versions.get(4));
+        assertThat(hinted.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    public void ensureMetadataIndex_shouldCreatePartialIndexInEveryPartition() {
+        // Given
+        final String key = "hw" + UUID.randomUUID().toString().substring(0, 8);
+
+        // When
+        versionRepository.ensureMetadataIndex(key);
+
+        // Then
+        assertThat(versionRepository.getMetadataIndexKeys()).contains(key);
+        for (Partition partition : partitionRouter.getPartitions()) {
+            assertThat(partition.getMongoOperations().getCollection(partition.getCollection()).getIndexInfo())
+                    .filteredOn(index -> ("metadata_" + key + "_idx").equals(index.get("name")) && index.get("ns").toString().endsWith("." + partition.getCollection()))
+                    .extracting(index -> index.get("partialFilterExpression").toString())
+                    .containsExactly("{ \"metadata.metadata." + key + "\" : { \"$exists\" : true}}");
+        }
+    }
+
+    @Test
+    public void countVersions_shouldCountUpToLimit() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        getVersions(userId, packageRef).forEach(version -> versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})));
+
+        // When
+        final long limited = versionRepository.countVersions(userId, packageRef, 4);
+        final long all = versionRepository.countVersions(userId, packageRef, 100);
+
+        // Then
+        assertThat(limited).isEqualTo(4);
+        assertThat(all).isEqualTo(10);
+    }
+
+    @Test
+    public void measureUsage_shouldSumVersionsOfPackage() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        getVersions(userId, packageRef).forEach(version -> versionRepository.createVersion(version, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})));
+        versionRepository.createVersion(getVersion(userId, UUID.randomUUID().toString()), new ByteArrayInputStream(new byte[]{'a'}));
+
+        // When
+        final StorageUsage result = versionRepository.measureUsage(userId, packageRef);
+        final StorageUsage empty = versionRepository.measureUsage(userId, UUID.randomUUID().toString());
+
+        // Then
+        assertThat(result.getVersionCount()).isEqualTo(10);
+        assertThat(result.getTotalBytes()).isEqualTo(30);
+        assertThat(empty.getVersionCount()).isZero();
+        assertThat(empty.getTotalBytes()).isZero();
+    }
+
+    private PartitionRoute getRoute(String userId, String partition, String previous) {
+        return PartitionRoute.builder()
+                .userId(userId)
+                .partition(partition)
+                .previous(previous)
+                .updatedAt(new Date())
+                .build();
+    }
+
+    private Version createVersionUploadedAt(String userId, String packageRef, Date uploadDate, Map<String, ?> metadata) {
+        final Version version = versionRepository.createVersion(
+                VersionUtils.getVersion().toBuilder().userId(userId).packageRef(packageRef).metadata(metadata).build(),
+                new ByteArrayInputStream(new byte[]{'a', 'b', 'c'})
+        );
+        mongoOperations.updateFirst(query(where("metadata.versionId").is(version.getId())), new Update().set("uploadDate", uploadDate), "versions.files");
+        return version;
+    }
+
+    private BlobReference getBlob(Version version) {
+        final DBObject document = mongoOperations.findOne(query(where("metadata.versionId").is(version.getId())), DBObject.class, "versions.files");
+        return versionRepository.getBlobs(blobStores.getWriteStore().getName(), null, Integer.MAX_VALUE)
+                .stream()
+                .filter(blob -> blob.getDocumentId().equals(document.get("_id").toString()))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Blob should exist"));
+    }
+
     private List<Version> getVersions(String userId, String packageRef) {
         return IntStream.range(0, 10)
                 .mapToObj((index) -> getVersion(userId, packageRef))
                 .collect(Collectors.toList());
     }
 
+    private Map<String, Object> getMetadata(int revision, String channel) {
+        final Map<String, Object> metadata = new HashMap<>();
+        metadata.put("revision", revision);
+        metadata.put("channel", channel);
+        return metadata;
+    }
+
     private Version getVersion(String userId, String packageRef) {
         return VersionUtils.getVersion().toBuilder()
                 .userId(userId)
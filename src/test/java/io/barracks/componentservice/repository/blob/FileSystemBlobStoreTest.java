@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.repository.blob;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class FileSystemBlobStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBlobStore blobStore;
+
+    @Before
+    public void setUp() throws Exception {
+        blobStore = new FileSystemBlobStore(folder.getRoot().toPath());
+    }
+
+    @Test
+    public void store_shouldNameBlobAfterContentAndComputeMd5() throws Exception {
+        // Given
+        final InputStream content = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
+
+        // When
+        final StoredBlob result = blobStore.store(content);
+
+        // Then
+        assertThat(result).isEqualTo(StoredBlob.builder()
+                .store(FileSystemBlobStore.NAME)
+                .id("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad")
+                .length(3)
+                .md5("900150983cd24fb0d6963f7d28e17f72")
+                .created(true)
+                .build());
+        assertThat(blobStore.exists(result.getId())).isTrue();
+    }
+
+    @Test
+    public void store_whenContentAlreadyStored_shouldKeepSingleFile() throws Exception {
+        // Given
+        final StoredBlob first = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final StoredBlob result = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // Then
+        assertThat(result).isEqualTo(first.toBuilder().created(false).build());
+        assertThat(Files.list(folder.getRoot().toPath().resolve("incoming")).count()).isZero();
+    }
+
+    @Test
+    public void store_whenContentStoredConcurrently_shouldCreateBlobOnce() throws Exception {
+        // Given
+        final int uploads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<StoredBlob>> futures = new ArrayList<>();
+        final List<StoredBlob> results = new ArrayList<>();
+
+        // When
+        try {
+            for (int i = 0; i < uploads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+                }));
+            }
+            start.countDown();
+            for (Future<StoredBlob> future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertThat(results).filteredOn(StoredBlob::isCreated).hasSize(1);
+        assertThat(Files.list(folder.getRoot().toPath().resolve("incoming")).count()).isZero();
+    }
+
+    @Test
+    public void stage_whenExistingBlobDeletedMeanwhile_shouldRestoreIt() throws Exception {
+        // Given
+        final StoredBlob first = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        try (StagedBlob staged = blobStore.stage(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}))) {
+            blobStore.delete(first.getId());
+
+            // When
+            final boolean result = staged.restore();
+
+            // Then
+            assertThat(result).isTrue();
+            assertThat(staged.getBlob().isCreated()).isFalse();
+            assertThat(StreamUtils.copyToByteArray(blobStore.open(first.getId(), 0))).containsExactly(new byte[]{'a', 'b', 'c'});
+        }
+        assertThat(Files.list(folder.getRoot().toPath().resolve("incoming")).count()).isZero();
+    }
+
+    @Test
+    public void stage_whenClosed_shouldDiscardKeptContent() throws Exception {
+        // Given
+        final StoredBlob first = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        final StagedBlob staged = blobStore.stage(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        staged.close();
+
+        // Then
+        assertThat(Files.list(folder.getRoot().toPath().resolve("incoming")).count()).isZero();
+        assertThat(blobStore.exists(first.getId())).isTrue();
+    }
+
+    @Test
+    public void open_shouldReadFromPosition() throws Exception {
+        // Given
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final byte[] result = StreamUtils.copyToByteArray(blobStore.open(blob.getId(), 1));
+
+        // Then
+        assertThat(result).containsExactly(new byte[]{'b', 'c'});
+    }
+
+    @Test
+    public void getFile_shouldReturnBlobFile() throws Exception {
+        // Given
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        final Path result = blobStore.getFile(blob.getId()).orElseThrow(() -> new RuntimeException("File should be present"));
+
+        // Then
+        assertThat(Files.readAllBytes(result)).containsExactly(new byte[]{'a', 'b', 'c'});
+    }
+
+    @Test
+    public void delete_shouldRemoveBlob() throws Exception {
+        // Given
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+
+        // When
+        blobStore.delete(blob.getId());
+
+        // Then
+        assertThat(blobStore.exists(blob.getId())).isFalse();
+    }
+
+    @Test
+    public void open_withInvalidId_shouldThrowException() throws Exception {
+        // Then When
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> blobStore.open("../../etc/passwd", 0));
+    }
+}
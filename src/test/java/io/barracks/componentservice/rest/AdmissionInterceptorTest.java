@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.AdmissionProperties;
+import io.barracks.componentservice.config.TransferAdmission;
+import io.barracks.componentservice.config.WorkloadType;
+import io.barracks.componentservice.config.exception.TransferRejectedException;
+import io.barracks.componentservice.manager.VersionManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+
+public class AdmissionInterceptorTest {
+    private final VersionResource versionResource = new VersionResource(null, mock(VersionManager.class), null);
+    private TransferAdmission downloadAdmission;
+    private AdmissionInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        downloadAdmission = new TransferAdmission(WorkloadType.DOWNLOAD, new AdmissionProperties.Transfer(1, 1000L, 60L));
+        final Map<WorkloadType, TransferAdmission> admissions = new EnumMap<>(WorkloadType.class);
+        admissions.put(WorkloadType.DOWNLOAD, downloadAdmission);
+        interceptor = new AdmissionInterceptor(admissions);
+    }
+
+    @Test
+    public void preHandle_whenDownload_shouldAdmitOwner() throws Exception {
+        // Given
+        final MockHttpServletRequest request = ownerRequest(UUID.randomUUID().toString());
+
+        // When
+        final boolean result = interceptor.preHandle(request, new MockHttpServletResponse(), handler("getVersionFile"));
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(downloadAdmission.getInFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void preHandle_whenLimitReached_shouldThrowException() throws Exception {
+        // Given
+        interceptor.preHandle(ownerRequest(UUID.randomUUID().toString()), new MockHttpServletResponse(), handler("getVersionFile"));
+
+        // Then When
+        assertThatExceptionOfType(TransferRejectedException.class).isThrownBy(() ->
+                interceptor.preHandle(ownerRequest(UUID.randomUUID().toString()), new MockHttpServletResponse(), handler("getVersionFile"))
+        );
+    }
+
+    @Test
+    public void preHandle_whenMetadata_shouldNotAdmit() throws Exception {
+        // When
+        interceptor.preHandle(ownerRequest(UUID.randomUUID().toString()), new MockHttpServletResponse(), handler("getVersion"));
+
+        // Then
+        assertThat(downloadAdmission.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void afterCompletion_shouldReleasePermit() throws Exception {
+        // Given
+        final MockHttpServletRequest request = ownerRequest(UUID.randomUUID().toString());
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final HandlerMethod handler = handler("getVersionFile");
+        interceptor.preHandle(request, response, handler);
+
+        // When
+        interceptor.afterCompletion(request, response, handler, null);
+
+        // Then
+        assertThat(downloadAdmission.getInFlightCount()).isZero();
+    }
+
+    private MockHttpServletRequest ownerRequest(String userId) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Collections.singletonMap("userId", userId));
+        return request;
+    }
+
+    private HandlerMethod handler(String name) throws NoSuchMethodException {
+        return new HandlerMethod(versionResource, VersionResource.class.getMethod(name, String.class, String.class, String.class));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.commons.test.PagedResourcesUtils;
+import io.barracks.componentservice.manager.AsyncPackageManager;
+import io.barracks.componentservice.manager.exception.PackageNotFoundException;
+import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.utils.PackageUtils;
+import org.assertj.core.util.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncPackageResourceTest {
+
+    @Mock
+    private AsyncPackageManager packageManager;
+    private PagedResourcesAssembler<Package> pagedResourcesAssembler = PagedResourcesUtils.getPagedResourcesAssembler();
+    private AsyncPackageResource packageResource;
+
+    @Before
+    public void setup() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        packageResource = new AsyncPackageResource(pagedResourcesAssembler, packageManager);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void createPackage_whenArgumentIsValid_shouldCallManagerAndReturnResult() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Package aPackage = PackageUtils.getPackage();
+        final Package toCreate = aPackage.toBuilder().userId(userId).build();
+        given(packageManager.createPackage(toCreate)).willReturn(CompletableFuture.completedFuture(toCreate));
+
+        // When
+        final DeferredResult<Package> result = packageResource.createPackage(userId, aPackage);
+
+        // Then
+        verify(packageManager).createPackage(toCreate);
+        assertThat(result.getResult()).isEqualTo(toCreate);
+    }
+
+    @Test
+    public void getPackages_whenAllIsFine_shouldCallManagerAndReturnPackageList() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final Page<Package> page = new PageImpl<>(Lists.newArrayList(PackageUtils.getPackage(), PackageUtils.getPackage()));
+        final PagedResources<Resource<Package>> expected = pagedResourcesAssembler.toResource(page);
+        given(packageManager.getPackages(userId, pageable)).willReturn(CompletableFuture.completedFuture(page));
+
+        // When
+        final DeferredResult<PagedResources<Resource<Package>>> result = packageResource.getPackages(userId, pageable);
+
+        // Then
+        verify(packageManager).getPackages(userId, pageable);
+        assertThat(result.getResult()).isEqualTo(expected);
+    }
+
+    @Test
+    public void getPackage_whenPackageIsMissing_shouldReturnUnwrappedException() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        given(packageManager.getPackage(userId, reference)).willReturn(
+                CompletableFuture.<Package>completedFuture(null).thenApply(aPackage -> {
+                    throw new PackageNotFoundException(userId, reference);
+                })
+        );
+
+        // When
+        final DeferredResult<Package> result = packageResource.getPackage(userId, reference);
+
+        // Then
+        verify(packageManager).getPackage(userId, reference);
+        assertThat(result.getResult()).isInstanceOf(PackageNotFoundException.class);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.commons.test.PagedResourcesUtils;
+import io.barracks.componentservice.config.BandwidthProperties;
+import io.barracks.componentservice.config.BandwidthScheduler;
+import io.barracks.componentservice.manager.AsyncVersionManager;
+import io.barracks.componentservice.manager.DownloadCounters;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.rest.entity.VersionEntity;
+import io.barracks.componentservice.utils.NonBlockingServletResponse;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.assertj.core.util.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.InputStream;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncVersionResourceTest {
+    @Mock
+    private AsyncVersionManager versionManager;
+    @Mock
+    private DownloadCounters downloadCounters;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private PagedResourcesAssembler<Version> pagedResourcesAssembler = PagedResourcesUtils.getPagedResourcesAssembler();
+
+    private AsyncVersionResource versionResource;
+
+    @Before
+    public void setup() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        versionResource = new AsyncVersionResource(pagedResourcesAssembler, versionManager, new VersionFileSender(new BandwidthScheduler(new BandwidthProperties()), downloadCounters, Runnable::run, taskScheduler));
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void createVersion_shouldCallManager_andReturnVersion() throws Exception {
+        // Given
+        final MockMultipartFile file = new MockMultipartFile("file", UUID.randomUUID().toString(), MediaType.APPLICATION_OCTET_STREAM_VALUE, new byte[]{'a', 'b', 'c'});
+        final VersionEntity entity = VersionUtils.getVersionEntity();
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Version version = Version.builder()
+                .userId(userId)
+                .packageRef(packageRef)
+                .id(entity.getId())
+                .name(entity.getName())
+                .description(entity.getDescription())
+                .metadata(entity.getMetadata())
+                .filename(file.getOriginalFilename())
+                .build();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(CompletableFuture.completedFuture(expected)).when(versionManager).createVersion(eq(version), isA(InputStream.class));
+
+        // When
+        final DeferredResult<Version> result = versionResource.createVersion(file, entity, userId, packageRef);
+
+        // Then
+        verify(versionManager).createVersion(eq(version), isA(InputStream.class));
+        assertThat(result.getResult()).isEqualTo(expected);
+    }
+
+    @Test
+    public void getVersions_whenAllIsFine_shouldCallManagerAndReturnVersionList() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final Page<Version> page = new PageImpl<>(Lists.newArrayList(VersionUtils.getVersion(), VersionUtils.getVersion()));
+        final PagedResources<Resource<Version>> expected = pagedResourcesAssembler.toResource(page);
+        doReturn(CompletableFuture.completedFuture(page)).when(versionManager).getVersions(userId, packageRef, pageable);
+
+        // When
+        final DeferredResult<PagedResources<Resource<Version>>> result = versionResource.getVersions(userId, packageRef, pageable);
+
+        // Then
+        verify(versionManager).getVersions(userId, packageRef, pageable);
+        assertThat(result.getResult()).isEqualTo(expected);
+    }
+
+    @Test
+    public void getVersion_whenVersionExist_shouldReturnThatVersion() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(CompletableFuture.completedFuture(expected)).when(versionManager).getVersion(userId, packageRef, versionId);
+
+        // When
+        final DeferredResult<Version> result = versionResource.getVersion(userId, packageRef, versionId);
+
+        // Then
+        verify(versionManager).getVersion(userId, packageRef, versionId);
+        assertThat(result.getResult()).isEqualTo(expected);
+    }
+
+    @Test
+    public void getVersionFile_whenVersionExist_shouldReturnFileContents() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final Version version = VersionUtils.getVersion();
+        final NonBlockingServletResponse response = new NonBlockingServletResponse();
+        doReturn(CompletableFuture.completedFuture(version)).when(versionManager).getVersionFile(userId, packageRef, versionId);
+
+        // When
+        final DeferredResult<Void> result = versionResource.getVersionFile(userId, packageRef, versionId);
+        ((VersionFileBody) result).start(response);
+        response.getWriteListener().onWritePossible();
+
+        // Then
+        verify(versionManager).getVersionFile(userId, packageRef, versionId);
+        verify(downloadCounters).recordDownload(version, true);
+        assertThat(result.hasResult()).isTrue();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentLengthLong()).isEqualTo(version.getLength());
+        assertThat(response.getContentAsByteArray()).containsExactly(new byte[]{'a', 'b', 'c'});
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.BulkheadProperties;
+import io.barracks.componentservice.config.WorkloadBulkhead;
+import io.barracks.componentservice.config.WorkloadType;
+import io.barracks.componentservice.manager.VersionManager;
+import io.barracks.componentservice.rest.entity.VersionEntity;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.servlet.DispatcherType;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+
+public class BulkheadInterceptorTest {
+    private final VersionResource versionResource = new VersionResource(null, mock(VersionManager.class), null);
+    private WorkloadBulkhead metadataBulkhead;
+    private WorkloadBulkhead uploadBulkhead;
+    private BulkheadInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        metadataBulkhead = new WorkloadBulkhead(WorkloadType.METADATA, new BulkheadProperties.Workload(1, 0, 0L, 1));
+        uploadBulkhead = new WorkloadBulkhead(WorkloadType.UPLOAD, new BulkheadProperties.Workload(1, 0, 0L, 1));
+        final Map<WorkloadType, WorkloadBulkhead> bulkheads = new EnumMap<>(WorkloadType.class);
+        bulkheads.put(WorkloadType.METADATA, metadataBulkhead);
+        bulkheads.put(WorkloadType.UPLOAD, uploadBulkhead);
+        interceptor = new BulkheadInterceptor(bulkheads);
+    }
+
+    @Test
+    public void preHandle_whenHandlerNotAnnotated_shouldUseMetadataBulkhead() throws Exception {
+        // Given
+        final HandlerMethod handler = handler("getVersion", String.class, String.class, String.class);
+
+        // When
+        final boolean result = interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler);
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(metadataBulkhead.getActiveCount()).isEqualTo(1);
+        assertThat(uploadBulkhead.getActiveCount()).isZero();
+    }
+
+    @Test
+    public void preHandle_whenUploadBulkheadFull_shouldRejectUploadAndAcceptMetadata() throws Exception {
+        // Given
+        final HandlerMethod upload = uploadHandler();
+        final HandlerMethod metadata = handler("getVersion", String.class, String.class, String.class);
+        interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), upload);
+
+        // When
+        final boolean result = interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), metadata);
+
+        // Then
+        assertThat(result).isTrue();
+        assertThatExceptionOfType(TaskRejectedException.class)
+                .isThrownBy(() -> interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), upload));
+    }
+
+    @Test
+    public void afterCompletion_shouldReleaseSlotOnce() throws Exception {
+        // Given
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final HandlerMethod handler = uploadHandler();
+        interceptor.preHandle(request, response, handler);
+
+        // When
+        interceptor.afterConcurrentHandlingStarted(request, response, handler);
+        interceptor.afterCompletion(request, response, handler, null);
+
+        // Then
+        assertThat(uploadBulkhead.getActiveCount()).isZero();
+        interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler);
+        assertThat(uploadBulkhead.getActiveCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void preHandle_whenAsyncDispatch_shouldNotTakeSlot() throws Exception {
+        // Given
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setDispatcherType(DispatcherType.ASYNC);
+
+        // When
+        interceptor.preHandle(request, new MockHttpServletResponse(), handler("getVersion", String.class, String.class, String.class));
+
+        // Then
+        assertThat(metadataBulkhead.getActiveCount()).isZero();
+    }
+
+    @Test
+    public void preHandle_whenDownload_shouldNotTakeContainerSlot() throws Exception {
+        // When
+        interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("getVersionFile", String.class, String.class, String.class));
+
+        // Then
+        assertThat(metadataBulkhead.getActiveCount()).isZero();
+        assertThat(uploadBulkhead.getActiveCount()).isZero();
+    }
+
+    private HandlerMethod uploadHandler() throws NoSuchMethodException {
+        return handler("createVersion", MultipartFile.class, VersionEntity.class, String.class, String.class);
+    }
+
+    private HandlerMethod handler(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return new HandlerMethod(versionResource, VersionResource.class.getMethod(name, parameterTypes));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.manager.StorageUsageManager;
+import io.barracks.componentservice.manager.VersionManager;
+import io.barracks.componentservice.manager.exception.StorageQuotaExceededException;
+import io.barracks.componentservice.rest.entity.VersionEntity;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.*;
+
+public class QuotaInterceptorTest {
+    private final VersionResource versionResource = new VersionResource(null, mock(VersionManager.class), null);
+    private final StorageUsageManager storageUsageManager = mock(StorageUsageManager.class);
+    private final QuotaInterceptor interceptor = new QuotaInterceptor(storageUsageManager);
+
+    @Test
+    public void preHandle_whenUpload_shouldCheckQuotaWithRequestLength() throws Exception {
+        // Given
+        final MockHttpServletRequest request = packageRequest("user", "package");
+        request.setContent(new byte[42]);
+
+        // When
+        final boolean result = interceptor.preHandle(request, new MockHttpServletResponse(), uploadHandler());
+
+        // Then
+        assertThat(result).isTrue();
+        verify(storageUsageManager).checkQuota("user", "package", 42L);
+    }
+
+    @Test
+    public void preHandle_whenQuotaExceeded_shouldThrowException() throws Exception {
+        // Given
+        doThrow(new StorageQuotaExceededException("user", "package", "at most 10 versions are allowed"))
+                .when(storageUsageManager).checkQuota("user", "package", 0L);
+
+        // Then When
+        assertThatExceptionOfType(StorageQuotaExceededException.class).isThrownBy(() ->
+                interceptor.preHandle(packageRequest("user", "package"), new MockHttpServletResponse(), uploadHandler())
+        );
+    }
+
+    @Test
+    public void preHandle_whenNotUpload_shouldNotCheckQuota() throws Exception {
+        // Given
+        final HandlerMethod handler = new HandlerMethod(versionResource, VersionResource.class.getMethod("getVersion", String.class, String.class, String.class));
+
+        // When
+        interceptor.preHandle(packageRequest("user", "package"), new MockHttpServletResponse(), handler);
+
+        // Then
+        verifyZeroInteractions(storageUsageManager);
+    }
+
+    private MockHttpServletRequest packageRequest(String userId, String reference) {
+        final Map<String, String> variables = new HashMap<>();
+        variables.put("userId", userId);
+        variables.put("reference", reference);
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, variables);
+        return request;
+    }
+
+    private HandlerMethod uploadHandler() throws NoSuchMethodException {
+        return new HandlerMethod(versionResource, VersionResource.class.getMethod("createVersion", MultipartFile.class, VersionEntity.class, String.class, String.class));
+    }
+}
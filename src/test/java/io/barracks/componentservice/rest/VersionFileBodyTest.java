@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest;
+
+import io.barracks.componentservice.config.BandwidthProperties;
+import io.barracks.componentservice.config.BandwidthScheduler;
+import io.barracks.componentservice.manager.DownloadCounters;
+import io.barracks.componentservice.manager.exception.VersionNotFoundException;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.utils.NonBlockingServletResponse;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VersionFileBodyTest {
+    @Mock
+    private DownloadCounters downloadCounters;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @Test
+    public void onWritePossible_whenConnectionNotReady_shouldWaitForConnection() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final NonBlockingServletResponse response = new NonBlockingServletResponse();
+        final VersionFileBody body = getVersionFileBody(version, new BandwidthProperties());
+        body.start(response);
+        response.setReady(false);
+
+        // When
+        response.getWriteListener().onWritePossible();
+
+        // Then
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(body.hasResult()).isFalse();
+        verifyZeroInteractions(downloadCounters);
+
+        // When
+        response.setReady(true);
+        response.getWriteListener().onWritePossible();
+
+        // Then
+        assertThat(response.getContentAsByteArray()).containsExactly(new byte[]{'a', 'b', 'c'});
+        assertThat(body.hasResult()).isTrue();
+        verify(downloadCounters).recordDownload(version, true);
+    }
+
+    @Test
+    public void onWritePossible_whenOwnerAboveRate_shouldResumeOnceTokensAvailable() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final NonBlockingServletResponse response = new NonBlockingServletResponse();
+        final BandwidthProperties properties = new BandwidthProperties();
+        properties.setOwnerLimit(1);
+        properties.setBurst(1);
+        final VersionFileBody body = getVersionFileBody(version, properties);
+        final ArgumentCaptor<Runnable> resume = ArgumentCaptor.forClass(Runnable.class);
+        body.start(response);
+
+        // When
+        response.getWriteListener().onWritePossible();
+
+        // Then
+        verify(taskScheduler).schedule(resume.capture(), any(Date.class));
+        assertThat(response.getContentAsByteArray()).containsExactly(new byte[]{'a', 'b', 'c'});
+        assertThat(body.hasResult()).isFalse();
+        verifyZeroInteractions(downloadCounters);
+
+        // When
+        resume.getValue().run();
+
+        // Then
+        assertThat(body.hasResult()).isTrue();
+        verify(downloadCounters).recordDownload(version, true);
+    }
+
+    @Test
+    public void onError_shouldRecordAbortedDownload_andComplete() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        final NonBlockingServletResponse response = new NonBlockingServletResponse();
+        final VersionFileBody body = getVersionFileBody(version, new BandwidthProperties());
+        body.start(response);
+
+        // When
+        response.getWriteListener().onError(new IOException("Connection reset by peer"));
+        response.getWriteListener().onWritePossible();
+
+        // Then
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(body.hasResult()).isTrue();
+        verify(downloadCounters).recordDownload(version, false);
+    }
+
+    @Test
+    public void start_whenVersionNotFound_shouldSetException() throws Exception {
+        // Given
+        final VersionNotFoundException exception = new VersionNotFoundException("userId", "packageRef", "versionId");
+        final CompletableFuture<Version> version = new CompletableFuture<>();
+        version.completeExceptionally(exception);
+        final VersionFileBody body = new VersionFileBody(version, new BandwidthScheduler(new BandwidthProperties()), downloadCounters, Runnable::run, taskScheduler);
+
+        // When
+        body.start(new NonBlockingServletResponse());
+
+        // Then
+        assertThat(body.getResult()).isEqualTo(exception);
+        verifyZeroInteractions(downloadCounters);
+    }
+
+    private VersionFileBody getVersionFileBody(Version version, BandwidthProperties properties) {
+        return new VersionFileBody(CompletableFuture.completedFuture(version), new BandwidthScheduler(properties), downloadCounters, Runnable::run, taskScheduler);
+    }
+}
@@ -26,9 +26,16 @@ package io.barracks.componentservice.rest;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.barracks.commons.test.PagedResourcesUtils;
+import io.barracks.componentservice.config.BandwidthProperties;
+import io.barracks.componentservice.config.BandwidthScheduler;
+import io.barracks.componentservice.manager.DownloadCounters;
 import io.barracks.componentservice.manager.VersionManager;
+import io.barracks.componentservice.manager.exception.RevisionRequiredException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
 import io.barracks.componentservice.model.Version;
 import io.barracks.componentservice.rest.entity.VersionEntity;
+import io.barracks.componentservice.rest.entity.VersionUpdateEntity;
+import io.barracks.componentservice.utils.NonBlockingServletResponse;
 import io.barracks.componentservice.utils.VersionUtils;
 import org.assertj.core.util.Lists;
 import org.junit.Before;
@@ -37,7 +44,6 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -47,8 +53,9 @@ import org.springframework.hateoas.PagedResources;
 import org.springframework.hateoas.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartException;
 
 import java.io.IOException;
@@ -60,12 +67,17 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class VersionResourceTest {
     @Mock
     private VersionManager versionManager;
+    @Mock
+    private DownloadCounters downloadCounters;
+    @Mock
+    private TaskScheduler taskScheduler;
 
     private PagedResourcesAssembler<Version> pagedResourcesAssembler = PagedResourcesUtils.getPagedResourcesAssembler();
 
@@ -74,7 +86,7 @@ public class VersionResourceTest {
 
     @Before
     public void setup() {
-        versionResource = new VersionResource(pagedResourcesAssembler, versionManager);
+        versionResource = new VersionResource(pagedResourcesAssembler, versionManager, new VersionFileSender(new BandwidthScheduler(new BandwidthProperties()), downloadCounters, Runnable::run, taskScheduler));
     }
 
     @Test
@@ -101,7 +113,7 @@ public class VersionResourceTest {
         final Version result = versionResource.createVersion(file, entity, userId, packageRef);
 
         // Then
-        assertThat(version).hasNoNullFieldsOrPropertiesExcept("md5", "length", "inputStream");
+        assertThat(version).hasNoNullFieldsOrPropertiesExcept("md5", "length", "content", "cachedAt");
         verify(versionManager).createVersion(eq(version), isA(InputStream.class));
         assertThat(result).isEqualTo(expected);
     }
@@ -120,6 +132,69 @@ public class VersionResourceTest {
         assertThatExceptionOfType(MultipartException.class).isThrownBy(() -> versionResource.createVersion(file, entity, userId, packageRef));
     }
 
+    @Test
+    public void updateVersion_shouldCallManagerWithRevisionOfIfMatch_andReturnVersion() throws Exception {
+        // Given
+        final VersionUpdateEntity entity = VersionUpdateEntity.builder()
+                .name("Fixed name")
+                .metadata(Collections.singletonMap("critical", false))
+                .build();
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final Version changes = Version.builder()
+                .userId(userId)
+                .packageRef(packageRef)
+                .id(versionId)
+                .name(entity.getName())
+                .metadata(entity.getMetadata())
+                .build();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(expected).when(versionManager).updateVersion(changes, 4L);
+
+        // When
+        final Version result = versionResource.updateVersion(entity, "\"4\"", userId, packageRef, versionId);
+
+        // Then
+        verify(versionManager).updateVersion(changes, 4L);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void updateVersion_withAnyRevision_shouldCallManagerWithoutRevision() throws Exception {
+        // Given
+        final VersionUpdateEntity entity = VersionUpdateEntity.builder().description("Fixed description").build();
+        final Version expected = VersionUtils.getVersion();
+        doReturn(expected).when(versionManager).updateVersion(isA(Version.class), (Long) isNull());
+
+        // When
+        final Version result = versionResource.updateVersion(entity, "*", expected.getUserId(), expected.getPackageRef(), expected.getId());
+
+        // Then
+        verify(versionManager).updateVersion(isA(Version.class), (Long) isNull());
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void updateVersion_withoutIfMatch_shouldThrowException() throws Exception {
+        // Given
+        final VersionUpdateEntity entity = VersionUpdateEntity.builder().name("Fixed name").build();
+
+        // Then When
+        assertThatExceptionOfType(RevisionRequiredException.class).isThrownBy(() -> versionResource.updateVersion(entity, null, "user", "package", "version"));
+        verifyZeroInteractions(versionManager);
+    }
+
+    @Test
+    public void updateVersion_withWeakIfMatch_shouldThrowException() throws Exception {
+        // Given
+        final VersionUpdateEntity entity = VersionUpdateEntity.builder().name("Fixed name").build();
+
+        // Then When
+        assertThatExceptionOfType(VersionModifiedException.class).isThrownBy(() -> versionResource.updateVersion(entity, "W/\"4\"", "user", "package", "version"));
+        verifyZeroInteractions(versionManager);
+    }
+
     @Test
     public void getVersions_whenAllIsFine_shouldCallManagerAndReturnVersionList() throws Exception {
         // Given
@@ -178,21 +253,26 @@ public class VersionResourceTest {
     }
 
     @Test
-    public void getVersionFile_whenVersionExist_shouldReturnFileContents() {
+    public void getVersionFile_whenVersionExist_shouldReturnFileContents() throws Exception {
         // Given
         final String userId = UUID.randomUUID().toString();
         final String packageRef = UUID.randomUUID().toString();
         final String versionId = UUID.randomUUID().toString();
         final Version version = VersionUtils.getVersion();
-        doReturn(version).when(versionManager).getVersion(userId, packageRef, versionId);
+        final NonBlockingServletResponse response = new NonBlockingServletResponse();
+        doReturn(version).when(versionManager).getVersionFile(userId, packageRef, versionId);
 
         // When
-        final ResponseEntity result = versionResource.getVersionFile(userId, packageRef, versionId);
+        final DeferredResult<Void> result = versionResource.getVersionFile(userId, packageRef, versionId);
+        ((VersionFileBody) result).start(response);
+        response.getWriteListener().onWritePossible();
 
         // Then
-        verify(versionManager).getVersion(userId, packageRef, versionId);
-        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
-        assertThat(result.getBody()).isEqualTo(new InputStreamResource(version.getInputStream()));
-        assertThat(result.getHeaders().getContentLength()).isEqualTo(version.getLength());
+        verify(versionManager).getVersionFile(userId, packageRef, versionId);
+        verify(downloadCounters).recordDownload(version, true);
+        assertThat(result.hasResult()).isTrue();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentLengthLong()).isEqualTo(version.getLength());
+        assertThat(response.getContentAsByteArray()).containsExactly(new byte[]{'a', 'b', 'c'});
     }
-}
\ No newline at end of file
+}
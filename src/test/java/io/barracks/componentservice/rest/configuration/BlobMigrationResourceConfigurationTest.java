@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.componentservice.manager.exception.BlobMigrationInProgressException;
+import io.barracks.componentservice.manager.exception.BlobMigrationNotFoundException;
+import io.barracks.componentservice.model.BlobMigration;
+import io.barracks.componentservice.rest.BlobMigrationResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Date;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = BlobMigrationResource.class)
+@AutoConfigureRestDocs("build/generated-snippets/blobs")
+public class BlobMigrationResourceConfigurationTest {
+    @MockBean
+    private BlobMigrationResource blobMigrationResource;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    public void documentStartMigration() throws Exception {
+        // Given
+        final BlobMigration expected = BlobMigration.builder()
+                .from("gridfs-legacy")
+                .to("filesystem")
+                .state(BlobMigration.State.RUNNING)
+                .startedAt(new Date())
+                .build();
+        doReturn(expected).when(blobMigrationResource).startMigration("gridfs-legacy", "filesystem");
+
+        // When
+        final ResultActions result = mvc.perform(
+                post("/blobs/migrations")
+                        .param("from", "gridfs-legacy")
+                        .param("to", "filesystem")
+        );
+
+        // Then
+        verify(blobMigrationResource).startMigration("gridfs-legacy", "filesystem");
+        result.andExpect(status().isAccepted())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "start-migration",
+                        requestParameters(
+                                parameterWithName("from").description("Store currently holding the binaries"),
+                                parameterWithName("to").description("Store receiving the binaries")
+                        )
+                ));
+    }
+
+    @Test
+    public void startMigration_whenMigrationInProgress_shouldReturn409() throws Exception {
+        // Given
+        final BlobMigration running = BlobMigration.builder()
+                .from("gridfs")
+                .to("filesystem")
+                .state(BlobMigration.State.RUNNING)
+                .build();
+        doThrow(new BlobMigrationInProgressException(running)).when(blobMigrationResource).startMigration("gridfs", "filesystem");
+
+        // When
+        final ResultActions result = mvc.perform(
+                post("/blobs/migrations")
+                        .param("from", "gridfs")
+                        .param("to", "filesystem")
+        );
+
+        // Then
+        result.andExpect(status().isConflict());
+    }
+
+    @Test
+    public void getMigration_whenNoMigrationStarted_shouldReturn404() throws Exception {
+        // Given
+        doThrow(new BlobMigrationNotFoundException()).when(blobMigrationResource).getMigration();
+
+        // When
+        final ResultActions result = mvc.perform(get("/blobs/migrations"));
+
+        // Then
+        verify(blobMigrationResource).getMigration();
+        result.andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.componentservice.model.CatalogueRecord;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.CatalogueExport;
+import io.barracks.componentservice.rest.CatalogueExportResource;
+import io.barracks.componentservice.utils.PackageUtils;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = CatalogueExportResource.class)
+@AutoConfigureRestDocs("build/generated-snippets/export")
+public class CatalogueExportResourceConfigurationTest {
+    @MockBean
+    private CatalogueExport catalogueExport;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void documentExportCatalogue() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Version version = VersionUtils.getVersion();
+        final CatalogueExport.Position after = CatalogueExport.Position.afterPackage("first");
+        final List<CatalogueRecord> records = Arrays.asList(
+                CatalogueRecord.builder()
+                        .type(CatalogueRecord.Type.PACKAGE)
+                        .position(CatalogueExport.Position.afterPackage("second").encode())
+                        .aPackage(PackageUtils.getPackage())
+                        .build(),
+                CatalogueRecord.builder()
+                        .type(CatalogueRecord.Type.VERSION)
+                        .position(CatalogueExport.Position.afterVersion(version.getPackageRef(), version.getId()).encode())
+                        .version(version)
+                        .build()
+        );
+        doAnswer(invocation -> {
+            records.forEach(((Consumer<CatalogueRecord>) invocation.getArguments()[2]));
+            return null;
+        }).when(catalogueExport).export(eq(userId), eq(after), any());
+
+        // When
+        final MvcResult result = mvc.perform(get("/owners/{userId}/export", userId)
+                .accept(CatalogueExportResource.NDJSON_VALUE)
+                .param("after", after.encode()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andDo(document(
+                        "export-catalogue",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner")
+                        ),
+                        requestParameters(
+                                parameterWithName("after").description("Position of the last record received, to resume an export (optional)")
+                        )
+                ));
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(
+                json.writeValueAsString(records.get(0)) + "\n" + json.writeValueAsString(records.get(1)) + "\n"
+        );
+    }
+
+    @Test
+    public void exportCatalogue_withInvalidPosition_shouldReturn400() throws Exception {
+        // When
+        mvc.perform(get("/owners/{userId}/export", "user")
+                .accept(CatalogueExportResource.NDJSON_VALUE)
+                .param("after", "not a position"))
+                .andExpect(status().isBadRequest());
+
+        // Then
+        verifyZeroInteractions(catalogueExport);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import io.barracks.componentservice.model.DownloadCount;
+import io.barracks.componentservice.rest.DownloadResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.UUID;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.payload.PayloadDocumentation.fieldWithPath;
+import static org.springframework.restdocs.payload.PayloadDocumentation.responseFields;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = DownloadResource.class)
+@AutoConfigureRestDocs("build/generated-snippets/downloads")
+public class DownloadResourceConfigurationTest {
+    @MockBean
+    private DownloadResource downloadResource;
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    public void documentGetDownloadCount() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "io.barracks.package";
+        final String versionId = "v0.0.1";
+        final DownloadCount expected = DownloadCount.builder()
+                .userId(userId)
+                .packageRef(packageRef)
+                .versionId(versionId)
+                .completed(1532L)
+                .aborted(27L)
+                .build();
+        doReturn(expected).when(downloadResource).getDownloadCount(userId, packageRef, versionId);
+
+        // When
+        final ResultActions result = mvc.perform(get(
+                "/owners/{userId}/packages/{reference}/versions/{version}/downloads", userId, packageRef, versionId
+        ));
+
+        // Then
+        verify(downloadResource).getDownloadCount(userId, packageRef, versionId);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.completed").value(1532L))
+                .andExpect(jsonPath("$.aborted").value(27L))
+                .andDo(document(
+                        "get",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner"),
+                                parameterWithName("reference").description("Reference of the package"),
+                                parameterWithName("version").description("ID of the version")
+                        ),
+                        responseFields(
+                                fieldWithPath("packageRef").description("Reference of the package"),
+                                fieldWithPath("versionId").description("ID of the version"),
+                                fieldWithPath("completed").description("Number of downloads that received the whole file"),
+                                fieldWithPath("aborted").description("Number of downloads that ended before the end of the file")
+                        )
+                ));
+    }
+}
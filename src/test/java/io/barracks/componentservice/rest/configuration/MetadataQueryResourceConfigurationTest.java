@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.commons.test.PagedResourcesUtils;
+import io.barracks.componentservice.model.MetadataCondition;
+import io.barracks.componentservice.model.MetadataIndex;
+import io.barracks.componentservice.model.MetadataOperator;
+import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.rest.MetadataQueryResource;
+import io.barracks.componentservice.rest.entity.VersionQueryEntity;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.delete;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.post;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.put;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = MetadataQueryResource.class, includeFilters = @ComponentScan.Filter(classes = {EnableSpringDataWebSupport.class}, type = FilterType.ANNOTATION))
+@EnableSpringDataWebSupport
+@AutoConfigureRestDocs("build/generated-snippets/metadata-queries")
+public class MetadataQueryResourceConfigurationTest {
+    private static final String baseUrl = "https://not.barracks.io";
+    @MockBean
+    private MetadataQueryResource metadataQueryResource;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    public void documentQueryVersions() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final VersionQueryEntity query = VersionQueryEntity.builder()
+                .conditions(Arrays.asList(
+                        MetadataCondition.builder().key("channel").operator(MetadataOperator.IN).values(Arrays.asList("beta", "stable")).build(),
+                        MetadataCondition.builder().key("revision").operator(MetadataOperator.GTE).values(Collections.singletonList(3)).build()
+                ))
+                .build();
+        final Version version = VersionUtils.getVersion();
+        final PagedResources<Resource<Version>> expected = PagedResourcesUtils.<Version>getPagedResourcesAssembler(baseUrl)
+                .toResource(new PageImpl<>(Collections.singletonList(version)));
+        doReturn(expected).when(metadataQueryResource).queryVersions(userId, reference, query, new PageRequest(0, 20));
+
+        // When
+        final ResultActions result = mvc.perform(post("/owners/{userId}/packages/{reference}/versions/query", userId, reference)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json.writeValueAsString(query)));
+
+        // Then
+        verify(metadataQueryResource).queryVersions(userId, reference, query, new PageRequest(0, 20));
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$._embedded.versions", hasSize(1)))
+                .andExpect(jsonPath("$._embedded.versions[0].name").value(version.getName()))
+                .andDo(document(
+                        "query-versions",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner"),
+                                parameterWithName("reference").description("Reference of the package")
+                        )
+                ));
+    }
+
+    @Test
+    public void queryVersions_withoutConditions_shouldReturn400() throws Exception {
+        // When
+        final ResultActions result = mvc.perform(post("/owners/{userId}/packages/{reference}/versions/query", "user", "package")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"conditions\":[]}"));
+
+        // Then
+        verifyZeroInteractions(metadataQueryResource);
+        result.andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void documentCreateIndex() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final MetadataIndex expected = MetadataIndex.builder()
+                .userId(userId)
+                .key("channel")
+                .createdAt(new Date())
+                .build();
+        doReturn(expected).when(metadataQueryResource).createIndex(userId, "channel");
+
+        // When
+        final ResultActions result = mvc.perform(put("/owners/{userId}/metadata-indexes/{key}", userId, "channel"));
+
+        // Then
+        verify(metadataQueryResource).createIndex(userId, "channel");
+        result.andExpect(status().isOk())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "create-metadata-index",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner"),
+                                parameterWithName("key").description("Metadata key to index the versions on")
+                        )
+                ));
+    }
+
+    @Test
+    public void deleteIndex_shouldReturn204() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        final ResultActions result = mvc.perform(delete("/owners/{userId}/metadata-indexes/{key}", userId, "channel"));
+
+        // Then
+        verify(metadataQueryResource).deleteIndex(userId, "channel");
+        result.andExpect(status().isNoContent());
+    }
+}
@@ -28,8 +28,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import io.barracks.commons.test.PagedResourcesUtils;
 import io.barracks.commons.util.Endpoint;
+import io.barracks.componentservice.config.exception.CircuitOpenException;
 import io.barracks.componentservice.model.Package;
+import io.barracks.componentservice.repository.ReadRouting;
 import io.barracks.componentservice.rest.PackageResource;
+import io.barracks.componentservice.rest.ReadYourWritesInterceptor;
 import io.barracks.componentservice.utils.PackageUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +49,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.hateoas.PagedResources;
 import org.springframework.hateoas.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders;
@@ -55,8 +59,10 @@ import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.mockito.Mockito.*;
@@ -85,6 +91,9 @@ public class PackageResourceConfigurationTest {
     @MockBean
     private PackageResource packageResource;
 
+    @Autowired
+    private ReadRouting readRouting;
+
     @Test
     public void documentCreatePackage() throws Exception {
         objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
@@ -312,4 +321,83 @@ public class PackageResourceConfigurationTest {
                 .andExpect(jsonPath("$.reference").value(expected.getReference()));
     }
 
+    @Test
+    public void createPackage_afterWriteOfOwner_shouldReturnTimeOfLatestWrite() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Package request = PackageUtils.getPackage().toBuilder().userId(null).build();
+        doReturn(request).when(packageResource).createPackage(userId, request);
+        final long writtenAt = readRouting.recordWrite(userId);
+
+        // When
+        final ResultActions result = mvc.perform(
+                post("/owners/{userId}/packages", userId)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        );
+
+        // Then
+        result.andExpect(status().isCreated())
+                .andExpect(header().string(ReadYourWritesInterceptor.READ_AFTER_HEADER, String.valueOf(writtenAt)));
+    }
+
+    @Test
+    public void getPackage_withTimeOfLatestWrite_shouldRecordWriteOfOwner() throws Exception {
+        // Given
+        final Endpoint endpoint = GET_PACKAGE_ENDPOINT;
+        final Package expected = PackageUtils.getPackage();
+        final long writtenAt = System.currentTimeMillis() - 1000;
+        doReturn(expected).when(packageResource).getPackage(expected.getUserId(), expected.getReference());
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.request(endpoint.getMethod(), endpoint.withBase(baseUrl).getURI(expected.getUserId(), expected.getReference()))
+                        .header(ReadYourWritesInterceptor.READ_AFTER_HEADER, writtenAt)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isOk())
+                .andExpect(header().doesNotExist(ReadYourWritesInterceptor.READ_AFTER_HEADER));
+        assertThat(readRouting.getLastWrite(expected.getUserId())).contains(writtenAt);
+    }
+
+    @Test
+    public void getPackage_whenServedFromCache_shouldMarkResponseAsStale() throws Exception {
+        // Given
+        final Endpoint endpoint = GET_PACKAGE_ENDPOINT;
+        final Package expected = PackageUtils.getPackage().toBuilder().cachedAt(new Date(System.currentTimeMillis() - 60000)).build();
+        doReturn(expected).when(packageResource).getPackage(expected.getUserId(), expected.getReference());
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.request(endpoint.getMethod(), endpoint.withBase(baseUrl).getURI(expected.getUserId(), expected.getReference()))
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.WARNING, "110 - \"Response is Stale\""))
+                .andExpect(header().string(HttpHeaders.AGE, "60"))
+                .andExpect(jsonPath("$.cachedAt").doesNotExist());
+    }
+
+    @Test
+    public void getPackage_whenMongoCircuitIsOpen_shouldReturn503WithRetryAfter() throws Exception {
+        // Given
+        final Endpoint endpoint = GET_PACKAGE_ENDPOINT;
+        final Package expected = PackageUtils.getPackage();
+        doThrow(new CircuitOpenException("mongo", 10L)).when(packageResource).getPackage(expected.getUserId(), expected.getReference());
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.request(endpoint.getMethod(), endpoint.withBase(baseUrl).getURI(expected.getUserId(), expected.getReference()))
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "10"));
+    }
 }
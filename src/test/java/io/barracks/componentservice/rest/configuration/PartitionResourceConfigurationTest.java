@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.componentservice.manager.exception.InvalidPartitionMoveException;
+import io.barracks.componentservice.manager.exception.PartitionMoveInProgressException;
+import io.barracks.componentservice.model.PartitionRoute;
+import io.barracks.componentservice.rest.PartitionResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.put;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = PartitionResource.class)
+@AutoConfigureRestDocs("build/generated-snippets/partitions")
+public class PartitionResourceConfigurationTest {
+    @MockBean
+    private PartitionResource partitionResource;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    public void documentMoveOwner() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final PartitionRoute expected = PartitionRoute.builder()
+                .userId(userId)
+                .partition("default")
+                .next("large")
+                .updatedAt(new Date())
+                .build();
+        doReturn(expected).when(partitionResource).moveOwner("large", userId);
+
+        // When
+        final ResultActions result = mvc.perform(put("/partitions/{partition}/owners/{userId}", "large", userId));
+
+        // Then
+        verify(partitionResource).moveOwner("large", userId);
+        result.andExpect(status().isAccepted())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "move-owner",
+                        pathParameters(
+                                parameterWithName("partition").description("Partition receiving the versions of the owner"),
+                                parameterWithName("userId").description("ID of the owner")
+                        )
+                ));
+    }
+
+    @Test
+    public void moveOwner_withUnknownPartition_shouldReturn400() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        doThrow(new InvalidPartitionMoveException(userId, "unknown", "unknown partition")).when(partitionResource).moveOwner("unknown", userId);
+
+        // When
+        final ResultActions result = mvc.perform(put("/partitions/{partition}/owners/{userId}", "unknown", userId));
+
+        // Then
+        result.andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void moveOwner_whenMoveInProgress_shouldReturn409() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final PartitionRoute route = PartitionRoute.builder()
+                .userId(userId)
+                .partition("default")
+                .next("large")
+                .build();
+        doThrow(new PartitionMoveInProgressException(route)).when(partitionResource).moveOwner("other", userId);
+
+        // When
+        final ResultActions result = mvc.perform(put("/partitions/{partition}/owners/{userId}", "other", userId));
+
+        // Then
+        result.andExpect(status().isConflict());
+    }
+
+    @Test
+    public void documentGetRoute() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final PartitionRoute expected = PartitionRoute.builder()
+                .userId(userId)
+                .partition("large")
+                .updatedAt(new Date())
+                .build();
+        doReturn(expected).when(partitionResource).getRoute(userId);
+
+        // When
+        final ResultActions result = mvc.perform(get("/partitions/owners/{userId}", userId));
+
+        // Then
+        verify(partitionResource).getRoute(userId);
+        result.andExpect(status().isOk())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "get-route",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner")
+                        )
+                ));
+    }
+}
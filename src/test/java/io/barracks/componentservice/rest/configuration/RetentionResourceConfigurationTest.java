@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.componentservice.model.RetentionPolicy;
+import io.barracks.componentservice.model.RetentionReport;
+import io.barracks.componentservice.rest.RetentionResource;
+import io.barracks.componentservice.rest.entity.RetentionPolicyEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.put;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = RetentionResource.class)
+@AutoConfigureRestDocs("build/generated-snippets/retention")
+public class RetentionResourceConfigurationTest {
+    @MockBean
+    private RetentionResource retentionResource;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    public void documentSetPolicy() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = "io.barracks.package";
+        final RetentionPolicyEntity request = RetentionPolicyEntity.builder().keepLast(10).keepDays(30).build();
+        final RetentionPolicy expected = getPolicy(userId, reference);
+        doReturn(expected).when(retentionResource).setPolicy(userId, reference, request);
+
+        // When
+        final ResultActions result = mvc.perform(put("/owners/{userId}/packages/{reference}/retention", userId, reference)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json.writeValueAsString(request)));
+
+        // Then
+        verify(retentionResource).setPolicy(userId, reference, request);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.keepLast").value(10))
+                .andExpect(jsonPath("$.releasedKey").value("released"))
+                .andDo(document(
+                        "set-policy",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner"),
+                                parameterWithName("reference").description("Reference of the package")
+                        )
+                ));
+    }
+
+    @Test
+    public void setPolicy_withNegativeCount_shouldReturn400() throws Exception {
+        // When
+        final ResultActions result = mvc.perform(put("/owners/{userId}/packages/{reference}/retention", "user", "package")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"keepLast\":-1}"));
+
+        // Then
+        verifyZeroInteractions(retentionResource);
+        result.andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void documentGetReport() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final RetentionPolicy policy = getPolicy(userId, "io.barracks.package");
+        final RetentionReport expected = RetentionReport.builder()
+                .prunedVersions(policy.getPrunedVersions())
+                .prunedBytes(policy.getPrunedBytes())
+                .policies(Collections.singletonList(policy))
+                .build();
+        doReturn(expected).when(retentionResource).getReport(userId);
+
+        // When
+        final ResultActions result = mvc.perform(get("/owners/{userId}/retention", userId));
+
+        // Then
+        verify(retentionResource).getReport(userId);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.prunedBytes").value(policy.getPrunedBytes()))
+                .andExpect(jsonPath("$.policies[0].packageRef").value(policy.getPackageRef()))
+                .andDo(document(
+                        "report",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner")
+                        )
+                ));
+    }
+
+    private static RetentionPolicy getPolicy(String userId, String reference) {
+        return RetentionPolicy.builder()
+                .userId(userId)
+                .packageRef(reference)
+                .keepLast(10)
+                .keepDays(30)
+                .releasedKey("released")
+                .prunedVersions(42L)
+                .prunedBytes(3214567890L)
+                .createdAt(new Date())
+                .lastPrunedAt(new Date())
+                .build();
+    }
+}
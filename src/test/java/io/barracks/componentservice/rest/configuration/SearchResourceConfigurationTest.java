@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.componentservice.config.SearchIndexProperties;
+import io.barracks.componentservice.model.SearchHit;
+import io.barracks.componentservice.repository.SearchIndex;
+import io.barracks.componentservice.rest.SearchResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = SearchResource.class)
+@Import(SearchIndexProperties.class)
+@AutoConfigureRestDocs("build/generated-snippets/search")
+public class SearchResourceConfigurationTest {
+    @MockBean
+    private SearchIndex searchIndex;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    public void documentSearch() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final List<SearchHit> expected = Arrays.asList(
+                SearchHit.builder()
+                        .type(SearchHit.Type.PACKAGE)
+                        .packageRef(packageRef)
+                        .name("Bootloader")
+                        .description("Signed bootloader image")
+                        .score(7)
+                        .build(),
+                SearchHit.builder()
+                        .type(SearchHit.Type.VERSION)
+                        .packageRef(packageRef)
+                        .versionId("1.0.2")
+                        .name("Bootloader 1.0.2")
+                        .description("Fixes the boot loop")
+                        .score(6)
+                        .build()
+        );
+        doReturn(expected).when(searchIndex).search(userId, "boot", null, 20);
+
+        // When
+        final ResultActions result = mvc.perform(get("/owners/{userId}/search", userId)
+                .param("q", "boot")
+                .param("limit", "20"));
+
+        // Then
+        verify(searchIndex).search(userId, "boot", null, 20);
+        result.andExpect(status().isOk())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "search",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner")
+                        ),
+                        requestParameters(
+                                parameterWithName("q").description("Words, or prefixes of words, all found in the name or description"),
+                                parameterWithName("limit").description("Maximum number of results (optional)")
+                        )
+                ));
+    }
+
+    @Test
+    public void search_withTypeAndLargeLimit_shouldFilterAndCapResults() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        doReturn(Collections.emptyList()).when(searchIndex).search(userId, "radio", SearchHit.Type.VERSION, 100);
+
+        // When
+        final ResultActions result = mvc.perform(get("/owners/{userId}/search", userId)
+                .param("q", "radio")
+                .param("type", "version")
+                .param("limit", "100000"));
+
+        // Then
+        verify(searchIndex).search(userId, "radio", SearchHit.Type.VERSION, 100);
+        result.andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void search_withUnknownType_shouldReturn400() throws Exception {
+        // When
+        final ResultActions result = mvc.perform(get("/owners/{userId}/search", "user")
+                .param("q", "radio")
+                .param("type", "blob"));
+
+        // Then
+        verifyZeroInteractions(searchIndex);
+        result.andExpect(status().isBadRequest());
+    }
+}
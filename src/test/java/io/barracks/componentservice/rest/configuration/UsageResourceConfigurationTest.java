@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import io.barracks.componentservice.model.StorageUsage;
+import io.barracks.componentservice.model.UsageReport;
+import io.barracks.componentservice.rest.UsageResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = UsageResource.class)
+@AutoConfigureRestDocs("build/generated-snippets/usage")
+public class UsageResourceConfigurationTest {
+    @MockBean
+    private UsageResource usageResource;
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    public void documentGetReport() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final StorageUsage packageUsage = StorageUsage.builder()
+                .userId(userId)
+                .packageRef("io.barracks.package")
+                .versionCount(12L)
+                .totalBytes(3214567890L)
+                .reconciledAt(new Date())
+                .build();
+        final UsageReport expected = UsageReport.builder()
+                .versionCount(12L)
+                .totalBytes(3214567890L)
+                .maxBytes(10737418240L)
+                .packages(Collections.singletonList(packageUsage))
+                .build();
+        doReturn(expected).when(usageResource).getReport(userId);
+
+        // When
+        final ResultActions result = mvc.perform(get("/owners/{userId}/usage", userId));
+
+        // Then
+        verify(usageResource).getReport(userId);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalBytes").value(3214567890L))
+                .andExpect(jsonPath("$.maxBytes").value(10737418240L))
+                .andExpect(jsonPath("$.packages[0].packageRef").value("io.barracks.package"))
+                .andDo(document(
+                        "report",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner")
+                        )
+                ));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.componentservice.rest.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.componentservice.config.VersionFeedProperties;
+import io.barracks.componentservice.model.VersionEvent;
+import io.barracks.componentservice.repository.VersionFeed;
+import io.barracks.componentservice.rest.VersionEventResource;
+import io.barracks.componentservice.utils.VersionUtils;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = VersionEventResource.class)
+@Import(VersionFeedProperties.class)
+@AutoConfigureRestDocs("build/generated-snippets/version-events")
+public class VersionEventResourceConfigurationTest {
+    @MockBean
+    private VersionFeed versionFeed;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper json;
+
+    @Test
+    public void documentPollEvents() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String reference = UUID.randomUUID().toString();
+        final String after = new ObjectId().toString();
+        final List<VersionEvent> expected = Collections.singletonList(VersionEvent.builder()
+                .id(new ObjectId().toString())
+                .version(VersionUtils.getVersion())
+                .build());
+        doReturn(expected).when(versionFeed).getEvents(eq(userId), eq(reference), eq(after), anyInt());
+
+        // When
+        final MvcResult result = mvc.perform(get("/owners/{userId}/packages/{reference}/version-events", userId, reference)
+                .accept(MediaType.APPLICATION_JSON)
+                .param("after", after)
+                .param("wait", "30000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        verify(versionFeed, never()).subscribe(anyString(), anyString(), anyString(), any());
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "poll-events",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner"),
+                                parameterWithName("reference").description("Reference of the package")
+                        ),
+                        requestParameters(
+                                parameterWithName("after").description("ID of the last event received"),
+                                parameterWithName("wait").description("Maximum time (in ms) to wait for an event")
+                        )
+                ));
+    }
+
+    @Test
+    public void pollEvents_withoutEventsAndNoWait_shouldReturnEmptyList() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String after = new ObjectId().toString();
+        doReturn(Collections.emptyList()).when(versionFeed).getEvents(eq(userId), (String) isNull(), eq(after), anyInt());
+
+        // When
+        final MvcResult result = mvc.perform(get("/owners/{userId}/version-events", userId)
+                .accept(MediaType.APPLICATION_JSON)
+                .param("after", after)
+                .param("wait", "0"))
+                .andReturn();
+
+        // Then
+        verify(versionFeed, never()).subscribe(anyString(), any(), anyString(), any());
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void pollEvents_withoutLastEventAndNoWait_shouldReturnEmptyListRightAway() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        final MvcResult result = mvc.perform(get("/owners/{userId}/version-events", userId)
+                .accept(MediaType.APPLICATION_JSON)
+                .param("after", "invalid")
+                .param("wait", "0"))
+                .andReturn();
+
+        // Then
+        verify(versionFeed, never()).subscribe(anyString(), any(), anyString(), any());
+        verify(versionFeed, never()).getEvents(anyString(), any(), anyString(), anyInt());
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void streamEvents_shouldSendTheEventsOfTheSubscription() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String lastEventId = new ObjectId().toString();
+        final VersionEvent event = VersionEvent.builder()
+                .id(new ObjectId().toString())
+                .version(VersionUtils.getVersion())
+                .build();
+        final ArgumentCaptor<VersionFeed.Listener> listener = ArgumentCaptor.forClass(VersionFeed.Listener.class);
+        doReturn(mock(VersionFeed.Subscription.class)).when(versionFeed).subscribe(eq(userId), (String) isNull(), eq(lastEventId), listener.capture());
+
+        // When
+        final MvcResult result = mvc.perform(get("/owners/{userId}/version-events", userId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        listener.getValue().onEvent(event);
+        listener.getValue().onHeartbeat();
+
+        // Then
+        assertThat(result.getResponse().getContentAsString())
+                .contains("id:" + event.getId() + "\n")
+                .contains("event:version-created\n")
+                .contains("data:" + json.writeValueAsString(event.getVersion()) + "\n")
+                .contains(":\n\n");
+    }
+}
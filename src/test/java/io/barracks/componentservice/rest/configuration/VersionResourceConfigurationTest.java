@@ -26,12 +26,23 @@ package io.barracks.componentservice.rest.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import io.barracks.commons.test.PagedResourcesUtils;
 import io.barracks.commons.util.Endpoint;
+import io.barracks.componentservice.config.BinaryFormatConfig;
+import io.barracks.componentservice.config.WorkloadType;
+import io.barracks.componentservice.config.exception.TransferRejectedException;
+import io.barracks.componentservice.manager.exception.VersionModifiedException;
 import io.barracks.componentservice.manager.exception.VersionNotFoundException;
 import io.barracks.componentservice.model.Version;
+import io.barracks.componentservice.repository.ReadRouting;
+import io.barracks.componentservice.rest.ReadYourWritesInterceptor;
 import io.barracks.componentservice.rest.VersionResource;
+import io.barracks.componentservice.rest.entity.CompactPage;
+import io.barracks.componentservice.rest.entity.VersionCopyEntity;
 import io.barracks.componentservice.rest.entity.VersionEntity;
+import io.barracks.componentservice.rest.entity.VersionUpdateEntity;
 import io.barracks.componentservice.utils.VersionUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,7 +52,6 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -54,12 +64,16 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -68,6 +82,9 @@ import static org.mockito.Mockito.*;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
 import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.fileUpload;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -87,6 +104,8 @@ public class VersionResourceConfigurationTest {
     private MockMvc mvc;
     @Autowired
     private ObjectMapper json;
+    @Autowired
+    private ReadRouting readRouting;
 
     @Test
     public void documentCreateVersion() throws Exception {
@@ -128,7 +147,7 @@ public class VersionResourceConfigurationTest {
         );
 
         // Then
-        assertThat(expected).hasNoNullFieldsOrPropertiesExcept("inputStream");
+        assertThat(expected).hasNoNullFieldsOrPropertiesExcept("content", "cachedAt");
         verify(versionResource).createVersion(
                 mockMultipartFile,
                 version,
@@ -181,6 +200,188 @@ public class VersionResourceConfigurationTest {
                 );
     }
 
+    @Test
+    public void documentCopyVersion() throws Exception {
+        // Given
+        json.enable(SerializationFeature.INDENT_OUTPUT);
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "io.barracks.package-staging";
+        final String versionId = "2-5-1";
+        final VersionCopyEntity copy = VersionCopyEntity.builder()
+                .packageRef("io.barracks.package")
+                .build();
+        final Version version = Version.builder()
+                .userId(userId)
+                .packageRef(copy.getPackageRef())
+                .id(versionId)
+                .description("Barracks package description")
+                .name("Barracks package v2-5-1")
+                .filename("barracks-package-2-5-1.tar.gz")
+                .md5("4c2383f5c88e9110642953b5dd7c88a1")
+                .length(76544567L)
+                .build();
+        doReturn(version).when(versionResource).copyVersion(copy, userId, packageRef, versionId);
+
+        // When
+        final ResultActions result = mvc.perform(
+                RestDocumentationRequestBuilders.post("/owners/{userId}/packages/{packageRef}/versions/{versionId}/copies", userId, packageRef, versionId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(json.writeValueAsBytes(copy))
+        );
+
+        // Then
+        verify(versionResource).copyVersion(copy, userId, packageRef, versionId);
+        result.andExpect(status().isCreated())
+                .andExpect(content().json(json.writeValueAsString(version)))
+                .andDo(document(
+                        "copy",
+                        pathParameters(
+                                parameterWithName("userId").description("The User Id"),
+                                parameterWithName("packageRef").description("The reference of the package of the version to copy"),
+                                parameterWithName("versionId").description("The id of the version to copy")
+                        )
+                        )
+                );
+    }
+
+    @Test
+    public void documentDeleteVersion() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "io.barracks.package";
+        final String versionId = "2-5-1";
+
+        // When
+        final ResultActions result = mvc.perform(
+                RestDocumentationRequestBuilders.delete("/owners/{userId}/packages/{packageRef}/versions/{versionId}", userId, packageRef, versionId)
+        );
+
+        // Then
+        verify(versionResource).deleteVersion(userId, packageRef, versionId);
+        result.andExpect(status().isNoContent())
+                .andDo(document(
+                        "delete",
+                        pathParameters(
+                                parameterWithName("userId").description("The User Id"),
+                                parameterWithName("packageRef").description("The reference of the package of the version"),
+                                parameterWithName("versionId").description("The id of the version to delete")
+                        )
+                        )
+                );
+    }
+
+    @Test
+    public void deleteVersion_afterWriteOfOwner_shouldReturnTimeOfLatestWrite() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final String versionId = UUID.randomUUID().toString();
+        final long writtenAt = readRouting.recordWrite(userId);
+
+        // When
+        final ResultActions result = mvc.perform(
+                delete("/owners/{userId}/packages/{packageRef}/versions/{versionId}", userId, packageRef, versionId)
+        );
+
+        // Then
+        verify(versionResource).deleteVersion(userId, packageRef, versionId);
+        result.andExpect(status().isNoContent())
+                .andExpect(header().string(ReadYourWritesInterceptor.READ_AFTER_HEADER, String.valueOf(writtenAt)));
+    }
+
+    @Test
+    public void documentUpdateVersion() throws Exception {
+        // Given
+        json.enable(SerializationFeature.INDENT_OUTPUT);
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "io.barracks.package";
+        final String versionId = "2-5-1";
+        final VersionUpdateEntity update = VersionUpdateEntity.builder()
+                .description("Barracks package fixed description")
+                .metadata(Collections.singletonMap("critical", false))
+                .build();
+        final Version version = Version.builder()
+                .userId(userId)
+                .packageRef(packageRef)
+                .id(versionId)
+                .description(update.getDescription())
+                .name("Barracks package v2-5-1")
+                .filename("barracks-package-2-5-1.tar.gz")
+                .md5("4c2383f5c88e9110642953b5dd7c88a1")
+                .length(76544567L)
+                .metadata(update.getMetadata())
+                .revision(1L)
+                .build();
+        doReturn(version).when(versionResource).updateVersion(update, "\"0\"", userId, packageRef, versionId);
+
+        // When
+        final ResultActions result = mvc.perform(
+                RestDocumentationRequestBuilders.patch("/owners/{userId}/packages/{packageRef}/versions/{versionId}", userId, packageRef, versionId)
+                        .header(HttpHeaders.IF_MATCH, "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(json.writeValueAsBytes(update))
+        );
+
+        // Then
+        verify(versionResource).updateVersion(update, "\"0\"", userId, packageRef, versionId);
+        result.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(content().json(json.writeValueAsString(version)))
+                .andDo(document(
+                        "update",
+                        pathParameters(
+                                parameterWithName("userId").description("The User Id"),
+                                parameterWithName("packageRef").description("The reference of the package of the version"),
+                                parameterWithName("versionId").description("The id of the version to update")
+                        )
+                        )
+                );
+    }
+
+    @Test
+    public void updateVersion_whenVersionWasModified_shouldReturnPreconditionFailed() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "a.ref.coucou";
+        final String versionId = "2-0";
+        final VersionUpdateEntity update = VersionUpdateEntity.builder().name("Fixed name").build();
+        doThrow(new VersionModifiedException(userId, packageRef, versionId)).when(versionResource).updateVersion(update, "\"3\"", userId, packageRef, versionId);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.patch("/owners/{userId}/packages/{packageRef}/versions/{versionId}", userId, packageRef, versionId)
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(json.writeValueAsBytes(update))
+        );
+
+        // Then
+        result.andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void getVersion_shouldReturnRevisionAsETag() throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion().toBuilder().revision(7L).build();
+        doReturn(version).when(versionResource).getVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.request(
+                        GET_VERSION_ENDPOINT.getMethod(),
+                        GET_VERSION_ENDPOINT.withBase(baseUrl).getURI(version.getUserId(), version.getPackageRef(), version.getId())
+                )
+                        .accept(MediaType.APPLICATION_JSON)
+        );
+
+        // Then
+        result.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7\""));
+    }
+
     @Test
     public void documentGetVersionFile() throws Exception {
         // Given
@@ -188,21 +389,25 @@ public class VersionResourceConfigurationTest {
         final String userId = UUID.randomUUID().toString();
         final String packageRef = "io.barracks.package";
         final String versionId = "2-5-1";
-        final HttpHeaders headers = new HttpHeaders();
-        headers.setContentLength(3);
-        final ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[]{'a', 'b', 'c'});
-        final ResponseEntity<?> response = new ResponseEntity<>(new InputStreamResource(inputStream), headers, HttpStatus.OK);
+        final DeferredResult<Void> response = new DeferredResult<>();
 
         doReturn(response).when(versionResource).getVersionFile(userId, packageRef, versionId);
 
         // When
-        final ResultActions result = mvc.perform(
+        final MvcResult started = mvc.perform(
                 RestDocumentationRequestBuilders.request(endpoint.getMethod(), endpoint.getPath(), userId, packageRef, versionId)
                         .accept(MediaType.APPLICATION_OCTET_STREAM)
-        );
+        ).andExpect(request().asyncStarted()).andReturn();
+        started.getResponse().setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        started.getResponse().setContentLength(3);
+        started.getResponse().getOutputStream().write(new byte[]{'a', 'b', 'c'});
+        response.setResult(null);
+        started.getAsyncResult();
+        final ResultActions result = mvc.perform(asyncDispatch(started));
 
         // Then
         verify(versionResource).getVersionFile(userId, packageRef, versionId);
+        assertThat(started.getResponse().getContentAsByteArray()).containsExactly(new byte[]{'a', 'b', 'c'});
         result.andExpect(status().isOk())
                 .andDo(document(
                         "get-file",
@@ -247,7 +452,7 @@ public class VersionResourceConfigurationTest {
         );
 
         // Then
-        assertThat(expected).hasNoNullFieldsOrPropertiesExcept("userId", "inputStream");
+        assertThat(expected).hasNoNullFieldsOrPropertiesExcept("userId", "content", "cachedAt");
         verify(versionResource).createVersion(
                 mockMultipartFile,
                 version,
@@ -317,6 +522,29 @@ public class VersionResourceConfigurationTest {
         result.andExpect(status().isNotFound());
     }
 
+    @Test
+    public void getVersionFile_whenTransferRejected_shouldReturn503WithRetryAfter() throws Exception {
+        // Given
+        final Endpoint endpoint = GET_VERSION_FILE_ENDPOINT;
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "a.ref.coucou";
+        final String versionId = "2-0";
+        doThrow(new TransferRejectedException(WorkloadType.DOWNLOAD, userId, 42)).when(versionResource).getVersionFile(userId, packageRef, versionId);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.request(
+                        endpoint.getMethod(),
+                        endpoint.withBase(baseUrl).getURI(userId, packageRef, versionId)
+                )
+                        .accept(MediaType.APPLICATION_OCTET_STREAM, MediaType.APPLICATION_JSON)
+        );
+
+        // Then
+        result.andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "42"));
+    }
+
     @Test
     public void getVersion_whenAllIsFine_shouldReturnVersion() throws Exception {
         // Given
@@ -370,4 +598,116 @@ public class VersionResourceConfigurationTest {
                 .andExpect(jsonPath("$._embedded.versions[0].name").value(version1.getName()))
                 .andExpect(jsonPath("$._embedded.versions[1].name").value(version2.getName()));
     }
+
+    @Test
+    public void documentGetCompactVersions() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = "io.barracks.package";
+        final Pageable pageable = new PageRequest(0, 20);
+        final List<String> fields = Arrays.asList("id", "length");
+        final Map<String, Object> version = new LinkedHashMap<>();
+        version.put("id", "2-5-1");
+        version.put("length", 76544567L);
+        final CompactPage<Map<String, Object>> expected = CompactPage.of(new PageImpl<>(Collections.singletonList(version), pageable, 1));
+        doReturn(expected).when(versionResource).getCompactVersions(userId, packageRef, fields, pageable);
+
+        // When
+        final ResultActions result = mvc.perform(
+                RestDocumentationRequestBuilders.get("/owners/{userId}/packages/{packageRef}/versions", userId, packageRef)
+                        .accept(CompactPage.MEDIA_TYPE)
+                        .param("fields", "id", "length")
+        );
+
+        // Then
+        verify(versionResource).getCompactVersions(userId, packageRef, fields, pageable);
+        verify(versionResource, never()).getVersions(anyString(), anyString(), any());
+        result.andExpect(status().isOk())
+                .andExpect(content().json(json.writeValueAsString(expected)))
+                .andDo(document(
+                        "list-compact",
+                        pathParameters(
+                                parameterWithName("userId").description("ID of the owner"),
+                                parameterWithName("packageRef").description("Reference of the package")
+                        ),
+                        requestParameters(
+                                parameterWithName("fields").description("Fields of the versions to return, all but the metadata by default")
+                        )
+                ));
+    }
+
+    @Test
+    public void getVersions_withCompactView_shouldCallCompactResource() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 20);
+        final CompactPage<Map<String, Object>> expected = CompactPage.of(new PageImpl<>(Collections.emptyList(), pageable, 0));
+        doReturn(expected).when(versionResource).getCompactVersionsView(userId, packageRef, null, pageable);
+
+        // When
+        final ResultActions result = mvc.perform(
+                RestDocumentationRequestBuilders.get("/owners/{userId}/packages/{packageRef}/versions", userId, packageRef)
+                        .accept(MediaType.ALL)
+                        .param("view", "compact")
+        );
+
+        // Then
+        verify(versionResource).getCompactVersionsView(userId, packageRef, null, pageable);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(0)))
+                .andExpect(jsonPath("$.page.totalElements").value(0));
+    }
+
+    @Test
+    public void getVersions_acceptingAnyMediaType_shouldReturnHalList() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String packageRef = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 20);
+        final PagedResources<Resource<Version>> expected = PagedResourcesUtils.<Version>getPagedResourcesAssembler(baseUrl)
+                .toResource(new PageImpl<>(Collections.singletonList(VersionUtils.getVersion())));
+        doReturn(expected).when(versionResource).getVersions(userId, packageRef, pageable);
+
+        // When
+        final ResultActions result = mvc.perform(
+                RestDocumentationRequestBuilders.get("/owners/{userId}/packages/{packageRef}/versions", userId, packageRef)
+                        .accept(MediaType.ALL)
+        );
+
+        // Then
+        verify(versionResource).getVersions(userId, packageRef, pageable);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$._embedded.versions", hasSize(1)));
+    }
+
+    @Test
+    public void getVersion_acceptingCbor_shouldReturnSmallerCborPayload() throws Exception {
+        assertBinaryVersion(BinaryFormatConfig.APPLICATION_CBOR_VALUE, new ObjectMapper(new CBORFactory()));
+    }
+
+    @Test
+    public void getVersion_acceptingSmile_shouldReturnSmallerSmilePayload() throws Exception {
+        assertBinaryVersion(BinaryFormatConfig.APPLICATION_SMILE_VALUE, new ObjectMapper(new SmileFactory()));
+    }
+
+    private void assertBinaryVersion(String mediaType, ObjectMapper reader) throws Exception {
+        // Given
+        final Version version = VersionUtils.getVersion();
+        doReturn(version).when(versionResource).getVersion(version.getUserId(), version.getPackageRef(), version.getId());
+
+        // When
+        final MvcResult result = mvc.perform(
+                RestDocumentationRequestBuilders.get("/owners/{userId}/packages/{packageRef}/versions/{versionId}", version.getUserId(), version.getPackageRef(), version.getId())
+                        .accept(mediaType)
+        ).andReturn();
+
+        // Then
+        assertThat(result.getResponse().getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(result.getResponse().getContentType()).isEqualTo(mediaType);
+        final byte[] body = result.getResponse().getContentAsByteArray();
+        final byte[] jsonBody = json.writeValueAsBytes(version);
+        assertThat(reader.readTree(body)).isEqualTo(json.readTree(jsonBody));
+        assertThat(body.length).isLessThan(jsonBody.length);
+    }
 }
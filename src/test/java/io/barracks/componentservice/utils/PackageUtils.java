@@ -38,7 +38,7 @@ public class PackageUtils {
                 .userId(UUID.randomUUID().toString())
                 .name(UUID.randomUUID().toString())
                 .build();
-        assertThat(aPackage).hasNoNullFieldsOrProperties();
+        assertThat(aPackage).hasNoNullFieldsOrPropertiesExcept("cachedAt");
         return aPackage;
     }
 }
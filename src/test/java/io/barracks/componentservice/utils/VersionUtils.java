@@ -43,7 +43,7 @@ public class VersionUtils {
                 .description(UUID.randomUUID().toString())
                 .metadata(Collections.singletonMap(UUID.randomUUID().toString(), UUID.randomUUID().toString()))
                 .build();
-        assertThat(entity).hasNoNullFieldsOrProperties();
+        assertThat(entity).hasNoNullFieldsOrPropertiesExcept("cachedAt");
         return entity;
     }
 
@@ -59,9 +59,9 @@ public class VersionUtils {
                 .md5(UUID.randomUUID().toString())
                 .length(42)
                 .metadata(Collections.singletonMap(UUID.randomUUID().toString(), UUID.randomUUID().toString()))
-                .inputStream(new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}))
+                .content(position -> new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}, (int) position, 3))
                 .build();
-        assertThat(version).hasNoNullFieldsOrProperties();
+        assertThat(version).hasNoNullFieldsOrPropertiesExcept("cachedAt");
         return version;
     }
 }